@@ -0,0 +1,34 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+
+// A separable gaussian blur of the occlusion that skips samples at another depth, so the occlusion doesn't bleed over
+// the edges of the blocks. The direction is the size of a texel on the blur axis.
+
+uniform sampler2D m_SSAOMap;
+uniform vec2 m_Direction;
+
+varying vec2 texCoord;
+
+// the relative depth difference where a sample has no weight anymore
+const float depthThreshold = 0.05;
+
+void addSample(in float offset, in float weight, in float depth, inout float sum, inout float weightSum){
+    vec2 value = texture2D(m_SSAOMap, texCoord + m_Direction * offset).rg;
+    float w = weight * max(0.0, 1.0 - abs(value.g - depth) / (depth * depthThreshold));
+    sum += value.r * w;
+    weightSum += w;
+}
+
+void main(){
+    vec2 center = texture2D(m_SSAOMap, texCoord).rg;
+    float sum = center.r * 0.2270;
+    float weightSum = 0.2270;
+
+    addSample(-3.0, 0.0702, center.g, sum, weightSum);
+    addSample(-2.0, 0.1216, center.g, sum, weightSum);
+    addSample(-1.0, 0.1946, center.g, sum, weightSum);
+    addSample(1.0, 0.1946, center.g, sum, weightSum);
+    addSample(2.0, 0.1216, center.g, sum, weightSum);
+    addSample(3.0, 0.0702, center.g, sum, weightSum);
+
+    gl_FragColor = vec4(sum / weightSum, center.g, 0.0, 1.0);
+}
@@ -0,0 +1,68 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+#import "Common/ShaderLib/MultiSample.glsllib"
+
+// Upsamples the low resolution occlusion to the screen. The four nearest occlusion texels are weighted by their
+// bilinear weight and by how close their depth is to the depth of the pixel, so the occlusion of the blocks in front
+// doesn't leak onto the blocks behind them.
+
+uniform COLORTEXTURE m_Texture;
+uniform DEPTHTEXTURE m_DepthTexture;
+uniform sampler2D m_SSAOMap;
+uniform vec2 m_SSAOMapSize;
+uniform vec2 m_FrustumNearFar;
+
+varying vec2 texCoord;
+
+const float epsilon = 0.0001;
+
+float getLinearDepth(float depthv){
+    return (2.0 * m_FrustumNearFar.x) / (m_FrustumNearFar.y + m_FrustumNearFar.x - depthv * (m_FrustumNearFar.y - m_FrustumNearFar.x));
+}
+
+void addSample(in vec2 texel, in float weight, in float depth, inout float sum, inout float weightSum, inout vec2 nearest){
+    vec2 value = texture2D(m_SSAOMap, (texel + 0.5) / m_SSAOMapSize).rg;
+    float difference = abs(value.g - depth);
+    float w = weight / (epsilon + difference / depth);
+    sum += value.r * w;
+    weightSum += w;
+    // the sample with the closest depth is used when all weights are too small
+    if (difference < nearest.y) {
+        nearest = vec2(value.r, difference);
+    }
+}
+
+float getAmbientOcclusion(){
+    float depthv = getDepth(m_DepthTexture, texCoord).r;
+    if (depthv == 1.0) {
+        return 1.0;
+    }
+    float depth = getLinearDepth(depthv);
+
+    vec2 position = texCoord * m_SSAOMapSize - 0.5;
+    vec2 texel = floor(position);
+    vec2 f = position - texel;
+
+    float sum = 0.0;
+    float weightSum = 0.0;
+    vec2 nearest = vec2(1.0, 1.0e10);
+    addSample(texel, (1.0 - f.x) * (1.0 - f.y), depth, sum, weightSum, nearest);
+    addSample(texel + vec2(1.0, 0.0), f.x * (1.0 - f.y), depth, sum, weightSum, nearest);
+    addSample(texel + vec2(0.0, 1.0), (1.0 - f.x) * f.y, depth, sum, weightSum, nearest);
+    addSample(texel + vec2(1.0, 1.0), f.x * f.y, depth, sum, weightSum, nearest);
+
+    return weightSum > epsilon ? sum / weightSum : nearest.x;
+}
+
+void main(){
+    vec4 ao = vec4(getAmbientOcclusion());
+
+    #ifdef USE_ONLY_AO
+        gl_FragColor = ao;
+    #else
+        #ifdef USE_AO
+            gl_FragColor = getColor(m_Texture, texCoord) * ao;
+        #else
+            gl_FragColor = getColor(m_Texture, texCoord);
+        #endif
+    #endif
+}
@@ -0,0 +1,84 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+#import "Common/ShaderLib/MultiSample.glsllib"
+
+// The ambient occlusion of jME's SSAO filter with approximated normals, rendered at a lower resolution. The red
+// channel holds the occlusion, the green channel the linear depth of the pixel that is used to upsample the result.
+
+uniform vec2 g_Resolution;
+uniform vec2 g_ResolutionInverse;
+uniform vec2 m_FrustumNearFar;
+uniform sampler2D m_RandomMap;
+uniform DEPTHTEXTURE m_DepthTexture;
+uniform vec3 m_FrustumCorner;
+uniform float m_SampleRadius;
+uniform float m_Intensity;
+uniform float m_Scale;
+uniform float m_Bias;
+uniform vec2[4] m_Samples;
+
+varying vec2 texCoord;
+
+float getLinearDepth(float depthv){
+    return (2.0 * m_FrustumNearFar.x) / (m_FrustumNearFar.y + m_FrustumNearFar.x - depthv * (m_FrustumNearFar.y - m_FrustumNearFar.x));
+}
+
+vec3 getPosition(float depthv, in vec2 uv){
+    float x = mix(-m_FrustumCorner.x, m_FrustumCorner.x, uv.x);
+    float y = mix(-m_FrustumCorner.y, m_FrustumCorner.y, uv.y);
+
+    return getLinearDepth(depthv) * vec3(x, y, m_FrustumCorner.z);
+}
+
+vec3 approximateNormal(in vec3 pos, in vec2 uv){
+    vec2 offset1 = vec2(g_ResolutionInverse.x, -g_ResolutionInverse.y);
+    vec2 offset2 = vec2(-g_ResolutionInverse.x, -g_ResolutionInverse.y);
+    vec3 pos2 = getPosition(getDepth(m_DepthTexture, uv + offset1).r, uv + offset1);
+    vec3 pos3 = getPosition(getDepth(m_DepthTexture, uv + offset2).r, uv + offset2);
+
+    return normalize(cross(pos2 - pos, pos3 - pos2));
+}
+
+vec2 getRandom(in vec2 uv){
+    vec4 rand = texture2D(m_RandomMap, g_Resolution * uv / 128.0 * 3.0) * 2.0 - 1.0;
+    return normalize(rand.xy);
+}
+
+float doAmbientOcclusion(in vec2 tc, in vec3 pos, in vec3 norm){
+    vec3 diff = getPosition(getDepth(m_DepthTexture, tc).r, tc) - pos;
+    vec3 v = normalize(diff);
+    float d = length(diff) * m_Scale;
+
+    return max(0.0, dot(norm, v) - m_Bias) * (1.0 / (1.0 + d)) * m_Intensity;
+}
+
+vec2 reflection(in vec2 v1, in vec2 v2){
+    return v1 - 2.0 * dot(v2, v1) * v2;
+}
+
+void main(){
+    float depthv = getDepth(m_DepthTexture, texCoord).r;
+    // no occlusion on the background
+    if (depthv == 1.0) {
+        gl_FragColor = vec4(1.0);
+        return;
+    }
+
+    vec3 position = getPosition(depthv, texCoord);
+    vec3 normal = approximateNormal(position, texCoord);
+    vec2 rand = getRandom(texCoord);
+
+    float ao = 0.0;
+    float rad = m_SampleRadius / position.z;
+    for (int j = 0; j < 4; ++j) {
+        vec2 coord1 = reflection(m_Samples[j], rand) * vec2(rad, rad);
+        vec2 coord2 = vec2(coord1.x * 0.707 - coord1.y * 0.707, coord1.x * 0.707 + coord1.y * 0.707);
+
+        ao += doAmbientOcclusion(texCoord + coord1 * 0.25, position, normal);
+        ao += doAmbientOcclusion(texCoord + coord2 * 0.50, position, normal);
+        ao += doAmbientOcclusion(texCoord + coord1 * 0.75, position, normal);
+        ao += doAmbientOcclusion(texCoord + coord2 * 1.00, position, normal);
+    }
+    ao /= 16.0;
+
+    gl_FragColor = vec4(1.0 - ao, getLinearDepth(depthv), 0.0, 1.0);
+}
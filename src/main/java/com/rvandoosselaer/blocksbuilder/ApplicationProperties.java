@@ -0,0 +1,57 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Loads the application.properties file and exposes the BlocksBuilder specific properties. The file set with the
+ * application.configurationFile system property is used, when the property isn't set the application.properties file
+ * on the classpath is used.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class ApplicationProperties {
+
+    private static final String CONFIGURATION_FILE_PROPERTY = "application.configurationFile";
+    private static final String CONFIGURATION_FILE = "/application.properties";
+    private static final Properties PROPERTIES = new Properties();
+
+    static {
+        String configurationFile = System.getProperty(CONFIGURATION_FILE_PROPERTY);
+        try (InputStream in = configurationFile != null ? Files.newInputStream(Paths.get(configurationFile)) : ApplicationProperties.class.getResourceAsStream(CONFIGURATION_FILE)) {
+            if (in != null) {
+                PROPERTIES.load(in);
+            } else {
+                log.warn("File not found: {}", CONFIGURATION_FILE);
+            }
+        } catch (IOException e) {
+            log.warn("File not found: {}", configurationFile != null ? configurationFile : CONFIGURATION_FILE);
+        }
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value {} for property {}, using {}.", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,673 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlockRegistry;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the block changes of a scene, stored next to the scene file as [name].journal. The changes
+ * that are not saved in the scene file can be replayed after a crash.
+ * Changes are collected on the render thread and handed to a background thread once per frame, which appends them to
+ * the journal. The journal is synced to disk periodically.
+ * When the scene is saved, the journal is moved to [name].journal.compacting and a new journal is started. The
+ * compacting journal is deleted when the save succeeded. Replaying a scene applies the compacting journal and the
+ * journal on top of the scene file. Replaying a change twice has no effect, as each change sets a block.
+ * A scene without a scene file only has a journal. Its journal is compacted by replacing it with a journal that sets
+ * the current blocks of the scene.
+ * <p>
+ * The scene directory can be shared by multiple editors. An editor holds a file lock on [name].journal.lock as long as
+ * it uses the journal of a scene. The journals that are locked by another editor are not found by
+ * {@link #findJournals(Path)}, and the changes to a scene whose journal is locked by another editor are not journaled.
+ * <p>
+ * Each record is a type byte, the payload and a CRC32 checksum of the type and the payload. A record defines a block
+ * id or sets a block at a location, block id 0 removes the block. Replaying stops at the first incomplete or corrupt
+ * record.
+ * The methods of this class should be called from the render thread.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class AutosaveJournal {
+
+    public static final String EXTENSION = ".journal";
+    public static final String COMPACTING_EXTENSION = ".journal.compacting";
+    public static final String LOCK_EXTENSION = ".journal.lock";
+
+    private static final byte DEFINE_BLOCK = 1;
+    private static final byte SET_BLOCK = 2;
+    private static final int SET_BLOCK_SIZE = 1 + Integer.BYTES * 3 + Short.BYTES + Integer.BYTES;
+    private static final int MAX_DEFINE_BLOCK_SIZE = 1 + Short.BYTES * 2 + 0xFFFF + Integer.BYTES;
+    // the lock files held in this process. A lock file is never opened twice, closing a second channel on a locked
+    // file can release the lock.
+    private static final Set<Path> HELD_LOCKS = ConcurrentHashMap.newKeySet();
+
+    private final Path directory;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong size = new AtomicLong();
+    private final CRC32 crc = new CRC32();
+    private final Map<String, Short> blockIds = new HashMap<>();
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    /**
+     * the name of the scene the changes are appended to
+     */
+    @Getter
+    private String name;
+    private String compactingName;
+    // the locks of the journals that are used by this journal, by scene name
+    private final Map<String, FileLock> locks = new HashMap<>();
+    // true when the journal of the scene with the name is locked by this journal
+    private boolean locked;
+    // only used on the journal thread
+    private FileChannel channel;
+    private boolean synced = true;
+
+    public AutosaveJournal(Path directory, long syncInterval) {
+        this.directory = directory;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "autosave-journal"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+        this.executor.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the size in bytes of the current journal.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Appends the following changes to the journal of the scene with the name. The changes are not journaled when
+     * the journal is locked by another editor.
+     *
+     * @return false when the journal is locked by another editor
+     */
+    public boolean open(String name) {
+        flush();
+        String previousName = this.name;
+        this.name = name;
+        locked = lock(name);
+        unlock(previousName);
+        blockIds.clear();
+        Path path = getPath(name);
+        boolean owned = locked;
+        executor.execute(() -> {
+            closeChannel();
+            size.set(owned ? getFileSize(path) : 0);
+        });
+
+        return locked;
+    }
+
+    /**
+     * Records the change of the block at the location. A null block is a removed block.
+     */
+    public void record(Vec3i location, Block block) {
+        short id = 0;
+        if (block != null) {
+            Short blockId = blockIds.get(block.getName());
+            if (blockId == null) {
+                blockId = (short) (blockIds.size() + 1);
+                blockIds.put(block.getName(), blockId);
+                byte[] blockName = block.getName().getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(1 + Short.BYTES * 2 + blockName.length + Integer.BYTES);
+                putDefineBlock(pending, crc, blockId, blockName);
+            }
+            id = blockId;
+        }
+
+        ensureCapacity(SET_BLOCK_SIZE);
+        putSetBlock(pending, crc, location.x, location.y, location.z, id);
+    }
+
+    /**
+     * Hands the changes recorded since the last flush to the journal thread.
+     */
+    public void flush() {
+        if (pending.position() == 0 || name == null) {
+            return;
+        }
+        if (!locked) {
+            pending.clear();
+            return;
+        }
+
+        byte[] records = new byte[pending.position()];
+        pending.flip();
+        pending.get(records);
+        pending.clear();
+
+        Path path = getPath(name);
+        executor.execute(() -> append(path, records));
+    }
+
+    /**
+     * Moves the journal to the compacting journal, called when the scene is saved. The following changes are appended
+     * to the journal of the scene with the new name.
+     */
+    public void rotate(String newName) {
+        flush();
+        String currentName = name;
+        boolean currentLocked = locked;
+        String previousCompactingName = compactingName;
+        compactingName = currentLocked ? currentName : null;
+        name = newName;
+        // the lock of the current journal is kept until the compacting journal is deleted
+        locked = lock(newName);
+        unlock(previousCompactingName);
+        unlock(currentName);
+        blockIds.clear();
+        boolean newLocked = locked;
+        Path newPath = getPath(newName);
+        if (currentName == null || !currentLocked) {
+            executor.execute(() -> {
+                closeChannel();
+                size.set(newLocked ? getFileSize(newPath) : 0);
+            });
+            return;
+        }
+
+        Path path = getPath(currentName);
+        Path compactingPath = getCompactingPath(currentName);
+        executor.execute(() -> {
+            closeChannel();
+            try {
+                if (Files.exists(path)) {
+                    if (Files.exists(compactingPath)) {
+                        // a previous save didn't complete, keep the changes of both journals
+                        Files.write(compactingPath, Files.readAllBytes(path), StandardOpenOption.APPEND);
+                        Files.delete(path);
+                    } else {
+                        Files.move(path, compactingPath);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error rotating journal {}: {}", path, e.getMessage(), e);
+            }
+            size.set(newLocked ? getFileSize(newPath) : 0);
+        });
+    }
+
+    /**
+     * Deletes the compacting journal, called when the scene is saved.
+     */
+    public void compacted() {
+        if (compactingName == null) {
+            return;
+        }
+
+        String compactedName = compactingName;
+        Path compactingPath = getCompactingPath(compactedName);
+        compactingName = null;
+        executor.execute(() -> delete(compactingPath));
+        unlock(compactedName);
+    }
+
+    /**
+     * Replaces the journal with a journal that sets the blocks of the chunks, called when the journal of a scene
+     * without a scene file grows too large. The chunks should be a snapshot of the scene that includes the recorded
+     * changes. The callback is called on the journal thread when the chunks are written.
+     */
+    public void compact(Collection<Chunk> chunks, Runnable callback) {
+        flush();
+        // the block ids are defined again after the blocks of the chunks
+        blockIds.clear();
+        if (name == null || !locked) {
+            callback.run();
+            return;
+        }
+
+        Path path = getPath(name);
+        Path compactingPath = getCompactingPath(name);
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        executor.execute(() -> {
+            closeChannel();
+            try {
+                writeChunks(tmpPath, chunks);
+                // the journal is replaced at once, a crash leaves either the old or the new journal
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                delete(compactingPath);
+            } catch (IOException e) {
+                log.error("Error compacting journal {}: {}", path, e.getMessage(), e);
+                delete(tmpPath);
+            }
+            size.set(getFileSize(path));
+            callback.run();
+        });
+    }
+
+    /**
+     * Deletes the journals of the current scene, called when the changes of the scene are discarded.
+     */
+    public void discard() {
+        pending.clear();
+        blockIds.clear();
+        if (name == null || !locked) {
+            return;
+        }
+
+        Path path = getPath(name);
+        Path compactingPath = getCompactingPath(name);
+        executor.execute(() -> {
+            closeChannel();
+            delete(path);
+            delete(compactingPath);
+            size.set(0);
+        });
+    }
+
+    /**
+     * Writes the pending changes, syncs and closes the journal and releases the locks.
+     */
+    public void close() {
+        flush();
+        executor.execute(this::closeChannel);
+        for (String lockedName : locks.keySet()) {
+            FileLock lock = locks.get(lockedName);
+            Path lockPath = getLockPath(lockedName);
+            executor.execute(() -> release(lock, lockPath));
+        }
+        locks.clear();
+        locked = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Autosave journal didn't close in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the names of the scenes with a journal in the directory, the scene with the most recently changed journal
+     * first. The journals that are locked by an editor are skipped.
+     */
+    public static List<String> findJournals(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> getSceneName(path) != null)
+                    .sorted(Comparator.comparingLong((Path path) -> path.toFile().lastModified()).reversed())
+                    .map(AutosaveJournal::getSceneName)
+                    .distinct()
+                    .filter(name -> !isLocked(directory, name))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Error listing journals in {}: {}", directory, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Deletes the journals of a scene that isn't the current scene.
+     */
+    public static void discard(Path directory, String name) {
+        delete(directory.resolve(name + COMPACTING_EXTENSION));
+        delete(directory.resolve(name + EXTENSION));
+    }
+
+    /**
+     * Returns true when the journal of the scene is locked by an editor.
+     */
+    public static boolean isLocked(Path directory, String name) {
+        Path lockPath = getLockPath(directory, name);
+        if (HELD_LOCKS.contains(lockPath)) {
+            return true;
+        }
+        if (!Files.exists(lockPath)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.WRITE)) {
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Error checking lock {}: {}", lockPath, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Returns true when the scene has changes in a journal.
+     */
+    public static boolean exists(Path directory, String name) {
+        return Files.exists(directory.resolve(name + COMPACTING_EXTENSION)) || Files.exists(directory.resolve(name + EXTENSION));
+    }
+
+    /**
+     * Passes the changes in the compacting journal and the journal of the scene to the block setter.
+     *
+     * @return the number of replayed changes
+     */
+    public static int replay(Path directory, String name, BlockRegistry blockRegistry, UndoHistory.BlockSetter blockSetter) throws IOException {
+        return replay(directory.resolve(name + COMPACTING_EXTENSION), blockRegistry, blockSetter)
+                + replay(directory.resolve(name + EXTENSION), blockRegistry, blockSetter);
+    }
+
+    private static int replay(Path path, BlockRegistry blockRegistry, UndoHistory.BlockSetter blockSetter) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+
+        Map<Short, Block> blocks = new HashMap<>();
+        CRC32 crc = new CRC32();
+        int changes = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            byte type = buffer.get(start);
+            int length;
+            if (type == DEFINE_BLOCK && buffer.remaining() >= 1 + Short.BYTES * 2) {
+                length = 1 + Short.BYTES * 2 + (buffer.getShort(start + 1 + Short.BYTES) & 0xFFFF) + Integer.BYTES;
+            } else if (type == SET_BLOCK) {
+                length = SET_BLOCK_SIZE;
+            } else {
+                length = -1;
+            }
+            if (length < 0 || buffer.remaining() < length) {
+                log.warn("Incomplete record in journal {} at offset {}, ignoring the rest of the journal.", path, start);
+                break;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), start, length - Integer.BYTES);
+            if ((int) crc.getValue() != buffer.getInt(start + length - Integer.BYTES)) {
+                log.warn("Corrupt record in journal {} at offset {}, ignoring the rest of the journal.", path, start);
+                break;
+            }
+
+            buffer.position(start + 1);
+            if (type == DEFINE_BLOCK) {
+                short id = buffer.getShort();
+                byte[] blockName = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(blockName);
+                blocks.put(id, blockRegistry.get(new String(blockName, StandardCharsets.UTF_8)));
+            } else {
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                int z = buffer.getInt();
+                short id = buffer.getShort();
+                blockSetter.setBlock(x, y, z, id == 0 ? null : blocks.get(id));
+                changes++;
+            }
+            buffer.position(start + length);
+        }
+
+        return changes;
+    }
+
+    private void append(Path path, byte[] records) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            synced = false;
+            size.addAndGet(records.length);
+        } catch (IOException e) {
+            log.error("Error writing journal {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+    private void sync() {
+        if (channel == null || synced) {
+            return;
+        }
+
+        try {
+            channel.force(false);
+            synced = true;
+        } catch (IOException e) {
+            log.error("Error syncing journal: {}", e.getMessage(), e);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Error closing journal: {}", e.getMessage(), e);
+        }
+        channel = null;
+        synced = true;
+    }
+
+    /**
+     * Locks the journal of the scene for this journal.
+     *
+     * @return false when the journal is locked by another editor
+     */
+    private boolean lock(String name) {
+        if (locks.containsKey(name)) {
+            return true;
+        }
+
+        Path lockPath = getLockPath(name);
+        if (!HELD_LOCKS.add(lockPath)) {
+            log.warn("Journal of {} is used by another editor, changes are not journaled.", name);
+            return false;
+        }
+        try {
+            // the lock file can be deleted by the editor that released it before it was locked, try again
+            for (int attempt = 0; attempt < 2; attempt++) {
+                FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock lock = tryLock(channel);
+                if (lock == null) {
+                    channel.close();
+                    break;
+                }
+                if (Files.exists(lockPath)) {
+                    locks.put(name, lock);
+                    return true;
+                }
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.error("Error locking journal {}: {}", lockPath, e.getMessage(), e);
+        }
+
+        HELD_LOCKS.remove(lockPath);
+        log.warn("Journal of {} is used by another editor, changes are not journaled.", name);
+        return false;
+    }
+
+    /**
+     * Releases the lock of the journal of the scene when it isn't used by this journal anymore. The lock is released
+     * on the journal thread, after the pending changes are written.
+     */
+    private void unlock(String name) {
+        if (name == null || name.equals(this.name) || name.equals(compactingName) || !locks.containsKey(name)) {
+            return;
+        }
+
+        FileLock lock = locks.remove(name);
+        Path lockPath = getLockPath(name);
+        executor.execute(() -> {
+            closeChannel();
+            release(lock, lockPath);
+        });
+    }
+
+    private static void release(FileLock lock, Path lockPath) {
+        try {
+            // the lock file is deleted while it's locked, so another editor doesn't lock it in between
+            Files.deleteIfExists(lockPath);
+        } catch (IOException e) {
+            log.debug("Error deleting lock {}: {}", lockPath, e.getMessage());
+        }
+        try {
+            lock.channel().close();
+        } catch (IOException e) {
+            log.error("Error releasing lock {}: {}", lockPath, e.getMessage(), e);
+        }
+        HELD_LOCKS.remove(lockPath);
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static void writeChunks(Path path, Collection<Chunk> chunks) throws IOException {
+        Vec3i chunkSize = BlocksConfig.getInstance().getChunkSize();
+        Map<String, Short> ids = new HashMap<>();
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Chunk chunk : chunks) {
+                Vec3i location = chunk.getLocation();
+                for (int x = 0; x < chunkSize.x; x++) {
+                    for (int y = 0; y < chunkSize.y; y++) {
+                        for (int z = 0; z < chunkSize.z; z++) {
+                            Block block = chunk.getBlock(x, y, z);
+                            if (block == null) {
+                                continue;
+                            }
+
+                            if (buffer.remaining() < MAX_DEFINE_BLOCK_SIZE + SET_BLOCK_SIZE) {
+                                write(channel, buffer);
+                            }
+                            Short id = ids.get(block.getName());
+                            if (id == null) {
+                                id = (short) (ids.size() + 1);
+                                ids.put(block.getName(), id);
+                                putDefineBlock(buffer, crc, id, block.getName().getBytes(StandardCharsets.UTF_8));
+                            }
+                            putSetBlock(buffer, crc, location.x * chunkSize.x + x, location.y * chunkSize.y + y, location.z * chunkSize.z + z, id);
+                        }
+                    }
+                }
+            }
+            write(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void putDefineBlock(ByteBuffer buffer, CRC32 crc, short id, byte[] blockName) {
+        int start = buffer.position();
+        buffer.put(DEFINE_BLOCK).putShort(id).putShort((short) blockName.length).put(blockName);
+        putChecksum(buffer, crc, start);
+    }
+
+    private static void putSetBlock(ByteBuffer buffer, CRC32 crc, int x, int y, int z, short id) {
+        int start = buffer.position();
+        buffer.put(SET_BLOCK).putInt(x).putInt(y).putInt(z).putShort(id);
+        putChecksum(buffer, crc, start);
+    }
+
+    private static void putChecksum(ByteBuffer buffer, CRC32 crc, int start) {
+        crc.reset();
+        crc.update(buffer.array(), start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            buffer.put(pending);
+            pending = buffer;
+        }
+    }
+
+    private Path getPath(String name) {
+        return directory.resolve(name + EXTENSION);
+    }
+
+    private Path getCompactingPath(String name) {
+        return directory.resolve(name + COMPACTING_EXTENSION);
+    }
+
+    private Path getLockPath(String name) {
+        return getLockPath(directory, name);
+    }
+
+    private static Path getLockPath(Path directory, String name) {
+        return directory.resolve(name + LOCK_EXTENSION).toAbsolutePath().normalize();
+    }
+
+    private static String getSceneName(Path path) {
+        String filename = path.getFileName().toString();
+        if (filename.endsWith(COMPACTING_EXTENSION)) {
+            return filename.substring(0, filename.length() - COMPACTING_EXTENSION.length());
+        } else if (filename.endsWith(EXTENSION)) {
+            return filename.substring(0, filename.length() - EXTENSION.length());
+        }
+
+        return null;
+    }
+
+    private static long getFileSize(Path path) {
+        try {
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error("Error deleting journal {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+}
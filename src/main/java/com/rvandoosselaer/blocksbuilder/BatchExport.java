@@ -0,0 +1,168 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.FileRepository;
+import com.rvandoosselaer.jmeutils.util.LogUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A command line tool that exports all scenes in a directory as models, without a display or GPU. Scenes saved with a
+ * previous version of BlocksBuilder are converted while exporting. The scenes are exported in parallel, the timing and
+ * size of each export is printed when it is done.
+ * <p>
+ * Usage: {@code BatchExport <scene directory> [--output <directory>] [--threads <count>] [--format j3o|glb|obj]}
+ * <br>
+ * The models are written to the scene directory when no output directory is given. The number of threads defaults to
+ * the number of processors, the format to j3o. The exit code is 1 when a scene could not be exported.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class BatchExport {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        LogUtils.forwardJULToSlf4j();
+
+        Path sceneDirectory = null;
+        Path outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExportFormat format = ExportFormat.J3O;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--output".equals(args[i])) {
+                    outputDirectory = Paths.get(args[++i]);
+                } else if ("--threads".equals(args[i])) {
+                    threads = Math.max(Integer.parseInt(args[++i]), 1);
+                } else if ("--format".equals(args[i])) {
+                    format = ExportFormat.valueOf(args[++i].toUpperCase());
+                } else if (sceneDirectory == null) {
+                    sceneDirectory = Paths.get(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+                }
+            }
+            if (sceneDirectory == null) {
+                throw new IllegalArgumentException("No scene directory");
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchExport <scene directory> [--output <directory>] [--threads <count>] [--format j3o|glb|obj]");
+            System.exit(2);
+            return;
+        }
+
+        int failed;
+        try {
+            failed = new BatchExport().run(sceneDirectory, outputDirectory != null ? outputDirectory : sceneDirectory, threads, format);
+        } catch (IOException | InterruptedException e) {
+            log.error("Batch export of {} failed: {}", sceneDirectory, e.getMessage(), e);
+            failed = 1;
+        }
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    /**
+     * Exports the scenes in the scene directory.
+     *
+     * @return the number of scenes that could not be exported
+     */
+    public int run(Path sceneDirectory, Path outputDirectory, int threads, ExportFormat format) throws IOException, InterruptedException {
+        // the block materials are loaded with an asset manager without a renderer
+        BlocksConfig.initialize(new DesktopAssetManager(true));
+        Files.createDirectories(outputDirectory);
+
+        Set<String> scenes = getScenes(sceneDirectory);
+        System.out.printf("Exporting %d scenes from %s to %s as %s with %d threads%n", scenes.size(), sceneDirectory, outputDirectory, format, threads);
+
+        long start = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-export-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        for (String scene : scenes) {
+            completionService.submit(() -> export(sceneDirectory, scene, outputDirectory, format));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < scenes.size(); i++) {
+            try {
+                System.out.println(completionService.take().get());
+            } catch (ExecutionException e) {
+                failed++;
+                System.out.println(e.getCause().getMessage());
+                log.debug(e.getCause().getMessage(), e.getCause());
+            }
+        }
+        executor.shutdown();
+
+        System.out.printf("Exported %d of %d scenes in %dms%n", scenes.size() - failed, scenes.size(), (System.nanoTime() - start) / 1_000_000);
+
+        return failed;
+    }
+
+    /**
+     * Exports the scene and returns a line with the timing and size statistics.
+     */
+    private String export(Path sceneDirectory, String name, Path outputDirectory, ExportFormat format) throws IOException {
+        try {
+            long start = System.nanoTime();
+            Path sceneFile = sceneDirectory.resolve(name + SceneFile.EXTENSION);
+            boolean legacy = !Files.exists(sceneFile);
+            List<Chunk> chunks = legacy ? LegacySceneConverter.load(sceneDirectory, name) : SceneFile.read(sceneFile);
+            long sceneSize = legacy ? Files.size(sceneDirectory.resolve(name + FileRepository.EXTENSION)) : Files.size(sceneFile);
+            long read = System.nanoTime();
+
+            Path modelFile = outputDirectory.resolve(name + format.getExtension());
+            String model = format.export(modelFile, name, chunks, () -> false, progress -> {});
+            long exported = System.nanoTime();
+
+            return String.format("%s: %d chunks, read %dms, export %dms, %d kB -> %d kB, %s",
+                    name, chunks.size(), (read - start) / 1_000_000, (exported - read) / 1_000_000,
+                    sceneSize / 1024, Files.size(modelFile) / 1024, model);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException(String.format("%s: failed, %s", name, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Returns the names of the scenes and the legacy scenes in the directory.
+     */
+    private static Set<String> getScenes(Path directory) throws IOException {
+        Set<String> scenes = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(filename -> !filename.startsWith("."))
+                    .forEach(filename -> {
+                        if (filename.endsWith(SceneFile.EXTENSION)) {
+                            scenes.add(filename.substring(0, filename.length() - SceneFile.EXTENSION.length()));
+                        } else if (filename.endsWith(FileRepository.EXTENSION)) {
+                            scenes.add(filename.substring(0, filename.length() - FileRepository.EXTENSION.length()));
+                        }
+                    });
+        }
+
+        return scenes;
+    }
+
+}
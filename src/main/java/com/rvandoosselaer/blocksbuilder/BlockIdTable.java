@@ -0,0 +1,67 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a compact numeric id to each block, so block changes can be stored in primitive arrays. Id 0 is reserved for
+ * 'no block'. Ids are assigned on first use and are only valid during the lifetime of the table.
+ *
+ * @author: rvandoosselaer
+ */
+public class BlockIdTable {
+
+    public static final short NO_BLOCK = 0;
+
+    private final Map<String, Short> ids = new HashMap<>();
+    private final List<Block> blocks = new ArrayList<>();
+
+    public BlockIdTable() {
+        blocks.add(null);
+    }
+
+    /**
+     * Returns the id of the block, a new id is assigned when the block wasn't used before.
+     */
+    public short getId(Block block) {
+        if (block == null) {
+            return NO_BLOCK;
+        }
+
+        Short id = ids.get(block.getName());
+        if (id == null) {
+            if (blocks.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many different blocks, maximum is " + Short.MAX_VALUE);
+            }
+            id = (short) blocks.size();
+            ids.put(block.getName(), id);
+            blocks.add(block);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the id of the block or {@link #NO_BLOCK} when the block doesn't have an id.
+     */
+    public short findId(Block block) {
+        Short id = block == null ? null : ids.get(block.getName());
+        return id == null ? NO_BLOCK : id;
+    }
+
+    /**
+     * Returns the block with the id or null for {@link #NO_BLOCK}.
+     */
+    public Block getBlock(short id) {
+        return blocks.get(id);
+    }
+
+    public int size() {
+        return blocks.size() - 1;
+    }
+
+}
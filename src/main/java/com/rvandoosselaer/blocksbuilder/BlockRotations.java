@@ -0,0 +1,55 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A lookup table with the next rotation of each block. The blocks of a builder block are the rotations of the same
+ * shape, the next rotation of a block is the next block in its builder block, the last block returns to the first one.
+ * Each block gets a dense id in the {@link BlockIdTable} of the rotations, the next rotation of an id is a single array
+ * lookup.
+ *
+ * @author: rvandoosselaer
+ */
+public class BlockRotations {
+
+    @Getter
+    private final BlockIdTable blockIds = new BlockIdTable();
+    private final short[] nextIds;
+
+    public BlockRotations(Collection<BuilderBlock> builderBlocks) {
+        int count = 0;
+        for (BuilderBlock builderBlock : builderBlocks) {
+            count += builderBlock.getBlocks().size();
+        }
+
+        nextIds = new short[count + 1];
+        for (BuilderBlock builderBlock : builderBlocks) {
+            List<Block> blocks = builderBlock.getBlocks();
+            for (int i = 0; i < blocks.size(); i++) {
+                short id = blockIds.getId(blocks.get(i));
+                short nextId = blockIds.getId(blocks.get(i + 1 < blocks.size() ? i + 1 : 0));
+                nextIds[id] = nextId;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the next rotation, or the given id when the block has no rotations.
+     */
+    public short getNextId(short id) {
+        return id > BlockIdTable.NO_BLOCK && id < nextIds.length ? nextIds[id] : id;
+    }
+
+    /**
+     * Returns the next rotation of the block, or the given block when the block has no rotations.
+     */
+    public Block getNextBlock(Block block) {
+        short id = blockIds.findId(block);
+        return id == BlockIdTable.NO_BLOCK ? block : blockIds.getBlock(nextIds[id]);
+    }
+
+}
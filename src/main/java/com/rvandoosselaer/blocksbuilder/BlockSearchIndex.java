@@ -0,0 +1,311 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A search index over builder blocks. The name, the type and the shapes of the blocks of each builder block are split
+ * in lowercase tokens. Each distinct token knows the blocks it belongs to, and each trigram of a token knows the tokens
+ * it's part of. A query is split in words the same way, a block matches when every word is found in one of its tokens.
+ * When a query extends the previous query, like when the user is typing, only the matches of the previous query are
+ * searched.
+ * The results are ranked: blocks where a word equals a token come first, followed by blocks where a token starts with a
+ * word and blocks where a token contains a word. Blocks with the same rank keep the order of the blocks in the index.
+ *
+ * @author: rvandoosselaer
+ */
+public class BlockSearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int RANK_EQUALS = 3;
+    private static final int RANK_PREFIX = 2;
+    private static final int RANK_CONTAINS = 1;
+
+    private final List<BuilderBlock> blocks;
+    // the distinct tokens and the sorted indexes of the blocks of each token
+    private final String[] tokens;
+    private final int[][] tokenBlocks;
+    // the token ids of each block
+    private final int[][] blockTokens;
+    // the sorted ids of the tokens that contain a trigram
+    private final Map<Long, int[]> trigrams = new HashMap<>();
+    // the previous query and its unranked matches, used to narrow down the next query
+    private String lastQuery;
+    private int[] lastMatches;
+
+    /**
+     * Creates the index. The blocks should be sorted by name, they are returned in that order for an empty query.
+     */
+    public BlockSearchIndex(List<BuilderBlock> blocks) {
+        this.blocks = Collections.unmodifiableList(new ArrayList<>(blocks));
+        this.blockTokens = new int[blocks.size()][];
+
+        Map<String, Integer> tokenIds = new HashMap<>();
+        // the types and shapes are shared by a lot of blocks, they are only split once
+        Map<String, int[]> textTokens = new HashMap<>();
+        List<IntList> tokenBlockLists = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BuilderBlock builderBlock = blocks.get(i);
+            IntList ids = new IntList();
+            ids.addAll(textTokens.computeIfAbsent(builderBlock.getName(), text -> tokenize(text, tokenIds)));
+            for (Block block : builderBlock.getBlocks()) {
+                ids.addAll(textTokens.computeIfAbsent(block.getType(), text -> tokenize(text, tokenIds)));
+                ids.addAll(textTokens.computeIfAbsent(block.getShape(), text -> tokenize(text, tokenIds)));
+            }
+            blockTokens[i] = ids.toSortedSet();
+
+            for (int token : blockTokens[i]) {
+                while (tokenBlockLists.size() <= token) {
+                    tokenBlockLists.add(new IntList());
+                }
+                tokenBlockLists.get(token).add(i);
+            }
+        }
+
+        this.tokens = new String[tokenIds.size()];
+        tokenIds.forEach((token, id) -> tokens[id] = token);
+        this.tokenBlocks = new int[tokens.length][];
+        Map<Long, IntList> trigramLists = new HashMap<>();
+        for (int id = 0; id < tokens.length; id++) {
+            tokenBlocks[id] = id < tokenBlockLists.size() ? tokenBlockLists.get(id).toArray() : EMPTY;
+            for (int c = 0; c + 3 <= tokens[id].length(); c++) {
+                trigramLists.computeIfAbsent(trigram(tokens[id], c), key -> new IntList()).addUnique(id);
+            }
+        }
+        trigramLists.forEach((key, list) -> trigrams.put(key, list.toArray()));
+    }
+
+    /**
+     * Returns the ranked blocks that match all words of the query. All blocks are returned when the query is empty.
+     */
+    public List<BuilderBlock> search(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            lastQuery = null;
+            lastMatches = null;
+            return blocks;
+        }
+
+        String[] words = normalized.split(" ");
+        int[] candidates = lastQuery != null && normalized.startsWith(lastQuery) ? lastMatches : null;
+        int[] scores = null;
+        for (String word : words) {
+            int[] ranks = getTokenRanks(word);
+            if (candidates == null) {
+                candidates = getBlocks(ranks);
+            }
+
+            // keep the candidates with a matching token and add the best rank of the word to their score
+            IntList matches = new IntList();
+            IntList matchScores = new IntList();
+            for (int i = 0; i < candidates.length; i++) {
+                int rank = 0;
+                for (int token : blockTokens[candidates[i]]) {
+                    rank = Math.max(rank, ranks[token]);
+                }
+                if (rank > 0) {
+                    matches.add(candidates[i]);
+                    matchScores.add((scores != null ? scores[i] : 0) + rank);
+                }
+            }
+            candidates = matches.toArray();
+            scores = matchScores.toArray();
+        }
+        lastQuery = normalized;
+        lastMatches = candidates;
+
+        return rank(candidates, scores);
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Returns the rank of the word for each token, 0 when the token doesn't contain the word. Only the tokens that have
+     * all trigrams of the word are checked.
+     */
+    private int[] getTokenRanks(String word) {
+        int[] tokenIds = null;
+        for (int c = 0; c + 3 <= word.length(); c++) {
+            int[] posting = trigrams.getOrDefault(trigram(word, c), EMPTY);
+            tokenIds = tokenIds == null ? posting : intersect(tokenIds, posting);
+        }
+
+        int[] ranks = new int[tokens.length];
+        int count = tokenIds == null ? tokens.length : tokenIds.length;
+        for (int i = 0; i < count; i++) {
+            int id = tokenIds == null ? i : tokenIds[i];
+            String token = tokens[id];
+            if (token.equals(word)) {
+                ranks[id] = RANK_EQUALS;
+            } else if (token.startsWith(word)) {
+                ranks[id] = RANK_PREFIX;
+            } else if (token.contains(word)) {
+                ranks[id] = RANK_CONTAINS;
+            }
+        }
+
+        return ranks;
+    }
+
+    /**
+     * Returns the sorted indexes of the blocks that have one of the matching tokens.
+     */
+    private int[] getBlocks(int[] ranks) {
+        boolean[] found = new boolean[blocks.size()];
+        int count = 0;
+        for (int id = 0; id < ranks.length; id++) {
+            if (ranks[id] > 0) {
+                for (int block : tokenBlocks[id]) {
+                    if (!found[block]) {
+                        found[block] = true;
+                        count++;
+                    }
+                }
+            }
+        }
+
+        int[] result = new int[count];
+        for (int block = 0, i = 0; i < count; block++) {
+            if (found[block]) {
+                result[i++] = block;
+            }
+        }
+
+        return result;
+    }
+
+    private List<BuilderBlock> rank(int[] matches, int[] scores) {
+        long[] ranked = new long[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            // the score is stored in the high bits, the index in the low bits keeps the order for equal scores
+            ranked[i] = ((long) (Integer.MAX_VALUE - scores[i]) << 32) | matches[i];
+        }
+        Arrays.sort(ranked);
+
+        List<BuilderBlock> result = new ArrayList<>(ranked.length);
+        for (long value : ranked) {
+            result.add(blocks.get((int) value));
+        }
+
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Splits the text in lowercase tokens of letters and digits and returns the ids of the tokens.
+     */
+    private static int[] tokenize(String text, Map<String, Integer> tokenIds) {
+        IntList ids = new IntList();
+        for (String token : normalize(text).split(" ")) {
+            if (!token.isEmpty()) {
+                ids.add(tokenIds.computeIfAbsent(token, key -> tokenIds.size()));
+            }
+        }
+
+        return ids.toArray();
+    }
+
+    private static long trigram(String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+
+    /**
+     * Returns the letters and digits of the text in lowercase, the words are separated by a single space.
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            } else if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+                normalized.append(' ');
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') {
+            normalized.setLength(length - 1);
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] values) {
+            for (int value : values) {
+                add(value);
+            }
+        }
+
+        void addUnique(int value) {
+            // the values are added in order, a duplicate can only be the last value
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        int[] toSortedSet() {
+            int[] sorted = toArray();
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+
+            return Arrays.copyOf(sorted, count);
+        }
+
+    }
+
+}
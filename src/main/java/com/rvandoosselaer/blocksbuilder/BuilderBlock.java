@@ -5,8 +5,8 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * A builder block is a collection of blocks with a similar shape. Only 1 block of a shape is visible in the blocks
@@ -36,6 +36,13 @@ public class BuilderBlock {
         return blocks.isEmpty() ? null : blocks.get(index);
     }
 
+    /**
+     * Returns all blocks of the builder block
+     */
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
     /**
      * Returns the next block
      */
@@ -48,25 +55,6 @@ public class BuilderBlock {
         return blocks.isEmpty() ? null : blocks.get(index);
     }
 
-    /**
-     * Returns the next block starting from the given block.
-     *
-     * @param block
-     */
-    public Optional<Block> getNextBlock(Block block) {
-        int blockIndex = blocks.indexOf(block);
-        if (blockIndex >= 0) {
-            int nextBlockIndex = blockIndex + 1;
-            if (nextBlockIndex >= blocks.size()) {
-                nextBlockIndex = 0;
-            }
-
-            return Optional.of(blocks.get(nextBlockIndex));
-        }
-
-        return Optional.empty();
-    }
-
     /**
      * Reset the index to the default block.
      */
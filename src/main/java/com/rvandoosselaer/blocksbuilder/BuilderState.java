@@ -4,30 +4,25 @@ import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.BaseAppState;
 import com.jme3.asset.AssetManager;
-import com.jme3.collision.CollisionResult;
-import com.jme3.collision.CollisionResults;
-import com.jme3.export.binary.BinaryExporter;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
 import com.jme3.math.Quaternion;
-import com.jme3.math.Ray;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
-import com.jme3.scene.Spatial;
 import com.jme3.scene.debug.WireBox;
 import com.jme3.scene.shape.Box;
 import com.jme3.scene.shape.Quad;
 import com.jme3.system.JmeSystem;
+import com.jme3.texture.Texture;
 import com.rvandoosselaer.blocks.Block;
 import com.rvandoosselaer.blocks.BlocksConfig;
 import com.rvandoosselaer.blocks.Chunk;
-import com.rvandoosselaer.blocks.ChunkManager;
-import com.rvandoosselaer.blocks.ChunkManagerListener;
-import com.rvandoosselaer.blocks.ChunkManagerState;
-import com.rvandoosselaer.blocks.FileRepository;
 import com.rvandoosselaer.blocksbuilder.gui.BlocksState;
 import com.rvandoosselaer.jmeutils.util.GeometryUtils;
 import com.simsilica.lemur.GuiGlobals;
@@ -46,25 +41,39 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
- * An AppState for adding and removing blocks. A grid of 32x32 is rendered around the center (16,0,16) point.
+ * An AppState for adding and removing blocks. A scene can span multiple chunks, chunks are created when a block is
+ * placed outside the current chunks. A grid is rendered on the buildable area of the scene. Only the nodes of the chunks
+ * near the camera are attached, the meshes of chunks that are far away are evicted and recreated when the camera comes
+ * near again.
+ * Block changes are collected in an {@link EditTransaction} and a single mesh update per changed chunk section is
+ * requested at the end of the frame. The block changes are recorded in an {@link UndoHistory}, all changes made while
+ * a mouse button is held down are undone as one step.
+ * All block changes are appended to an {@link AutosaveJournal}. When the journal grows too large, the scene is saved
+ * in the background, the journal of an untitled scene is compacted. A journal is only deleted when its changes are
+ * saved or discarded by the user. On startup the scene with the most recent journal is recovered, the other untitled
+ * scenes with a journal are kept in {@link #getUnrecoveredScenes()}. The meshes are generated by the {@link ChunkMeshState}.
  *
  * @author: rvandoosselaer
  */
 @Slf4j
 public class BuilderState extends BaseAppState {
 
+    // the prefix of the name of the journal of a scene that isn't saved yet
+    private static final String UNTITLED_SCENE = ".untitled";
+
     @Getter
     @Setter
     private Node parentNode;
     private Node builderNode;
-    private Node chunkNode;
+    private Node chunksNode;
     @Getter
     private VersionedHolder<BuilderBlock> selectedBlock;
     private Geometry grid;
@@ -72,42 +81,117 @@ public class BuilderState extends BaseAppState {
     private Geometry removeBlockPlaceholder;
     private InputMapper inputMapper;
     private boolean dragging;
-    private ChunkManager chunkManager;
-    private Chunk chunk;
+    private ChunkMeshState chunkMeshState;
+    private ChunkMap chunkMap;
+    private VoxelRaycaster raycaster;
+    private EditTransaction editTransaction;
+    @Getter
+    private final UndoHistory undoHistory = new UndoHistory(10000);
+    @Getter
+    private final RaycastCache raycastCache = new RaycastCache();
+    // reusable objects for the per frame update, so no garbage is created
+    private final Vec3i tmpChunkLocation = new Vec3i();
+    private final Vec3i tmpBlockLocation = new Vec3i();
+    private final Vec3i tmpEditLocation = new Vec3i();
+    private final Vector3f tmpRayOrigin = new Vector3f();
+    private final Vector3f tmpRayTarget = new Vector3f();
+    private final Vector3f tmpBlockCenter = new Vector3f();
+    private final Matrix4f tmpInverseViewProjection = new Matrix4f();
+    private final Map<Vec3i, Node> attachedChunkNodes = new HashMap<>();
+    private Vec3i cameraChunkLocation;
+    private CameraState cameraState;
     private ChunkListener chunkListener;
     private InputFunctionListener inputListener;
     @Getter
     private final SceneInformation sceneInformation = new SceneInformation();
-    private FileRepository chunkRepository;
-    private BlocksState blocksState;
+    @Getter
+    private Path sceneDirectory;
+    @Getter
+    private SceneStorage sceneStorage;
+    @Getter
+    private SceneIndex sceneIndex;
+    private AutosaveJournal journal;
+    private SceneStorageListener journalCompactor;
+    private boolean compactingJournal;
+    /**
+     * the untitled scenes with unsaved changes of a previous session, that are not recovered or discarded yet
+     */
+    @Getter
+    private final List<String> unrecoveredScenes = new ArrayList<>();
+    /**
+     * the scene is saved when its journal is larger than this size in bytes
+     */
+    @Getter
+    @Setter
+    private long journalCompactSize = ApplicationProperties.getInt("autosaveCompactSize", 1024) * 1024L;
+    private BlockRotations blockRotations;
+    /**
+     * the number of chunks around the origin chunk that can be built on, on the x and z axis
+     */
+    @Getter
+    @Setter
+    private int sceneRadius = 8;
+    /**
+     * the number of chunks that can be built on, on the y axis
+     */
+    @Getter
+    @Setter
+    private int sceneHeight = 4;
+    /**
+     * chunks within this distance (in chunks) of the camera are attached to the scene
+     */
+    @Getter
+    @Setter
+    private int viewDistance = 4;
+    /**
+     * the meshes of chunks further away than this distance (in chunks) of the camera are evicted
+     */
+    @Getter
+    @Setter
+    private int evictDistance = 6;
 
     @Override
     protected void initialize(Application app) {
         selectedBlock = new VersionedHolder<>();
-        chunk = Chunk.createAt(new Vec3i(0, 0, 0));
-        chunkNode = chunk.getNode();
+        chunkMap = new ChunkMap(sceneRadius, sceneHeight);
         chunkListener = new ChunkListener();
-        chunkManager = getState(ChunkManagerState.class).getChunkManager();
-        chunkManager.setChunk(chunk);
-        chunkManager.addListener(chunkListener);
+        chunkMeshState = getState(ChunkMeshState.class);
+        editTransaction = new EditTransaction(chunkMap, chunkMeshState.getSections());
+        chunkMeshState.addListener(chunkListener);
+        chunkMeshState.setChunkResolver(location -> chunkMap.getChunk(location).orElse(null));
+        cameraState = getState(CameraState.class);
         String sceneDir = System.getProperty("scene.dir");
         if (sceneDir == null) {
             String jmeStorageFolder = JmeSystem.getStorageFolder().getAbsolutePath();
             sceneDir = Paths.get(jmeStorageFolder, "BlocksBuilder").toString();
             log.warn("No scene.dir system property found. Using {} as scene's storage directory.", sceneDir);
         }
-        chunkRepository = new FileRepository(Paths.get(sceneDir));
+        sceneDirectory = Paths.get(sceneDir);
+        try {
+            Files.createDirectories(sceneDirectory);
+        } catch (IOException e) {
+            log.error("Error creating scene directory {}: {}", sceneDirectory, e.getMessage(), e);
+        }
+        sceneStorage = new SceneStorage(sceneDirectory, chunkMap, app);
+        sceneIndex = new SceneIndex(sceneDirectory);
+        sceneIndex.start();
+        journal = new AutosaveJournal(sceneDirectory, ApplicationProperties.getInt("autosaveSyncInterval", 1000));
+        editTransaction.setJournal(journal);
+        journalCompactor = new JournalCompactor();
+        sceneStorage.addListener(journalCompactor);
+        recoverJournals();
 
         grid = createGrid(app.getAssetManager());
-        addBlockPlaceholder = createAddBlockPlaceholder();
-        removeBlockPlaceholder = createRemoveBlockPlaceholder();
+        initializePicking(chunkMap, createAddBlockPlaceholder(), createRemoveBlockPlaceholder());
 
         builderNode = new Node("Builder node");
         builderNode.attachChild(grid);
+        chunksNode = new Node("Chunks node");
+        builderNode.attachChild(chunksNode);
 
         inputListener = new InputFunctionListener();
         inputMapper = GuiGlobals.getInstance().getInputMapper();
-        inputMapper.addStateListener(inputListener, InputFunctions.F_DRAG, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK, InputFunctions.F_ROTATE_BLOCK);
+        inputMapper.addStateListener(inputListener, InputFunctions.F_DRAG, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK, InputFunctions.F_ROTATE_BLOCK, InputFunctions.F_UNDO, InputFunctions.F_REDO);
         inputMapper.addAnalogListener(inputListener, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK);
 
         if (parentNode == null) {
@@ -120,9 +204,16 @@ public class BuilderState extends BaseAppState {
     protected void cleanup(Application app) {
         builderNode.detachAllChildren();
         builderNode.removeFromParent();
-        inputMapper.removeStateListener(inputListener, InputFunctions.F_DRAG, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK, InputFunctions.F_ROTATE_BLOCK);
+        inputMapper.removeStateListener(inputListener, InputFunctions.F_DRAG, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK, InputFunctions.F_ROTATE_BLOCK, InputFunctions.F_UNDO, InputFunctions.F_REDO);
         inputMapper.removeAnalogListener(inputListener, InputFunctions.F_PLACE_BLOCK, InputFunctions.F_REMOVE_BLOCK);
-        chunkManager.removeListener(chunkListener);
+        chunkMeshState.removeListener(chunkListener);
+        chunkMeshState.setChunkResolver(null);
+        sceneStorage.removeListener(journalCompactor);
+        sceneStorage.shutdown();
+        sceneIndex.stop();
+        journal.close();
+        attachedChunkNodes.clear();
+        log.info("Cursor raycast cache: {} hits, {} misses ({}% hits).", raycastCache.getHits(), raycastCache.getMisses(), Math.round(raycastCache.getHitRatio() * 100));
     }
 
     @Override
@@ -134,88 +225,186 @@ public class BuilderState extends BaseAppState {
     protected void onDisable() {
         addBlockPlaceholder.removeFromParent();
         removeBlockPlaceholder.removeFromParent();
+        // make sure the placeholders are positioned again when the state is enabled
+        raycastCache.invalidate();
 
         inputMapper.deactivateGroup(InputFunctions.BUILDER_INPUT_GROUP);
     }
 
     @Override
     public void update(float tpf) {
+        // only recalculate the attached chunks when the camera moved to another chunk
+        Vec3i currentCameraChunkLocation = chunkMap.getChunkLocation(cameraState.getTargetLocation(), tmpChunkLocation);
+        if (!currentCameraChunkLocation.equals(cameraChunkLocation)) {
+            cameraChunkLocation = currentCameraChunkLocation.clone();
+            updateAttachedChunks();
+        }
+
         // don't calculate collisions when we are dragging the mouse
-        CollisionResult collisionResult = dragging ? null : getCursorCollision();
+        if (dragging) {
+            raycastCache.invalidate();
+            addBlockPlaceholder.removeFromParent();
+            removeBlockPlaceholder.removeFromParent();
+            return;
+        }
+
+        pick(getApplication().getInputManager().getCursorPosition(), getApplication().getCamera(), cameraState.getVersion());
+    }
+
+    /**
+     * Sets the chunk map that is picked and the placeholders that are positioned on the picked block.
+     */
+    void initializePicking(ChunkMap chunkMap, Geometry addBlockPlaceholder, Geometry removeBlockPlaceholder) {
+        this.chunkMap = chunkMap;
+        this.raycaster = new VoxelRaycaster(chunkMap);
+        this.addBlockPlaceholder = addBlockPlaceholder;
+        this.removeBlockPlaceholder = removeBlockPlaceholder;
+    }
+
+    /**
+     * Picks the block under the cursor and positions the placeholders, this is called every frame and doesn't create
+     * garbage. The ray is only cast and the placeholders are only repositioned when the cursor, the camera or the blocks
+     * changed.
+     */
+    void pick(Vector2f cursorPosition, Camera camera, long cameraVersion) {
+        if (raycastCache.isValid(cursorPosition.x, cursorPosition.y, cameraVersion, chunkMap.getVersion())) {
+            return;
+        }
 
-        if (collisionResult != null) {
-            positionAddBlockPlaceholder(collisionResult);
-            positionRemoveBlockPlaceholder(collisionResult);
+        boolean hit = getCursorCollision(cursorPosition, camera, raycastCache.getResultStore());
+        raycastCache.store(cursorPosition.x, cursorPosition.y, cameraVersion, chunkMap.getVersion(), hit);
+
+        if (hit) {
+            positionAddBlockPlaceholder(raycastCache.getResult());
+            positionRemoveBlockPlaceholder(raycastCache.getResult());
         } else {
             addBlockPlaceholder.removeFromParent();
             removeBlockPlaceholder.removeFromParent();
         }
     }
 
+    @Override
+    public void render(RenderManager rm) {
+        // all updates of this frame are done, request one mesh update per changed section
+        editTransaction.commit(this::onChunkChanged);
+        journal.flush();
+
+        // save the scene when the journal grows too large, so the journal can be removed
+        if (sceneInformation.getFilename() != null && journal.getSize() > journalCompactSize && !sceneStorage.isSaving()) {
+            log.debug("Compacting journal of {} ({} bytes).", sceneInformation.getFilename(), journal.getSize());
+            sceneStorage.save(sceneInformation.getFilename());
+        } else if (sceneInformation.getFilename() == null && journal.getSize() > journalCompactSize && !compactingJournal) {
+            // an untitled scene has no scene file, its journal is replaced with the current blocks
+            log.debug("Compacting journal of untitled scene ({} bytes).", journal.getSize());
+            compactingJournal = true;
+            journal.compact(chunkMap.snapshot(), () -> getApplication().enqueue(() -> {
+                chunkMap.releaseSnapshot();
+                compactingJournal = false;
+            }));
+        }
+    }
+
     public void setSelectedBlock(BuilderBlock builderBlock) {
         selectedBlock.setObject(builderBlock);
     }
 
+    /**
+     * Removes all blocks from the scene. The unsaved changes of the scene are discarded.
+     */
     public void clearScene() {
-        // detach and remove the old chunk
-        if (chunkNode != null) {
-            chunkNode.removeFromParent();
-        }
-        chunkManager.removeChunk(chunk);
-        // create and set new chunk
-        chunk = Chunk.createAt(new Vec3i(0, 0, 0));
-        chunkNode = chunk.getNode();
-        chunkManager.setChunk(chunk);
+        journal.discard();
+        resetScene();
+        journal.open(createUntitledScene());
+    }
+
+    private void resetScene() {
+        // detach and remove the old chunks
+        for (Chunk chunk : chunkMap.getChunks()) {
+            chunkMeshState.cancel(chunk.getLocation());
+        }
+        chunkMap.clear();
+        editTransaction.discard();
+        undoHistory.clear();
+        attachedChunkNodes.clear();
+        chunksNode.detachAllChildren();
+        invalidateShadows();
         // reset the scene info
         sceneInformation.clear();
     }
 
+    /**
+     * Saves the scene in the {@link SceneFile} format. The scene is saved in the background, the progress is reported
+     * to the listeners of the {@link SceneStorage}.
+     */
     public void saveScene(String name) {
-        chunkRepository.save(chunk, name);
+        sceneStorage.save(name);
         sceneInformation.save(name);
-        log.info("Saved {} to {}.", name, chunkRepository.getPath());
     }
 
+    /**
+     * Loads the scene in the background. The current scene is replaced when the scene is loaded.
+     */
     public void loadScene(String name) {
-        Chunk loadedChunk = chunkRepository.load(name + FileRepository.EXTENSION);
-        if (loadedChunk != null) {
-            clearScene();
-            chunk = loadedChunk;
-            chunkNode = loadedChunk.getNode();
-            chunkManager.setChunk(loadedChunk);
-            chunkManager.requestChunkMeshUpdate(loadedChunk);
-            sceneInformation.setFilename(name);
-            log.info("Loaded {} from {}.", name, chunkRepository.getPath());
-        }
+        sceneStorage.load(name, chunks -> {
+            // the journal of the previous scene is kept, its changes are replayed when the scene is opened again. The
+            // journal of the loaded scene is replayed and is kept, as it holds the changes that are not saved yet.
+            resetScene();
+            chunks.forEach(this::addLoadedChunk);
+            journal.open(name);
+            cameraChunkLocation = null;
+            sceneInformation.setFilename(isUntitled(name) ? null : name);
+        });
     }
 
-    public void export(String name) {
-        Spatial toExport = chunkNode.clone();
-        Vector3f chunkSize = BlocksConfig.getInstance().getChunkSize().toVector3f();
-        toExport.setLocalTranslation(chunkSize.x * -0.5f, 0, chunkSize.z * -0.5f);
+    /**
+     * Loads the untitled scene of a previous session. The current scene is replaced when the scene is loaded.
+     */
+    public void recoverScene(String name) {
+        if (unrecoveredScenes.remove(name)) {
+            log.info("Recovering unsaved changes of untitled scene {}.", name);
+            loadScene(name);
+        }
+    }
 
-        Path path = chunkRepository.getPath().resolve(name + ".j3o");
-        try {
-            BinaryExporter.getInstance().save(toExport, Files.newOutputStream(path));
-            log.info("Exported {} to {}.", name, path);
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+    /**
+     * Deletes the journal of the untitled scene of a previous session, its changes are lost.
+     */
+    public void discardScene(String name) {
+        if (unrecoveredScenes.remove(name)) {
+            log.info("Discarding unsaved changes of untitled scene {}.", name);
+            AutosaveJournal.discard(sceneDirectory, name);
         }
     }
 
-    public List<String> getAllScenes() {
-        try {
-            return Files.list(chunkRepository.getPath())
-                    .filter(path -> path.getFileName().toString().endsWith(FileRepository.EXTENSION))
-                    .map(path -> path.getFileName().toString())
-                    .map(s -> s.substring(0, s.lastIndexOf(FileRepository.EXTENSION)))
-                    .sorted()
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+    /**
+     * Exports the scene in the background. The progress is reported to the listeners of the {@link SceneStorage}.
+     *
+     * @return false when another export is running
+     */
+    public boolean export(String name, ExportFormat format) {
+        return sceneStorage.export(name, format);
+    }
+
+    public void cancelExport() {
+        sceneStorage.cancelExport();
+    }
+
+    /**
+     * Undo the last step. The mesh updates are requested at the end of the frame.
+     */
+    public void undo() {
+        if (undoHistory.undo(this::setBlock)) {
+            log.trace("Undo step {}, history uses {} bytes.", undoHistory.getCurrentStep(), undoHistory.getMemoryUsage());
         }
+    }
 
-        return Collections.emptyList();
+    /**
+     * Redo the last undone step. The mesh updates are requested at the end of the frame.
+     */
+    public void redo() {
+        if (undoHistory.redo(this::setBlock)) {
+            log.trace("Redo step {}, history uses {} bytes.", undoHistory.getCurrentStep() - 1, undoHistory.getMemoryUsage());
+        }
     }
 
     public int getClickRepeatRate() {
@@ -226,13 +415,54 @@ public class BuilderState extends BaseAppState {
         inputListener.setClickRepeatRate(interval);
     }
 
+    /**
+     * Loads the scene with the most recent journal. A journal is left behind when the changes of a scene weren't saved,
+     * because of a crash or because another scene was opened. No journal is deleted: the journal of a scene with a
+     * scene file is replayed when the scene is opened, the other untitled scenes are kept as unrecovered scenes. The
+     * journals that are used by another editor in the same scene directory are skipped.
+     */
+    private void recoverJournals() {
+        List<String> scenes = AutosaveJournal.findJournals(sceneDirectory);
+        if (scenes.isEmpty()) {
+            journal.open(createUntitledScene());
+            return;
+        }
+
+        String latest = scenes.get(0);
+        log.warn("Recovering unsaved changes of {}.", isUntitled(latest) ? "untitled scene" : latest);
+        loadScene(latest);
+        for (String scene : scenes.subList(1, scenes.size())) {
+            if (isUntitled(scene)) {
+                unrecoveredScenes.add(scene);
+            } else {
+                log.info("Unsaved changes of {} are recovered when the scene is opened.", scene);
+            }
+        }
+    }
+
+    /**
+     * Returns a new name for the journal of an untitled scene, so the journals of other untitled scenes are kept.
+     */
+    private static String createUntitledScene() {
+        return UNTITLED_SCENE + "-" + System.currentTimeMillis();
+    }
+
+    private static boolean isUntitled(String name) {
+        return name.startsWith(UNTITLED_SCENE);
+    }
+
     private Geometry createGrid(AssetManager assetManager) {
-        Vector3f chunkSize = BlocksConfig.getInstance().getChunkSize().toVector3f();
-        Geometry grid = new Geometry("grid", new Quad(chunkSize.x, chunkSize.z));
+        // the grid covers the buildable area, the grid texture is repeated for each chunk
+        Vector3f chunkSize = BlocksConfig.getInstance().getChunkSize().toVector3f().multLocal(BlocksConfig.getInstance().getBlockScale());
+        int chunks = sceneRadius * 2 + 1;
+        Quad quad = new Quad(chunkSize.x * chunks, chunkSize.z * chunks);
+        quad.scaleTextureCoordinates(new Vector2f(chunks, chunks));
+        Geometry grid = new Geometry("grid", quad);
         grid.setMaterial(assetManager.loadMaterial("Materials/grid.j3m"));
+        grid.getMaterial().getTextureParam("DiffuseMap").getTextureValue().setWrap(Texture.WrapMode.Repeat);
         grid.setLocalRotation(new Quaternion().fromAngleAxis(-FastMath.HALF_PI, Vector3f.UNIT_X));
         // position the grid and lower it a bit to counter z-fighting with the blocks
-        grid.setLocalTranslation(0, -0.01f, chunkSize.z);
+        grid.setLocalTranslation(chunkSize.x * -sceneRadius, -0.01f, chunkSize.z * (sceneRadius + 1));
         grid.setShadowMode(RenderQueue.ShadowMode.Receive);
 
         return grid;
@@ -258,29 +488,38 @@ public class BuilderState extends BaseAppState {
         return geometry;
     }
 
-    private CollisionResult getCursorCollision() {
+    private boolean getCursorCollision(Vector2f cursorPosition, Camera camera, RaycastResult store) {
         // compute the direction from the position of the cursor
-        Vector2f cursorPosition = new Vector2f(getApplication().getInputManager().getCursorPosition());
-        Vector3f cursorPosition3D = getApplication().getCamera().getWorldCoordinates(cursorPosition, 0);
-        Vector3f cursorPosition3DTarget = getApplication().getCamera().getWorldCoordinates(cursorPosition, 1);
-        Vector3f direction = cursorPosition3DTarget.subtract(cursorPosition3D).normalizeLocal();
-
-        CollisionResults collisionResults = new CollisionResults();
-        Ray ray = new Ray(cursorPosition3D, direction);
-
-        builderNode.collideWith(ray, collisionResults);
+        Matrix4f inverseViewProjection = tmpInverseViewProjection.set(camera.getViewProjectionMatrix()).invertLocal();
+        Vector3f cursorPosition3D = getWorldCoordinates(camera, inverseViewProjection, cursorPosition, 0, tmpRayOrigin);
+        Vector3f direction = getWorldCoordinates(camera, inverseViewProjection, cursorPosition, 1, tmpRayTarget)
+                .subtractLocal(cursorPosition3D)
+                .normalizeLocal();
+
+        // walk the blocks along the ray instead of testing the triangles of the chunk meshes
+        return raycaster.raycast(cursorPosition3D, direction, store);
+    }
 
-        return collisionResults.size() > 0 ? collisionResults.getClosestCollision() : null;
+    /**
+     * Returns the world location of the screen position at the depth, like {@link Camera#getWorldCoordinates(Vector2f, float, Vector3f)}
+     * but with the inverse view projection matrix of the caller, the camera creates a new matrix on each call.
+     */
+    private static Vector3f getWorldCoordinates(Camera camera, Matrix4f inverseViewProjection, Vector2f screenPosition, float projectionZPos, Vector3f store) {
+        store.set((screenPosition.x / camera.getWidth() - camera.getViewPortLeft()) / (camera.getViewPortRight() - camera.getViewPortLeft()) * 2 - 1,
+                (screenPosition.y / camera.getHeight() - camera.getViewPortBottom()) / (camera.getViewPortTop() - camera.getViewPortBottom()) * 2 - 1,
+                projectionZPos * 2 - 1);
+        float w = inverseViewProjection.multProj(store, store);
+        return store.multLocal(1f / w);
     }
 
-    private void positionAddBlockPlaceholder(CollisionResult collisionResult) {
-        Vec3i addBlockLocation = ChunkManager.getNeighbourBlockLocation(collisionResult);
-        if (!chunk.containsLocation(addBlockLocation)) {
+    private void positionAddBlockPlaceholder(RaycastResult raycastResult) {
+        Vec3i addBlockLocation = raycastResult.getNeighbourBlockLocation(tmpBlockLocation);
+        if (!chunkMap.containsLocation(addBlockLocation)) {
             addBlockPlaceholder.removeFromParent();
             return;
         }
 
-        Vector3f blockCenter = ChunkManager.getBlockCenterLocation(addBlockLocation);
+        Vector3f blockCenter = getBlockCenterLocation(addBlockLocation, tmpBlockCenter);
         addBlockPlaceholder.setLocalTranslation(blockCenter);
 
         if (addBlockPlaceholder.getParent() == null) {
@@ -288,18 +527,18 @@ public class BuilderState extends BaseAppState {
         }
     }
 
-    private void positionRemoveBlockPlaceholder(CollisionResult collisionResult) {
-        Vec3i removeBlockLocation = ChunkManager.getBlockLocation(collisionResult);
-        if (!chunk.containsLocation(removeBlockLocation)) {
+    private void positionRemoveBlockPlaceholder(RaycastResult raycastResult) {
+        Vec3i removeBlockLocation = raycastResult.getBlockLocation();
+        if (!chunkMap.containsLocation(removeBlockLocation)) {
             removeBlockPlaceholder.removeFromParent();
             return;
         }
 
-        Vector3f blockCenter = ChunkManager.getBlockCenterLocation(removeBlockLocation);
+        Vector3f blockCenter = getBlockCenterLocation(removeBlockLocation, tmpBlockCenter);
         removeBlockPlaceholder.setLocalTranslation(blockCenter);
 
         boolean isAttached = removeBlockPlaceholder.getParent() != null;
-        boolean shouldAttach = chunkManager.getBlock(collisionResult).isPresent();
+        boolean shouldAttach = raycastResult.isBlockHit();
 
         if (!isAttached && shouldAttach) {
             parentNode.attachChild(removeBlockPlaceholder);
@@ -310,11 +549,28 @@ public class BuilderState extends BaseAppState {
     }
 
     private void addBlock() {
-        chunkManager.addBlock(addBlockPlaceholder.getWorldTranslation(), selectedBlock.getObject().getBlock());
+        if (addBlockPlaceholder.getParent() == null) {
+            return;
+        }
+
+        Vec3i blockLocation = getBlockLocation(addBlockPlaceholder.getWorldTranslation());
+        Block previousBlock = chunkMap.getBlock(blockLocation);
+        Block block = selectedBlock.getObject().getBlock();
+        if (editTransaction.addBlock(blockLocation, block)) {
+            undoHistory.record(blockLocation, previousBlock, block);
+        }
     }
 
     private void removeBlock() {
-        chunkManager.removeBlock(removeBlockPlaceholder.getWorldTranslation());
+        if (removeBlockPlaceholder.getParent() == null) {
+            return;
+        }
+
+        Vec3i blockLocation = getBlockLocation(removeBlockPlaceholder.getWorldTranslation());
+        Block previousBlock = chunkMap.getBlock(blockLocation);
+        if (editTransaction.removeBlock(blockLocation)) {
+            undoHistory.record(blockLocation, previousBlock, null);
+        }
     }
 
     private void rotateBlock() {
@@ -322,35 +578,190 @@ public class BuilderState extends BaseAppState {
             return;
         }
 
-        Optional<Block> selectedBlock = chunkManager.getBlock(removeBlockPlaceholder.getWorldTranslation());
-        selectedBlock.ifPresent(block -> chunkManager.addBlock(removeBlockPlaceholder.getWorldTranslation(), getRotatedBlock(block)));
+        Vec3i blockLocation = getBlockLocation(removeBlockPlaceholder.getWorldTranslation());
+        Block block = chunkMap.getBlock(blockLocation);
+        if (block != null) {
+            Block rotatedBlock = getRotatedBlock(block);
+            if (editTransaction.addBlock(blockLocation, rotatedBlock)) {
+                undoHistory.record(blockLocation, block, rotatedBlock);
+            }
+        }
+    }
+
+    /**
+     * Sets the block at the location, used when undoing and redoing changes.
+     */
+    private void setBlock(int x, int y, int z, Block block) {
+        tmpEditLocation.set(x, y, z);
+        if (block == null) {
+            editTransaction.removeBlock(tmpEditLocation);
+        } else {
+            editTransaction.addBlock(tmpEditLocation, block);
+        }
+    }
+
+    /**
+     * Returns the world location of the center of the block location.
+     */
+    private static Vector3f getBlockCenterLocation(Vec3i blockLocation, Vector3f store) {
+        float blockScale = BlocksConfig.getInstance().getBlockScale();
+        return store.set(blockLocation.x + 0.5f, blockLocation.y + 0.5f, blockLocation.z + 0.5f).multLocal(blockScale);
+    }
+
+    /**
+     * Returns the block location of a world location.
+     */
+    private static Vec3i getBlockLocation(Vector3f worldLocation) {
+        float blockScale = BlocksConfig.getInstance().getBlockScale();
+        return new Vec3i((int) Math.floor(worldLocation.x / blockScale), (int) Math.floor(worldLocation.y / blockScale), (int) Math.floor(worldLocation.z / blockScale));
+    }
+
+    /**
+     * Requests a mesh update of the changed sections of a chunk. A chunk without blocks is removed from the scene.
+     */
+    private void onChunkChanged(Vec3i location, BitSet changedSections) {
+        Chunk chunk = chunkMap.getChunk(location).orElse(null);
+        if (chunk == null) {
+            return;
+        }
+
+        if (chunkMap.getBlockCount(location) <= 0) {
+            chunkMap.removeChunk(location);
+            chunkMeshState.cancel(location);
+            detachChunkNode(location);
+            log.trace("Removed empty chunk at {}", location);
+            return;
+        }
+
+        // edited chunks are meshed before chunks that are loading
+        chunkMeshState.requestMeshUpdate(chunk, changedSections, MeshPriority.EDIT);
+    }
+
+    private void addLoadedChunk(Chunk chunk) {
+        chunkMap.putChunk(chunk);
+        if (chunkMap.getBlockCount(chunk.getLocation()) <= 0) {
+            // don't keep empty chunks around
+            chunkMap.removeChunk(chunk.getLocation());
+            return;
+        }
+        chunkMeshState.requestMeshUpdate(chunk, MeshPriority.LOAD);
+    }
+
+    /**
+     * Attaches the nodes of the chunks within the view distance of the camera, detaches the others and evicts the meshes
+     * of the chunks outside the evict distance.
+     */
+    private void updateAttachedChunks() {
+        for (Chunk chunk : chunkMap.getChunks()) {
+            Vec3i location = chunk.getLocation();
+            int distance = getCameraDistance(location);
+            if (distance <= viewDistance) {
+                if (chunk.getNode() == null) {
+                    // the mesh was evicted, request a new one. The node is attached when the mesh is ready.
+                    chunkMeshState.requestMeshUpdate(chunk, MeshPriority.LOAD);
+                } else {
+                    attachChunkNode(location, chunk.getNode());
+                }
+            } else {
+                detachChunkNode(location);
+                if (distance > evictDistance && chunk.getNode() != null) {
+                    // discard the section meshes that are still being generated, all sections are meshed again
+                    chunkMeshState.cancel(location);
+                    chunk.setNode(null);
+                    log.trace("Evicted mesh of chunk at {}", location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the horizontal distance in chunks between the chunk and the chunk the camera is looking at.
+     */
+    private int getCameraDistance(Vec3i chunkLocation) {
+        if (cameraChunkLocation == null) {
+            return 0;
+        }
+
+        return Math.max(Math.abs(chunkLocation.x - cameraChunkLocation.x), Math.abs(chunkLocation.z - cameraChunkLocation.z));
+    }
+
+    private void attachChunkNode(Vec3i location, Node node) {
+        Node previous = attachedChunkNodes.put(location, node);
+        if (previous != null && previous != node) {
+            previous.removeFromParent();
+        }
+        if (node.getParent() == null) {
+            chunksNode.attachChild(node);
+        }
+    }
+
+    private void detachChunkNode(Vec3i location) {
+        Node node = attachedChunkNodes.remove(location);
+        if (node != null) {
+            node.removeFromParent();
+            invalidateShadows();
+        }
+    }
+
+    /**
+     * The cached shadow maps are only rendered again when a chunk mesh is updated, detached chunks should be removed
+     * from the shadow maps.
+     */
+    private void invalidateShadows() {
+        PostProcessingState postProcessingState = getState(PostProcessingState.class);
+        if (postProcessingState != null) {
+            postProcessingState.invalidateShadows();
+        }
     }
 
     /**
      * Returns the next block shape of the block or the passed block.
      */
     private Block getRotatedBlock(Block block) {
-        if (blocksState == null) {
-            blocksState = getState(BlocksState.class);
+        if (blockRotations == null) {
+            blockRotations = getState(BlocksState.class).getBlockRotations();
         }
 
-        return blocksState.getRotatedBlock(block).orElse(block);
+        return blockRotations.getNextBlock(block);
     }
 
-    private class ChunkListener implements ChunkManagerListener {
+    /**
+     * Starts a new journal when a snapshot of the scene is saved and removes the previous journal when the save
+     * succeeded.
+     */
+    private class JournalCompactor implements SceneStorageListener {
+
+        @Override
+        public void onSaveStarted(String name) {
+            journal.rotate(name);
+        }
 
         @Override
-        public void onChunkUpdated(Chunk newChunk) {
-            // detach the old chunk and attach the new node
-            if (chunkNode != null && chunkNode.getParent() != null) {
-                chunkNode.removeFromParent();
+        public void onCompleted(SceneStorage.Operation operation, String name, boolean success) {
+            if (operation == SceneStorage.Operation.SAVE && success) {
+                journal.compacted();
+            } else if (operation == SceneStorage.Operation.LOAD && !success && journal.getName() == null) {
+                // the recovered scene couldn't be loaded, its journal is kept and the changes go to a new journal
+                journal.open(createUntitledScene());
             }
-            builderNode.attachChild(newChunk.getNode());
-            chunkNode = newChunk.getNode();
         }
 
+    }
+
+    private class ChunkListener implements ChunkMeshListener {
+
         @Override
-        public void onChunkAvailable(Chunk chunk) {
+        public void onChunkMeshUpdated(Chunk newChunk) {
+            Vec3i location = newChunk.getLocation();
+            // ignore updates of chunks that are removed or replaced in the meantime
+            if (chunkMap.getChunk(location).orElse(null) != newChunk || newChunk.getNode() == null) {
+                return;
+            }
+
+            // replace the old node with the new node when the chunk is near the camera
+            if (getCameraDistance(location) <= viewDistance) {
+                attachChunkNode(location, newChunk.getNode());
+            }
         }
 
     }
@@ -400,11 +811,19 @@ public class BuilderState extends BaseAppState {
             } else if (Objects.equals(func, InputFunctions.F_PLACE_BLOCK) || Objects.equals(func, InputFunctions.F_REMOVE_BLOCK)) {
                 // reset the timestamp when we are done clicking
                 pressed = InputState.Off != value;
-                if (!pressed) {
+                if (pressed) {
+                    // all blocks placed or removed while the button is pressed are undone in one step
+                    undoHistory.beginStep();
+                } else {
                     lastClickTimestamp = -1;
+                    undoHistory.endStep();
                 }
             } else if (Objects.equals(func, InputFunctions.F_ROTATE_BLOCK) && value != InputState.Off) {
                 rotateBlock();
+            } else if (Objects.equals(func, InputFunctions.F_UNDO) && value != InputState.Off) {
+                undo();
+            } else if (Objects.equals(func, InputFunctions.F_REDO) && value != InputState.Off) {
+                redo();
             }
         }
 
@@ -0,0 +1,58 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.light.DirectionalLight;
+import com.jme3.shadow.AbstractShadowFilter;
+
+/**
+ * A directional light shadow filter that uses a {@link CachedDirectionalLightShadowRenderer}. The shadow maps are
+ * reused until the view, the light or the scene changes. Call {@link #invalidate()} when the geometries that cast
+ * shadows changed.
+ *
+ * @author: rvandoosselaer
+ */
+public class CachedDirectionalLightShadowFilter extends AbstractShadowFilter<CachedDirectionalLightShadowRenderer> {
+
+    public CachedDirectionalLightShadowFilter(AssetManager assetManager, int shadowMapSize, int nbSplits) {
+        super(assetManager, shadowMapSize, new CachedDirectionalLightShadowRenderer(assetManager, shadowMapSize, nbSplits));
+    }
+
+    /**
+     * Renders all shadow maps again in the next frame. This can be called from any thread.
+     */
+    public void invalidate() {
+        shadowRenderer.invalidate();
+    }
+
+    /**
+     * Returns the number of shadow maps that were rendered in the last frame.
+     */
+    public int getRenderedShadowMaps() {
+        return shadowRenderer.getRenderedShadowMaps();
+    }
+
+    public DirectionalLight getLight() {
+        return shadowRenderer.getLight();
+    }
+
+    public void setLight(DirectionalLight light) {
+        shadowRenderer.setLight(light);
+    }
+
+    public float getLambda() {
+        return shadowRenderer.getLambda();
+    }
+
+    public void setLambda(float lambda) {
+        shadowRenderer.setLambda(lambda);
+    }
+
+    public boolean isEnabledStabilization() {
+        return shadowRenderer.isEnabledStabilization();
+    }
+
+    public void setEnabledStabilization(boolean stabilize) {
+        shadowRenderer.setEnabledStabilization(stabilize);
+    }
+
+}
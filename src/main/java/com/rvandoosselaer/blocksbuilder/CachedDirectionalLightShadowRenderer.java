@@ -0,0 +1,135 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.shadow.DirectionalLightShadowRenderer;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * A DirectionalLightShadowRenderer that keeps the shadow maps of the previous frames. The occluders are only rendered
+ * in a shadow map when the shadow camera of the split covers another area than the cached map, when the direction of
+ * the light changed or when the renderer is invalidated with {@link #invalidate()}. The renderer doesn't track changes
+ * in the scene, the geometries that cast shadows should invalidate the renderer when they change.
+ *
+ * @author: rvandoosselaer
+ */
+public class CachedDirectionalLightShadowRenderer extends DirectionalLightShadowRenderer {
+
+    private static final Vector3f[] CORNERS = {
+            new Vector3f(-1, -1, -1), new Vector3f(1, -1, -1), new Vector3f(1, 1, -1), new Vector3f(-1, 1, -1),
+            new Vector3f(-1, -1, 1), new Vector3f(1, -1, 1), new Vector3f(1, 1, 1), new Vector3f(-1, 1, 1)
+    };
+
+    private boolean[] cached;
+    private Matrix4f[] cachedViewProjections;
+    private final Vector3f lightDirection = new Vector3f();
+    private final Matrix4f cachedToCurrent = new Matrix4f();
+    private final Vector3f corner = new Vector3f();
+    private volatile boolean invalidated = true;
+    /**
+     * the number of shadow maps that were rendered in the last frame
+     */
+    @Getter
+    private int renderedShadowMaps;
+
+    /**
+     * For serialization only. Do not use.
+     */
+    protected CachedDirectionalLightShadowRenderer() {
+        super();
+    }
+
+    public CachedDirectionalLightShadowRenderer(AssetManager assetManager, int shadowMapSize, int nbSplits) {
+        super(assetManager, shadowMapSize, nbSplits);
+    }
+
+    /**
+     * Renders all shadow maps again in the next frame. This can be called from any thread.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    @Override
+    public void initialize(RenderManager rm, ViewPort vp) {
+        super.initialize(rm, vp);
+        cached = new boolean[nbShadowMaps];
+        cachedViewProjections = new Matrix4f[nbShadowMaps];
+        for (int i = 0; i < nbShadowMaps; i++) {
+            cachedViewProjections[i] = new Matrix4f();
+        }
+        invalidate();
+    }
+
+    @Override
+    public void postQueue(RenderQueue rq) {
+        if (invalidated || light == null || !light.getDirection().equals(lightDirection)) {
+            invalidated = false;
+            Arrays.fill(cached, false);
+            if (light != null) {
+                lightDirection.set(light.getDirection());
+            }
+        }
+
+        renderedShadowMaps = 0;
+        super.postQueue(rq);
+    }
+
+    /**
+     * Renders the shadow map of the split when the shadow camera doesn't match the camera of the cached map. The
+     * occluders are still gathered, this crops the shadow camera to the scene.
+     */
+    @Override
+    protected void renderShadowMap(int shadowMapIndex) {
+        shadowMapOccluders = getOccludersToRender(shadowMapIndex, shadowMapOccluders);
+        Camera shadowCam = getShadowCam(shadowMapIndex);
+        if (isCached(shadowMapIndex, shadowCam.getViewProjectionMatrix())) {
+            return;
+        }
+
+        lightViewProjectionsMatrices[shadowMapIndex].set(shadowCam.getViewProjectionMatrix());
+        cachedViewProjections[shadowMapIndex].set(shadowCam.getViewProjectionMatrix());
+        cached[shadowMapIndex] = true;
+        renderedShadowMaps++;
+
+        renderManager.setCamera(shadowCam, false);
+        renderManager.getRenderer().setFrameBuffer(shadowFB[shadowMapIndex]);
+        renderManager.getRenderer().clearBuffers(true, true, true);
+        renderManager.setForcedRenderState(forcedRenderState);
+        viewPort.getQueue().renderShadowQueue(shadowMapOccluders, renderManager, shadowCam, true);
+        renderManager.setForcedRenderState(null);
+    }
+
+    /**
+     * Returns true when the cached map covers the same area as the shadow camera, within a texel of the shadow map.
+     */
+    private boolean isCached(int shadowMapIndex, Matrix4f viewProjection) {
+        return cached[shadowMapIndex] && isSameArea(cachedViewProjections[shadowMapIndex], viewProjection, 2f / shadowMapSize, cachedToCurrent, corner);
+    }
+
+    /**
+     * Returns true when the corners of the clip space of the view projection are at the same place in the clip space
+     * of the cached view projection, within the tolerance. The matrix and vector are used to store intermediate
+     * results.
+     */
+    static boolean isSameArea(Matrix4f cachedViewProjection, Matrix4f viewProjection, float tolerance, Matrix4f cachedToCurrent, Vector3f corner) {
+        cachedToCurrent.set(viewProjection).invertLocal();
+        cachedViewProjection.mult(cachedToCurrent, cachedToCurrent);
+        for (Vector3f c : CORNERS) {
+            cachedToCurrent.mult(c, corner);
+            if (Math.abs(corner.x - c.x) > tolerance || Math.abs(corner.y - c.y) > tolerance || Math.abs(corner.z - c.z) > tolerance) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
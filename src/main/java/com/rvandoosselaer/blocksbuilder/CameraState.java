@@ -19,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.CAMERA_INPUT_GROUP;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_BOUNCE;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_CENTER;
+import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_CONTROL;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_DRAG;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_MOVE;
 import static com.rvandoosselaer.blocksbuilder.InputFunctions.F_STRAFE;
@@ -131,10 +132,21 @@ public class CameraState extends BaseAppState implements AnalogFunctionListener,
     private Camera camera;
     private boolean chasing; // internal flag indicating if the camera should chase/catch up with the target when smooth motion is enabled
     private boolean dragging; // internal flag indicating if the camera is being drag-rotated
+    private boolean controlPressed; // internal flag indicating if a control key is held, the keys are used for shortcuts
     private Vector3f upVector;
     private InputMapper inputMapper;
     private float distanceLerpFactor = 0;
-    private Vector3f previousLocation = new Vector3f();
+    private final Vector3f previousLocation = new Vector3f();
+    // reusable objects for the per frame update, so no garbage is created
+    private final Vector3f target = new Vector3f();
+    private final Vector3f tmpDistance = new Vector3f();
+    /**
+     * version of the camera transform, increased each time the location, rotation or size of the camera changes
+     */
+    @Getter
+    private long version;
+    private int previousWidth;
+    private int previousHeight;
 
     @Override
     protected void initialize(Application app) {
@@ -144,13 +156,13 @@ public class CameraState extends BaseAppState implements AnalogFunctionListener,
 
         inputMapper = GuiGlobals.getInstance().getInputMapper();
         inputMapper.addAnalogListener(this, F_X_ROTATE, F_Y_ROTATE, F_ZOOM, F_MOVE, F_STRAFE, F_BOUNCE);
-        inputMapper.addStateListener(this, F_DRAG, F_CENTER);
+        inputMapper.addStateListener(this, F_DRAG, F_CENTER, F_CONTROL);
     }
 
     @Override
     protected void cleanup(Application app) {
         inputMapper.removeAnalogListener(this, F_X_ROTATE, F_Y_ROTATE, F_ZOOM, F_MOVE, F_STRAFE, F_BOUNCE);
-        inputMapper.removeStateListener(this, F_DRAG, F_CENTER);
+        inputMapper.removeStateListener(this, F_DRAG, F_CENTER, F_CONTROL);
 
         // reset the camera position
         camera.setLocation(new Vector3f(0, 0, 10));
@@ -182,7 +194,7 @@ public class CameraState extends BaseAppState implements AnalogFunctionListener,
         } else if (func == F_STRAFE) {
             calculateStrafe(value, tpf);
             chasing = true;
-        } else if (func == F_BOUNCE) {
+        } else if (func == F_BOUNCE && !controlPressed) {
             calculateBounce(value, tpf);
             chasing = true;
         }
@@ -196,22 +208,23 @@ public class CameraState extends BaseAppState implements AnalogFunctionListener,
             GuiGlobals.getInstance().setCursorEventsEnabled(!dragging);
         } else if (func == F_CENTER && value != InputState.Off) {
             targetLocation.set(startingTargetLocation);
+        } else if (func == F_CONTROL) {
+            controlPressed = value != InputState.Off;
         }
     }
 
     @Override
     public void update(float tpf) {
-        Vector3f target = new Vector3f(targetLocation);
-        target.addLocal(targetLocationOffset);
+        target.set(targetLocation).addLocal(targetLocationOffset);
 
         if (smoothMotion) {
-            float distanceDifference = target.subtract(previousLocation).length();
+            float distanceDifference = tmpDistance.set(target).subtractLocal(previousLocation).length();
             if (distanceDifference > distanceDiscardThreshold) {
                 chasing = true;
             }
 
             if (chasing) {
-                distance = target.subtract(cameraPosition).length();
+                distance = tmpDistance.set(target).subtractLocal(cameraPosition).length();
                 // clamp the distance
                 distance = FastMath.clamp(distance, targetDistance + smoothMotionStretchValues.x, targetDistance + smoothMotionStretchValues.y);
                 distanceLerpFactor = Math.min(distanceLerpFactor + (tpf * tpf * smoothMotionSensitivity * 0.05f), 1);
@@ -231,11 +244,19 @@ public class CameraState extends BaseAppState implements AnalogFunctionListener,
         // add the target position
         cameraPosition.addLocal(target);
 
+        // increase the version when the camera changed
+        if (!cameraPosition.equals(camera.getLocation()) || !target.equals(previousLocation)
+                || camera.getWidth() != previousWidth || camera.getHeight() != previousHeight) {
+            previousWidth = camera.getWidth();
+            previousHeight = camera.getHeight();
+            version++;
+        }
+
         // set camera location and facing
         camera.setLocation(cameraPosition);
         camera.lookAt(target, upVector);
 
-        previousLocation = target;
+        previousLocation.set(target);
     }
 
     /**
@@ -0,0 +1,101 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes primitive values and ASCII text to a file channel through a reusable buffer, so large files can be streamed
+ * without keeping their content in memory. Values are written in little endian byte order.
+ *
+ * @author: rvandoosselaer
+ */
+public class ChannelWriter {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long flushed;
+
+    public ChannelWriter(FileChannel channel) {
+        this(channel, 64 * 1024);
+    }
+
+    public ChannelWriter(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ChannelWriter putFloat(float value) throws IOException {
+        ensureRemaining(Float.BYTES);
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public ChannelWriter putInt(int value) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public ChannelWriter putShort(short value) throws IOException {
+        ensureRemaining(Short.BYTES);
+        buffer.putShort(value);
+        return this;
+    }
+
+    public ChannelWriter put(byte value) throws IOException {
+        ensureRemaining(1);
+        buffer.put(value);
+        return this;
+    }
+
+    public ChannelWriter put(byte[] bytes) throws IOException {
+        for (byte value : bytes) {
+            put(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the characters of the text as ASCII bytes.
+     */
+    public ChannelWriter write(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            put((byte) text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Writes the value until the position is a multiple of the alignment.
+     */
+    public ChannelWriter pad(int alignment, byte value) throws IOException {
+        while (getPosition() % alignment != 0) {
+            put(value);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes written, including the bytes that are not flushed yet.
+     */
+    public long getPosition() {
+        return flushed + buffer.position();
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+}
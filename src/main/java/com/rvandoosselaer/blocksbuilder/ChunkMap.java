@@ -0,0 +1,266 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.Vector3f;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Holds all the chunks of a scene, keyed on chunk location. Chunks are created on demand when a block is placed in a
+ * chunk that doesn't exist yet. The buildable area is limited to {@link #getRadius()} chunks around the origin chunk on
+ * the x and z axis and to {@link #getHeight()} chunks on the y axis, starting at y = 0.
+ * All block locations passed to this class are world block locations.
+ * A snapshot of the chunks can be taken to read the chunks on another thread. The chunks of a snapshot are copied
+ * before they are changed (copy-on-write), so taking a snapshot is cheap and the snapshot never changes.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class ChunkMap {
+
+    @Getter
+    private final int radius;
+    @Getter
+    private final int height;
+    private final Vec3i chunkSize;
+    private final Map<Vec3i, Chunk> chunks = new HashMap<>();
+    private final Map<Vec3i, Integer> blockCounts = new HashMap<>();
+    // reusable key for the chunk lookups with primitive coordinates
+    private final Vec3i lookupLocation = new Vec3i();
+    // chunks that are part of a snapshot, they are copied before they are changed
+    private final Set<Chunk> sharedChunks = Collections.newSetFromMap(new IdentityHashMap<>());
+    // the number of snapshots that are not released
+    private int snapshots;
+    /**
+     * version of the blocks in the map, increased on each change
+     */
+    @Getter
+    private long version;
+
+    public ChunkMap(int radius, int height) {
+        this.radius = radius;
+        this.height = height;
+        this.chunkSize = BlocksConfig.getInstance().getChunkSize();
+    }
+
+    public Optional<Chunk> getChunk(Vec3i chunkLocation) {
+        return Optional.ofNullable(chunks.get(chunkLocation));
+    }
+
+    public Collection<Chunk> getChunks() {
+        return Collections.unmodifiableCollection(chunks.values());
+    }
+
+    public int size() {
+        return chunks.size();
+    }
+
+    public boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+
+    /**
+     * Returns the number of blocks in the chunk at the given location.
+     */
+    public int getBlockCount(Vec3i chunkLocation) {
+        return blockCounts.getOrDefault(chunkLocation, 0);
+    }
+
+    /**
+     * Returns true when the chunk location is inside the buildable area of the scene.
+     */
+    public boolean containsChunkLocation(int x, int y, int z) {
+        return x >= -radius && x <= radius && z >= -radius && z <= radius && y >= 0 && y < height;
+    }
+
+    /**
+     * Returns true when the block location is inside the buildable area of the scene.
+     */
+    public boolean containsLocation(Vec3i blockLocation) {
+        return containsChunkLocation(Math.floorDiv(blockLocation.x, chunkSize.x), Math.floorDiv(blockLocation.y, chunkSize.y), Math.floorDiv(blockLocation.z, chunkSize.z));
+    }
+
+    public Vec3i getChunkLocation(Vec3i blockLocation) {
+        return new Vec3i(Math.floorDiv(blockLocation.x, chunkSize.x), Math.floorDiv(blockLocation.y, chunkSize.y), Math.floorDiv(blockLocation.z, chunkSize.z));
+    }
+
+    /**
+     * Returns the location of the chunk that contains the given world location.
+     */
+    public Vec3i getChunkLocation(Vector3f worldLocation, Vec3i store) {
+        if (store == null) {
+            store = new Vec3i();
+        }
+
+        float blockScale = BlocksConfig.getInstance().getBlockScale();
+        return store.set((int) Math.floor(worldLocation.x / (chunkSize.x * blockScale)),
+                (int) Math.floor(worldLocation.y / (chunkSize.y * blockScale)),
+                (int) Math.floor(worldLocation.z / (chunkSize.z * blockScale)));
+    }
+
+    public Block getBlock(Vec3i blockLocation) {
+        return getBlock(blockLocation.x, blockLocation.y, blockLocation.z);
+    }
+
+    /**
+     * Returns the block at the block location or null. This method doesn't allocate and is meant for lookups in tight
+     * loops, like raycasting.
+     */
+    public Block getBlock(int x, int y, int z) {
+        Chunk chunk = chunks.get(lookupLocation.set(Math.floorDiv(x, chunkSize.x), Math.floorDiv(y, chunkSize.y), Math.floorDiv(z, chunkSize.z)));
+        if (chunk == null) {
+            return null;
+        }
+
+        return chunk.getBlock(Math.floorMod(x, chunkSize.x), Math.floorMod(y, chunkSize.y), Math.floorMod(z, chunkSize.z));
+    }
+
+    /**
+     * Places the block at the location. When the chunk at the location doesn't exist yet, it is created. Returns the
+     * chunk that is changed or null when the location is outside the buildable area.
+     */
+    public Chunk addBlock(Vec3i blockLocation, Block block) {
+        Vec3i chunkLocation = getChunkLocation(blockLocation);
+        if (!containsChunkLocation(chunkLocation.x, chunkLocation.y, chunkLocation.z)) {
+            return null;
+        }
+
+        Chunk chunk = getWritableChunk(chunkLocation);
+        if (chunk == null) {
+            chunk = Chunk.createAt(chunkLocation);
+            chunks.put(chunkLocation, chunk);
+            log.trace("Created chunk at {}", chunkLocation);
+        }
+
+        Block previous = chunk.addBlock(Math.floorMod(blockLocation.x, chunkSize.x), Math.floorMod(blockLocation.y, chunkSize.y), Math.floorMod(blockLocation.z, chunkSize.z), block);
+        if (previous == null) {
+            blockCounts.merge(chunkLocation, 1, Integer::sum);
+        }
+        version++;
+
+        return chunk;
+    }
+
+    /**
+     * Removes the block at the location. Returns the chunk that is changed or null when there was no block at the
+     * location.
+     */
+    public Chunk removeBlock(Vec3i blockLocation) {
+        Vec3i chunkLocation = getChunkLocation(blockLocation);
+        Chunk chunk = chunks.get(chunkLocation);
+        if (chunk == null || chunk.getBlock(Math.floorMod(blockLocation.x, chunkSize.x), Math.floorMod(blockLocation.y, chunkSize.y), Math.floorMod(blockLocation.z, chunkSize.z)) == null) {
+            return null;
+        }
+
+        chunk = getWritableChunk(chunkLocation);
+        Block previous = chunk.removeBlock(Math.floorMod(blockLocation.x, chunkSize.x), Math.floorMod(blockLocation.y, chunkSize.y), Math.floorMod(blockLocation.z, chunkSize.z));
+        if (previous == null) {
+            return null;
+        }
+        blockCounts.merge(chunkLocation, -1, Integer::sum);
+        version++;
+
+        return chunk;
+    }
+
+    /**
+     * Adds the chunk to the map, replacing a chunk at the same location. Returns the replaced chunk or null.
+     */
+    public Chunk putChunk(Chunk chunk) {
+        Vec3i chunkLocation = chunk.getLocation();
+        blockCounts.put(chunkLocation, countBlocks(chunk));
+        version++;
+
+        return chunks.put(chunkLocation, chunk);
+    }
+
+    public Chunk removeChunk(Vec3i chunkLocation) {
+        blockCounts.remove(chunkLocation);
+        version++;
+
+        return chunks.remove(chunkLocation);
+    }
+
+    /**
+     * Returns the current chunks. The returned chunks will not be changed by this chunk map until
+     * {@link #releaseSnapshot()} is called, so they can be read from another thread. Each snapshot should be released.
+     */
+    public List<Chunk> snapshot() {
+        snapshots++;
+        sharedChunks.addAll(chunks.values());
+        return new ArrayList<>(chunks.values());
+    }
+
+    /**
+     * Release a snapshot. When all snapshots are released, the chunks are no longer copied before they are changed.
+     */
+    public void releaseSnapshot() {
+        snapshots = Math.max(snapshots - 1, 0);
+        if (snapshots == 0) {
+            sharedChunks.clear();
+        }
+    }
+
+    public void clear() {
+        chunks.clear();
+        blockCounts.clear();
+        version++;
+    }
+
+    /**
+     * Returns the chunk at the location. When the chunk is part of a snapshot, the chunk is replaced with a copy that
+     * can be changed. The node of the chunk is moved to the copy.
+     */
+    private Chunk getWritableChunk(Vec3i chunkLocation) {
+        Chunk chunk = chunks.get(chunkLocation);
+        if (chunk == null || !sharedChunks.remove(chunk)) {
+            return chunk;
+        }
+
+        Chunk copy = Chunk.createAt(chunkLocation);
+        for (int x = 0; x < chunkSize.x; x++) {
+            for (int y = 0; y < chunkSize.y; y++) {
+                for (int z = 0; z < chunkSize.z; z++) {
+                    Block block = chunk.getBlock(x, y, z);
+                    if (block != null) {
+                        copy.addBlock(x, y, z, block);
+                    }
+                }
+            }
+        }
+        copy.setNode(chunk.getNode());
+        chunks.put(chunkLocation, copy);
+        log.trace("Copied shared chunk at {}", chunkLocation);
+
+        return copy;
+    }
+
+    private int countBlocks(Chunk chunk) {
+        int count = 0;
+        for (int x = 0; x < chunkSize.x; x++) {
+            for (int y = 0; y < chunkSize.y; y++) {
+                for (int z = 0; z < chunkSize.z; z++) {
+                    if (chunk.getBlock(x, y, z) != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Chunk;
+
+/**
+ * A listener that is notified on the render thread when a new mesh of a chunk is available.
+ *
+ * @author: rvandoosselaer
+ */
+public interface ChunkMeshListener {
+
+    /**
+     * Called when the node of the chunk is replaced with a newly generated node.
+     */
+    void onChunkMeshUpdated(Chunk chunk);
+
+}
@@ -0,0 +1,292 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.scene.Node;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * An AppState that generates the meshes of chunks on a pool of worker threads. Chunks are divided in
+ * {@link ChunkSections} that are meshed separately, so a block change only rebuilds the mesh of the changed sections.
+ * The node of a chunk holds a child node per section.
+ * A copy of the section is taken when the mesh is requested, so the chunk can be edited while the mesh is generated.
+ * Each worker writes the copy in a chunk that it reuses, so the cost of a request depends on the section size and not
+ * on the chunk size.
+ * Requests with a higher {@link MeshPriority}, a priority that is declared first, are generated first. The generated meshes are applied on the render
+ * thread; a mesh is only applied when it's newer than the mesh that is already applied, a stale mesh never overwrites a
+ * newer one.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class ChunkMeshState extends BaseAppState {
+
+    @Getter
+    private final int poolSize;
+    private final int sectionSize;
+    @Getter
+    private ChunkSections sections;
+    private ThreadPoolExecutor executor;
+    private final AtomicLong versionCounter = new AtomicLong();
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    // the latest request per section, used by the workers to skip outdated requests
+    private final Map<SectionKey, MeshRequest> latestRequests = new ConcurrentHashMap<>();
+    // the version of the applied mesh per section, only used on the render thread
+    private final Map<SectionKey, Long> appliedVersions = new HashMap<>();
+    // meshes of requests up to this version are discarded, per chunk location. Only used on the render thread
+    private final Map<Vec3i, Long> cancelledVersions = new HashMap<>();
+    private final Queue<MeshRequest> results = new ConcurrentLinkedQueue<>();
+    private final List<ChunkMeshListener> listeners = new CopyOnWriteArrayList<>();
+    // the chunk of each worker that the section copies are written in
+    private final ThreadLocal<Chunk> workerChunks = new ThreadLocal<>();
+    /**
+     * returns the current chunk at a location. A chunk can be replaced by a copy while its mesh is generated, the mesh
+     * is always applied on the current chunk. When not set, the mesh is applied on the requested chunk.
+     */
+    @Setter
+    private Function<Vec3i, Chunk> chunkResolver;
+
+    public ChunkMeshState() {
+        this(0, 16);
+    }
+
+    /**
+     * Create a chunk mesh state with the given number of worker threads. When the pool size is 0 or less, the number
+     * of available processors is used.
+     *
+     * @param poolSize the number of worker threads
+     * @param sectionSize the size of a section in blocks
+     */
+    public ChunkMeshState(int poolSize, int sectionSize) {
+        this.poolSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.sectionSize = sectionSize;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        sections = new ChunkSections(BlocksConfig.getInstance().getChunkSize(), sectionSize);
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), new MeshThreadFactory());
+        log.debug("Generating chunk meshes with {} worker threads, {} sections per chunk.", poolSize, sections.getSectionCount());
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        executor.shutdownNow();
+        latestRequests.clear();
+        appliedVersions.clear();
+        cancelledVersions.clear();
+        results.clear();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        MeshRequest request;
+        while ((request = results.poll()) != null) {
+            applyMesh(request);
+        }
+    }
+
+    /**
+     * Request a new mesh for all sections of the chunk. Should be called from the render thread.
+     */
+    public void requestMeshUpdate(Chunk chunk, MeshPriority priority) {
+        for (int i = 0; i < sections.getSectionCount(); i++) {
+            requestSectionMeshUpdate(chunk, i, priority);
+        }
+    }
+
+    /**
+     * Request a new mesh for the given sections of the chunk. Should be called from the render thread.
+     */
+    public void requestMeshUpdate(Chunk chunk, BitSet sectionIndexes, MeshPriority priority) {
+        for (int i = sectionIndexes.nextSetBit(0); i >= 0; i = sectionIndexes.nextSetBit(i + 1)) {
+            requestSectionMeshUpdate(chunk, i, priority);
+        }
+    }
+
+    /**
+     * Cancel the requests of the chunk at the location. Meshes that are still being generated are discarded.
+     */
+    public void cancel(Vec3i chunkLocation) {
+        latestRequests.keySet().removeIf(key -> key.chunkLocation.equals(chunkLocation));
+        appliedVersions.keySet().removeIf(key -> key.chunkLocation.equals(chunkLocation));
+        cancelledVersions.put(chunkLocation, versionCounter.get());
+    }
+
+    /**
+     * Returns true when there are mesh requests that are not applied yet.
+     */
+    public boolean isBusy() {
+        return pendingRequests.get() > 0 || !results.isEmpty();
+    }
+
+    public void addListener(ChunkMeshListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChunkMeshListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void requestSectionMeshUpdate(Chunk chunk, int section, MeshPriority priority) {
+        SectionKey key = new SectionKey(chunk.getLocation(), section);
+        MeshRequest request = new MeshRequest(key, chunk, sections.copySection(chunk, section), priority, versionCounter.incrementAndGet());
+        latestRequests.put(key, request);
+        pendingRequests.incrementAndGet();
+        executor.execute(request);
+    }
+
+    /**
+     * Returns the empty chunk of the current worker at the chunk location. The chunk is only created again when the
+     * location changes, the sections of a chunk are mostly requested together.
+     */
+    private Chunk getWorkerChunk(Vec3i chunkLocation) {
+        Chunk chunk = workerChunks.get();
+        if (chunk == null || !chunk.getLocation().equals(chunkLocation)) {
+            chunk = Chunk.createAt(chunkLocation);
+            workerChunks.set(chunk);
+        }
+
+        return chunk;
+    }
+
+    private void applyMesh(MeshRequest request) {
+        MeshRequest latestRequest = latestRequests.get(request.key);
+        // discard meshes of chunks that are cancelled
+        if (latestRequest == null || request.version <= cancelledVersions.getOrDefault(request.key.chunkLocation, 0L)) {
+            return;
+        }
+        // discard meshes that are older than the applied mesh
+        if (request.version <= appliedVersions.getOrDefault(request.key, -1L)) {
+            return;
+        }
+        appliedVersions.put(request.key, request.version);
+
+        // the chunk could be replaced by a copy in the meantime, always update the current chunk
+        Chunk chunk = chunkResolver != null ? chunkResolver.apply(request.key.chunkLocation) : latestRequest.chunk;
+        if (chunk == null) {
+            return;
+        }
+        Node chunkNode = chunk.getNode();
+        if (chunkNode == null) {
+            chunkNode = new Node("Chunk " + request.key.chunkLocation);
+            chunk.setNode(chunkNode);
+        }
+        String sectionName = "Section " + request.key.section;
+        chunkNode.detachChildNamed(sectionName);
+        if (request.node != null) {
+            request.node.setName(sectionName);
+            chunkNode.attachChild(request.node);
+        }
+
+        listeners.forEach(listener -> listener.onChunkMeshUpdated(chunk));
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class SectionKey {
+
+        private final Vec3i chunkLocation;
+        private final int section;
+
+    }
+
+    @RequiredArgsConstructor
+    private class MeshRequest implements Runnable, Comparable<MeshRequest> {
+
+        private final SectionKey key;
+        private final Chunk chunk;
+        // a copy of the blocks of the section, null when the section is empty
+        private final ChunkSections.SectionSnapshot snapshot;
+        private final MeshPriority priority;
+        private final long version;
+        private volatile Node node;
+
+        @Override
+        public void run() {
+            try {
+                // skip the request when a newer request for the same section is waiting
+                MeshRequest latestRequest = latestRequests.get(key);
+                if (latestRequest == null || latestRequest.version > version) {
+                    return;
+                }
+
+                long start = System.nanoTime();
+                if (snapshot != null) {
+                    Chunk workerChunk = getWorkerChunk(key.chunkLocation);
+                    snapshot.writeTo(workerChunk);
+                    try {
+                        workerChunk.update();
+                        Node sectionNode = BlocksConfig.getInstance().getChunkMeshGenerator().createNode(workerChunk);
+                        // remove the faces of the border blocks around the section, they belong to the neighbouring sections
+                        SectionMeshFilter.filter(sectionNode, sections.getSectionMin(key.section, new Vec3i()), sections.getSectionSize(), BlocksConfig.getInstance().getBlockScale());
+                        node = sectionNode;
+                    } finally {
+                        snapshot.removeFrom(workerChunk);
+                    }
+                }
+                results.add(this);
+                if (log.isTraceEnabled()) {
+                    log.trace("Generated mesh of section {} of chunk at {} in {}ms.", key.section, key.chunkLocation, String.format("%.2f", (System.nanoTime() - start) / 1_000_000f));
+                }
+            } catch (Exception e) {
+                log.error("Error while generating mesh of section {} of chunk at {}: {}", key.section, key.chunkLocation, e.getMessage(), e);
+            } finally {
+                pendingRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(MeshRequest other) {
+            // the queue takes the smallest request first: the priority declared first, then the oldest request
+            int result = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return result != 0 ? result : Long.compare(version, other.version);
+        }
+
+    }
+
+    private static class MeshThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "chunk-mesh-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.BitSet;
+
+/**
+ * Divides a chunk in sections that are meshed separately. A section is identified by its index in the chunk. When the
+ * section size doesn't divide the chunk size on an axis, the full chunk size is used on that axis.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+@Getter
+public class ChunkSections {
+
+    private final Vec3i chunkSize;
+    private final Vec3i sectionSize;
+    /**
+     * the number of sections on each axis
+     */
+    private final Vec3i sections;
+
+    public ChunkSections(Vec3i chunkSize, int sectionSize) {
+        this.chunkSize = chunkSize;
+        this.sectionSize = new Vec3i(getSectionSize(chunkSize.x, sectionSize), getSectionSize(chunkSize.y, sectionSize), getSectionSize(chunkSize.z, sectionSize));
+        this.sections = new Vec3i(chunkSize.x / this.sectionSize.x, chunkSize.y / this.sectionSize.y, chunkSize.z / this.sectionSize.z);
+    }
+
+    public int getSectionCount() {
+        return sections.x * sections.y * sections.z;
+    }
+
+    /**
+     * Returns the index of the section that contains the local block location.
+     */
+    public int getSectionIndex(int x, int y, int z) {
+        return getIndex(x / sectionSize.x, y / sectionSize.y, z / sectionSize.z);
+    }
+
+    /**
+     * Returns the local block location of the first block of the section.
+     */
+    public Vec3i getSectionMin(int index, Vec3i store) {
+        if (store == null) {
+            store = new Vec3i();
+        }
+
+        int x = index % sections.x;
+        int y = (index / sections.x) % sections.y;
+        int z = index / (sections.x * sections.y);
+        return store.set(x * sectionSize.x, y * sectionSize.y, z * sectionSize.z);
+    }
+
+    /**
+     * Marks the section of the block location as changed. When the block is on the boundary of the section, the
+     * neighbouring section in the same chunk is also marked, as the visible faces of its blocks could have changed.
+     */
+    public void markSections(Vec3i blockLocation, BitSet store) {
+        int x = Math.floorMod(blockLocation.x, chunkSize.x);
+        int y = Math.floorMod(blockLocation.y, chunkSize.y);
+        int z = Math.floorMod(blockLocation.z, chunkSize.z);
+        int sectionX = x / sectionSize.x;
+        int sectionY = y / sectionSize.y;
+        int sectionZ = z / sectionSize.z;
+
+        store.set(getIndex(sectionX, sectionY, sectionZ));
+        if (x % sectionSize.x == 0 && sectionX > 0) {
+            store.set(getIndex(sectionX - 1, sectionY, sectionZ));
+        } else if (x % sectionSize.x == sectionSize.x - 1 && sectionX < sections.x - 1) {
+            store.set(getIndex(sectionX + 1, sectionY, sectionZ));
+        }
+        if (y % sectionSize.y == 0 && sectionY > 0) {
+            store.set(getIndex(sectionX, sectionY - 1, sectionZ));
+        } else if (y % sectionSize.y == sectionSize.y - 1 && sectionY < sections.y - 1) {
+            store.set(getIndex(sectionX, sectionY + 1, sectionZ));
+        }
+        if (z % sectionSize.z == 0 && sectionZ > 0) {
+            store.set(getIndex(sectionX, sectionY, sectionZ - 1));
+        } else if (z % sectionSize.z == sectionSize.z - 1 && sectionZ < sections.z - 1) {
+            store.set(getIndex(sectionX, sectionY, sectionZ + 1));
+        }
+    }
+
+    /**
+     * Returns a copy of the blocks of the section and a border of one block around the section. The border is needed
+     * to calculate the visible faces of the blocks on the boundary of the section. The copy is the size of the section
+     * and its border, not of the chunk. Returns null when the section itself doesn't contain any blocks.
+     */
+    public SectionSnapshot copySection(Chunk chunk, int index) {
+        Vec3i sectionMin = getSectionMin(index, null);
+        Vec3i min = new Vec3i(Math.max(sectionMin.x - 1, 0), Math.max(sectionMin.y - 1, 0), Math.max(sectionMin.z - 1, 0));
+        Vec3i max = new Vec3i(Math.min(sectionMin.x + sectionSize.x + 1, chunkSize.x), Math.min(sectionMin.y + sectionSize.y + 1, chunkSize.y), Math.min(sectionMin.z + sectionSize.z + 1, chunkSize.z));
+        Vec3i size = max.subtract(min);
+        Block[] blocks = new Block[size.x * size.y * size.z];
+        boolean empty = true;
+        int i = 0;
+        for (int z = min.z; z < max.z; z++) {
+            for (int y = min.y; y < max.y; y++) {
+                for (int x = min.x; x < max.x; x++, i++) {
+                    Block block = chunk.getBlock(x, y, z);
+                    if (block != null) {
+                        blocks[i] = block;
+                        if (empty && x >= sectionMin.x && x < sectionMin.x + sectionSize.x && y >= sectionMin.y && y < sectionMin.y + sectionSize.y
+                                && z >= sectionMin.z && z < sectionMin.z + sectionSize.z) {
+                            empty = false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return empty ? null : new SectionSnapshot(chunk.getLocation(), min, size, blocks);
+    }
+
+    private int getIndex(int sectionX, int sectionY, int sectionZ) {
+        return sectionX + sectionY * sections.x + sectionZ * sections.x * sections.y;
+    }
+
+    private static int getSectionSize(int chunkSize, int sectionSize) {
+        if (sectionSize <= 0 || chunkSize % sectionSize != 0) {
+            log.warn("Section size {} doesn't divide chunk size {}, using {}.", sectionSize, chunkSize, chunkSize);
+            return chunkSize;
+        }
+
+        return sectionSize;
+    }
+
+    /**
+     * A copy of the blocks of a section and its border. The blocks are written in a chunk to generate the mesh of the
+     * section, the chunk can be reused for other sections of the same chunk location when the blocks are removed
+     * afterwards.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class SectionSnapshot {
+
+        private final Vec3i chunkLocation;
+        /**
+         * the local block location of the first copied block
+         */
+        private final Vec3i min;
+        private final Vec3i size;
+        private final Block[] blocks;
+
+        /**
+         * Adds the blocks of the snapshot to the chunk.
+         */
+        public void writeTo(Chunk chunk) {
+            int i = 0;
+            for (int z = 0; z < size.z; z++) {
+                for (int y = 0; y < size.y; y++) {
+                    for (int x = 0; x < size.x; x++, i++) {
+                        if (blocks[i] != null) {
+                            chunk.addBlock(min.x + x, min.y + y, min.z + z, blocks[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes the blocks of the snapshot from the chunk, the chunk is empty again after {@link #writeTo(Chunk)}.
+         */
+        public void removeFrom(Chunk chunk) {
+            int i = 0;
+            for (int z = 0; z < size.z; z++) {
+                for (int y = 0; y < size.y; y++) {
+                    for (int x = 0; x < size.x; x++, i++) {
+                        if (blocks[i] != null) {
+                            chunk.removeBlock(min.x + x, min.y + y, min.z + z);
+                        }
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.Setter;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the block changes made to a {@link ChunkMap}. The changes are applied to the chunk map immediately, the
+ * locations of the changed chunks and the changed {@link ChunkSections} are collected. When the transaction is
+ * committed, each changed chunk is passed once to the consumer with its changed sections, no matter how many blocks of
+ * the chunk changed.
+ * This allows to request a single mesh update per changed section at the end of a frame.
+ *
+ * @author: rvandoosselaer
+ */
+public class EditTransaction {
+
+    private final ChunkMap chunkMap;
+    private final ChunkSections sections;
+    private final Map<Vec3i, BitSet> dirtySections = new LinkedHashMap<>();
+    /**
+     * the journal the changes are recorded in, can be null
+     */
+    @Setter
+    private AutosaveJournal journal;
+
+    public EditTransaction(ChunkMap chunkMap, ChunkSections sections) {
+        this.chunkMap = chunkMap;
+        this.sections = sections;
+    }
+
+    /**
+     * Places the block at the location.
+     *
+     * @return true when the block is placed, false when the location is outside the buildable area.
+     */
+    public boolean addBlock(Vec3i blockLocation, Block block) {
+        Chunk chunk = chunkMap.addBlock(blockLocation, block);
+        if (chunk == null) {
+            return false;
+        }
+
+        sections.markSections(blockLocation, getDirtySections(chunk.getLocation()));
+        if (journal != null) {
+            journal.record(blockLocation, block);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the block at the location.
+     *
+     * @return true when a block is removed, false when there was no block at the location.
+     */
+    public boolean removeBlock(Vec3i blockLocation) {
+        Chunk chunk = chunkMap.removeBlock(blockLocation);
+        if (chunk == null) {
+            return false;
+        }
+
+        sections.markSections(blockLocation, getDirtySections(chunk.getLocation()));
+        if (journal != null) {
+            journal.record(blockLocation, null);
+        }
+        return true;
+    }
+
+    /**
+     * Mark all sections of the chunk at the location as changed.
+     */
+    public void markDirty(Vec3i chunkLocation) {
+        getDirtySections(chunkLocation).set(0, sections.getSectionCount());
+    }
+
+    public boolean isDirty() {
+        return !dirtySections.isEmpty();
+    }
+
+    /**
+     * Passes the location of each changed chunk and the indexes of its changed sections to the consumer and clears the
+     * collected locations.
+     */
+    public void commit(BiConsumer<Vec3i, BitSet> dirtyChunkConsumer) {
+        if (dirtySections.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Vec3i, BitSet> entry : dirtySections.entrySet()) {
+            dirtyChunkConsumer.accept(entry.getKey(), entry.getValue());
+        }
+        dirtySections.clear();
+    }
+
+    /**
+     * Clears the collected locations without passing them to a consumer.
+     */
+    public void discard() {
+        dirtySections.clear();
+    }
+
+    private BitSet getDirtySections(Vec3i chunkLocation) {
+        return dirtySections.computeIfAbsent(chunkLocation, location -> new BitSet(sections.getSectionCount()));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Chunk;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * The model formats a scene can be exported to.
+ * <ul>
+ * <li>J3O: an optimized jMonkeyEngine model, see {@link ExportOptimizer}</li>
+ * <li>GLB: a binary glTF 2.0 file, streamed to the file one chunk at a time, see {@link GlbExporter}</li>
+ * <li>OBJ: a Wavefront OBJ file and material library, streamed to the file one chunk at a time, see {@link ObjExporter}</li>
+ * </ul>
+ *
+ * @author: rvandoosselaer
+ */
+public enum ExportFormat {
+
+    J3O(ModelExporter.EXTENSION),
+    GLB(GlbExporter.EXTENSION),
+    OBJ(ObjExporter.EXTENSION);
+
+    @Getter
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Exports the chunks to the file. The progress, a value between 0 and 1, is passed to the progress listener.
+     *
+     * @return a description of the exported model or null when cancelled
+     */
+    public String export(Path path, String name, Collection<Chunk> chunks, BooleanSupplier cancelled, DoubleConsumer progressListener) throws IOException {
+        switch (this) {
+            case GLB:
+                long glbTriangles = GlbExporter.write(path, chunks, cancelled, progressListener);
+                return glbTriangles < 0 ? null : glbTriangles + " triangles";
+            case OBJ:
+                long objTriangles = ObjExporter.write(path, chunks, cancelled, progressListener);
+                return objTriangles < 0 ? null : objTriangles + " triangles";
+            default:
+                // creating the meshes takes most of the time, optimizing and writing is reported as the last 10%
+                ExportOptimizer.Result result = ModelExporter.createModel(name, chunks, cancelled, progress -> progressListener.accept(progress * 0.9));
+                if (result == null || !ModelExporter.write(path, result.getNode(), cancelled)) {
+                    return null;
+                }
+                progressListener.accept(1);
+                return result.toString();
+        }
+    }
+
+}
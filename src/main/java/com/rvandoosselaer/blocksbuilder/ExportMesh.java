@@ -0,0 +1,129 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import lombok.Getter;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The triangles of a geometry with the world transform applied on the positions and normals, as used by the streaming
+ * exporters. The vertices and indices are read from the buffers of the mesh when they are written, they are not copied.
+ * A mesh without an index buffer uses each vertex once.
+ *
+ * @author: rvandoosselaer
+ */
+public class ExportMesh {
+
+    @Getter
+    private final int vertexCount;
+    @Getter
+    private final int indexCount;
+    @Getter
+    private final Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+    @Getter
+    private final Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+    private final Matrix4f worldMatrix;
+    private final Matrix3f normalMatrix;
+    private final FloatBuffer positions;
+    private final FloatBuffer normals;
+    private final FloatBuffer texCoords;
+    private final IndexBuffer indices;
+
+    private ExportMesh(Geometry geometry) {
+        Mesh mesh = geometry.getMesh();
+        worldMatrix = geometry.getWorldMatrix();
+        vertexCount = mesh.getVertexCount();
+        positions = getFloatBuffer(mesh, VertexBuffer.Type.Position, 3);
+        normals = getFloatBuffer(mesh, VertexBuffer.Type.Normal, 3);
+        normalMatrix = normals != null ? worldMatrix.toRotationMatrix().invertLocal().transposeLocal() : null;
+        texCoords = getFloatBuffer(mesh, VertexBuffer.Type.TexCoord, 2);
+        indices = mesh.getIndexBuffer();
+        indexCount = indices != null ? indices.size() : vertexCount;
+
+        Vector3f position = new Vector3f();
+        for (int i = 0; i < vertexCount; i++) {
+            getPosition(i, position);
+            min.minLocal(position);
+            max.maxLocal(position);
+        }
+    }
+
+    /**
+     * Returns the export mesh of the geometry, or null when the geometry isn't a triangle mesh with float positions.
+     */
+    public static ExportMesh of(Geometry geometry) {
+        Mesh mesh = geometry.getMesh();
+        VertexBuffer position = mesh.getBuffer(VertexBuffer.Type.Position);
+        if (mesh.getMode() != Mesh.Mode.Triangles || position == null || position.getFormat() != VertexBuffer.Format.Float || mesh.getVertexCount() == 0) {
+            return null;
+        }
+
+        return new ExportMesh(geometry);
+    }
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    public boolean hasTexCoords() {
+        return texCoords != null;
+    }
+
+    /**
+     * Stores the world position of the vertex in the store.
+     */
+    public Vector3f getPosition(int vertex, Vector3f store) {
+        int i = vertex * 3;
+        store.set(positions.get(i), positions.get(i + 1), positions.get(i + 2));
+        return worldMatrix.mult(store, store);
+    }
+
+    /**
+     * Stores the world normal of the vertex in the store. Should only be called when the mesh has normals.
+     */
+    public Vector3f getNormal(int vertex, Vector3f store) {
+        int i = vertex * 3;
+        store.set(normals.get(i), normals.get(i + 1), normals.get(i + 2));
+        return normalMatrix.mult(store, store).normalizeLocal();
+    }
+
+    /**
+     * Stores the texture coordinate of the vertex in the store. Should only be called when the mesh has texture
+     * coordinates.
+     */
+    public Vector2f getTexCoord(int vertex, Vector2f store) {
+        int i = vertex * 2;
+        return store.set(texCoords.get(i), texCoords.get(i + 1));
+    }
+
+    /**
+     * Returns the vertex of the index, the vertices of triangle t are at the indexes 3t, 3t + 1 and 3t + 2.
+     */
+    public int getIndex(int index) {
+        return indices != null ? indices.get(index) : index;
+    }
+
+    /**
+     * Returns a view of the float buffer of the type, so the position of the buffer of the mesh isn't changed.
+     */
+    private static FloatBuffer getFloatBuffer(Mesh mesh, VertexBuffer.Type type, int components) {
+        VertexBuffer buffer = mesh.getBuffer(type);
+        if (buffer == null || buffer.getFormat() != VertexBuffer.Format.Float || buffer.getNumComponents() != components) {
+            return null;
+        }
+
+        return (FloatBuffer) buffer.getDataReadOnly();
+    }
+
+}
@@ -0,0 +1,691 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.jme3.texture.Texture;
+import com.jme3.util.BufferUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Optimizes a model for export. The optimized model has one geometry per material:
+ * <ul>
+ * <li>the meshes of all geometries with the same material are merged, the transforms are applied on the vertices</li>
+ * <li>adjacent, coplanar, axis aligned quads are merged into larger quads (greedy meshing)</li>
+ * <li>vertices with the same attributes are shared</li>
+ * <li>16-bit indices are used when the mesh has less than 65536 vertices</li>
+ * </ul>
+ * Quads are only merged when the merged quad looks exactly the same: the vertex attributes (texture coordinates,
+ * normals, colors, ...) of the quads should match on the shared edge and change at the same rate along the quads.
+ * The texture coordinates of a textured material can also differ by a whole number on the shared edge: a texture
+ * that covers each block face is tiled over the merged quad, the texture coordinates of the merged quad span the
+ * number of faces. The textures of such a group are copied with the repeat wrap mode. A face that only uses a part of
+ * the texture on an axis, isn't merged along that axis.
+ * Meshes that are not triangle meshes or have non float vertex attributes are added unchanged.
+ *
+ * @author: rvandoosselaer
+ */
+public class ExportOptimizer {
+
+    private static final float POSITION_EPSILON = 1e-4f;
+    private static final float ATTRIBUTE_EPSILON = 1e-5f;
+    private static final int MAX_SHORT_INDEX_VERTICES = 65536;
+    private static final String[] TEXTURES = {"DiffuseMap", "BaseColorMap", "ColorMap", "NormalMap", "ParallaxMap", "SpecularMap",
+            "GlowMap", "AlphaMap", "LightMap", "MetallicRoughnessMap", "EmissiveMap"};
+
+    /**
+     * Returns an optimized copy of the spatial. The world transforms of the geometries are applied, the transform of the
+     * spatial should be up to date.
+     */
+    public static Result optimize(Spatial spatial) {
+        Node result = new Node(spatial.getName());
+        Map<GroupKey, MaterialGroup> groups = new LinkedHashMap<>();
+        int[] before = new int[3];
+
+        spatial.depthFirstTraversal(child -> {
+            if (!(child instanceof Geometry)) {
+                return;
+            }
+            Geometry geometry = (Geometry) child;
+            Mesh mesh = geometry.getMesh();
+            before[0] += mesh.getTriangleCount();
+            before[1]++;
+            before[2] += mesh.getVertexCount();
+
+            Layout layout = Layout.of(mesh);
+            if (layout == null) {
+                Geometry copy = geometry.clone(false);
+                copy.setLocalTransform(geometry.getWorldTransform());
+                result.attachChild(copy);
+                return;
+            }
+            GroupKey key = new GroupKey(geometry.getMaterial(), geometry.getQueueBucket(), geometry.getShadowMode(), layout);
+            groups.computeIfAbsent(key, MaterialGroup::new).add(geometry);
+        });
+
+        for (MaterialGroup group : groups.values()) {
+            result.attachChild(group.createGeometry(spatial.getName() + "-" + result.getQuantity()));
+        }
+
+        int[] after = new int[3];
+        result.depthFirstTraversal(child -> {
+            if (child instanceof Geometry) {
+                Mesh mesh = ((Geometry) child).getMesh();
+                after[0] += mesh.getTriangleCount();
+                after[1]++;
+                after[2] += mesh.getVertexCount();
+            }
+        });
+
+        return new Result(result, before[0], after[0], before[1], after[1], before[2], after[2]);
+    }
+
+    /**
+     * The optimized model and the number of triangles, draw calls (geometries) and vertices before and after the
+     * optimization.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+
+        private final Node node;
+        private final int trianglesBefore;
+        private final int trianglesAfter;
+        private final int drawCallsBefore;
+        private final int drawCallsAfter;
+        private final int verticesBefore;
+        private final int verticesAfter;
+
+        @Override
+        public String toString() {
+            return String.format("triangles %d -> %d, draw calls %d -> %d, vertices %d -> %d",
+                    trianglesBefore, trianglesAfter, drawCallsBefore, drawCallsAfter, verticesBefore, verticesAfter);
+        }
+
+    }
+
+    /**
+     * The float vertex buffers of a mesh. The position is always the first attribute.
+     */
+    private static class Layout {
+
+        private final VertexBuffer.Type[] types;
+        private final int[] components;
+        private final int stride;
+
+        private Layout(VertexBuffer.Type[] types, int[] components) {
+            this.types = types;
+            this.components = components;
+            this.stride = Arrays.stream(components).sum();
+        }
+
+        /**
+         * Returns the layout of the mesh or null when the mesh can't be optimized.
+         */
+        static Layout of(Mesh mesh) {
+            VertexBuffer position = mesh.getBuffer(VertexBuffer.Type.Position);
+            if (mesh.getMode() != Mesh.Mode.Triangles || position == null || position.getNumComponents() != 3) {
+                return null;
+            }
+
+            List<VertexBuffer> buffers = new ArrayList<>();
+            for (VertexBuffer buffer : mesh.getBufferList()) {
+                if (buffer.getBufferType() == VertexBuffer.Type.Index || buffer.getBufferType() == VertexBuffer.Type.Position) {
+                    continue;
+                }
+                if (buffer.getFormat() != VertexBuffer.Format.Float || buffer.isInstanced()) {
+                    return null;
+                }
+                buffers.add(buffer);
+            }
+            buffers.sort(Comparator.comparing(VertexBuffer::getBufferType));
+            buffers.add(0, position);
+
+            VertexBuffer.Type[] types = new VertexBuffer.Type[buffers.size()];
+            int[] components = new int[buffers.size()];
+            for (int i = 0; i < buffers.size(); i++) {
+                types[i] = buffers.get(i).getBufferType();
+                components[i] = buffers.get(i).getNumComponents();
+            }
+
+            return new Layout(types, components);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Layout)) {
+                return false;
+            }
+            Layout layout = (Layout) o;
+            return Arrays.equals(types, layout.types) && Arrays.equals(components, layout.components);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(types) + Arrays.hashCode(components);
+        }
+
+    }
+
+    /**
+     * Geometries with the same key are merged. Materials are compared by identity, the blocks of a type share the
+     * material instance.
+     */
+    private static class GroupKey {
+
+        private final Material material;
+        private final RenderQueue.Bucket bucket;
+        private final RenderQueue.ShadowMode shadowMode;
+        private final Layout layout;
+
+        GroupKey(Material material, RenderQueue.Bucket bucket, RenderQueue.ShadowMode shadowMode, Layout layout) {
+            this.material = material;
+            this.bucket = bucket;
+            this.shadowMode = shadowMode;
+            this.layout = layout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey key = (GroupKey) o;
+            return material == key.material && bucket == key.bucket && shadowMode == key.shadowMode && layout.equals(key.layout);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(material), bucket, shadowMode, layout);
+        }
+
+    }
+
+    /**
+     * An axis aligned quad. The corners are in counter clockwise order when looking at the quad from the positive side
+     * of the normal axis: (uMin, vMin), (uMax, vMin), (uMax, vMax), (uMin, vMax). Each corner holds all vertex attributes.
+     */
+    private static class Quad {
+
+        private float uMin;
+        private float uMax;
+        private float vMin;
+        private float vMax;
+        private final float[][] corners;
+
+        Quad(float uMin, float uMax, float vMin, float vMax, float[][] corners) {
+            this.uMin = uMin;
+            this.uMax = uMax;
+            this.vMin = vMin;
+            this.vMax = vMax;
+            this.corners = corners;
+        }
+
+    }
+
+    /**
+     * Collects the quads and triangles of the geometries with the same {@link GroupKey}.
+     */
+    private static class MaterialGroup {
+
+        private final GroupKey key;
+        private final int stride;
+        // the quads by plane: the normal axis, the facing direction and the position on the normal axis
+        private final Map<Long, List<Quad>> planes = new LinkedHashMap<>();
+        private final List<float[]> triangles = new ArrayList<>();
+        // the attributes that are texture coordinates of a texture that can be tiled
+        private final boolean[] tileable;
+        // true when a texture is tiled over a merged quad
+        private boolean tiled;
+
+        MaterialGroup(GroupKey key) {
+            this.key = key;
+            this.stride = key.layout.stride;
+            this.tileable = new boolean[stride];
+            if (key.material != null && ModelExporter.getTexture(key.material) != null) {
+                int offset = 0;
+                for (int a = 0; a < key.layout.types.length; a++) {
+                    if (key.layout.types[a] == VertexBuffer.Type.TexCoord) {
+                        Arrays.fill(tileable, offset, offset + key.layout.components[a], true);
+                    }
+                    offset += key.layout.components[a];
+                }
+            }
+        }
+
+        void add(Geometry geometry) {
+            Mesh mesh = geometry.getMesh();
+            float[][] vertices = readVertices(mesh, geometry.getWorldMatrix());
+            IndexBuffer indexBuffer = mesh.getIndexBuffer();
+            int indexCount = indexBuffer != null ? indexBuffer.size() : mesh.getVertexCount();
+            int[] indices = new int[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                indices[i] = indexBuffer != null ? indexBuffer.get(i) : i;
+            }
+
+            // the faces of blocks are quads made of 2 triangles
+            int i = 0;
+            for (; i + 6 <= indexCount; i += 6) {
+                if (!addQuad(vertices, indices, i)) {
+                    for (int j = i; j < i + 6; j++) {
+                        triangles.add(vertices[indices[j]]);
+                    }
+                }
+            }
+            for (; i < indexCount; i++) {
+                triangles.add(vertices[indices[i]]);
+            }
+        }
+
+        Geometry createGeometry(String name) {
+            MeshBuilder builder = new MeshBuilder(stride);
+            for (Map.Entry<Long, List<Quad>> plane : planes.entrySet()) {
+                int axis = (int) (plane.getKey() & 3);
+                boolean positive = (plane.getKey() & 4) != 0;
+                for (Quad quad : mergeQuads(plane.getValue(), axis)) {
+                    float[][] c = quad.corners;
+                    if (positive) {
+                        builder.addTriangle(c[0], c[1], c[2]);
+                        builder.addTriangle(c[0], c[2], c[3]);
+                    } else {
+                        builder.addTriangle(c[0], c[2], c[1]);
+                        builder.addTriangle(c[0], c[3], c[2]);
+                    }
+                }
+            }
+            for (int i = 0; i + 2 < triangles.size(); i += 3) {
+                builder.addTriangle(triangles.get(i), triangles.get(i + 1), triangles.get(i + 2));
+            }
+
+            Geometry geometry = new Geometry(name, builder.build(key.layout));
+            geometry.setMaterial(tiled ? createTiledMaterial(key.material) : key.material);
+            geometry.setQueueBucket(key.bucket);
+            geometry.setShadowMode(key.shadowMode);
+
+            return geometry;
+        }
+
+        /**
+         * Returns a copy of the material with copies of the textures that repeat, the material of the scene isn't
+         * changed.
+         */
+        private static Material createTiledMaterial(Material material) {
+            Material tiledMaterial = material.clone();
+            for (String name : TEXTURES) {
+                MatParamTexture param = material.getTextureParam(name);
+                if (param != null && param.getTextureValue() != null) {
+                    Texture texture = param.getTextureValue().clone();
+                    texture.setWrap(Texture.WrapMode.Repeat);
+                    tiledMaterial.setTexture(name, texture);
+                }
+            }
+
+            return tiledMaterial;
+        }
+
+        /**
+         * Reads the vertex attributes of the mesh and transforms the positions, normals and tangents to world space.
+         */
+        private float[][] readVertices(Mesh mesh, Matrix4f worldMatrix) {
+            Matrix3f normalMatrix = worldMatrix.toRotationMatrix().invertLocal().transposeLocal();
+            Vector3f tmp = new Vector3f();
+            float[][] vertices = new float[mesh.getVertexCount()][stride];
+            int offset = 0;
+            for (int a = 0; a < key.layout.types.length; a++) {
+                VertexBuffer.Type type = key.layout.types[a];
+                int components = key.layout.components[a];
+                FloatBuffer data = (FloatBuffer) mesh.getBuffer(type).getDataReadOnly();
+                for (int v = 0; v < vertices.length; v++) {
+                    float[] vertex = vertices[v];
+                    for (int c = 0; c < components; c++) {
+                        vertex[offset + c] = data.get(v * components + c);
+                    }
+                    if (type == VertexBuffer.Type.Position) {
+                        tmp.set(vertex[offset], vertex[offset + 1], vertex[offset + 2]);
+                        worldMatrix.mult(tmp, tmp);
+                    } else if ((type == VertexBuffer.Type.Normal || type == VertexBuffer.Type.Tangent || type == VertexBuffer.Type.Binormal) && components >= 3) {
+                        tmp.set(vertex[offset], vertex[offset + 1], vertex[offset + 2]);
+                        normalMatrix.mult(tmp, tmp).normalizeLocal();
+                    } else {
+                        continue;
+                    }
+                    vertex[offset] = tmp.x;
+                    vertex[offset + 1] = tmp.y;
+                    vertex[offset + 2] = tmp.z;
+                }
+                offset += components;
+            }
+
+            return vertices;
+        }
+
+        /**
+         * Adds the 2 triangles starting at the index as a quad, when they form an axis aligned rectangle with
+         * attributes that change linearly over the rectangle.
+         *
+         * @return false when the triangles are not a quad
+         */
+        private boolean addQuad(float[][] vertices, int[] indices, int start) {
+            int[] distinct = new int[4];
+            int count = 0;
+            for (int i = start; i < start + 6; i++) {
+                int index = indices[i];
+                boolean found = false;
+                for (int j = 0; j < count; j++) {
+                    found |= distinct[j] == index;
+                }
+                if (!found) {
+                    if (count == 4) {
+                        return false;
+                    }
+                    distinct[count++] = index;
+                }
+            }
+            if (count != 4) {
+                return false;
+            }
+
+            int axis = getNormalAxis(vertices, distinct);
+            if (axis < 0) {
+                return false;
+            }
+            int uAxis = (axis + 1) % 3;
+            int vAxis = (axis + 2) % 3;
+            float uMin = Float.MAX_VALUE, uMax = -Float.MAX_VALUE, vMin = Float.MAX_VALUE, vMax = -Float.MAX_VALUE;
+            for (int index : distinct) {
+                uMin = Math.min(uMin, vertices[index][uAxis]);
+                uMax = Math.max(uMax, vertices[index][uAxis]);
+                vMin = Math.min(vMin, vertices[index][vAxis]);
+                vMax = Math.max(vMax, vertices[index][vAxis]);
+            }
+
+            float[][] corners = new float[4][];
+            for (int index : distinct) {
+                float[] vertex = vertices[index];
+                boolean atUMax = equal(vertex[uAxis], uMax, POSITION_EPSILON);
+                boolean atVMax = equal(vertex[vAxis], vMax, POSITION_EPSILON);
+                if (!atUMax && !equal(vertex[uAxis], uMin, POSITION_EPSILON) || !atVMax && !equal(vertex[vAxis], vMin, POSITION_EPSILON)) {
+                    return false;
+                }
+                int corner = atVMax ? (atUMax ? 2 : 3) : (atUMax ? 1 : 0);
+                if (corners[corner] != null) {
+                    return false;
+                }
+                corners[corner] = vertex;
+            }
+
+            // the facing direction of both triangles should be the same
+            int facing1 = getFacing(vertices, indices, start, axis);
+            int facing2 = getFacing(vertices, indices, start + 3, axis);
+            if (facing1 == 0 || facing1 != facing2) {
+                return false;
+            }
+            // the attributes should be linear over the quad, so the diagonal that splits the quad doesn't matter
+            for (int i = 0; i < stride; i++) {
+                if (!equal(corners[0][i] + corners[2][i], corners[1][i] + corners[3][i], ATTRIBUTE_EPSILON * 2)) {
+                    return false;
+                }
+            }
+
+            long plane = ((long) Math.round(corners[0][axis] / POSITION_EPSILON) << 3) | (facing1 > 0 ? 4 : 0) | axis;
+            planes.computeIfAbsent(plane, k -> new ArrayList<>()).add(new Quad(uMin, uMax, vMin, vMax, corners));
+
+            return true;
+        }
+
+        private static int getNormalAxis(float[][] vertices, int[] distinct) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = vertices[distinct[0]][axis];
+                boolean flat = true;
+                for (int i = 1; i < distinct.length; i++) {
+                    flat &= equal(vertices[distinct[i]][axis], value, POSITION_EPSILON);
+                }
+                if (flat) {
+                    return axis;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the sign of the normal of the triangle on the normal axis.
+         */
+        private static int getFacing(float[][] vertices, int[] indices, int start, int axis) {
+            float[] a = vertices[indices[start]];
+            float[] b = vertices[indices[start + 1]];
+            float[] c = vertices[indices[start + 2]];
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            float cross = (b[u] - a[u]) * (c[v] - a[v]) - (b[v] - a[v]) * (c[u] - a[u]);
+
+            return (int) Math.signum(cross);
+        }
+
+        /**
+         * Merges the quads of a plane, first along the u axis and then along the v axis.
+         */
+        private List<Quad> mergeQuads(List<Quad> quads, int axis) {
+            quads.sort(Comparator.<Quad>comparingDouble(q -> q.vMin).thenComparingDouble(q -> q.vMax).thenComparingDouble(q -> q.uMin));
+            List<Quad> rows = new ArrayList<>();
+            Quad current = null;
+            float[] shift = new float[stride];
+            for (Quad quad : quads) {
+                if (current != null && canMerge(current, quad, 1, 0, 2, 3, current.uMax, quad.uMin, current.vMin, quad.vMin, current.vMax, quad.vMax, shift)) {
+                    current.corners[1] = shift(quad.corners[1], shift);
+                    current.corners[2] = shift(quad.corners[2], shift);
+                    current.uMax = quad.uMax;
+                } else {
+                    if (current != null) {
+                        rows.add(current);
+                    }
+                    current = quad;
+                }
+            }
+            if (current != null) {
+                rows.add(current);
+            }
+
+            rows.sort(Comparator.<Quad>comparingDouble(q -> q.uMin).thenComparingDouble(q -> q.uMax).thenComparingDouble(q -> q.vMin));
+            List<Quad> result = new ArrayList<>();
+            current = null;
+            for (Quad quad : rows) {
+                if (current != null && canMerge(current, quad, 3, 0, 2, 1, current.vMax, quad.vMin, current.uMin, quad.uMin, current.uMax, quad.uMax, shift)) {
+                    current.corners[3] = shift(quad.corners[3], shift);
+                    current.corners[2] = shift(quad.corners[2], shift);
+                    current.vMax = quad.vMax;
+                } else {
+                    if (current != null) {
+                        result.add(current);
+                    }
+                    current = quad;
+                }
+            }
+            if (current != null) {
+                result.add(current);
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns true when quad b can be appended to quad a. The shared edge of a is formed by the corners edge1 and
+         * edge2, of b by the corners start1 and start2, where edge1 and start1 are the far corners of the first corner
+         * of each quad. The value that should be added to the attributes of b is stored in the shift, it's a whole
+         * number for tiled texture coordinates and 0 for the other attributes.
+         */
+        private boolean canMerge(Quad a, Quad b, int edge1, int start1, int edge2, int start2, float aEnd, float bStart,
+                                 float aMin, float bMin, float aMax, float bMax, float[] shift) {
+            if (!equal(aEnd, bStart, POSITION_EPSILON) || !equal(aMin, bMin, POSITION_EPSILON) || !equal(aMax, bMax, POSITION_EPSILON)) {
+                return false;
+            }
+
+            float[][] ca = a.corners;
+            float[][] cb = b.corners;
+            float aLength = distance(ca[start1], ca[edge1]);
+            float bLength = distance(cb[start1], cb[edge1]);
+            for (int i = 0; i < stride; i++) {
+                // the shared edge has the same attributes, a tileable texture can restart at a whole number
+                shift[i] = tileable[i] ? Math.round(ca[edge1][i] - cb[start1][i]) : 0;
+                if (!equal(ca[edge1][i], cb[start1][i] + shift[i], ATTRIBUTE_EPSILON) || !equal(ca[edge2][i], cb[start2][i] + shift[i], ATTRIBUTE_EPSILON)) {
+                    return false;
+                }
+                // the attributes change at the same rate in both quads
+                float aRate = (ca[edge1][i] - ca[start1][i]) / aLength;
+                float bRate = (cb[edge1][i] - cb[start1][i]) / bLength;
+                if (!equal(aRate, bRate, ATTRIBUTE_EPSILON)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns a copy of the vertex with the shift added to the attributes, or the vertex when there is no shift.
+         * The vertices are shared by the quads and are never changed.
+         */
+        private float[] shift(float[] vertex, float[] shift) {
+            float[] shifted = null;
+            for (int i = 0; i < stride; i++) {
+                if (shift[i] != 0) {
+                    if (shifted == null) {
+                        shifted = Arrays.copyOf(vertex, stride);
+                        tiled = true;
+                    }
+                    shifted[i] += shift[i];
+                }
+            }
+
+            return shifted != null ? shifted : vertex;
+        }
+
+        private static float distance(float[] a, float[] b) {
+            float dx = a[0] - b[0];
+            float dy = a[1] - b[1];
+            float dz = a[2] - b[2];
+
+            return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+
+        private static boolean equal(float a, float b, float epsilon) {
+            return Math.abs(a - b) <= epsilon;
+        }
+
+    }
+
+    /**
+     * Builds a mesh of triangles and shares the vertices with the same attributes.
+     */
+    private static class MeshBuilder {
+
+        private final int stride;
+        private final Map<VertexKey, Integer> vertexIndexes = new HashMap<>();
+        private float[] vertices = new float[1024];
+        private int vertexCount;
+        private int[] indices = new int[1024];
+        private int indexCount;
+
+        MeshBuilder(int stride) {
+            this.stride = stride;
+        }
+
+        void addTriangle(float[] a, float[] b, float[] c) {
+            if (indexCount + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexCount++] = getIndex(a);
+            indices[indexCount++] = getIndex(b);
+            indices[indexCount++] = getIndex(c);
+        }
+
+        Mesh build(Layout layout) {
+            Mesh mesh = new Mesh();
+            int offset = 0;
+            for (int a = 0; a < layout.types.length; a++) {
+                int components = layout.components[a];
+                FloatBuffer buffer = BufferUtils.createFloatBuffer(vertexCount * components);
+                for (int v = 0; v < vertexCount; v++) {
+                    buffer.put(vertices, v * stride + offset, components);
+                }
+                buffer.flip();
+                mesh.setBuffer(layout.types[a], components, buffer);
+                offset += components;
+            }
+
+            if (vertexCount < MAX_SHORT_INDEX_VERTICES) {
+                short[] shortIndices = new short[indexCount];
+                for (int i = 0; i < indexCount; i++) {
+                    shortIndices[i] = (short) indices[i];
+                }
+                mesh.setBuffer(VertexBuffer.Type.Index, 3, shortIndices);
+            } else {
+                mesh.setBuffer(VertexBuffer.Type.Index, 3, Arrays.copyOf(indices, indexCount));
+            }
+            mesh.updateBound();
+            mesh.updateCounts();
+
+            return mesh;
+        }
+
+        private int getIndex(float[] vertex) {
+            return vertexIndexes.computeIfAbsent(new VertexKey(vertex), key -> {
+                if ((vertexCount + 1) * stride > vertices.length) {
+                    vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, (vertexCount + 1) * stride));
+                }
+                System.arraycopy(vertex, 0, vertices, vertexCount * stride, stride);
+                return vertexCount++;
+            });
+        }
+
+    }
+
+    private static class VertexKey {
+
+        private final float[] attributes;
+        private final int hash;
+
+        VertexKey(float[] attributes) {
+            this.attributes = attributes;
+            this.hash = Arrays.hashCode(attributes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VertexKey && Arrays.equals(attributes, ((VertexKey) o).attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
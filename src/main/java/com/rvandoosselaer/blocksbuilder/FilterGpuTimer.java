@@ -0,0 +1,135 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.post.FilterPostProcessor;
+import com.jme3.profile.AppProfiler;
+import com.jme3.profile.AppStep;
+import com.jme3.profile.SpStep;
+import com.jme3.profile.VpStep;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An AppProfiler that measures the GPU time of the filters of a FilterPostProcessor. The FilterPostProcessor reports
+ * a step when it starts rendering a filter, a GPU timer query is started at that step and stopped at the next step of
+ * another filter or at the end of the filter. The results are read when they are available, a few frames later, so
+ * the render thread doesn't wait for the GPU. The time of each filter is averaged over the last frames.
+ *
+ * @author: rvandoosselaer
+ */
+public class FilterGpuTimer implements AppProfiler {
+
+    private static final int MAX_QUERIES = 64;
+    private static final float SMOOTHING = 0.05f;
+
+    private final Renderer renderer;
+    private final Deque<Integer> freeQueries = new ArrayDeque<>();
+    private final Map<Integer, String> pendingQueries = new HashMap<>();
+    private final Map<String, Double> times = new HashMap<>();
+    private String runningFilter;
+    private boolean supported = true;
+
+    public FilterGpuTimer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Returns the average GPU time in milliseconds of the filter with the name, or -1 when it isn't measured.
+     */
+    public double getGpuTime(String filterName) {
+        return times.getOrDefault(filterName, -1d);
+    }
+
+    /**
+     * Discards the measured time of the filter.
+     */
+    public void reset(String filterName) {
+        times.remove(filterName);
+    }
+
+    @Override
+    public void appStep(AppStep step) {
+        stop();
+        if (step == AppStep.BeginFrame) {
+            collectResults();
+        }
+    }
+
+    @Override
+    public void appSubStep(String... additionalInfo) {
+    }
+
+    @Override
+    public void vpStep(VpStep step, ViewPort vp, RenderQueue.Bucket bucket) {
+        stop();
+    }
+
+    @Override
+    public void spStep(SpStep step, String... additionalInfo) {
+        if (step != SpStep.ProcPostFrame || additionalInfo.length < 2 || !FilterPostProcessor.FPP.equals(additionalInfo[0])) {
+            stop();
+            return;
+        }
+
+        String filter = additionalInfo[1];
+        if (additionalInfo.length > 2 && "postFilter".equals(additionalInfo[2])) {
+            // the filter is rendered
+            stop();
+        } else if (!filter.equals(runningFilter)) {
+            stop();
+            start(filter);
+        }
+    }
+
+    private void start(String filter) {
+        if (!supported) {
+            return;
+        }
+        if (freeQueries.isEmpty()) {
+            if (pendingQueries.size() >= MAX_QUERIES) {
+                return;
+            }
+            try {
+                for (int id : renderer.generateProfilingTasks(8)) {
+                    freeQueries.push(id);
+                }
+            } catch (UnsupportedOperationException e) {
+                // timer queries are not available on this renderer
+                supported = false;
+                return;
+            }
+        }
+
+        int id = freeQueries.pop();
+        renderer.startProfiling(id);
+        pendingQueries.put(id, filter);
+        runningFilter = filter;
+    }
+
+    private void stop() {
+        if (runningFilter != null) {
+            renderer.stopProfiling();
+            runningFilter = null;
+        }
+    }
+
+    private void collectResults() {
+        Iterator<Map.Entry<Integer, String>> iterator = pendingQueries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> query = iterator.next();
+            if (renderer.isTaskResultAvailable(query.getKey())) {
+                double time = renderer.getProfilingTime(query.getKey()) / 1_000_000d;
+                times.merge(query.getValue(), time, (average, value) -> average + (value - average) * SMOOTHING);
+                freeQueries.push(query.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+}
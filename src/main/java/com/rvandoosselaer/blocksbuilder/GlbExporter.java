@@ -0,0 +1,399 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.texture.Texture;
+import com.rvandoosselaer.blocks.Chunk;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Writes a scene as a binary glTF 2.0 (.glb) file. The meshes are created one chunk at a time and the vertex and index
+ * data is streamed to a temporary file, only the small JSON description is kept in memory. When all chunks are written,
+ * the glb file is assembled from the JSON and the binary data.
+ * Each geometry is written as a node with a mesh with one primitive. The transforms are applied on the vertices. The
+ * materials hold the name, the alpha mode and the base color texture. The png or jpeg image file of a texture is
+ * embedded in the binary chunk, the sampler uses the filters and wrap modes of the texture.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class GlbExporter {
+
+    public static final String EXTENSION = ".glb";
+
+    private static final int MAGIC = 0x46546C67; // glTF
+    private static final int VERSION = 2;
+    private static final int CHUNK_TYPE_JSON = 0x4E4F534A;
+    private static final int CHUNK_TYPE_BIN = 0x004E4942;
+    private static final int TARGET_ARRAY_BUFFER = 34962;
+    private static final int TARGET_ELEMENT_ARRAY_BUFFER = 34963;
+    private static final int COMPONENT_FLOAT = 5126;
+    private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    private static final int COMPONENT_UNSIGNED_INT = 5125;
+    private static final int MODE_TRIANGLES = 4;
+    private static final int FILTER_NEAREST = 9728;
+    private static final int FILTER_LINEAR = 9729;
+    private static final int FILTER_NEAREST_MIPMAP_NEAREST = 9984;
+    private static final int FILTER_LINEAR_MIPMAP_NEAREST = 9985;
+    private static final int FILTER_NEAREST_MIPMAP_LINEAR = 9986;
+    private static final int FILTER_LINEAR_MIPMAP_LINEAR = 9987;
+    private static final int WRAP_CLAMP_TO_EDGE = 33071;
+    private static final int WRAP_MIRRORED_REPEAT = 33648;
+    private static final int WRAP_REPEAT = 10497;
+
+    private final ChannelWriter bin;
+    private final StringBuilder nodes = new StringBuilder();
+    private final StringBuilder meshes = new StringBuilder();
+    private final StringBuilder accessors = new StringBuilder();
+    private final StringBuilder bufferViews = new StringBuilder();
+    private final Map<Material, Integer> materialIndexes = new IdentityHashMap<>();
+    private final List<Material> materials = new ArrayList<>();
+    private final List<Boolean> blendedMaterials = new ArrayList<>();
+    // the textures by asset path, a texture is written once when it's used by multiple materials
+    private final Map<String, Texture> textures = new LinkedHashMap<>();
+    private final StringBuilder images = new StringBuilder();
+    // reusable objects for reading the vertices
+    private final Vector3f tmpVector = new Vector3f();
+    private final Vector2f tmpTexCoord = new Vector2f();
+    private int nodeCount;
+    private int accessorCount;
+    private int bufferViewCount;
+    private long triangleCount;
+
+    private GlbExporter(ChannelWriter bin) {
+        this.bin = bin;
+    }
+
+    /**
+     * Writes the chunks to a glb file. The progress, a value between 0 and 1, is passed to the progress listener after
+     * each chunk.
+     *
+     * @return the number of written triangles, or -1 when cancelled
+     */
+    public static long write(Path path, Collection<Chunk> chunks, BooleanSupplier cancelled, DoubleConsumer progressListener) throws IOException {
+        Path binFile = path.resolveSibling(path.getFileName() + ".bin.tmp");
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel binChannel = FileChannel.open(binFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            GlbExporter exporter = new GlbExporter(new ChannelWriter(binChannel));
+            if (!ModelExporter.forEachGeometry(chunks, cancelled, progressListener, exporter::addGeometry)) {
+                return -1;
+            }
+            exporter.writeImages();
+            exporter.bin.flush();
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                exporter.writeGlb(channel, binChannel);
+                channel.force(true);
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return exporter.triangleCount;
+        } finally {
+            Files.deleteIfExists(binFile);
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void addGeometry(Geometry geometry) throws IOException {
+        ExportMesh mesh = ExportMesh.of(geometry);
+        if (mesh == null) {
+            log.debug("Skipping geometry {}, it isn't a triangle mesh.", geometry.getName());
+            return;
+        }
+
+        StringBuilder attributes = new StringBuilder();
+        attributes.append("\"POSITION\":").append(writePositions(mesh));
+        if (mesh.hasNormals()) {
+            attributes.append(",\"NORMAL\":").append(writeNormals(mesh));
+        }
+        if (mesh.hasTexCoords()) {
+            attributes.append(",\"TEXCOORD_0\":").append(writeTexCoords(mesh));
+        }
+        int indices = writeIndices(mesh);
+        int material = getMaterialIndex(geometry);
+
+        separate(meshes).append("{\"name\":").append(quote(geometry.getName()))
+                .append(",\"primitives\":[{\"attributes\":{").append(attributes).append("},\"indices\":").append(indices)
+                .append(",\"material\":").append(material).append(",\"mode\":").append(MODE_TRIANGLES).append("}]}");
+        separate(nodes).append("{\"name\":").append(quote(geometry.getName())).append(",\"mesh\":").append(nodeCount).append('}');
+        nodeCount++;
+        triangleCount += mesh.getTriangleCount();
+    }
+
+    private int writePositions(ExportMesh mesh) throws IOException {
+        long offset = bin.getPosition();
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            mesh.getPosition(i, tmpVector);
+            bin.putFloat(tmpVector.x).putFloat(tmpVector.y).putFloat(tmpVector.z);
+        }
+
+        return addFloatAccessor(offset, mesh.getVertexCount(), "VEC3", mesh.getMin(), mesh.getMax());
+    }
+
+    private int writeNormals(ExportMesh mesh) throws IOException {
+        long offset = bin.getPosition();
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            mesh.getNormal(i, tmpVector);
+            bin.putFloat(tmpVector.x).putFloat(tmpVector.y).putFloat(tmpVector.z);
+        }
+
+        return addFloatAccessor(offset, mesh.getVertexCount(), "VEC3", null, null);
+    }
+
+    private int writeTexCoords(ExportMesh mesh) throws IOException {
+        long offset = bin.getPosition();
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            mesh.getTexCoord(i, tmpTexCoord);
+            // the origin of the texture coordinates is the top left corner in glTF
+            bin.putFloat(tmpTexCoord.x).putFloat(1 - tmpTexCoord.y);
+        }
+
+        return addFloatAccessor(offset, mesh.getVertexCount(), "VEC2", null, null);
+    }
+
+    private int addFloatAccessor(long offset, int count, String type, Vector3f min, Vector3f max) throws IOException {
+        int bufferView = addBufferView(offset, bin.getPosition() - offset, TARGET_ARRAY_BUFFER);
+
+        separate(accessors).append("{\"bufferView\":").append(bufferView).append(",\"componentType\":").append(COMPONENT_FLOAT)
+                .append(",\"count\":").append(count).append(",\"type\":\"").append(type).append('"');
+        if (min != null) {
+            accessors.append(",\"min\":").append(toJson(min)).append(",\"max\":").append(toJson(max));
+        }
+        accessors.append('}');
+
+        return accessorCount++;
+    }
+
+    private int writeIndices(ExportMesh mesh) throws IOException {
+        long offset = bin.getPosition();
+        // the largest value of the component type is reserved, an unsigned short index can't be 65535
+        boolean shortIndices = mesh.getVertexCount() < 65536;
+        for (int i = 0; i < mesh.getIndexCount(); i++) {
+            if (shortIndices) {
+                bin.putShort((short) mesh.getIndex(i));
+            } else {
+                bin.putInt(mesh.getIndex(i));
+            }
+        }
+        long length = bin.getPosition() - offset;
+        int bufferView = addBufferView(offset, length, TARGET_ELEMENT_ARRAY_BUFFER);
+
+        separate(accessors).append("{\"bufferView\":").append(bufferView)
+                .append(",\"componentType\":").append(shortIndices ? COMPONENT_UNSIGNED_SHORT : COMPONENT_UNSIGNED_INT)
+                .append(",\"count\":").append(mesh.getIndexCount()).append(",\"type\":\"SCALAR\"}");
+
+        return accessorCount++;
+    }
+
+    /**
+     * Adds a buffer view of the data at the offset. The target is omitted when it's 0.
+     */
+    private int addBufferView(long offset, long length, int target) throws IOException {
+        // the data of each buffer view starts at a multiple of 4 bytes
+        bin.pad(4, (byte) 0);
+        separate(bufferViews).append("{\"buffer\":0,\"byteOffset\":").append(offset).append(",\"byteLength\":").append(length);
+        if (target != 0) {
+            bufferViews.append(",\"target\":").append(target);
+        }
+        bufferViews.append('}');
+
+        return bufferViewCount++;
+    }
+
+    /**
+     * Writes the image files of the textures to the binary chunk. A texture without a png or jpeg image file on the
+     * classpath is dropped, the materials that use it are written without a texture.
+     */
+    private void writeImages() throws IOException {
+        Iterator<Map.Entry<String, Texture>> iterator = textures.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Texture> entry = iterator.next();
+            String mimeType = ModelExporter.getMimeType(entry.getValue());
+            byte[] image = mimeType != null ? ModelExporter.readTextureFile(entry.getValue()) : null;
+            if (image == null) {
+                log.warn("Skipping texture {}, it has no png or jpeg image file.", entry.getKey());
+                iterator.remove();
+                continue;
+            }
+
+            long offset = bin.getPosition();
+            bin.put(image);
+            int bufferView = addBufferView(offset, image.length, 0);
+            separate(images).append("{\"bufferView\":").append(bufferView).append(",\"mimeType\":").append(quote(mimeType)).append('}');
+        }
+    }
+
+    private int getMaterialIndex(Geometry geometry) {
+        return materialIndexes.computeIfAbsent(geometry.getMaterial(), material -> {
+            materials.add(material);
+            blendedMaterials.add(geometry.getQueueBucket() == RenderQueue.Bucket.Transparent);
+            Texture texture = ModelExporter.getTexture(material);
+            if (texture != null) {
+                textures.putIfAbsent(texture.getKey().getName(), texture);
+            }
+            return materials.size() - 1;
+        });
+    }
+
+    private void writeGlb(FileChannel channel, FileChannel binChannel) throws IOException {
+        long binLength = binChannel.size();
+        byte[] json = createJson(binLength).getBytes(StandardCharsets.UTF_8);
+        int jsonLength = (json.length + 3) & ~3;
+        long length = 12 + 8 + jsonLength + (binLength > 0 ? 8 + binLength : 0);
+
+        ChannelWriter writer = new ChannelWriter(channel);
+        writer.putInt(MAGIC).putInt(VERSION).putInt((int) length);
+        writer.putInt(jsonLength).putInt(CHUNK_TYPE_JSON).put(json).pad(4, (byte) ' ');
+        if (binLength > 0) {
+            writer.putInt((int) binLength).putInt(CHUNK_TYPE_BIN);
+        }
+        writer.flush();
+
+        long transferred = 0;
+        while (transferred < binLength) {
+            transferred += binChannel.transferTo(transferred, binLength - transferred, channel);
+        }
+    }
+
+    private String createJson(long binLength) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"BlocksBuilder\"}");
+        json.append(",\"scene\":0,\"scenes\":[{\"nodes\":[");
+        for (int i = 0; i < nodeCount; i++) {
+            json.append(i > 0 ? "," : "").append(i);
+        }
+        json.append("]}]");
+        if (nodeCount > 0) {
+            json.append(",\"nodes\":[").append(nodes).append(']');
+            json.append(",\"meshes\":[").append(meshes).append(']');
+            json.append(",\"accessors\":[").append(accessors).append(']');
+            json.append(",\"bufferViews\":[").append(bufferViews).append(']');
+            json.append(",\"buffers\":[{\"byteLength\":").append(binLength).append("}]");
+            List<String> textureNames = new ArrayList<>(textures.keySet());
+            json.append(",\"materials\":[");
+            for (int i = 0; i < materials.size(); i++) {
+                Material material = materials.get(i);
+                json.append(i > 0 ? "," : "").append("{\"name\":").append(quote(ModelExporter.getMaterialName(material)));
+                json.append(",\"pbrMetallicRoughness\":{");
+                int texture = textureNames.indexOf(ModelExporter.getTextureName(material));
+                if (texture >= 0) {
+                    json.append("\"baseColorTexture\":{\"index\":").append(texture).append("},");
+                }
+                json.append("\"metallicFactor\":0,\"roughnessFactor\":1}");
+                if (blendedMaterials.get(i)) {
+                    json.append(",\"alphaMode\":\"BLEND\"");
+                }
+                if (material.getAdditionalRenderState().getFaceCullMode() == RenderState.FaceCullMode.Off) {
+                    json.append(",\"doubleSided\":true");
+                }
+                json.append('}');
+            }
+            json.append(']');
+            if (!textures.isEmpty()) {
+                appendTextures(json);
+            }
+        }
+        json.append('}');
+
+        return json.toString();
+    }
+
+    /**
+     * Appends the images, a sampler and a texture for each texture. The texture with index i uses image i and sampler i.
+     */
+    private void appendTextures(StringBuilder json) {
+        StringBuilder samplers = new StringBuilder();
+        StringBuilder gltfTextures = new StringBuilder();
+        int index = 0;
+        for (Texture texture : textures.values()) {
+            separate(samplers).append("{\"magFilter\":").append(toGltf(texture.getMagFilter()))
+                    .append(",\"minFilter\":").append(toGltf(texture.getMinFilter()))
+                    .append(",\"wrapS\":").append(toGltf(texture.getWrap(Texture.WrapAxis.S)))
+                    .append(",\"wrapT\":").append(toGltf(texture.getWrap(Texture.WrapAxis.T))).append('}');
+            separate(gltfTextures).append("{\"sampler\":").append(index).append(",\"source\":").append(index).append('}');
+            index++;
+        }
+        json.append(",\"images\":[").append(images).append(']');
+        json.append(",\"samplers\":[").append(samplers).append(']');
+        json.append(",\"textures\":[").append(gltfTextures).append(']');
+    }
+
+    private static int toGltf(Texture.MagFilter filter) {
+        return filter == Texture.MagFilter.Nearest ? FILTER_NEAREST : FILTER_LINEAR;
+    }
+
+    private static int toGltf(Texture.MinFilter filter) {
+        switch (filter) {
+            case NearestNoMipMaps:
+                return FILTER_NEAREST;
+            case BilinearNoMipMaps:
+                return FILTER_LINEAR;
+            case NearestNearestMipMap:
+                return FILTER_NEAREST_MIPMAP_NEAREST;
+            case BilinearNearestMipMap:
+                return FILTER_LINEAR_MIPMAP_NEAREST;
+            case NearestLinearMipMap:
+                return FILTER_NEAREST_MIPMAP_LINEAR;
+            default:
+                return FILTER_LINEAR_MIPMAP_LINEAR;
+        }
+    }
+
+    private static int toGltf(Texture.WrapMode wrapMode) {
+        switch (wrapMode) {
+            case Repeat:
+                return WRAP_REPEAT;
+            case MirroredRepeat:
+                return WRAP_MIRRORED_REPEAT;
+            default:
+                return WRAP_CLAMP_TO_EDGE;
+        }
+    }
+
+    private static StringBuilder separate(StringBuilder builder) {
+        return builder.length() > 0 ? builder.append(',') : builder;
+    }
+
+    private static String toJson(Vector3f vector) {
+        return "[" + vector.x + "," + vector.y + "," + vector.z + "]";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+}
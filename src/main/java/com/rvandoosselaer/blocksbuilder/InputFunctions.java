@@ -29,11 +29,15 @@ public class InputFunctions {
     public static final FunctionId F_STRAFE = new FunctionId(CAMERA_INPUT_GROUP, "strafe");
     public static final FunctionId F_BOUNCE = new FunctionId(CAMERA_INPUT_GROUP, "bounce");
     public static final FunctionId F_CENTER = new FunctionId(CAMERA_INPUT_GROUP, "center");
+    // the control key, the camera ignores the bounce keys while it's held so ctrl + z doesn't move the camera
+    public static final FunctionId F_CONTROL = new FunctionId(CAMERA_INPUT_GROUP, "control");
 
     // builder input
     public static final FunctionId F_PLACE_BLOCK = new FunctionId(BUILDER_INPUT_GROUP, "place-block");
     public static final FunctionId F_REMOVE_BLOCK = new FunctionId(BUILDER_INPUT_GROUP, "remove-block");
     public static final FunctionId F_ROTATE_BLOCK = new FunctionId(BUILDER_INPUT_GROUP, "rotate-block");
+    public static final FunctionId F_UNDO = new FunctionId(BUILDER_INPUT_GROUP, "undo");
+    public static final FunctionId F_REDO = new FunctionId(BUILDER_INPUT_GROUP, "redo");
 
     public static void initializeDefaultMappings(InputMapper inputMapper) {
         // pitch movement (nose up / down) is done with the mouse Y-axis
@@ -56,10 +60,16 @@ public class InputFunctions {
         inputMapper.map(F_BOUNCE, KeyInput.KEY_Q);
         inputMapper.map(F_BOUNCE, InputState.Negative, KeyInput.KEY_Z);
         inputMapper.map(F_CENTER, KeyInput.KEY_HOME);
+        inputMapper.map(F_CONTROL, KeyInput.KEY_LCONTROL);
+        inputMapper.map(F_CONTROL, KeyInput.KEY_RCONTROL);
 
         inputMapper.map(F_PLACE_BLOCK, Button.MOUSE_BUTTON1);
         inputMapper.map(F_REMOVE_BLOCK, Button.MOUSE_BUTTON2);
         inputMapper.map(F_ROTATE_BLOCK, KeyInput.KEY_SPACE);
+        inputMapper.map(F_UNDO, KeyInput.KEY_Z, KeyInput.KEY_LCONTROL);
+        inputMapper.map(F_UNDO, KeyInput.KEY_Z, KeyInput.KEY_RCONTROL);
+        inputMapper.map(F_REDO, KeyInput.KEY_Y, KeyInput.KEY_LCONTROL);
+        inputMapper.map(F_REDO, KeyInput.KEY_Y, KeyInput.KEY_RCONTROL);
 
         log.trace("Initialized input mappings.");
     }
@@ -73,10 +83,13 @@ public class InputFunctions {
         inputMapper.getMappings(F_STRAFE).forEach(inputMapper::removeMapping);
         inputMapper.getMappings(F_BOUNCE).forEach(inputMapper::removeMapping);
         inputMapper.getMappings(F_CENTER).forEach(inputMapper::removeMapping);
+        inputMapper.getMappings(F_CONTROL).forEach(inputMapper::removeMapping);
 
         inputMapper.getMappings(F_PLACE_BLOCK).forEach(inputMapper::removeMapping);
         inputMapper.getMappings(F_REMOVE_BLOCK).forEach(inputMapper::removeMapping);
         inputMapper.getMappings(F_ROTATE_BLOCK).forEach(inputMapper::removeMapping);
+        inputMapper.getMappings(F_UNDO).forEach(inputMapper::removeMapping);
+        inputMapper.getMappings(F_REDO).forEach(inputMapper::removeMapping);
 
         log.trace("Removed input mappings.");
     }
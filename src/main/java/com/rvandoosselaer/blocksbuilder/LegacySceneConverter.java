@@ -0,0 +1,76 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Converts scenes saved with the {@link FileRepository} to the {@link SceneFile} format. A legacy scene is stored as
+ * [name].block holding the chunk at the origin and a [name].chunks directory holding the other chunks. The legacy files
+ * are kept after the conversion.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class LegacySceneConverter {
+
+    /**
+     * Returns true when a legacy scene with the name exists in the directory.
+     */
+    public static boolean exists(Path directory, String name) {
+        return Files.isRegularFile(directory.resolve(name + FileRepository.EXTENSION));
+    }
+
+    /**
+     * Loads the chunks of the legacy scene. Returns an empty list when the scene doesn't exist.
+     */
+    public static List<Chunk> load(Path directory, String name) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        Chunk originChunk = new FileRepository(directory).load(name + FileRepository.EXTENSION);
+        if (originChunk == null) {
+            return chunks;
+        }
+        chunks.add(originChunk);
+
+        Path chunksDirectory = directory.resolve(name + ".chunks");
+        if (Files.isDirectory(chunksDirectory)) {
+            FileRepository chunksRepository = new FileRepository(chunksDirectory);
+            try (Stream<Path> files = Files.list(chunksDirectory)) {
+                files.map(path -> path.getFileName().toString())
+                        .filter(filename -> filename.endsWith(FileRepository.EXTENSION))
+                        .map(chunksRepository::load)
+                        .filter(Objects::nonNull)
+                        .forEach(chunks::add);
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Converts the legacy scene to a scene file in the same directory.
+     *
+     * @return the path of the scene file or null when the legacy scene doesn't exist
+     */
+    public static Path convert(Path directory, String name) throws IOException {
+        List<Chunk> chunks = load(directory, name);
+        if (chunks.isEmpty()) {
+            return null;
+        }
+
+        Path sceneFile = directory.resolve(name + SceneFile.EXTENSION);
+        SceneFile.write(sceneFile, chunks);
+        log.info("Converted legacy scene {} ({} chunks) to {}.", name, chunks.size(), sceneFile);
+
+        return sceneFile;
+    }
+
+}
@@ -7,8 +7,6 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Limits;
 import com.jme3.system.AppSettings;
 import com.rvandoosselaer.blocks.BlocksConfig;
-import com.rvandoosselaer.blocks.ChunkManager;
-import com.rvandoosselaer.blocks.ChunkManagerState;
 import com.rvandoosselaer.blocksbuilder.gui.BlocksState;
 import com.rvandoosselaer.blocksbuilder.gui.CameraPivotPointState;
 import com.rvandoosselaer.blocksbuilder.gui.CoordinateAxesState;
@@ -48,14 +46,16 @@ public class Main extends SimpleApplication {
                 new LightingState(),
                 new PostProcessingState(),
                 new OptionPanelState(),
-                new ChunkManagerState(new ChunkManager(1)),
+                new ChunkMeshState(ApplicationProperties.getInt("meshWorkers", 0), ApplicationProperties.getInt("meshSectionSize", 16)),
                 new CameraState(),
                 new ViewPortState("camera-pivot-point"),
                 new ViewPortState("coordinate-axes"),
                 new CameraPivotPointState(),
                 new CoordinateAxesState(),
                 new SkyState(new ColorRGBA(0.34901962f, 0.5019608f, 0.28235295f, 1.0f), true),
-                new BuilderState()
+                new BuilderState(),
+                new RenderOnDemandState(),
+                new QualityGovernorState()
         );
 
         setSettings(createSettings());
@@ -0,0 +1,20 @@
+package com.rvandoosselaer.blocksbuilder;
+
+/**
+ * The priority of a chunk mesh request. The priorities are declared from the highest to the lowest priority: requests
+ * with a priority that is declared first are generated first. Keep this order when adding a priority.
+ *
+ * @author: rvandoosselaer
+ */
+public enum MeshPriority {
+
+    /**
+     * the chunk is edited by the user
+     */
+    EDIT,
+    /**
+     * the chunk is loaded or comes back into view
+     */
+    LOAD
+
+}
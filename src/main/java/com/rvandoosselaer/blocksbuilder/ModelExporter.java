@@ -0,0 +1,203 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.Texture;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Creates and writes the j3o model of a scene. The model is centered on the origin chunk like the scene in the editor.
+ * The geometries of a scene can also be visited one chunk at a time, for the exporters that stream the meshes to a file.
+ * The methods don't use the render thread and can be called from any thread.
+ *
+ * @author: rvandoosselaer
+ */
+public class ModelExporter {
+
+    public static final String EXTENSION = ".j3o";
+
+    /**
+     * Creates the meshes of the chunks and optimizes them with the {@link ExportOptimizer}. The progress, a value between
+     * 0 and 1, is passed to the progress listener after the mesh of each chunk is created.
+     *
+     * @return the optimized model or null when cancelled
+     */
+    public static ExportOptimizer.Result createModel(String name, Collection<Chunk> chunks, BooleanSupplier cancelled, DoubleConsumer progressListener) {
+        Node node = new Node(name);
+        int created = 0;
+        for (Chunk chunk : chunks) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            node.attachChild(BlocksConfig.getInstance().getChunkMeshGenerator().createNode(chunk));
+            progressListener.accept(++created / (double) chunks.size());
+        }
+        Vector3f chunkSize = BlocksConfig.getInstance().getChunkSize().toVector3f();
+        node.setLocalTranslation(chunkSize.x * -0.5f, 0, chunkSize.z * -0.5f);
+        node.updateGeometricState();
+
+        return cancelled.getAsBoolean() ? null : ExportOptimizer.optimize(node);
+    }
+
+    /**
+     * Creates the meshes of the chunks one at a time and passes the geometries to the consumer. The world transforms of
+     * the geometries are up to date, only the meshes of the current chunk are kept in memory. The progress, a value
+     * between 0 and 1, is passed to the progress listener after the geometries of each chunk are visited.
+     *
+     * @return false when cancelled
+     */
+    public static boolean forEachGeometry(Collection<Chunk> chunks, BooleanSupplier cancelled, DoubleConsumer progressListener, GeometryConsumer consumer) throws IOException {
+        Node root = new Node();
+        Vector3f chunkSize = BlocksConfig.getInstance().getChunkSize().toVector3f();
+        root.setLocalTranslation(chunkSize.x * -0.5f, 0, chunkSize.z * -0.5f);
+        int visited = 0;
+        for (Chunk chunk : chunks) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            Node chunkNode = BlocksConfig.getInstance().getChunkMeshGenerator().createNode(chunk);
+            root.attachChild(chunkNode);
+            root.updateGeometricState();
+            for (Geometry geometry : getGeometries(chunkNode)) {
+                consumer.accept(geometry);
+            }
+            root.detachChild(chunkNode);
+            progressListener.accept(++visited / (double) chunks.size());
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the name of the material, the name of the material file or the name of the material definition.
+     */
+    public static String getMaterialName(Material material) {
+        if (material.getName() != null) {
+            return material.getName();
+        }
+        if (material.getAssetName() != null) {
+            return material.getAssetName();
+        }
+        return material.getMaterialDef() != null ? material.getMaterialDef().getName() : "material";
+    }
+
+    /**
+     * Returns the asset path of the diffuse or base color texture of the material, or null when the material has no
+     * texture loaded from a file.
+     */
+    public static String getTextureName(Material material) {
+        Texture texture = getTexture(material);
+        return texture != null ? texture.getKey().getName() : null;
+    }
+
+    /**
+     * Returns the diffuse or base color texture of the material, or null when the material has no texture loaded from
+     * a file.
+     */
+    public static Texture getTexture(Material material) {
+        for (String name : new String[]{"DiffuseMap", "BaseColorMap", "ColorMap"}) {
+            MatParamTexture param = material.getTextureParam(name);
+            if (param != null && param.getTextureValue() != null && param.getTextureValue().getKey() != null) {
+                return param.getTextureValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the content of the image file of the texture, or null when the file isn't found on the classpath.
+     */
+    public static byte[] readTextureFile(Texture texture) throws IOException {
+        String name = texture.getKey().getName();
+        try (InputStream in = ModelExporter.class.getClassLoader().getResourceAsStream(name.startsWith("/") ? name.substring(1) : name)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Returns the mime type of the image file of the texture, or null when it's not a png or jpeg image.
+     */
+    public static String getMimeType(Texture texture) {
+        String name = texture.getKey().getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".png")) {
+            return "image/png";
+        }
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        return null;
+    }
+
+    private static List<Geometry> getGeometries(Node node) {
+        List<Geometry> geometries = new ArrayList<>();
+        node.depthFirstTraversal(spatial -> {
+            if (spatial instanceof Geometry) {
+                geometries.add((Geometry) spatial);
+            }
+        });
+
+        return geometries;
+    }
+
+    /**
+     * Writes the model to a temporary file that replaces the file when the export isn't cancelled, so a failed or
+     * cancelled export doesn't leave a partial model behind.
+     *
+     * @return false when cancelled
+     */
+    public static boolean write(Path path, Spatial model, BooleanSupplier cancelled) throws IOException {
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                BinaryExporter.getInstance().save(model, out);
+            }
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return true;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @FunctionalInterface
+    public interface GeometryConsumer {
+
+        void accept(Geometry geometry) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.texture.Texture;
+import com.rvandoosselaer.blocks.Chunk;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Writes a scene as a Wavefront OBJ file with a material library (.mtl) next to it. The meshes are created one chunk at
+ * a time and streamed to the file, so only the meshes of one chunk are kept in memory.
+ * Each geometry is written as an object. The transforms are applied on the vertices. The materials only hold the name
+ * and the texture, the image files of the textures are copied next to the material library.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class ObjExporter {
+
+    public static final String EXTENSION = ".obj";
+    public static final String MATERIAL_LIBRARY_EXTENSION = ".mtl";
+
+    private final ChannelWriter writer;
+    private final Map<Material, String> materialNames = new IdentityHashMap<>();
+    private final List<Material> materials = new ArrayList<>();
+    // the file names of the copied textures by asset path, null when the texture has no image file
+    private final Map<String, String> textureFiles = new HashMap<>();
+    // the number of written positions, texture coordinates and normals, the indexes in a face are 1-based
+    private int positionCount;
+    private int texCoordCount;
+    private int normalCount;
+    private long triangleCount;
+    // reusable objects for reading the vertices
+    private final Vector3f tmpVector = new Vector3f();
+    private final Vector2f tmpTexCoord = new Vector2f();
+
+    private ObjExporter(ChannelWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the chunks to an obj file and a material library. The progress, a value between 0 and 1, is passed to the
+     * progress listener after each chunk.
+     *
+     * @return the number of written triangles, or -1 when cancelled
+     */
+    public static long write(Path path, Collection<Chunk> chunks, BooleanSupplier cancelled, DoubleConsumer progressListener) throws IOException {
+        String filename = path.getFileName().toString();
+        String baseName = filename.endsWith(EXTENSION) ? filename.substring(0, filename.length() - EXTENSION.length()) : filename;
+        Path materialLibrary = path.resolveSibling(baseName + MATERIAL_LIBRARY_EXTENSION);
+        Path tempFile = path.resolveSibling(filename + ".tmp");
+        Path tempMaterialLibrary = materialLibrary.resolveSibling(materialLibrary.getFileName() + ".tmp");
+        try {
+            ObjExporter exporter;
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                exporter = new ObjExporter(new ChannelWriter(channel));
+                exporter.writer.write("# BlocksBuilder\nmtllib ").write(materialLibrary.getFileName().toString()).write("\n");
+                if (!ModelExporter.forEachGeometry(chunks, cancelled, progressListener, exporter::addGeometry)) {
+                    return -1;
+                }
+                exporter.writer.flush();
+                channel.force(true);
+            }
+            exporter.writeTextures(materialLibrary);
+            try (FileChannel channel = FileChannel.open(tempMaterialLibrary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                exporter.writeMaterialLibrary(new ChannelWriter(channel, 4096));
+            }
+            Files.move(tempMaterialLibrary, materialLibrary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return exporter.triangleCount;
+        } finally {
+            Files.deleteIfExists(tempFile);
+            Files.deleteIfExists(tempMaterialLibrary);
+        }
+    }
+
+    private void addGeometry(Geometry geometry) throws IOException {
+        ExportMesh mesh = ExportMesh.of(geometry);
+        if (mesh == null) {
+            log.debug("Skipping geometry {}, it isn't a triangle mesh.", geometry.getName());
+            return;
+        }
+
+        writer.write("o ").write(toName(geometry.getName())).write("\nusemtl ").write(getMaterialName(geometry.getMaterial())).write("\n");
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            writeVector("v ", mesh.getPosition(i, tmpVector));
+        }
+        if (mesh.hasTexCoords()) {
+            for (int i = 0; i < mesh.getVertexCount(); i++) {
+                mesh.getTexCoord(i, tmpTexCoord);
+                writer.write("vt ").write(Float.toString(tmpTexCoord.x)).write(" ").write(Float.toString(tmpTexCoord.y)).write("\n");
+            }
+        }
+        if (mesh.hasNormals()) {
+            for (int i = 0; i < mesh.getVertexCount(); i++) {
+                writeVector("vn ", mesh.getNormal(i, tmpVector));
+            }
+        }
+
+        for (int i = 0; i + 2 < mesh.getIndexCount(); i += 3) {
+            writer.write("f");
+            for (int j = i; j < i + 3; j++) {
+                int index = mesh.getIndex(j);
+                writer.write(" ").write(Integer.toString(positionCount + index + 1));
+                if (mesh.hasTexCoords() || mesh.hasNormals()) {
+                    writer.write("/");
+                }
+                if (mesh.hasTexCoords()) {
+                    writer.write(Integer.toString(texCoordCount + index + 1));
+                }
+                if (mesh.hasNormals()) {
+                    writer.write("/").write(Integer.toString(normalCount + index + 1));
+                }
+            }
+            writer.write("\n");
+        }
+
+        positionCount += mesh.getVertexCount();
+        texCoordCount += mesh.hasTexCoords() ? mesh.getVertexCount() : 0;
+        normalCount += mesh.hasNormals() ? mesh.getVertexCount() : 0;
+        triangleCount += mesh.getTriangleCount();
+    }
+
+    private void writeVector(String prefix, Vector3f vector) throws IOException {
+        writer.write(prefix).write(Float.toString(vector.x)).write(" ").write(Float.toString(vector.y)).write(" ").write(Float.toString(vector.z)).write("\n");
+    }
+
+    private String getMaterialName(Material material) {
+        return materialNames.computeIfAbsent(material, m -> {
+            materials.add(m);
+            return toName(ModelExporter.getMaterialName(m)) + "_" + materials.size();
+        });
+    }
+
+    /**
+     * Copies the image files of the textures next to the material library. A file is named after the image file of the
+     * texture, prefixed with a number when another texture has the same file name.
+     */
+    private void writeTextures(Path materialLibrary) throws IOException {
+        for (Material material : materials) {
+            Texture texture = ModelExporter.getTexture(material);
+            if (texture == null || textureFiles.containsKey(texture.getKey().getName())) {
+                continue;
+            }
+
+            String name = texture.getKey().getName();
+            byte[] image = ModelExporter.readTextureFile(texture);
+            if (image == null) {
+                log.warn("Skipping texture {}, the image file isn't found.", name);
+                textureFiles.put(name, null);
+                continue;
+            }
+            String filename = toName(name.substring(name.lastIndexOf('/') + 1));
+            if (textureFiles.containsValue(filename)) {
+                filename = textureFiles.size() + "_" + filename;
+            }
+            Files.write(materialLibrary.resolveSibling(filename), image);
+            textureFiles.put(name, filename);
+        }
+    }
+
+    private void writeMaterialLibrary(ChannelWriter materialWriter) throws IOException {
+        materialWriter.write("# BlocksBuilder\n");
+        for (Material material : materials) {
+            materialWriter.write("newmtl ").write(materialNames.get(material)).write("\nKd 1 1 1\n");
+            String texture = textureFiles.get(ModelExporter.getTextureName(material));
+            if (texture != null) {
+                materialWriter.write("map_Kd ").write(texture).write("\n");
+            }
+        }
+        materialWriter.flush();
+    }
+
+    /**
+     * Returns a name without whitespace, names can't contain spaces in obj files.
+     */
+    private static String toName(String name) {
+        return name == null ? "unnamed" : name.replaceAll("\\s+", "_");
+    }
+
+}
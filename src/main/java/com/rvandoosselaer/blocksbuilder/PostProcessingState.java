@@ -3,19 +3,26 @@ package com.rvandoosselaer.blocksbuilder;
 import com.jme3.app.Application;
 import com.jme3.app.state.BaseAppState;
 import com.jme3.light.DirectionalLight;
+import com.jme3.post.Filter;
 import com.jme3.post.filters.FXAAFilter;
 import com.jme3.post.ssao.SSAOFilter;
-import com.jme3.shadow.DirectionalLightShadowFilter;
 import com.jme3.shadow.EdgeFilteringMode;
 import com.rvandoosselaer.jmeutils.post.FilterPostProcessorState;
 import com.simsilica.fx.LightingState;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
 
 /**
  * An AppState that handles all post processing effects.
+ * The ambient occlusion is rendered with jME's SSAOFilter at full resolution, or with a {@link ScaledSSAOFilter} at a
+ * lower resolution. The resolution follows the quality tier, unless it's pinned. The GPU time of the filters is
+ * measured with a {@link FilterGpuTimer} when the application has no other profiler.
  *
  * @author: rvandoosselaer
  */
+@Slf4j
 public class PostProcessingState extends BaseAppState {
 
     private FilterPostProcessorState fpps;
@@ -23,33 +30,178 @@ public class PostProcessingState extends BaseAppState {
     @Getter
     private FXAAFilter fxaaFilter;
     @Getter
-    private SSAOFilter ssaoFilter;
+    private Filter ssaoFilter;
+    /**
+     * the resolution of the ambient occlusion that is used
+     */
+    @Getter
+    private SsaoResolution ssaoResolution;
+    /**
+     * the resolution that is always used, null when the resolution follows the quality tier
+     */
+    @Getter
+    private SsaoResolution pinnedSsaoResolution;
+    private SsaoResolution defaultSsaoResolution = SsaoResolution.FULL;
+    private float ssaoSampleRadius = 5f;
+    private FilterGpuTimer gpuTimer;
     @Getter
-    private DirectionalLightShadowFilter dlsf;
+    private CachedDirectionalLightShadowFilter dlsf;
+    private ChunkMeshState chunkMeshState;
+    private ChunkMeshListener chunkMeshListener;
+
+    public PostProcessingState() {
+        this(parseSsaoResolution(ApplicationProperties.getString("ssaoResolution", "auto")));
+    }
+
+    public PostProcessingState(SsaoResolution pinnedSsaoResolution) {
+        this.pinnedSsaoResolution = pinnedSsaoResolution;
+    }
 
     @Override
     protected void initialize(Application app) {
         fpps = getState(FilterPostProcessorState.class);
         directionalLight = getState(LightingState.class).getSun();
 
-        dlsf = createDirectionalLightFilter();
-        ssaoFilter = createSSAOFilter();
+        dlsf = createDirectionalLightFilter(4096, 4);
+        ssaoResolution = getEffectiveSsaoResolution();
+        ssaoFilter = createSSAOFilter(ssaoResolution);
         fxaaFilter = createFXAAFilter();
+
+        if (app.getAppProfiler() == null) {
+            gpuTimer = new FilterGpuTimer(app.getRenderer());
+            app.setAppProfiler(gpuTimer);
+        }
+
+        // render the shadow maps again when the blocks change
+        chunkMeshState = getState(ChunkMeshState.class);
+        chunkMeshListener = chunk -> invalidateShadows();
+        if (chunkMeshState != null) {
+            chunkMeshState.addListener(chunkMeshListener);
+        }
     }
 
     @Override
     protected void cleanup(Application app) {
+        if (chunkMeshState != null) {
+            chunkMeshState.removeListener(chunkMeshListener);
+        }
+        if (gpuTimer != null && app.getAppProfiler() == gpuTimer) {
+            app.setAppProfiler(null);
+        }
+    }
+
+    /**
+     * Renders the cached shadow maps again in the next frame. Call this when geometries that cast shadows are added,
+     * removed or changed outside of the chunk meshes.
+     */
+    public void invalidateShadows() {
+        dlsf.invalidate();
+    }
+
+    /**
+     * Replaces the shadow filter with a filter with the shadow map size and number of splits. The enabled state of the
+     * filter is kept.
+     */
+    public void setShadowQuality(int shadowMapSize, int splits) {
+        if (dlsf.getShadowMapSize() == shadowMapSize && dlsf.getNumShadowMaps() == splits) {
+            return;
+        }
+
+        CachedDirectionalLightShadowFilter filter = createDirectionalLightFilter(shadowMapSize, splits);
+        filter.setEnabled(dlsf.isEnabled());
+        replaceFilters(() -> dlsf = filter);
+    }
+
+    public void setSsaoSampleRadius(float sampleRadius) {
+        ssaoSampleRadius = sampleRadius;
+        if (ssaoFilter instanceof ScaledSSAOFilter) {
+            ((ScaledSSAOFilter) ssaoFilter).setSampleRadius(sampleRadius);
+        } else if (ssaoFilter instanceof SSAOFilter) {
+            ((SSAOFilter) ssaoFilter).setSampleRadius(sampleRadius);
+        }
+    }
+
+    /**
+     * Sets the resolution of the ambient occlusion of the quality tier, it's used when the resolution isn't pinned.
+     */
+    public void setDefaultSsaoResolution(SsaoResolution resolution) {
+        defaultSsaoResolution = resolution;
+        updateSsaoFilter();
+    }
+
+    /**
+     * Pins the resolution of the ambient occlusion, or follows the quality tier again when the resolution is null.
+     */
+    public void setPinnedSsaoResolution(SsaoResolution resolution) {
+        pinnedSsaoResolution = resolution;
+        updateSsaoFilter();
+    }
+
+    /**
+     * Returns the average GPU time of the ambient occlusion filter in milliseconds, or -1 when it isn't measured.
+     */
+    public double getSsaoGpuTime() {
+        return gpuTimer != null && ssaoFilter.isEnabled() ? gpuTimer.getGpuTime(ssaoFilter.getName()) : -1;
+    }
+
+    private SsaoResolution getEffectiveSsaoResolution() {
+        return pinnedSsaoResolution != null ? pinnedSsaoResolution : defaultSsaoResolution;
+    }
+
+    /**
+     * Replaces the ambient occlusion filter when the resolution changed. The enabled state of the filter is kept.
+     */
+    private void updateSsaoFilter() {
+        SsaoResolution resolution = getEffectiveSsaoResolution();
+        if (!isInitialized() || resolution == ssaoResolution) {
+            return;
+        }
+
+        double gpuTime = getSsaoGpuTime();
+        if (gpuTime >= 0) {
+            log.info("SSAO at {} resolution took {} ms GPU time", ssaoResolution.getDisplayName().toLowerCase(Locale.ROOT), String.format(Locale.ROOT, "%.2f", gpuTime));
+        }
+
+        Filter filter = createSSAOFilter(resolution);
+        filter.setEnabled(ssaoFilter.isEnabled());
+        ssaoResolution = resolution;
+        replaceFilters(() -> ssaoFilter = filter);
+        if (gpuTimer != null) {
+            // measure the new filter from the start
+            gpuTimer.reset(filter.getName());
+        }
     }
 
     @Override
     protected void onEnable() {
+        addFilters();
+    }
+
+    @Override
+    protected void onDisable() {
+        removeFilters();
+    }
+
+    /**
+     * Replaces one or more filters. The filters are removed and added again, so the order of the filters is kept.
+     */
+    private void replaceFilters(Runnable replace) {
+        if (isEnabled() && isInitialized()) {
+            removeFilters();
+            replace.run();
+            addFilters();
+        } else {
+            replace.run();
+        }
+    }
+
+    private void addFilters() {
         fpps.addFilter(dlsf);
         fpps.addFilter(ssaoFilter);
         fpps.addFilter(fxaaFilter);
     }
 
-    @Override
-    protected void onDisable() {
+    private void removeFilters() {
         fpps.removeFilter(fxaaFilter);
         fpps.removeFilter(ssaoFilter);
         fpps.removeFilter(dlsf);
@@ -59,14 +211,18 @@ public class PostProcessingState extends BaseAppState {
         return new FXAAFilter();
     }
 
-    private SSAOFilter createSSAOFilter() {
-        SSAOFilter ssaoFilter = new SSAOFilter(5f,4.5f,0.5f,0.1f);
+    private Filter createSSAOFilter(SsaoResolution resolution) {
+        if (resolution != SsaoResolution.FULL) {
+            return new ScaledSSAOFilter(ssaoSampleRadius, 4.5f, 0.5f, 0.1f, resolution.getDownSampleFactor());
+        }
+
+        SSAOFilter ssaoFilter = new SSAOFilter(ssaoSampleRadius,4.5f,0.5f,0.1f);
         ssaoFilter.setApproximateNormals(true);
         return ssaoFilter;
     }
 
-    private DirectionalLightShadowFilter createDirectionalLightFilter() {
-        DirectionalLightShadowFilter dlsf = new DirectionalLightShadowFilter(getApplication().getAssetManager(), 4096, 4);
+    private CachedDirectionalLightShadowFilter createDirectionalLightFilter(int shadowMapSize, int splits) {
+        CachedDirectionalLightShadowFilter dlsf = new CachedDirectionalLightShadowFilter(getApplication().getAssetManager(), shadowMapSize, splits);
         dlsf.setLight(directionalLight);
         dlsf.setLambda(1);
         dlsf.setEdgesThickness(4);
@@ -75,4 +231,16 @@ public class PostProcessingState extends BaseAppState {
         return dlsf;
     }
 
+    private static SsaoResolution parseSsaoResolution(String value) {
+        if (value == null || QualityGovernorState.AUTO.equalsIgnoreCase(value)) {
+            return null;
+        }
+        try {
+            return SsaoResolution.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid SSAO resolution {}, using {}.", value, QualityGovernorState.AUTO);
+            return null;
+        }
+    }
+
 }
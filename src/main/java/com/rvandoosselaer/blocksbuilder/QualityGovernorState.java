@@ -0,0 +1,225 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.renderer.Limits;
+import com.simsilica.lemur.core.VersionedHolder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * An AppState that adapts the {@link QualityTier} of the post processing effects to the frame time. The frame times
+ * of the last frames are kept, every second the 95th percentile of the frame times is compared with the frame time of
+ * the target frame rate.
+ * <ul>
+ * <li>when the percentile is above the target frame time, the next lower tier is used</li>
+ * <li>when the percentile stays below 60% of the target frame time for the upgrade delay, the next higher tier is
+ * used</li>
+ * </ul>
+ * The gap between both thresholds and the upgrade delay keep the governor from switching back and forth. When a higher
+ * tier is too slow shortly after an upgrade, the upgrade delay is doubled. Frames rendered while the
+ * {@link RenderOnDemandState} is idle are ignored, they are slowed down on purpose.
+ * A tier can be pinned with {@link #setPinnedTier(QualityTier)}, the governor then only measures the frame times.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class QualityGovernorState extends BaseAppState {
+
+    public static final String AUTO = "auto";
+
+    private static final int WINDOW_SIZE = 120;
+    private static final int MIN_SAMPLES = 60;
+    private static final float PERCENTILE = 0.95f;
+    private static final float EVALUATION_INTERVAL = 1f;
+    private static final float UPGRADE_HEADROOM = 0.6f;
+    private static final float UPGRADE_DELAY = 5f;
+    private static final float MAX_UPGRADE_DELAY = 80f;
+
+    /**
+     * the frame rate the governor tries to keep
+     */
+    @Getter
+    @Setter
+    private int targetFrameRate;
+    /**
+     * the tier that is always used, null when the governor chooses the tier
+     */
+    @Getter
+    private QualityTier pinnedTier;
+    @Getter
+    private final VersionedHolder<QualityTier> tier = new VersionedHolder<>(QualityTier.ULTRA);
+    /**
+     * the 95th percentile of the frame times in milliseconds, or 0 when there are not enough frames measured
+     */
+    @Getter
+    private float frameTimePercentile;
+    /**
+     * a description of the last decision of the governor
+     */
+    @Getter
+    private String status = "";
+    private final float[] frameTimes = new float[WINDOW_SIZE];
+    private final float[] sorted = new float[WINDOW_SIZE];
+    private int sampleCount;
+    private int sampleIndex;
+    private float evaluationTime;
+    private float fastTime;
+    private float timeSinceUpgrade = Float.MAX_VALUE;
+    private float upgradeDelay = UPGRADE_DELAY;
+    private boolean skipFrame;
+    private PostProcessingState postProcessingState;
+    private RenderOnDemandState renderOnDemandState;
+
+    public QualityGovernorState() {
+        this(ApplicationProperties.getInt("targetFramerate", 30), parseTier(ApplicationProperties.getString("qualityTier", AUTO)));
+    }
+
+    public QualityGovernorState(int targetFrameRate, QualityTier pinnedTier) {
+        this.targetFrameRate = targetFrameRate;
+        this.pinnedTier = pinnedTier;
+        if (pinnedTier != null) {
+            tier.setObject(pinnedTier);
+        }
+    }
+
+    /**
+     * Pins the tier, or lets the governor choose the tier again when the tier is null.
+     */
+    public void setPinnedTier(QualityTier pinnedTier) {
+        this.pinnedTier = pinnedTier;
+        upgradeDelay = UPGRADE_DELAY;
+        if (pinnedTier != null) {
+            setTier(pinnedTier, "pinned");
+        } else {
+            status = "auto";
+            resetSamples();
+        }
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        postProcessingState = getState(PostProcessingState.class);
+        renderOnDemandState = getState(RenderOnDemandState.class);
+        apply(tier.getObject());
+        status = pinnedTier != null ? "pinned" : "auto";
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+    }
+
+    @Override
+    protected void onEnable() {
+        resetSamples();
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        // the frame after an idle frame includes the idle sleep
+        boolean idle = renderOnDemandState != null && renderOnDemandState.isIdle();
+        if (idle || skipFrame) {
+            skipFrame = idle;
+            return;
+        }
+
+        frameTimes[sampleIndex] = tpf * 1000;
+        sampleIndex = (sampleIndex + 1) % WINDOW_SIZE;
+        sampleCount = Math.min(sampleCount + 1, WINDOW_SIZE);
+        timeSinceUpgrade += tpf;
+        evaluationTime += tpf;
+        if (evaluationTime < EVALUATION_INTERVAL || sampleCount < MIN_SAMPLES) {
+            return;
+        }
+
+        evaluate(evaluationTime);
+        evaluationTime = 0;
+    }
+
+    private void evaluate(float elapsed) {
+        System.arraycopy(frameTimes, 0, sorted, 0, sampleCount);
+        Arrays.sort(sorted, 0, sampleCount);
+        frameTimePercentile = sorted[Math.min(sampleCount - 1, (int) (sampleCount * PERCENTILE))];
+        if (pinnedTier != null || targetFrameRate <= 0) {
+            return;
+        }
+
+        float targetFrameTime = 1000f / targetFrameRate;
+        QualityTier current = tier.getObject();
+        if (frameTimePercentile > targetFrameTime) {
+            fastTime = 0;
+            if (current.lower() != current) {
+                if (timeSinceUpgrade < upgradeDelay) {
+                    // the upgrade didn't hold, wait longer before trying again
+                    upgradeDelay = Math.min(upgradeDelay * 2, MAX_UPGRADE_DELAY);
+                }
+                setTier(current.lower(), String.format(Locale.ROOT, "p95 %.1f ms > %.1f ms", frameTimePercentile, targetFrameTime));
+            }
+        } else if (frameTimePercentile < targetFrameTime * UPGRADE_HEADROOM) {
+            fastTime += elapsed;
+            if (fastTime >= upgradeDelay && current.higher() != current) {
+                timeSinceUpgrade = 0;
+                setTier(current.higher(), String.format(Locale.ROOT, "p95 %.1f ms < %.1f ms", frameTimePercentile, targetFrameTime * UPGRADE_HEADROOM));
+            }
+        } else {
+            fastTime = 0;
+        }
+    }
+
+    private void setTier(QualityTier qualityTier, String reason) {
+        status = reason;
+        if (qualityTier == tier.getObject()) {
+            return;
+        }
+
+        log.info("Quality tier {} -> {}: {}", tier.getObject().getDisplayName(), qualityTier.getDisplayName(), reason);
+        tier.setObject(qualityTier);
+        if (isInitialized()) {
+            apply(qualityTier);
+        }
+        resetSamples();
+    }
+
+    private void apply(QualityTier qualityTier) {
+        if (postProcessingState != null) {
+            postProcessingState.setShadowQuality(qualityTier.getShadowMapSize(), qualityTier.getShadowSplits());
+            postProcessingState.setSsaoSampleRadius(qualityTier.getSsaoSampleRadius());
+            postProcessingState.setDefaultSsaoResolution(qualityTier.getSsaoResolution());
+        }
+        int maxAnisotropicFilter = getApplication().getRenderer().getLimits().getOrDefault(Limits.TextureAnisotropy, 1);
+        getApplication().getRenderer().setDefaultAnisotropicFilter(Math.max(1, Math.min(qualityTier.getAnisotropicFilter(), maxAnisotropicFilter)));
+    }
+
+    /**
+     * Discards the measured frame times, the first frame after a tier change can include shader compilation.
+     */
+    private void resetSamples() {
+        sampleCount = 0;
+        sampleIndex = 0;
+        evaluationTime = 0;
+        fastTime = 0;
+        frameTimePercentile = 0;
+        skipFrame = true;
+    }
+
+    private static QualityTier parseTier(String value) {
+        if (value == null || AUTO.equalsIgnoreCase(value)) {
+            return null;
+        }
+        try {
+            return QualityTier.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid quality tier {}, using {}.", value, AUTO);
+            return null;
+        }
+    }
+
+}
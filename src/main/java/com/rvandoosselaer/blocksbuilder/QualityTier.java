@@ -0,0 +1,52 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import lombok.Getter;
+
+/**
+ * The quality tiers of the post processing effects, from the highest to the lowest quality. The {@link QualityGovernorState}
+ * steps through the tiers when the frame time changes.
+ *
+ * @author: rvandoosselaer
+ */
+@Getter
+public enum QualityTier {
+
+    ULTRA("Ultra", 4096, 4, 5f, SsaoResolution.FULL, Integer.MAX_VALUE),
+    HIGH("High", 2048, 4, 4f, SsaoResolution.HALF, 8),
+    MEDIUM("Medium", 2048, 3, 3f, SsaoResolution.HALF, 4),
+    LOW("Low", 1024, 2, 2f, SsaoResolution.QUARTER, 2);
+
+    private final String displayName;
+    private final int shadowMapSize;
+    private final int shadowSplits;
+    private final float ssaoSampleRadius;
+    private final SsaoResolution ssaoResolution;
+    /**
+     * the anisotropic filter level, limited to the maximum level of the renderer
+     */
+    private final int anisotropicFilter;
+
+    QualityTier(String displayName, int shadowMapSize, int shadowSplits, float ssaoSampleRadius, SsaoResolution ssaoResolution, int anisotropicFilter) {
+        this.displayName = displayName;
+        this.shadowMapSize = shadowMapSize;
+        this.shadowSplits = shadowSplits;
+        this.ssaoSampleRadius = ssaoSampleRadius;
+        this.ssaoResolution = ssaoResolution;
+        this.anisotropicFilter = anisotropicFilter;
+    }
+
+    /**
+     * Returns the next lower tier or this tier when it's the lowest.
+     */
+    public QualityTier lower() {
+        return ordinal() < values().length - 1 ? values()[ordinal() + 1] : this;
+    }
+
+    /**
+     * Returns the next higher tier or this tier when it's the highest.
+     */
+    public QualityTier higher() {
+        return ordinal() > 0 ? values()[ordinal() - 1] : this;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import lombok.Getter;
+
+/**
+ * Caches the result of the last cursor raycast. The cached result stays valid as long as the cursor position, the
+ * camera version and the chunk map version are the same as when the result was stored. The number of cache hits and
+ * misses are counted.
+ *
+ * @author: rvandoosselaer
+ */
+public class RaycastCache {
+
+    private final RaycastResult result = new RaycastResult();
+    private boolean hit;
+    private boolean valid;
+    private float cursorX;
+    private float cursorY;
+    private long cameraVersion;
+    private long chunkMapVersion;
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+
+    /**
+     * Returns true when the cached result can be used for the given cursor position, camera version and chunk map
+     * version. A call to this method is counted as a cache hit or miss.
+     */
+    public boolean isValid(float cursorX, float cursorY, long cameraVersion, long chunkMapVersion) {
+        boolean isValid = valid && this.cursorX == cursorX && this.cursorY == cursorY
+                && this.cameraVersion == cameraVersion && this.chunkMapVersion == chunkMapVersion;
+        if (isValid) {
+            hits++;
+        } else {
+            misses++;
+        }
+
+        return isValid;
+    }
+
+    /**
+     * Returns the result object that should be passed to the raycast before calling {@link #store}.
+     */
+    public RaycastResult getResultStore() {
+        return result;
+    }
+
+    /**
+     * Stores the raycast result that is written in the result store, for the given key.
+     */
+    public void store(float cursorX, float cursorY, long cameraVersion, long chunkMapVersion, boolean hit) {
+        this.cursorX = cursorX;
+        this.cursorY = cursorY;
+        this.cameraVersion = cameraVersion;
+        this.chunkMapVersion = chunkMapVersion;
+        this.hit = hit;
+        this.valid = true;
+    }
+
+    /**
+     * Returns the cached result or null when the raycast didn't hit anything.
+     */
+    public RaycastResult getResult() {
+        return valid && hit ? result : null;
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Returns the ratio of cache hits to the total number of lookups.
+     */
+    public float getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The result of a {@link VoxelRaycaster} raycast. Holds the location of the block that is hit and the normal of the
+ * face that is hit. When the ground is hit instead of a block, the block location is the location just below the
+ * ground and the normal points up.
+ * A result object can be reused for multiple raycasts.
+ *
+ * @author: rvandoosselaer
+ */
+@Getter
+@ToString
+public class RaycastResult {
+
+    private final Vec3i blockLocation = new Vec3i();
+    private final Vec3i normal = new Vec3i();
+    /**
+     * distance in world units between the origin of the ray and the hit point
+     */
+    private float distance;
+    /**
+     * true when a block is hit, false when the ground is hit
+     */
+    private boolean blockHit;
+
+    /**
+     * Returns the location of the block next to the hit face; the location where a new block would be placed.
+     */
+    public Vec3i getNeighbourBlockLocation(Vec3i store) {
+        if (store == null) {
+            store = new Vec3i();
+        }
+
+        return store.set(blockLocation.x + normal.x, blockLocation.y + normal.y, blockLocation.z + normal.z);
+    }
+
+    void set(int x, int y, int z, int normalX, int normalY, int normalZ, float distance, boolean blockHit) {
+        this.blockLocation.set(x, y, z);
+        this.normal.set(normalX, normalY, normalZ);
+        this.distance = distance;
+        this.blockHit = blockHit;
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.input.RawInputListener;
+import com.jme3.input.event.JoyAxisEvent;
+import com.jme3.input.event.JoyButtonEvent;
+import com.jme3.input.event.KeyInputEvent;
+import com.jme3.input.event.MouseButtonEvent;
+import com.jme3.input.event.MouseMotionEvent;
+import com.jme3.input.event.TouchEvent;
+import com.jme3.light.DirectionalLight;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.rvandoosselaer.blocksbuilder.gui.SplashScreenState;
+import com.simsilica.fx.LightingState;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An AppState that lowers the frame rate when nothing changes. A frame is dirty when there was input, when the camera
+ * or the sun changed, when a chunk mesh was updated, or while meshes are generated or a scene is saved, loaded or
+ * exported. Other changes can be signalled with {@link #markDirty()}, this can be called from any thread.
+ * The application keeps rendering at full speed until nothing changed for the idle delay, after that the render thread
+ * sleeps between frames so the idle frame rate is reached. Input is handled at the idle frame rate, the first input
+ * event brings the application back to full speed.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class RenderOnDemandState extends BaseAppState {
+
+    /**
+     * the frame rate when the application is idle, render on demand is disabled when the frame rate is 0 or less
+     */
+    @Getter
+    @Setter
+    private int idleFrameRate;
+    /**
+     * the time in milliseconds without changes before the application is idle
+     */
+    @Getter
+    @Setter
+    private long idleDelay;
+    @Getter
+    private boolean idle;
+    private volatile boolean dirty = true;
+    private long lastChange;
+    private long lastFrame;
+    private Camera camera;
+    private final Matrix4f cameraViewProjection = new Matrix4f();
+    private int cameraWidth;
+    private int cameraHeight;
+    private DirectionalLight sun;
+    private final Vector3f sunDirection = new Vector3f();
+    private final ColorRGBA sunColor = new ColorRGBA();
+    private ChunkMeshState chunkMeshState;
+    private ChunkMeshListener chunkMeshListener;
+    private RawInputListener inputListener;
+
+    public RenderOnDemandState() {
+        this(ApplicationProperties.getInt("idleFramerate", 5), ApplicationProperties.getInt("idleDelay", 1000));
+    }
+
+    public RenderOnDemandState(int idleFrameRate, long idleDelay) {
+        this.idleFrameRate = idleFrameRate;
+        this.idleDelay = idleDelay;
+    }
+
+    /**
+     * Marks the current frame as changed, the application renders at full speed for at least the idle delay.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        camera = app.getCamera();
+        LightingState lightingState = getState(LightingState.class);
+        sun = lightingState != null ? lightingState.getSun() : null;
+        chunkMeshState = getState(ChunkMeshState.class);
+        chunkMeshListener = chunk -> markDirty();
+        if (chunkMeshState != null) {
+            chunkMeshState.addListener(chunkMeshListener);
+        }
+        inputListener = new InputListener();
+        lastChange = System.nanoTime();
+        lastFrame = lastChange;
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        if (chunkMeshState != null) {
+            chunkMeshState.removeListener(chunkMeshListener);
+        }
+    }
+
+    @Override
+    protected void onEnable() {
+        getApplication().getInputManager().addRawInputListener(inputListener);
+        markDirty();
+    }
+
+    @Override
+    protected void onDisable() {
+        getApplication().getInputManager().removeRawInputListener(inputListener);
+        idle = false;
+    }
+
+    @Override
+    public void update(float tpf) {
+        // evaluate all checks, they also store the current camera and sun values
+        boolean cameraChanged = isCameraChanged();
+        boolean sunChanged = isSunChanged();
+        boolean changed = dirty | cameraChanged | sunChanged || isBusy();
+        dirty = false;
+
+        long now = System.nanoTime();
+        if (changed) {
+            lastChange = now;
+        }
+
+        boolean wasIdle = idle;
+        idle = idleFrameRate > 0 && now - lastChange > TimeUnit.MILLISECONDS.toNanos(idleDelay);
+        if (idle != wasIdle) {
+            log.trace("Render on demand {}", idle ? "idle" : "active");
+        }
+    }
+
+    @Override
+    public void postRender() {
+        if (idle && idleFrameRate > 0) {
+            long sleep = lastFrame + TimeUnit.SECONDS.toNanos(1) / idleFrameRate - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        lastFrame = System.nanoTime();
+    }
+
+    private boolean isCameraChanged() {
+        if (camera.getViewProjectionMatrix().equals(cameraViewProjection) && camera.getWidth() == cameraWidth && camera.getHeight() == cameraHeight) {
+            return false;
+        }
+
+        cameraViewProjection.set(camera.getViewProjectionMatrix());
+        cameraWidth = camera.getWidth();
+        cameraHeight = camera.getHeight();
+        return true;
+    }
+
+    private boolean isSunChanged() {
+        if (sun == null || (sun.getDirection().equals(sunDirection) && sun.getColor().equals(sunColor))) {
+            return false;
+        }
+
+        sunDirection.set(sun.getDirection());
+        sunColor.set(sun.getColor());
+        return true;
+    }
+
+    /**
+     * Returns true while meshes are generated, a scene is saved, loaded or exported or the splash screen is shown.
+     */
+    private boolean isBusy() {
+        if (chunkMeshState != null && chunkMeshState.isBusy()) {
+            return true;
+        }
+
+        BuilderState builderState = getState(BuilderState.class);
+        if (builderState != null && builderState.getSceneStorage() != null) {
+            SceneStorage sceneStorage = builderState.getSceneStorage();
+            if (sceneStorage.isBusy() || sceneStorage.isSaving() || sceneStorage.isExporting()) {
+                return true;
+            }
+        }
+
+        return getState(SplashScreenState.class) != null;
+    }
+
+    /**
+     * Marks the frame dirty on every input event.
+     */
+    private class InputListener implements RawInputListener {
+
+        @Override
+        public void beginInput() {
+        }
+
+        @Override
+        public void endInput() {
+        }
+
+        @Override
+        public void onJoyAxisEvent(JoyAxisEvent evt) {
+            markDirty();
+        }
+
+        @Override
+        public void onJoyButtonEvent(JoyButtonEvent evt) {
+            markDirty();
+        }
+
+        @Override
+        public void onMouseMotionEvent(MouseMotionEvent evt) {
+            markDirty();
+        }
+
+        @Override
+        public void onMouseButtonEvent(MouseButtonEvent evt) {
+            markDirty();
+        }
+
+        @Override
+        public void onKeyEvent(KeyInputEvent evt) {
+            markDirty();
+        }
+
+        @Override
+        public void onTouchEvent(TouchEvent evt) {
+            markDirty();
+        }
+
+    }
+
+}
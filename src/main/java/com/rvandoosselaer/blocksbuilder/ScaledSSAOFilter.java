@@ -0,0 +1,161 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.post.Filter;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.shader.VarType;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import lombok.Getter;
+
+import java.util.ArrayList;
+
+/**
+ * A screen space ambient occlusion filter that renders the occlusion at a lower resolution. It uses the same occlusion
+ * as jME's SSAOFilter with approximated normals, the occlusion is calculated at 1/2 or 1/4 of the screen resolution
+ * together with the linear depth of each texel. The occlusion is blurred with a separable blur that ignores samples
+ * at another depth, and upsampled to the screen with the bilinear weights of the four nearest texels, multiplied with
+ * how close their depth is to the depth of the pixel.
+ *
+ * @author: rvandoosselaer
+ */
+public class ScaledSSAOFilter extends Filter {
+
+    private static final Vector2f[] SAMPLES = {new Vector2f(1, 0), new Vector2f(-1, 0), new Vector2f(0, 1), new Vector2f(0, -1)};
+
+    @Getter
+    private final int downSampleFactor;
+    @Getter
+    private float sampleRadius;
+    @Getter
+    private float intensity;
+    @Getter
+    private float scale;
+    @Getter
+    private float bias;
+    private Material ssaoMaterial;
+
+    /**
+     * Creates the filter with the SSAOFilter parameters and the factor the screen resolution is divided by.
+     */
+    public ScaledSSAOFilter(float sampleRadius, float intensity, float scale, float bias, int downSampleFactor) {
+        super("ScaledSSAOFilter 1/" + downSampleFactor);
+        this.sampleRadius = sampleRadius;
+        this.intensity = intensity;
+        this.scale = scale;
+        this.bias = bias;
+        this.downSampleFactor = Math.max(1, downSampleFactor);
+    }
+
+    public void setSampleRadius(float sampleRadius) {
+        this.sampleRadius = sampleRadius;
+        if (ssaoMaterial != null) {
+            ssaoMaterial.setFloat("SampleRadius", sampleRadius);
+        }
+    }
+
+    public void setIntensity(float intensity) {
+        this.intensity = intensity;
+        if (ssaoMaterial != null) {
+            ssaoMaterial.setFloat("Intensity", intensity);
+        }
+    }
+
+    public void setScale(float scale) {
+        this.scale = scale;
+        if (ssaoMaterial != null) {
+            ssaoMaterial.setFloat("Scale", scale);
+        }
+    }
+
+    public void setBias(float bias) {
+        this.bias = bias;
+        if (ssaoMaterial != null) {
+            ssaoMaterial.setFloat("Bias", bias);
+        }
+    }
+
+    @Override
+    protected boolean isRequiresDepthTexture() {
+        return true;
+    }
+
+    @Override
+    protected Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    protected void initFilter(AssetManager assetManager, RenderManager renderManager, ViewPort vp, int w, int h) {
+        int width = Math.max(1, w / downSampleFactor);
+        int height = Math.max(1, h / downSampleFactor);
+
+        Camera camera = vp.getCamera();
+        float farY = (camera.getFrustumTop() / camera.getFrustumNear()) * camera.getFrustumFar();
+        float farX = farY * (w / (float) h);
+        Vector3f frustumCorner = new Vector3f(farX, farY, camera.getFrustumFar());
+        Vector2f frustumNearFar = new Vector2f(camera.getFrustumNear(), camera.getFrustumFar());
+
+        postRenderPasses = new ArrayList<>();
+
+        // occlusion and linear depth at the low resolution
+        ssaoMaterial = new Material(assetManager, "MatDefs/SSAO/ScaledSSAO.j3md");
+        Texture random = assetManager.loadTexture("Common/MatDefs/SSAO/Textures/random.png");
+        random.setWrap(Texture.WrapMode.Repeat);
+        ssaoMaterial.setTexture("RandomMap", random);
+        ssaoMaterial.setVector3("FrustumCorner", frustumCorner);
+        ssaoMaterial.setVector2("FrustumNearFar", frustumNearFar);
+        ssaoMaterial.setFloat("SampleRadius", sampleRadius);
+        ssaoMaterial.setFloat("Intensity", intensity);
+        ssaoMaterial.setFloat("Scale", scale);
+        ssaoMaterial.setFloat("Bias", bias);
+        ssaoMaterial.setParam("Samples", VarType.Vector2Array, SAMPLES);
+        Pass ssaoPass = new Pass("SSAO pass") {
+            @Override
+            public boolean requiresDepthAsTexture() {
+                return true;
+            }
+        };
+        ssaoPass.init(renderManager.getRenderer(), width, height, Image.Format.RG16F, Image.Format.Depth, 1, ssaoMaterial);
+        postRenderPasses.add(ssaoPass);
+
+        // bilateral blur at the low resolution
+        Pass horizontalBlurPass = createBlurPass(assetManager, renderManager, "SSAO horizontal blur pass", ssaoPass.getRenderedTexture(), new Vector2f(1f / width, 0), width, height);
+        postRenderPasses.add(horizontalBlurPass);
+        Pass verticalBlurPass = createBlurPass(assetManager, renderManager, "SSAO vertical blur pass", horizontalBlurPass.getRenderedTexture(), new Vector2f(0, 1f / height), width, height);
+        postRenderPasses.add(verticalBlurPass);
+
+        // depth aware upsampling to the screen
+        material = new Material(assetManager, "MatDefs/SSAO/SSAOUpsample.j3md");
+        material.setTexture("SSAOMap", verticalBlurPass.getRenderedTexture());
+        material.setVector2("SSAOMapSize", new Vector2f(width, height));
+        material.setVector2("FrustumNearFar", frustumNearFar);
+        material.setBoolean("UseAo", true);
+        material.setBoolean("UseOnlyAo", false);
+
+        // the upsample and blur shaders weigh the texels themselves
+        for (Pass pass : postRenderPasses) {
+            Texture2D texture = pass.getRenderedTexture();
+            texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+            texture.setMagFilter(Texture.MagFilter.Nearest);
+            texture.setWrap(Texture.WrapMode.EdgeClamp);
+        }
+    }
+
+    private Pass createBlurPass(AssetManager assetManager, RenderManager renderManager, String name, Texture2D input, Vector2f direction, int width, int height) {
+        Material blurMaterial = new Material(assetManager, "MatDefs/SSAO/SSAOBilateralBlur.j3md");
+        blurMaterial.setTexture("SSAOMap", input);
+        blurMaterial.setVector2("Direction", direction);
+        Pass pass = new Pass(name);
+        pass.init(renderManager.getRenderer(), width, height, Image.Format.RG16F, Image.Format.Depth, 1, blurMaterial);
+
+        return pass;
+    }
+
+}
@@ -0,0 +1,373 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlockRegistry;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the BlocksBuilder scene format. A scene file holds all chunks of a scene in one file.
+ * <p>
+ * The file starts with a header: the magic number, the format version, the chunk size, the bounds of the chunk
+ * locations and the number of chunks, followed by a CRC32 checksum of the header. Each chunk is stored with its location,
+ * a palette with the names of the blocks used in the chunk and the run-length encoded palette indexes of all block
+ * locations, followed by a CRC32 checksum of the chunk. Palette index 0 is an empty location.
+ * All values are big endian. Large files are read in a direct buffer when loading. They are not memory mapped, a
+ * mapping keeps the file open until it's garbage collected and the file can't be replaced by a save in the meantime on
+ * some platforms.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class SceneFile {
+
+    public static final String EXTENSION = ".bbscene";
+    public static final short VERSION = 1;
+
+    private static final int MAGIC = 0x42425343; // BBSC
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES * 10;
+    // the size of a chunk without blocks: the location, the palette size, the run count and the checksum
+    private static final int MIN_CHUNK_SIZE = Integer.BYTES * 3 + Short.BYTES + Integer.BYTES * 2;
+    // files larger than this size are read in a direct buffer instead of a heap buffer
+    private static final long DIRECT_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Writes the chunks to the file. The chunks are written to a temporary file that replaces the file when all chunks
+     * are written, so a failed save doesn't corrupt an existing scene.
+     */
+    public static void write(Path path, Collection<Chunk> chunks) throws IOException {
+        write(path, chunks, progress -> {});
+    }
+
+    /**
+     * Writes the chunks to the file and passes the progress, a value between 0 and 1, to the progress listener after
+     * each written chunk.
+     */
+    public static void write(Path path, Collection<Chunk> chunks, DoubleConsumer progressListener) throws IOException {
+        Vec3i chunkSize = BlocksConfig.getInstance().getChunkSize();
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, createHeader(chunkSize, chunks));
+
+            ChunkEncoder encoder = new ChunkEncoder(chunkSize);
+            int written = 0;
+            for (Chunk chunk : chunks) {
+                writeFully(channel, encoder.encode(chunk));
+                progressListener.accept(++written / (double) chunks.size());
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the chunks from the file.
+     *
+     * @throws IOException when the file can't be read, isn't a scene file or is corrupt
+     */
+    public static List<Chunk> read(Path path) throws IOException {
+        return read(path, progress -> {});
+    }
+
+    /**
+     * Reads the chunks from the file and passes the progress, a value between 0 and 1, to the progress listener after
+     * each read chunk.
+     *
+     * @throws IOException when the file can't be read, isn't a scene file or is corrupt
+     */
+    public static List<Chunk> read(Path path, DoubleConsumer progressListener) throws IOException {
+        ByteBuffer buffer = readFile(path);
+        Vec3i chunkSize = readChunkSize(buffer, path);
+        if (!chunkSize.equals(BlocksConfig.getInstance().getChunkSize())) {
+            throw new IOException("Chunk size " + chunkSize + " of scene file " + path + " doesn't match the configured chunk size " + BlocksConfig.getInstance().getChunkSize());
+        }
+        // skip the bounds
+        buffer.position(buffer.position() + Integer.BYTES * 6);
+        int chunkCount = buffer.getInt();
+        buffer.position(buffer.position() + Integer.BYTES);
+
+        BlockRegistry blockRegistry = BlocksConfig.getInstance().getBlockRegistry();
+        List<Chunk> chunks = new ArrayList<>(Math.max(0, Math.min(chunkCount, buffer.remaining() / MIN_CHUNK_SIZE)));
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(readChunk(buffer, chunkSize, blockRegistry, path));
+                progressListener.accept((i + 1) / (double) chunkCount);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Scene file " + path + " is truncated.", e);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Reads the header of the file and counts the blocks, without creating the chunks.
+     *
+     * @throws IOException when the file can't be read, isn't a scene file or is corrupt
+     */
+    public static Summary readSummary(Path path) throws IOException {
+        ByteBuffer buffer = readFile(path);
+        readChunkSize(buffer, path);
+        Vec3i min = new Vec3i(buffer.getInt(), buffer.getInt(), buffer.getInt());
+        Vec3i max = new Vec3i(buffer.getInt(), buffer.getInt(), buffer.getInt());
+        int chunkCount = buffer.getInt();
+        buffer.position(buffer.position() + Integer.BYTES);
+
+        long blockCount = 0;
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                // skip the location
+                buffer.position(buffer.position() + Integer.BYTES * 3);
+                int paletteSize = buffer.getShort() & 0xFFFF;
+                for (int j = 0; j < paletteSize; j++) {
+                    int nameLength = buffer.getShort() & 0xFFFF;
+                    buffer.position(buffer.position() + nameLength);
+                }
+                int runCount = buffer.getInt();
+                for (int j = 0; j < runCount; j++) {
+                    int paletteIndex = buffer.getShort() & 0xFFFF;
+                    int length = buffer.getInt();
+                    if (paletteIndex != 0) {
+                        blockCount += length;
+                    }
+                }
+                // skip the checksum
+                buffer.position(buffer.position() + Integer.BYTES);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Scene file " + path + " is truncated.", e);
+        }
+
+        return new Summary(chunkCount, blockCount, min, max);
+    }
+
+    private static ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Scene file " + path + " is too large.");
+            }
+
+            // a direct buffer is filled without an intermediate copy
+            ByteBuffer buffer = size > DIRECT_THRESHOLD ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                log.trace("Read {} of {} bytes of {}", buffer.position(), size, path);
+            }
+            buffer.flip();
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Verifies the header and returns the chunk size. The position of the buffer is set after the chunk size.
+     */
+    private static Vec3i readChunkSize(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE + Integer.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a scene file.");
+        }
+        verifyChecksum(buffer, 0, HEADER_SIZE, path);
+
+        buffer.position(Integer.BYTES);
+        short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported version " + version + " of scene file " + path);
+        }
+
+        return new Vec3i(buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
+    private static Chunk readChunk(ByteBuffer buffer, Vec3i chunkSize, BlockRegistry blockRegistry, Path path) throws IOException {
+        int start = buffer.position();
+        Chunk chunk = Chunk.createAt(new Vec3i(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+
+        int paletteSize = buffer.getShort() & 0xFFFF;
+        Block[] palette = new Block[paletteSize + 1];
+        for (int i = 1; i <= paletteSize; i++) {
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            palette[i] = blockRegistry.get(new String(name, StandardCharsets.UTF_8));
+            if (palette[i] == null) {
+                log.warn("Block {} of chunk {} in {} not found.", new String(name, StandardCharsets.UTF_8), chunk.getLocation(), path);
+            }
+        }
+
+        int runCount = buffer.getInt();
+        int volume = chunkSize.x * chunkSize.y * chunkSize.z;
+        int index = 0;
+        for (int i = 0; i < runCount; i++) {
+            int paletteIndex = buffer.getShort() & 0xFFFF;
+            int length = buffer.getInt();
+            if (paletteIndex > paletteSize || length < 0 || index + length > volume) {
+                throw new IOException("Invalid chunk " + chunk.getLocation() + " in scene file " + path);
+            }
+            Block block = palette[paletteIndex];
+            if (block != null) {
+                for (int j = index; j < index + length; j++) {
+                    chunk.addBlock(j % chunkSize.x, (j / chunkSize.x) % chunkSize.y, j / (chunkSize.x * chunkSize.y), block);
+                }
+            }
+            index += length;
+        }
+        verifyChecksum(buffer, start, buffer.position() - start, path);
+        buffer.position(buffer.position() + Integer.BYTES);
+
+        return chunk;
+    }
+
+    private static ByteBuffer createHeader(Vec3i chunkSize, Collection<Chunk> chunks) {
+        Vec3i min = new Vec3i(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        Vec3i max = new Vec3i(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+        for (Chunk chunk : chunks) {
+            Vec3i location = chunk.getLocation();
+            min.set(Math.min(min.x, location.x), Math.min(min.y, location.y), Math.min(min.z, location.z));
+            max.set(Math.max(max.x, location.x), Math.max(max.y, location.y), Math.max(max.z, location.z));
+        }
+        if (chunks.isEmpty()) {
+            min.set(0, 0, 0);
+            max.set(0, 0, 0);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES);
+        header.putInt(MAGIC).putShort(VERSION)
+                .putInt(chunkSize.x).putInt(chunkSize.y).putInt(chunkSize.z)
+                .putInt(min.x).putInt(min.y).putInt(min.z)
+                .putInt(max.x).putInt(max.y).putInt(max.z)
+                .putInt(chunks.size());
+        putChecksum(header);
+
+        return header;
+    }
+
+    /**
+     * Calculates the checksum of the bytes written in the buffer, appends it and flips the buffer.
+     */
+    private static void putChecksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+    }
+
+    private static void verifyChecksum(ByteBuffer buffer, int offset, int length, Path path) throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(offset + length).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != buffer.getInt(offset + length)) {
+            throw new IOException("Checksum mismatch in scene file " + path + " at offset " + offset);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The number of chunks and blocks and the bounds of the chunk locations of a scene file.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Summary {
+
+        private final int chunkCount;
+        private final long blockCount;
+        private final Vec3i min;
+        private final Vec3i max;
+
+    }
+
+    /**
+     * Encodes chunks, the buffers are reused between chunks.
+     */
+    private static class ChunkEncoder {
+
+        private final Vec3i chunkSize;
+        private final Map<String, Integer> paletteIndexes = new HashMap<>();
+        private final List<byte[]> paletteNames = new ArrayList<>();
+        private short[] runIndexes = new short[64];
+        private int[] runLengths = new int[64];
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        ChunkEncoder(Vec3i chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        ByteBuffer encode(Chunk chunk) {
+            paletteIndexes.clear();
+            paletteNames.clear();
+
+            int runCount = 0;
+            int volume = chunkSize.x * chunkSize.y * chunkSize.z;
+            for (int i = 0; i < volume; i++) {
+                Block block = chunk.getBlock(i % chunkSize.x, (i / chunkSize.x) % chunkSize.y, i / (chunkSize.x * chunkSize.y));
+                int paletteIndex = block == null ? 0 : paletteIndexes.computeIfAbsent(block.getName(), this::addToPalette);
+                if (runCount > 0 && runIndexes[runCount - 1] == (short) paletteIndex) {
+                    runLengths[runCount - 1]++;
+                } else {
+                    if (runCount == runIndexes.length) {
+                        runIndexes = Arrays.copyOf(runIndexes, runCount * 2);
+                        runLengths = Arrays.copyOf(runLengths, runCount * 2);
+                    }
+                    runIndexes[runCount] = (short) paletteIndex;
+                    runLengths[runCount] = 1;
+                    runCount++;
+                }
+            }
+
+            int size = Integer.BYTES * 3 + Short.BYTES + Integer.BYTES + runCount * (Short.BYTES + Integer.BYTES) + Integer.BYTES;
+            for (byte[] name : paletteNames) {
+                size += Short.BYTES + name.length;
+            }
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+            }
+            buffer.clear();
+
+            Vec3i location = chunk.getLocation();
+            buffer.putInt(location.x).putInt(location.y).putInt(location.z);
+            buffer.putShort((short) paletteNames.size());
+            for (byte[] name : paletteNames) {
+                buffer.putShort((short) name.length).put(name);
+            }
+            buffer.putInt(runCount);
+            for (int i = 0; i < runCount; i++) {
+                buffer.putShort(runIndexes[i]).putInt(runLengths[i]);
+            }
+            putChecksum(buffer);
+
+            return buffer;
+        }
+
+        private int addToPalette(String name) {
+            paletteNames.add(name.getBytes(StandardCharsets.UTF_8));
+            return paletteNames.size();
+        }
+
+    }
+
+}
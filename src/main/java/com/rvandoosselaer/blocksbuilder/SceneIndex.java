@@ -0,0 +1,396 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.FileRepository;
+import com.simsilica.mathd.Vec3i;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * An index of the scenes in the scene directory. For each scene the file size, last modified time, number of blocks,
+ * the bounds of the chunk locations are kept, so the scene files don't have to be read to show them.
+ * <p>
+ * The index is stored in the scene directory and loaded when the index is started. A background thread then checks
+ * the directory once for scenes that were added, changed or removed since the index was stored, and keeps the index
+ * up to date with a {@link WatchService}. Only the scene files that changed are read. The index is stored again when
+ * the directory has been quiet for a moment.
+ * The methods of this class can be called from any thread.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class SceneIndex {
+
+    public static final String FILENAME = ".sceneindex";
+
+    private static final int MAGIC = 0x42424958; // BBIX
+    // version 1 had a thumbnail per entry
+    private static final short VERSION = 2;
+    // the time the directory should be quiet before the changed scenes are indexed
+    private static final long QUIET_TIME = 500;
+
+    @Getter
+    private final Path directory;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // the entries sorted by name, replaced when the index changes
+    private volatile List<Entry> sortedEntries = Collections.emptyList();
+    /**
+     * incremented each time the index changes
+     */
+    @Getter
+    private volatile long version;
+    private Thread thread;
+    private volatile boolean running;
+
+    public SceneIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the stored index and starts watching the directory in the background.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "scene-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Returns the entries, sorted by name, with a name containing the query. The search ignores case, an empty or null
+     * query returns all entries.
+     */
+    public List<Entry> search(String query) {
+        List<Entry> entries = sortedEntries;
+        if (query == null || query.trim().isEmpty()) {
+            return entries;
+        }
+
+        String lowerCaseQuery = query.trim().toLowerCase(Locale.ROOT);
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.getLowerCaseName().contains(lowerCaseQuery)) {
+                result.add(entry);
+            }
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return sortedEntries.size();
+    }
+
+    private void run() {
+        load();
+
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // the directory is watched before it is scanned, so no changes are missed
+            boolean changed = scan();
+            Set<String> changedScenes = new HashSet<>();
+            while (running) {
+                WatchKey key = changedScenes.isEmpty() && !changed ? watchService.take() : watchService.poll(QUIET_TIME, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // the directory is quiet, update the changed scenes
+                    for (String name : changedScenes) {
+                        changed |= update(name);
+                    }
+                    changedScenes.clear();
+                    if (changed) {
+                        publish();
+                        store();
+                        changed = false;
+                    }
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        log.debug("Events of {} lost, scanning the directory.", directory);
+                        changed |= scan();
+                    } else {
+                        String name = getSceneName(((Path) event.context()).getFileName().toString());
+                        if (name != null) {
+                            changedScenes.add(name);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("Scene directory {} is no longer accessible, stopped watching.", directory);
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching {}.", directory);
+        } catch (IOException e) {
+            log.error("Error watching scene directory {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compares the index with the files in the directory and updates the scenes that changed.
+     *
+     * @return true when the index changed
+     */
+    private boolean scan() {
+        long start = System.nanoTime();
+        Set<String> names = new HashSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                String name = getSceneName(path.getFileName().toString());
+                if (name != null) {
+                    names.add(name);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Error listing scene directory {}: {}", directory, e.getMessage(), e);
+            return false;
+        }
+
+        boolean changed = false;
+        synchronized (entries) {
+            names.addAll(entries.keySet());
+        }
+        for (String name : names) {
+            changed |= update(name);
+        }
+        publish();
+        log.info("Indexed {} scenes in {} in {}ms.", size(), directory, (System.nanoTime() - start) / 1_000_000);
+
+        return changed;
+    }
+
+    /**
+     * Updates the entry of the scene when the scene file changed, or removes it when the scene doesn't exist anymore.
+     *
+     * @return true when the index changed
+     */
+    private boolean update(String name) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(name);
+        }
+
+        Path path = directory.resolve(name + SceneFile.EXTENSION);
+        boolean legacy = !Files.exists(path) && LegacySceneConverter.exists(directory, name);
+        if (legacy) {
+            path = directory.resolve(name + FileRepository.EXTENSION);
+        }
+
+        Entry newEntry;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (entry != null && entry.getSize() == attributes.size() && entry.getLastModified() == lastModified) {
+                return false;
+            }
+            newEntry = legacy ? createLegacyEntry(name, attributes) : createEntry(name, path, attributes);
+        } catch (NoSuchFileException e) {
+            newEntry = null;
+        } catch (IOException e) {
+            // the scene file is probably being written, it is indexed when the next change is detected
+            log.debug("Error indexing scene {}: {}", path, e.getMessage());
+            return false;
+        }
+
+        synchronized (entries) {
+            if (newEntry == null) {
+                return entries.remove(name) != null;
+            }
+            entries.put(name, newEntry);
+        }
+
+        return true;
+    }
+
+    private Entry createEntry(String name, Path path, BasicFileAttributes attributes) throws IOException {
+        SceneFile.Summary summary = SceneFile.readSummary(path);
+        return new Entry(name, attributes.size(), attributes.lastModifiedTime().toMillis(), summary.getChunkCount(),
+                summary.getBlockCount(), summary.getMin(), summary.getMax());
+    }
+
+    private Entry createLegacyEntry(String name, BasicFileAttributes attributes) throws IOException {
+        List<Chunk> chunks = LegacySceneConverter.load(directory, name);
+        Vec3i min = new Vec3i(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        Vec3i max = new Vec3i(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+        long blockCount = 0;
+        for (Chunk chunk : chunks) {
+            Vec3i location = chunk.getLocation();
+            min.set(Math.min(min.x, location.x), Math.min(min.y, location.y), Math.min(min.z, location.z));
+            max.set(Math.max(max.x, location.x), Math.max(max.y, location.y), Math.max(max.z, location.z));
+            blockCount += countBlocks(chunk);
+        }
+        if (chunks.isEmpty()) {
+            min.set(0, 0, 0);
+            max.set(0, 0, 0);
+        }
+
+        return new Entry(name, attributes.size(), attributes.lastModifiedTime().toMillis(), chunks.size(), blockCount, min, max);
+    }
+
+    private static int countBlocks(Chunk chunk) {
+        Vec3i size = BlocksConfig.getInstance().getChunkSize();
+        int count = 0;
+        for (int x = 0; x < size.x; x++) {
+            for (int y = 0; y < size.y; y++) {
+                for (int z = 0; z < size.z; z++) {
+                    if (chunk.getBlock(x, y, z) != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private void publish() {
+        List<Entry> sorted;
+        synchronized (entries) {
+            sorted = new ArrayList<>(entries.values());
+        }
+        sorted.sort((e1, e2) -> e1.getName().compareToIgnoreCase(e2.getName()));
+        sortedEntries = Collections.unmodifiableList(sorted);
+        version++;
+    }
+
+    /**
+     * Loads the stored index. A missing or unreadable index is ignored, the scenes are indexed again.
+     */
+    void load() {
+        Path path = directory.resolve(FILENAME);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Unsupported index format");
+            }
+            int count = in.readInt();
+            synchronized (entries) {
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+                    int chunkCount = in.readInt();
+                    long blockCount = in.readLong();
+                    Vec3i min = new Vec3i(in.readInt(), in.readInt(), in.readInt());
+                    Vec3i max = new Vec3i(in.readInt(), in.readInt(), in.readInt());
+                    entries.put(name, new Entry(name, size, lastModified, chunkCount, blockCount, min, max));
+                }
+            }
+            publish();
+            log.debug("Loaded index of {} scenes from {}.", count, path);
+        } catch (IOException e) {
+            log.warn("Error loading scene index {}, rebuilding the index: {}", path, e.getMessage());
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+    }
+
+    private void store() {
+        Path path = directory.resolve(FILENAME);
+        Path tempFile = path.resolveSibling(FILENAME + ".tmp");
+        List<Entry> entries = sortedEntries;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.getName());
+                    out.writeLong(entry.getSize());
+                    out.writeLong(entry.getLastModified());
+                    out.writeInt(entry.getChunkCount());
+                    out.writeLong(entry.getBlockCount());
+                    out.writeInt(entry.getMin().x);
+                    out.writeInt(entry.getMin().y);
+                    out.writeInt(entry.getMin().z);
+                    out.writeInt(entry.getMax().x);
+                    out.writeInt(entry.getMax().y);
+                    out.writeInt(entry.getMax().z);
+                }
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error storing scene index {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the name of the scene the file belongs to, or null when the file isn't part of a visible scene.
+     */
+    private static String getSceneName(String filename) {
+        if (filename.startsWith(".")) {
+            return null;
+        }
+        for (String extension : new String[]{SceneFile.EXTENSION, FileRepository.EXTENSION}) {
+            if (filename.endsWith(extension) && filename.length() > extension.length()) {
+                return filename.substring(0, filename.length() - extension.length());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The indexed information of a scene. The bounds are the minimum and maximum chunk locations.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final int chunkCount;
+        private final long blockCount;
+        private final Vec3i min;
+        private final Vec3i max;
+
+        String getLowerCaseName() {
+            return name.toLowerCase(Locale.ROOT);
+        }
+
+    }
+
+}
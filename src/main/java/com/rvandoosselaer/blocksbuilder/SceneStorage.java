@@ -0,0 +1,293 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.app.Application;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Saves, loads and exports scenes on a background thread. A save takes a copy-on-write snapshot of the {@link ChunkMap} on the
+ * render thread and writes the snapshot in the background, so the scene can be changed while it's saved. A load reads
+ * the chunks in the background and passes them to the render thread when done. An export also works on a snapshot, it
+ * runs on its own thread so it doesn't delay saves and can be cancelled.
+ * A save requested while another save is running is coalesced: it is started when the running save is done, multiple
+ * requested saves result in a single save of the latest state.
+ * The methods of this class should be called from the render thread, listeners are notified on the render thread.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class SceneStorage {
+
+    public enum Operation {
+        SAVE, LOAD, EXPORT
+    }
+
+    @Getter
+    private final Path directory;
+    private final ChunkMap chunkMap;
+    private final Application application;
+    private final ExecutorService executor;
+    private final ExecutorService exportExecutor;
+    private final List<SceneStorageListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private String runningSave;
+    private String pendingSave;
+    private String runningExport;
+    private volatile boolean exportCancelled;
+
+    public SceneStorage(Path directory, ChunkMap chunkMap, Application application) {
+        this.directory = directory;
+        this.chunkMap = chunkMap;
+        this.application = application;
+        // not a daemon thread, a running save is finished when the application stops
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "scene-storage"));
+        this.exportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scene-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addListener(SceneStorageListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SceneStorageListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns true when a save is running.
+     */
+    public boolean isSaving() {
+        return runningSave != null;
+    }
+
+    /**
+     * Returns true when an export is running.
+     */
+    public boolean isExporting() {
+        return runningExport != null;
+    }
+
+    /**
+     * Returns true when a save or load is running.
+     */
+    public boolean isBusy() {
+        return runningTasks.get() > 0;
+    }
+
+    /**
+     * Saves the scene in the background.
+     */
+    public void save(String name) {
+        if (runningSave != null) {
+            log.debug("Save of {} is running, saving {} when done.", runningSave, name);
+            pendingSave = name;
+            return;
+        }
+
+        runningSave = name;
+        List<Chunk> chunks = chunkMap.snapshot();
+        listeners.forEach(listener -> listener.onSaveStarted(name));
+        Path path = directory.resolve(name + SceneFile.EXTENSION);
+        runningTasks.incrementAndGet();
+        executor.execute(() -> {
+            boolean success = false;
+            try {
+                long start = System.nanoTime();
+                SceneFile.write(path, chunks, new ProgressForwarder(Operation.SAVE, name));
+                success = true;
+                log.info("Saved {} ({} chunks) to {} in {}ms.", name, chunks.size(), path, (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                log.error("Error saving {}: {}", path, e.getMessage(), e);
+            } finally {
+                runningTasks.decrementAndGet();
+                boolean saved = success;
+                application.enqueue(() -> onSaveCompleted(name, saved));
+            }
+        });
+    }
+
+    /**
+     * Loads the scene in the background and passes the chunks to the consumer on the render thread. A scene saved with
+     * a previous version of BlocksBuilder is converted first. Changes in the {@link AutosaveJournal} of the scene that
+     * are not saved yet are applied on the loaded chunks.
+     */
+    public void load(String name, Consumer<List<Chunk>> chunksConsumer) {
+        Path path = directory.resolve(name + SceneFile.EXTENSION);
+        runningTasks.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                boolean hasJournal = AutosaveJournal.exists(directory, name);
+                if (!Files.exists(path) && LegacySceneConverter.convert(directory, name) == null && !hasJournal) {
+                    throw new IOException("Scene " + name + " not found in " + directory);
+                }
+                List<Chunk> sceneChunks = Files.exists(path) ? SceneFile.read(path, new ProgressForwarder(Operation.LOAD, name)) : new ArrayList<>();
+                List<Chunk> chunks = hasJournal ? replayJournal(name, sceneChunks) : sceneChunks;
+                log.info("Loaded {} ({} chunks) from {} in {}ms.", name, chunks.size(), path, (System.nanoTime() - start) / 1_000_000);
+                application.enqueue(() -> {
+                    chunksConsumer.accept(chunks);
+                    notifyCompleted(Operation.LOAD, name, true);
+                });
+            } catch (IOException | RuntimeException e) {
+                log.error("Error loading {}: {}", path, e.getMessage(), e);
+                application.enqueue(() -> notifyCompleted(Operation.LOAD, name, false));
+            } finally {
+                runningTasks.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Exports the scene in the background in the given format. Only one export can run at a time.
+     *
+     * @return false when another export is running
+     */
+    public boolean export(String name, ExportFormat format) {
+        if (runningExport != null) {
+            log.debug("Export of {} is running, ignoring export of {}.", runningExport, name);
+            return false;
+        }
+
+        runningExport = name;
+        exportCancelled = false;
+        List<Chunk> chunks = chunkMap.snapshot();
+        Path path = directory.resolve(name + format.getExtension());
+        exportExecutor.execute(() -> {
+            boolean success = false;
+            try {
+                long start = System.nanoTime();
+                String result = format.export(path, name, chunks, () -> exportCancelled, new ProgressForwarder(Operation.EXPORT, name));
+                success = result != null && !exportCancelled;
+                if (success) {
+                    log.info("Exported {} to {} in {}ms: {}.", name, path, (System.nanoTime() - start) / 1_000_000, result);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Error exporting {}: {}", path, e.getMessage(), e);
+            } finally {
+                boolean exported = success;
+                application.enqueue(() -> onExportCompleted(name, exported));
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Cancels the running export. The listeners are notified with {@link SceneStorageListener#onCancelled}.
+     */
+    public void cancelExport() {
+        if (runningExport != null) {
+            exportCancelled = true;
+        }
+    }
+
+    /**
+     * Stops accepting new saves and loads and waits for the running save to finish. A running export is cancelled.
+     */
+    public void shutdown() {
+        cancelExport();
+        exportExecutor.shutdown();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Scene storage tasks didn't finish in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies the changes in the journal of the scene on the chunks. This is done on a separate chunk map, as the chunks
+     * are not part of the scene yet.
+     */
+    private List<Chunk> replayJournal(String name, List<Chunk> chunks) throws IOException {
+        ChunkMap replayChunkMap = new ChunkMap(chunkMap.getRadius(), chunkMap.getHeight());
+        chunks.forEach(replayChunkMap::putChunk);
+
+        Vec3i location = new Vec3i();
+        int changes = AutosaveJournal.replay(directory, name, BlocksConfig.getInstance().getBlockRegistry(), (x, y, z, block) -> {
+            location.set(x, y, z);
+            if (block == null) {
+                replayChunkMap.removeBlock(location);
+            } else {
+                replayChunkMap.addBlock(location, block);
+            }
+        });
+        log.info("Replayed {} changes from the journal of {}.", changes, name);
+
+        return new ArrayList<>(replayChunkMap.getChunks());
+    }
+
+    private void onExportCompleted(String name, boolean success) {
+        chunkMap.releaseSnapshot();
+        runningExport = null;
+        if (exportCancelled) {
+            log.info("Export of {} cancelled.", name);
+            listeners.forEach(listener -> listener.onCancelled(Operation.EXPORT, name));
+        } else {
+            notifyCompleted(Operation.EXPORT, name, success);
+        }
+    }
+
+    private void onSaveCompleted(String name, boolean success) {
+        chunkMap.releaseSnapshot();
+        runningSave = null;
+        notifyCompleted(Operation.SAVE, name, success);
+
+        if (pendingSave != null) {
+            String nextSave = pendingSave;
+            pendingSave = null;
+            save(nextSave);
+        }
+    }
+
+    private void notifyCompleted(Operation operation, String name, boolean success) {
+        listeners.forEach(listener -> listener.onCompleted(operation, name, success));
+    }
+
+    /**
+     * Passes the progress of a background task to the listeners on the render thread, only when the percentage changed.
+     */
+    private class ProgressForwarder implements DoubleConsumer {
+
+        private final Operation operation;
+        private final String name;
+        private int percentage = -1;
+
+        ProgressForwarder(Operation operation, String name) {
+            this.operation = operation;
+            this.name = name;
+        }
+
+        @Override
+        public void accept(double progress) {
+            int currentPercentage = (int) (progress * 100);
+            if (currentPercentage != percentage) {
+                percentage = currentPercentage;
+                application.enqueue(() -> listeners.forEach(listener -> listener.onProgress(operation, name, currentPercentage / 100f)));
+            }
+        }
+
+    }
+
+}
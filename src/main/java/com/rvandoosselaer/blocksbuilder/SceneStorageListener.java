@@ -0,0 +1,38 @@
+package com.rvandoosselaer.blocksbuilder;
+
+/**
+ * A listener that is notified on the render thread about the progress of the scenes that are saved, loaded and exported
+ * by the {@link SceneStorage}.
+ *
+ * @author: rvandoosselaer
+ */
+public interface SceneStorageListener {
+
+    /**
+     * Called when the snapshot of a scene that is saved is taken. Changes made after this call are not part of the save.
+     */
+    default void onSaveStarted(String name) {
+    }
+
+    /**
+     * Called when the progress of a save, load or export changed.
+     *
+     * @param progress a value between 0 and 1
+     */
+    default void onProgress(SceneStorage.Operation operation, String name, float progress) {
+    }
+
+    /**
+     * Called when a save, load or export is done.
+     *
+     * @param success false when the operation failed
+     */
+    void onCompleted(SceneStorage.Operation operation, String name, boolean success);
+
+    /**
+     * Called instead of {@link #onCompleted} when an operation is cancelled.
+     */
+    default void onCancelled(SceneStorage.Operation operation, String name) {
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.simsilica.mathd.Vec3i;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes the triangles from a chunk node that don't belong to the blocks of a section. A triangle belongs to the block
+ * that contains the center of the triangle, moved a bit in the opposite direction of the normal.
+ *
+ * @author: rvandoosselaer
+ */
+public class SectionMeshFilter {
+
+    // the distance, relative to the block scale, the center of a triangle is moved into the block
+    private static final float OFFSET = 0.01f;
+
+    /**
+     * Removes the triangles of the blocks outside the section. Geometries without triangles are removed from the node.
+     *
+     * @param node the node created by the chunk mesh generator
+     * @param min the first local block location of the section
+     * @param size the size of the section
+     * @param blockScale the scale of a block
+     */
+    public static void filter(Node node, Vec3i min, Vec3i size, float blockScale) {
+        List<Geometry> geometries = new ArrayList<>();
+        node.depthFirstTraversal(spatial -> {
+            if (spatial instanceof Geometry) {
+                geometries.add((Geometry) spatial);
+            }
+        });
+
+        for (Geometry geometry : geometries) {
+            if (filter(geometry.getMesh(), min, size, blockScale)) {
+                geometry.updateModelBound();
+            } else {
+                geometry.removeFromParent();
+            }
+        }
+    }
+
+    /**
+     * Returns false when no triangles of the mesh are kept.
+     */
+    private static boolean filter(Mesh mesh, Vec3i min, Vec3i size, float blockScale) {
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        FloatBuffer normals = mesh.getFloatBuffer(VertexBuffer.Type.Normal);
+        IndexBuffer indices = mesh.getIndexBuffer();
+        if (positions == null || normals == null || indices == null) {
+            return true;
+        }
+
+        // map the old vertex indices on the new vertex indices of the kept vertices
+        int[] vertexMap = new int[mesh.getVertexCount()];
+        Arrays.fill(vertexMap, -1);
+        int[] keptIndices = new int[indices.size()];
+        int keptIndexCount = 0;
+        int keptVertexCount = 0;
+        for (int i = 0; i + 2 < indices.size(); i += 3) {
+            if (!isInside(positions, normals, indices.get(i), indices.get(i + 1), indices.get(i + 2), min, size, blockScale)) {
+                continue;
+            }
+
+            for (int j = i; j < i + 3; j++) {
+                int vertex = indices.get(j);
+                if (vertexMap[vertex] < 0) {
+                    vertexMap[vertex] = keptVertexCount++;
+                }
+                keptIndices[keptIndexCount++] = vertexMap[vertex];
+            }
+        }
+
+        if (keptIndexCount == 0) {
+            return false;
+        }
+        if (keptIndexCount == indices.size()) {
+            return true;
+        }
+
+        for (VertexBuffer vertexBuffer : new ArrayList<>(mesh.getBufferList())) {
+            if (vertexBuffer.getBufferType() == VertexBuffer.Type.Index) {
+                continue;
+            }
+            if (!(vertexBuffer.getData() instanceof FloatBuffer)) {
+                // the chunk mesh generator only creates float buffers, don't keep buffers we can't compact
+                mesh.clearBuffer(vertexBuffer.getBufferType());
+                continue;
+            }
+
+            FloatBuffer data = (FloatBuffer) vertexBuffer.getData();
+            int components = vertexBuffer.getNumComponents();
+            float[] compacted = new float[keptVertexCount * components];
+            for (int vertex = 0; vertex < vertexMap.length; vertex++) {
+                if (vertexMap[vertex] >= 0) {
+                    for (int c = 0; c < components; c++) {
+                        compacted[vertexMap[vertex] * components + c] = data.get(vertex * components + c);
+                    }
+                }
+            }
+            mesh.clearBuffer(vertexBuffer.getBufferType());
+            mesh.setBuffer(vertexBuffer.getBufferType(), components, compacted);
+        }
+
+        mesh.clearBuffer(VertexBuffer.Type.Index);
+        if (keptVertexCount <= 0xFFFF) {
+            short[] shortIndices = new short[keptIndexCount];
+            for (int i = 0; i < keptIndexCount; i++) {
+                shortIndices[i] = (short) keptIndices[i];
+            }
+            mesh.setBuffer(VertexBuffer.Type.Index, 3, shortIndices);
+        } else {
+            mesh.setBuffer(VertexBuffer.Type.Index, 3, Arrays.copyOf(keptIndices, keptIndexCount));
+        }
+        mesh.updateCounts();
+        mesh.updateBound();
+
+        return true;
+    }
+
+    private static boolean isInside(FloatBuffer positions, FloatBuffer normals, int a, int b, int c, Vec3i min, Vec3i size, float blockScale) {
+        float offset = OFFSET * blockScale;
+        float x = (positions.get(a * 3) + positions.get(b * 3) + positions.get(c * 3)) / 3f - normals.get(a * 3) * offset;
+        float y = (positions.get(a * 3 + 1) + positions.get(b * 3 + 1) + positions.get(c * 3 + 1)) / 3f - normals.get(a * 3 + 1) * offset;
+        float z = (positions.get(a * 3 + 2) + positions.get(b * 3 + 2) + positions.get(c * 3 + 2)) / 3f - normals.get(a * 3 + 2) * offset;
+
+        int blockX = (int) Math.floor(x / blockScale);
+        int blockY = (int) Math.floor(y / blockScale);
+        int blockZ = (int) Math.floor(z / blockScale);
+        return blockX >= min.x && blockX < min.x + size.x
+                && blockY >= min.y && blockY < min.y + size.y
+                && blockZ >= min.z && blockZ < min.z + size.z;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import lombok.Getter;
+
+/**
+ * The resolution the ambient occlusion is rendered at.
+ * <ul>
+ * <li>FULL: jME's SSAOFilter at the screen resolution</li>
+ * <li>HALF and QUARTER: a {@link ScaledSSAOFilter} at 1/2 or 1/4 of the screen resolution</li>
+ * </ul>
+ *
+ * @author: rvandoosselaer
+ */
+@Getter
+public enum SsaoResolution {
+
+    FULL("Full", 1),
+    HALF("Half", 2),
+    QUARTER("Quarter", 4);
+
+    private final String displayName;
+    private final int downSampleFactor;
+
+    SsaoResolution(String displayName, int downSampleFactor) {
+        this.displayName = displayName;
+        this.downSampleFactor = downSampleFactor;
+    }
+
+}
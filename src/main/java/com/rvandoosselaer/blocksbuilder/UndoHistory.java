@@ -0,0 +1,252 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+
+import java.lang.reflect.Array;
+
+/**
+ * Keeps track of the block changes so they can be undone and redone. The changes are stored as deltas in primitive
+ * arrays: the packed block location and the id of the block before and after the change, 12 bytes per change.
+ * Changes are grouped in steps, a step is undone or redone as a whole. All changes recorded between
+ * {@link #beginStep()} and {@link #endStep()} belong to the same step, a change recorded outside a step is a step on its
+ * own. When the maximum number of steps is reached, the oldest step is dropped.
+ * The changes and the step starts are stored in ring buffers, dropping the oldest step only moves the head of the
+ * buffers. The capacity of the buffers is a power of two, a logical index is mapped to an array index with a mask.
+ *
+ * @author: rvandoosselaer
+ */
+public class UndoHistory {
+
+    // the number of bits of each axis in a packed block location
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+
+    @Getter
+    private final int maxSteps;
+    private final BlockIdTable blockIds = new BlockIdTable();
+    private long[] locations = new long[256];
+    private short[] oldIds = new short[256];
+    private short[] newIds = new short[256];
+    // the array index of the oldest change
+    private int changeHead;
+    private int changeCount;
+    // the number of changes that were dropped, the change number of the oldest change
+    private int droppedChanges;
+    // the change number of the first change of each step, a change number wraps around but the difference with the
+    // dropped changes is the index of the change
+    private int[] stepStarts = new int[64];
+    // the array index of the start of the oldest step
+    private int stepHead;
+    /**
+     * the number of recorded steps, including the steps that can be redone
+     */
+    @Getter
+    private int stepCount;
+    /**
+     * the number of steps that are applied, steps starting from this index can be redone
+     */
+    @Getter
+    private int currentStep;
+    private boolean stepOpen;
+    private boolean stepStarted;
+
+    public UndoHistory(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Starts a step, all recorded changes until {@link #endStep()} is called are undone and redone together.
+     */
+    public void beginStep() {
+        stepOpen = true;
+        stepStarted = false;
+    }
+
+    public void endStep() {
+        stepOpen = false;
+        stepStarted = false;
+    }
+
+    /**
+     * Records the change of the block at the location.
+     */
+    public void record(Vec3i blockLocation, Block oldBlock, Block newBlock) {
+        short oldId = blockIds.getId(oldBlock);
+        short newId = blockIds.getId(newBlock);
+        if (oldId == newId) {
+            return;
+        }
+
+        if (!stepOpen || !stepStarted) {
+            startStep();
+            stepStarted = stepOpen;
+        }
+
+        ensureChangeCapacity(changeCount + 1);
+        int index = getChangeIndex(changeCount);
+        locations[index] = pack(blockLocation.x, blockLocation.y, blockLocation.z);
+        oldIds[index] = oldId;
+        newIds[index] = newId;
+        changeCount++;
+    }
+
+    public boolean canUndo() {
+        return currentStep > 0;
+    }
+
+    public boolean canRedo() {
+        return currentStep < stepCount;
+    }
+
+    /**
+     * Passes the changes of the last applied step in reverse order with the old block to the block setter.
+     *
+     * @return false when there is no step to undo
+     */
+    public boolean undo(BlockSetter blockSetter) {
+        if (!canUndo()) {
+            return false;
+        }
+
+        endStep();
+        currentStep--;
+        for (int i = getStepEnd(currentStep) - 1; i >= getStepStart(currentStep); i--) {
+            int index = getChangeIndex(i);
+            apply(index, oldIds[index], blockSetter);
+        }
+
+        return true;
+    }
+
+    /**
+     * Passes the changes of the last undone step with the new block to the block setter.
+     *
+     * @return false when there is no step to redo
+     */
+    public boolean redo(BlockSetter blockSetter) {
+        if (!canRedo()) {
+            return false;
+        }
+
+        endStep();
+        for (int i = getStepStart(currentStep); i < getStepEnd(currentStep); i++) {
+            int index = getChangeIndex(i);
+            apply(index, newIds[index], blockSetter);
+        }
+        currentStep++;
+
+        return true;
+    }
+
+    public void clear() {
+        changeHead = 0;
+        changeCount = 0;
+        droppedChanges = 0;
+        stepHead = 0;
+        stepCount = 0;
+        currentStep = 0;
+        endStep();
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the recorded changes.
+     */
+    public long getMemoryUsage() {
+        return (long) changeCount * (Long.BYTES + Short.BYTES * 2) + (long) stepCount * Integer.BYTES;
+    }
+
+    private void startStep() {
+        // a new change discards the steps that could be redone
+        if (canRedo()) {
+            changeCount = getStepStart(currentStep);
+            stepCount = currentStep;
+        }
+
+        if (stepCount >= maxSteps) {
+            dropOldestStep();
+        }
+        if (stepCount == stepStarts.length) {
+            stepStarts = copyInOrder(stepStarts, new int[stepStarts.length * 2], stepHead, stepCount);
+            stepHead = 0;
+        }
+        stepStarts[getStepIndex(stepCount++)] = droppedChanges + changeCount;
+        currentStep = stepCount;
+    }
+
+    private void dropOldestStep() {
+        int removedChanges = getStepEnd(0);
+        changeHead = getChangeIndex(removedChanges);
+        changeCount -= removedChanges;
+        droppedChanges += removedChanges;
+
+        stepHead = getStepIndex(1);
+        stepCount--;
+        currentStep = Math.max(currentStep - 1, 0);
+    }
+
+    private int getStepStart(int step) {
+        return stepStarts[getStepIndex(step)] - droppedChanges;
+    }
+
+    private int getStepEnd(int step) {
+        return step + 1 < stepCount ? getStepStart(step + 1) : changeCount;
+    }
+
+    private int getStepIndex(int step) {
+        return (stepHead + step) & (stepStarts.length - 1);
+    }
+
+    private int getChangeIndex(int change) {
+        return (changeHead + change) & (locations.length - 1);
+    }
+
+    private void ensureChangeCapacity(int capacity) {
+        if (capacity > locations.length) {
+            int newLength = locations.length * 2;
+            locations = copyInOrder(locations, new long[newLength], changeHead, changeCount);
+            oldIds = copyInOrder(oldIds, new short[newLength], changeHead, changeCount);
+            newIds = copyInOrder(newIds, new short[newLength], changeHead, changeCount);
+            changeHead = 0;
+        }
+    }
+
+    /**
+     * Copies the elements of the ring buffer starting at the head to the start of the target array.
+     */
+    private static <T> T copyInOrder(T source, T target, int head, int count) {
+        int length = Array.getLength(source);
+        int first = Math.min(count, length - head);
+        System.arraycopy(source, head, target, 0, first);
+        System.arraycopy(source, 0, target, first, count - first);
+
+        return target;
+    }
+
+    private void apply(int change, short blockId, BlockSetter blockSetter) {
+        long packed = locations[change];
+        blockSetter.setBlock(unpack(packed, 2), unpack(packed, 1), unpack(packed, 0), blockIds.getBlock(blockId));
+    }
+
+    private static long pack(int x, int y, int z) {
+        return ((x & AXIS_MASK) << (AXIS_BITS * 2)) | ((y & AXIS_MASK) << AXIS_BITS) | (z & AXIS_MASK);
+    }
+
+    private static int unpack(long packed, int axis) {
+        int value = (int) ((packed >>> (AXIS_BITS * axis)) & AXIS_MASK);
+        // sign extend the value
+        return (value << (Integer.SIZE - AXIS_BITS)) >> (Integer.SIZE - AXIS_BITS);
+    }
+
+    /**
+     * Sets the block at a block location, a null block removes the block.
+     */
+    @FunctionalInterface
+    public interface BlockSetter {
+
+        void setBlock(int x, int y, int z, Block block);
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.Vector3f;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.simsilica.mathd.Vec3i;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A raycaster that walks the block grid of a {@link ChunkMap} using the voxel traversal algorithm of Amanatides and Woo.
+ * Only the blocks that the ray passes through are checked, so the cost of a raycast scales with the length of the ray
+ * in blocks and not with the triangle count of the chunk meshes. Each block is treated as a full cube.
+ * The ray is clipped to the buildable area of the scene. The ground (the y = 0 plane of the buildable area) is also
+ * hit. The layer below the ground is solid, a ray that starts below the ground hits the ground at its start.
+ * A raycast doesn't allocate any objects, a raycaster instance should only be used from a single thread.
+ *
+ * @author: rvandoosselaer
+ */
+public class VoxelRaycaster {
+
+    private static final float EPSILON = 0.0001f;
+
+    private final ChunkMap chunkMap;
+    /**
+     * the maximum length of the ray in world units
+     */
+    @Getter
+    @Setter
+    private float maxDistance = 500f;
+    // the ray interval of the last clip operation
+    private float clipMin;
+    private float clipMax;
+
+    public VoxelRaycaster(ChunkMap chunkMap) {
+        this.chunkMap = chunkMap;
+    }
+
+    /**
+     * Cast a ray and store the first block or ground hit in the result. The direction should be normalized.
+     *
+     * @return true when a block or the ground is hit, false otherwise
+     */
+    public boolean raycast(Vector3f origin, Vector3f direction, RaycastResult store) {
+        float blockScale = BlocksConfig.getInstance().getBlockScale();
+        Vec3i chunkSize = BlocksConfig.getInstance().getChunkSize();
+
+        // work in block coordinates
+        float ox = origin.x / blockScale;
+        float oy = origin.y / blockScale;
+        float oz = origin.z / blockScale;
+        float dx = direction.x;
+        float dy = direction.y;
+        float dz = direction.z;
+
+        // clip the ray to the bounding box of the buildable area
+        float minX = -chunkMap.getRadius() * chunkSize.x;
+        float maxX = (chunkMap.getRadius() + 1) * chunkSize.x;
+        float minZ = -chunkMap.getRadius() * chunkSize.z;
+        float maxZ = (chunkMap.getRadius() + 1) * chunkSize.z;
+        float maxY = chunkMap.getHeight() * chunkSize.y;
+
+        clipMin = 0;
+        clipMax = maxDistance / blockScale;
+        // include the layer below the ground on the y axis, so we always step through the ground inside the interval
+        if (!clip(ox, dx, minX, maxX) || !clip(oy, dy, -1, maxY) || !clip(oz, dz, minZ, maxZ)) {
+            return false;
+        }
+        float tStart = clipMin;
+        float tEnd = clipMax;
+
+        // start position, moved a bit inside the bounding box
+        float t = tStart + EPSILON;
+        float px = ox + dx * t;
+        float py = oy + dy * t;
+        float pz = oz + dz * t;
+
+        int x = (int) Math.floor(px);
+        int y = (int) Math.floor(py);
+        int z = (int) Math.floor(pz);
+
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+
+        // the distance along the ray to cross one block on each axis
+        float tDeltaX = stepX != 0 ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+        float tDeltaY = stepY != 0 ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+        float tDeltaZ = stepZ != 0 ? Math.abs(1f / dz) : Float.POSITIVE_INFINITY;
+
+        // the distance along the ray to the next block boundary on each axis
+        float tMaxX = stepX > 0 ? t + (x + 1 - px) / dx : stepX < 0 ? t + (x - px) / dx : Float.POSITIVE_INFINITY;
+        float tMaxY = stepY > 0 ? t + (y + 1 - py) / dy : stepY < 0 ? t + (y - py) / dy : Float.POSITIVE_INFINITY;
+        float tMaxZ = stepZ > 0 ? t + (z + 1 - pz) / dz : stepZ < 0 ? t + (z - pz) / dz : Float.POSITIVE_INFINITY;
+
+        // when the ray starts in a block, the face opposite to the main direction of the ray is used
+        int normalX = 0, normalY = 0, normalZ = 0;
+        if (Math.abs(dx) >= Math.abs(dy) && Math.abs(dx) >= Math.abs(dz)) {
+            normalX = -stepX;
+        } else if (Math.abs(dy) >= Math.abs(dz)) {
+            normalY = -stepY;
+        } else {
+            normalZ = -stepZ;
+        }
+
+        if (y < 0) {
+            // the ray starts below the ground, or enters the buildable area from below
+            store.set(x, y, z, 0, 1, 0, t * blockScale, false);
+            return true;
+        }
+
+        while (t <= tEnd) {
+            if (chunkMap.getBlock(x, y, z) != null) {
+                store.set(x, y, z, normalX, normalY, normalZ, t * blockScale, true);
+                return true;
+            }
+
+            // step to the next block
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                x += stepX;
+                t = tMaxX;
+                tMaxX += tDeltaX;
+                normalX = -stepX;
+                normalY = 0;
+                normalZ = 0;
+            } else if (tMaxY < tMaxZ) {
+                y += stepY;
+                t = tMaxY;
+                tMaxY += tDeltaY;
+                normalX = 0;
+                normalY = -stepY;
+                normalZ = 0;
+                if (y < 0) {
+                    // we went through the ground
+                    store.set(x, y, z, 0, 1, 0, t * blockScale, false);
+                    return true;
+                }
+            } else {
+                z += stepZ;
+                t = tMaxZ;
+                tMaxZ += tDeltaZ;
+                normalX = 0;
+                normalY = 0;
+                normalZ = -stepZ;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Clips the [clipMin, clipMax] interval of the ray on one axis to the [min, max] slab. Returns false when the ray
+     * misses the slab.
+     */
+    private boolean clip(float origin, float direction, float min, float max) {
+        if (direction == 0) {
+            return origin >= min && origin <= max;
+        }
+
+        float t1 = (min - origin) / direction;
+        float t2 = (max - origin) / direction;
+        clipMin = Math.max(clipMin, Math.min(t1, t2));
+        clipMax = Math.min(clipMax, Math.max(t1, t2));
+
+        return clipMin <= clipMax;
+    }
+
+}
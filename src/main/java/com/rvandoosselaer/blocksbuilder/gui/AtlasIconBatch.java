@@ -0,0 +1,216 @@
+package com.rvandoosselaer.blocksbuilder.gui;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import com.simsilica.lemur.component.AbstractGuiComponent;
+import lombok.Getter;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the icons of a fixed number of slots of a {@link BlockIconAtlas} with one geometry per atlas page, so all icons
+ * on the same page are a single draw call. Each page mesh has a quad for every slot, the quad of a slot that doesn't
+ * show an icon of the page is collapsed. Changing the icon of a slot only updates the texture coordinates and
+ * positions of the meshes, the changed meshes are uploaded once when {@link #updateMeshes()} is called.
+ * The batch doesn't take part in the layout, the position of each slot is set by the owner of the batch. The space of
+ * an icon can be reserved in a layout with an {@link IconSpace}.
+ *
+ * @author: rvandoosselaer
+ */
+public class AtlasIconBatch {
+
+    private final BlockIconAtlas atlas;
+    @Getter
+    private final Node node = new Node("icons");
+    @Getter
+    private final Vector2f iconSize;
+    @Getter
+    private final int slotCount;
+    private final Map<Integer, Page> pages = new HashMap<>();
+    private final BlockIconAtlas.Region[] regions;
+    private final float[] positions;
+
+    public AtlasIconBatch(BlockIconAtlas atlas, int slotCount, Vector2f iconSize) {
+        this.atlas = atlas;
+        this.slotCount = slotCount;
+        this.iconSize = iconSize.clone();
+        this.regions = new BlockIconAtlas.Region[slotCount];
+        this.positions = new float[slotCount * 2];
+    }
+
+    /**
+     * Shows the icon with the asset path in the slot, the slot is empty when the icon is null or isn't in the atlas.
+     */
+    public void setIcon(int slot, String iconPath) {
+        BlockIconAtlas.Region region = iconPath != null ? atlas.getRegion(iconPath) : null;
+        BlockIconAtlas.Region previous = regions[slot];
+        if (region == previous) {
+            return;
+        }
+
+        regions[slot] = region;
+        if (previous != null && (region == null || previous.getPage() != region.getPage())) {
+            getPage(previous.getPage()).clear(slot);
+        }
+        if (region != null) {
+            getPage(region.getPage()).write(slot);
+        }
+    }
+
+    /**
+     * Moves the lower left corner of the icon in the slot to the location.
+     */
+    public void setPosition(int slot, float x, float y) {
+        if (positions[slot * 2] == x && positions[slot * 2 + 1] == y) {
+            return;
+        }
+
+        positions[slot * 2] = x;
+        positions[slot * 2 + 1] = y;
+        if (regions[slot] != null) {
+            getPage(regions[slot].getPage()).write(slot);
+        }
+    }
+
+    /**
+     * Updates the meshes of the pages that changed since the last call.
+     */
+    public void updateMeshes() {
+        for (Page page : pages.values()) {
+            if (page.dirty) {
+                page.updateMesh();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of geometries that are drawn, one for each page with a visible icon.
+     */
+    public int getDrawCalls() {
+        return (int) pages.values().stream().filter(page -> page.iconCount > 0).count();
+    }
+
+    private Page getPage(int index) {
+        return pages.computeIfAbsent(index, Page::new);
+    }
+
+    /**
+     * The mesh of the icons on an atlas page.
+     */
+    private class Page {
+
+        private final Mesh mesh = new Mesh();
+        private final Geometry geometry;
+        private final FloatBuffer positionBuffer;
+        private final FloatBuffer texCoordBuffer;
+        private final boolean[] used = new boolean[slotCount];
+        private int iconCount;
+        private boolean dirty;
+
+        Page(int index) {
+            positionBuffer = BufferUtils.createFloatBuffer(slotCount * 4 * 3);
+            texCoordBuffer = BufferUtils.createFloatBuffer(slotCount * 4 * 2);
+            float[] normals = new float[slotCount * 4 * 3];
+            short[] indices = new short[slotCount * 6];
+            for (int slot = 0; slot < slotCount; slot++) {
+                for (int i = 0; i < 4; i++) {
+                    normals[(slot * 4 + i) * 3 + 2] = 1;
+                }
+                int vertex = slot * 4;
+                short[] quad = {(short) vertex, (short) (vertex + 1), (short) (vertex + 2), (short) vertex, (short) (vertex + 2), (short) (vertex + 3)};
+                System.arraycopy(quad, 0, indices, slot * 6, 6);
+            }
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, positionBuffer);
+            mesh.setBuffer(VertexBuffer.Type.TexCoord, 2, texCoordBuffer);
+            mesh.setBuffer(VertexBuffer.Type.Normal, 3, normals);
+            mesh.setBuffer(VertexBuffer.Type.Index, 3, indices);
+            mesh.updateBound();
+
+            geometry = new Geometry("icons:page" + index, mesh);
+            geometry.setMaterial(atlas.getMaterial(index).getMaterial());
+            geometry.setCullHint(Spatial.CullHint.Always);
+            node.attachChild(geometry);
+        }
+
+        void write(int slot) {
+            BlockIconAtlas.Region region = regions[slot];
+            float x = positions[slot * 2];
+            float y = positions[slot * 2 + 1];
+            positionBuffer.position(slot * 4 * 3);
+            positionBuffer.put(x).put(y).put(0)
+                    .put(x + iconSize.x).put(y).put(0)
+                    .put(x + iconSize.x).put(y + iconSize.y).put(0)
+                    .put(x).put(y + iconSize.y).put(0);
+            texCoordBuffer.position(slot * 4 * 2);
+            texCoordBuffer.put(region.getU0()).put(region.getV0())
+                    .put(region.getU1()).put(region.getV0())
+                    .put(region.getU1()).put(region.getV1())
+                    .put(region.getU0()).put(region.getV1());
+            if (!used[slot]) {
+                used[slot] = true;
+                iconCount++;
+            }
+            dirty = true;
+        }
+
+        void clear(int slot) {
+            float[] empty = new float[4 * 3];
+            positionBuffer.position(slot * 4 * 3);
+            positionBuffer.put(empty);
+            if (used[slot]) {
+                used[slot] = false;
+                iconCount--;
+            }
+            dirty = true;
+        }
+
+        void updateMesh() {
+            dirty = false;
+            positionBuffer.clear();
+            texCoordBuffer.clear();
+            mesh.getBuffer(VertexBuffer.Type.Position).setUpdateNeeded();
+            mesh.getBuffer(VertexBuffer.Type.TexCoord).setUpdateNeeded();
+            mesh.updateBound();
+            geometry.updateModelBound();
+            geometry.setCullHint(iconCount > 0 ? Spatial.CullHint.Inherit : Spatial.CullHint.Always);
+        }
+
+    }
+
+    /**
+     * A component that reserves the space of an icon of the batch in the layout of a panel, it doesn't draw anything.
+     */
+    public static class IconSpace extends AbstractGuiComponent {
+
+        private final Vector2f iconSize;
+
+        public IconSpace(Vector2f iconSize) {
+            this.iconSize = iconSize.clone();
+        }
+
+        @Override
+        public void calculatePreferredSize(Vector3f size) {
+            size.x = Math.max(size.x, iconSize.x);
+            size.y = Math.max(size.y, iconSize.y);
+        }
+
+        @Override
+        public void reshape(Vector3f pos, Vector3f size) {
+        }
+
+        @Override
+        public IconSpace clone() {
+            return new IconSpace(iconSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.rvandoosselaer.blocksbuilder.gui;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import com.simsilica.lemur.component.AbstractGuiComponent;
+import com.simsilica.lemur.core.GuiControl;
+import lombok.Getter;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A component that shows an icon of a {@link BlockIconAtlas}, centered in the available space. All icons of the same
+ * atlas page share the material and the texture, but each icon is a separate geometry and draw call. The icon can be
+ * changed with {@link #setIcon(String)}, this only updates the texture coordinates of the quad.
+ *
+ * @author: rvandoosselaer
+ */
+public class AtlasIconComponent extends AbstractGuiComponent {
+
+    private static final float Z_OFFSET = 0.01f;
+
+    private final BlockIconAtlas atlas;
+    private final Geometry icon;
+    private final Mesh quad;
+    @Getter
+    private final Vector2f iconSize;
+    @Getter
+    private String iconPath;
+
+    public AtlasIconComponent(BlockIconAtlas atlas, String iconPath, Vector2f iconSize) {
+        this.atlas = atlas;
+        this.iconSize = iconSize.clone();
+
+        quad = new Mesh();
+        quad.setBuffer(VertexBuffer.Type.Position, 3, new float[]{0, 0, 0, iconSize.x, 0, 0, iconSize.x, iconSize.y, 0, 0, iconSize.y, 0});
+        quad.setBuffer(VertexBuffer.Type.TexCoord, 2, new float[8]);
+        quad.setBuffer(VertexBuffer.Type.Normal, 3, new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1});
+        quad.setBuffer(VertexBuffer.Type.Index, 3, new short[]{0, 1, 2, 0, 2, 3});
+        quad.updateBound();
+        icon = new Geometry("icon:" + iconPath, quad);
+
+        setIcon(iconPath);
+    }
+
+    /**
+     * Shows the icon with the asset path, the icon is hidden when it isn't in the atlas.
+     */
+    public void setIcon(String iconPath) {
+        this.iconPath = iconPath;
+        BlockIconAtlas.Region region = atlas.getRegion(iconPath);
+        if (region == null) {
+            icon.setCullHint(Spatial.CullHint.Always);
+            return;
+        }
+
+        FloatBuffer texCoords = (FloatBuffer) quad.getBuffer(VertexBuffer.Type.TexCoord).getData();
+        texCoords.clear();
+        texCoords.put(region.getU0()).put(region.getV0())
+                .put(region.getU1()).put(region.getV0())
+                .put(region.getU1()).put(region.getV1())
+                .put(region.getU0()).put(region.getV1());
+        texCoords.flip();
+        quad.getBuffer(VertexBuffer.Type.TexCoord).setUpdateNeeded();
+        icon.setMaterial(atlas.getMaterial(region.getPage()).getMaterial());
+        icon.setCullHint(Spatial.CullHint.Inherit);
+    }
+
+    @Override
+    public void attach(GuiControl parent) {
+        super.attach(parent);
+        getNode().attachChild(icon);
+    }
+
+    @Override
+    public void detach(GuiControl parent) {
+        getNode().detachChild(icon);
+        super.detach(parent);
+    }
+
+    @Override
+    public void calculatePreferredSize(Vector3f size) {
+        size.x = Math.max(size.x, iconSize.x);
+        size.y = Math.max(size.y, iconSize.y);
+        size.z += Z_OFFSET;
+    }
+
+    @Override
+    public void reshape(Vector3f pos, Vector3f size) {
+        icon.setLocalTranslation(pos.x + (size.x - iconSize.x) * 0.5f, pos.y - (size.y + iconSize.y) * 0.5f, pos.z);
+        pos.z += Z_OFFSET;
+        size.z -= Z_OFFSET;
+    }
+
+    @Override
+    public AtlasIconComponent clone() {
+        return new AtlasIconComponent(atlas, iconPath, iconSize);
+    }
+
+}
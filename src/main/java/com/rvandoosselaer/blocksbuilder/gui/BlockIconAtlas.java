@@ -0,0 +1,330 @@
+package com.rvandoosselaer.blocksbuilder.gui;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.AssetNotFoundException;
+import com.jme3.asset.TextureKey;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.texture.image.ImageRaster;
+import com.jme3.util.BufferUtils;
+import com.simsilica.lemur.GuiGlobals;
+import com.simsilica.lemur.core.GuiMaterial;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A texture atlas with the block icons. The icons are packed in cells on one or more pages, so all icons on the screen
+ * share the same texture and material. An {@link AtlasIconComponent} draws a single icon as its own geometry, an
+ * {@link AtlasIconBatch} draws the icons on a page with one geometry. The pages hold the same pixels as the separate
+ * icon textures, so the atlas doesn't use less texture memory.
+ * Packing decodes all icon images, the packed pages are cached in a file. The cache is used when the checksum of the
+ * icon files didn't change.
+ *
+ * @author: rvandoosselaer
+ */
+@Slf4j
+public class BlockIconAtlas {
+
+    public static final int PAGE_SIZE = 2048;
+    public static final int CELL_SIZE = 64;
+
+    private static final int MAGIC = 0x42424941; // BBIA
+    private static final int VERSION = 1;
+    private static final int CELLS_PER_ROW = PAGE_SIZE / CELL_SIZE;
+    private static final int CELLS_PER_PAGE = CELLS_PER_ROW * CELLS_PER_ROW;
+
+    private final List<Texture2D> pages;
+    private final Map<String, Region> regions;
+    private final Map<Integer, GuiMaterial> materials = new HashMap<>();
+
+    private BlockIconAtlas(List<Texture2D> pages, Map<String, Region> regions) {
+        this.pages = pages;
+        this.regions = regions;
+    }
+
+    /**
+     * Creates the atlas with the icons on the asset paths. The pages are loaded from the cache file when the icons
+     * didn't change, otherwise the icons are packed and the cache file is updated.
+     */
+    public static BlockIconAtlas create(AssetManager assetManager, Collection<String> iconPaths, Path cacheFile) {
+        List<String> paths = new ArrayList<>(new LinkedHashSet<>(iconPaths));
+        long checksum = getChecksum(assetManager, paths);
+
+        if (Files.exists(cacheFile)) {
+            try {
+                BlockIconAtlas atlas = read(cacheFile, checksum);
+                if (atlas != null) {
+                    log.debug("Loaded {} block icons from {}", atlas.regions.size(), cacheFile);
+                    return atlas;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error reading icon atlas {}: {}", cacheFile, e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        BlockIconAtlas atlas = pack(assetManager, paths);
+        log.debug("Packed {} block icons on {} pages in {}ms", atlas.regions.size(), atlas.pages.size(), (System.nanoTime() - start) / 1_000_000);
+        try {
+            atlas.write(cacheFile, checksum);
+        } catch (IOException e) {
+            log.warn("Error writing icon atlas {}: {}", cacheFile, e.getMessage());
+        }
+
+        return atlas;
+    }
+
+    /**
+     * Returns the region of the icon or null when the icon isn't in the atlas.
+     */
+    public Region getRegion(String iconPath) {
+        return regions.get(iconPath);
+    }
+
+    /**
+     * Returns the shared material of a page.
+     */
+    public GuiMaterial getMaterial(int page) {
+        return materials.computeIfAbsent(page, index -> {
+            GuiMaterial material = GuiGlobals.getInstance().createMaterial(pages.get(index), false);
+            material.getMaterial().getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
+            return material;
+        });
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    private static BlockIconAtlas pack(AssetManager assetManager, List<String> paths) {
+        List<ImageRaster> rasters = new ArrayList<>();
+        List<Texture2D> pages = new ArrayList<>();
+        Map<String, Region> regions = new HashMap<>();
+        ColorRGBA color = new ColorRGBA();
+        int cell = 0;
+        for (String path : paths) {
+            Image icon;
+            try {
+                TextureKey key = new TextureKey(path);
+                key.setGenerateMips(false);
+                icon = assetManager.loadTexture(key).getImage();
+            } catch (AssetNotFoundException e) {
+                log.warn("Block icon {} not found", path);
+                continue;
+            }
+
+            int page = cell / CELLS_PER_PAGE;
+            if (page == pages.size()) {
+                int cellsLeft = paths.size() - cell;
+                int rows = Math.min((cellsLeft + CELLS_PER_ROW - 1) / CELLS_PER_ROW, CELLS_PER_ROW);
+                Texture2D texture = createPage(PAGE_SIZE, rows * CELL_SIZE, null);
+                pages.add(texture);
+                rasters.add(ImageRaster.create(texture.getImage()));
+            }
+
+            int x = (cell % CELLS_PER_ROW) * CELL_SIZE;
+            int y = ((cell % CELLS_PER_PAGE) / CELLS_PER_ROW) * CELL_SIZE;
+            copy(ImageRaster.create(icon), rasters.get(page), x, y, color);
+            regions.put(path, new Region(path, page, x, y));
+            cell++;
+        }
+
+        for (Texture2D page : pages) {
+            page.getImage().setUpdateNeeded();
+        }
+
+        return new BlockIconAtlas(pages, regions).withRegionCoordinates();
+    }
+
+    /**
+     * Copies the icon into the cell, an icon of another size is scaled with the nearest pixel.
+     */
+    private static void copy(ImageRaster icon, ImageRaster page, int x, int y, ColorRGBA color) {
+        for (int py = 0; py < CELL_SIZE; py++) {
+            int iy = py * icon.getHeight() / CELL_SIZE;
+            for (int px = 0; px < CELL_SIZE; px++) {
+                int ix = px * icon.getWidth() / CELL_SIZE;
+                page.setPixel(x + px, y + py, icon.getPixel(ix, iy, color));
+            }
+        }
+    }
+
+    private static Texture2D createPage(int width, int height, ByteBuffer data) {
+        if (data == null) {
+            data = BufferUtils.createByteBuffer(width * height * 4);
+        }
+        Texture2D texture = new Texture2D(new Image(Image.Format.RGBA8, width, height, data, ColorSpace.sRGB));
+        texture.setMinFilter(Texture.MinFilter.BilinearNoMipMaps);
+        texture.setMagFilter(Texture.MagFilter.Bilinear);
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+
+        return texture;
+    }
+
+    private BlockIconAtlas withRegionCoordinates() {
+        regions.values().forEach(region -> region.calculateCoordinates(pages.get(region.page).getImage()));
+        return this;
+    }
+
+    /**
+     * Returns a checksum of the icon paths and the content of the icon files.
+     */
+    private static long getChecksum(AssetManager assetManager, List<String> paths) {
+        CRC32 crc = new CRC32();
+        crc.update(VERSION);
+        crc.update(CELL_SIZE);
+        byte[] buffer = new byte[8192];
+        for (String path : paths) {
+            crc.update(path.getBytes(StandardCharsets.UTF_8));
+            AssetInfo info = assetManager.locateAsset(new AssetKey<>(path));
+            if (info == null) {
+                crc.update(0);
+                continue;
+            }
+            try (InputStream in = info.openStream()) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                crc.update(1);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the atlas from the cache file, returns null when the checksum doesn't match.
+     */
+    private static BlockIconAtlas read(Path file, long checksum) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum) {
+                return null;
+            }
+
+            int pageCount = in.readInt();
+            List<Texture2D> pages = new ArrayList<>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                int width = in.readInt();
+                int height = in.readInt();
+                byte[] data = new byte[width * height * 4];
+                in.readFully(data);
+                ByteBuffer buffer = BufferUtils.createByteBuffer(data.length);
+                buffer.put(data).flip();
+                pages.add(createPage(width, height, buffer));
+            }
+
+            int regionCount = in.readInt();
+            Map<String, Region> regions = new HashMap<>();
+            for (int i = 0; i < regionCount; i++) {
+                Region region = new Region(in.readUTF(), in.readInt(), in.readInt(), in.readInt());
+                if (region.page < 0 || region.page >= pageCount) {
+                    throw new IOException("Invalid page " + region.page);
+                }
+                regions.put(region.path, region);
+            }
+
+            return new BlockIconAtlas(pages, regions).withRegionCoordinates();
+        }
+    }
+
+    /**
+     * Writes the atlas to a temporary file that replaces the cache file.
+     */
+    private void write(Path file, long checksum) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(checksum);
+                out.writeInt(pages.size());
+                byte[] data = new byte[0];
+                for (Texture2D page : pages) {
+                    Image image = page.getImage();
+                    ByteBuffer buffer = image.getData(0).duplicate();
+                    buffer.rewind();
+                    if (data.length != buffer.remaining()) {
+                        data = new byte[buffer.remaining()];
+                    }
+                    buffer.get(data);
+                    out.writeInt(image.getWidth());
+                    out.writeInt(image.getHeight());
+                    out.write(data);
+                }
+                out.writeInt(regions.size());
+                for (Region region : regions.values()) {
+                    out.writeUTF(region.path);
+                    out.writeInt(region.page);
+                    out.writeInt(region.x);
+                    out.writeInt(region.y);
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * The location of an icon in the atlas. The texture coordinates are moved half a pixel inwards, so the bilinear
+     * filter doesn't sample the neighbouring icons.
+     */
+    @Getter
+    public static class Region {
+
+        private final String path;
+        private final int page;
+        private final int x;
+        private final int y;
+        private float u0;
+        private float v0;
+        private float u1;
+        private float v1;
+
+        private Region(String path, int page, int x, int y) {
+            this.path = path;
+            this.page = page;
+            this.x = x;
+            this.y = y;
+        }
+
+        private void calculateCoordinates(Image image) {
+            u0 = (x + 0.5f) / image.getWidth();
+            v0 = (y + 0.5f) / image.getHeight();
+            u1 = (x + CELL_SIZE - 0.5f) / image.getWidth();
+            v1 = (y + CELL_SIZE - 0.5f) / image.getHeight();
+        }
+
+    }
+
+}
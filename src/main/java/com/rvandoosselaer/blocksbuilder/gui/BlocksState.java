@@ -5,11 +5,14 @@ import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.BaseAppState;
 import com.jme3.math.Vector2f;
 import com.jme3.scene.Node;
+import com.jme3.system.JmeSystem;
 import com.rvandoosselaer.blocks.Block;
 import com.rvandoosselaer.blocks.BlockIds;
 import com.rvandoosselaer.blocks.BlockRegistry;
 import com.rvandoosselaer.blocks.BlocksConfig;
 import com.rvandoosselaer.blocks.TypeIds;
+import com.rvandoosselaer.blocksbuilder.BlockRotations;
+import com.rvandoosselaer.blocksbuilder.BlockSearchIndex;
 import com.rvandoosselaer.blocksbuilder.BuilderBlock;
 import com.rvandoosselaer.blocksbuilder.BuilderState;
 import com.rvandoosselaer.jmeutils.gui.GuiUtils;
@@ -18,14 +21,13 @@ import com.simsilica.lemur.Button;
 import com.simsilica.lemur.Container;
 import com.simsilica.lemur.FillMode;
 import com.simsilica.lemur.GridPanel;
-import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.HAlignment;
 import com.simsilica.lemur.Label;
 import com.simsilica.lemur.Panel;
 import com.simsilica.lemur.TextField;
 import com.simsilica.lemur.VAlignment;
+import com.simsilica.lemur.ValueRenderer;
 import com.simsilica.lemur.component.BorderLayout;
-import com.simsilica.lemur.component.IconComponent;
 import com.simsilica.lemur.component.SpringGridLayout;
 import com.simsilica.lemur.core.GuiControl;
 import com.simsilica.lemur.core.VersionedReference;
@@ -40,12 +42,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * An AppState that renders the blocks window.
@@ -56,11 +62,16 @@ import java.util.stream.Collectors;
 public class BlocksState extends BaseAppState {
 
     private static final int COLS = 4;
+    private static final int VISIBLE_ROWS = 5;
+    private static final Vector2f ICON_SIZE = new Vector2f(50, 50);
+    private static final String ICON_ATLAS_FILE = "iconatlas";
+    // the location of the icon atlas in earlier versions
+    private static final String LEGACY_ICON_ATLAS_FILE = ".iconatlas";
     @Getter
     @Setter
     private Node node;
     private Container blocksContainer;
-    private ExtendedGridPanel blocksGrid;
+    private ExtendedGridPanel<BuilderBlock> blocksGrid;
     private String filterPlaceholderText = "Filter...";
     private VersionedReference<DocumentModel> filterRef;
     private Label selectedBlockLabel;
@@ -69,10 +80,19 @@ public class BlocksState extends BaseAppState {
     private VersionedReference<BuilderBlock> selectedBlockRef;
     private GridPanel recentlyUsedBlocksGrid;
     private List<BuilderBlock> blocks;
+    private Map<String, BuilderBlock> blocksByName;
+    private BlockSearchIndex searchIndex;
+    private BlockRotations blockRotations;
+    private BlockButtonRenderer blockButtonRenderer = new BlockButtonRenderer();
+    private int screenWidth;
+    private int screenHeight;
+    private BlockIconAtlas iconAtlas;
 
     @Override
     protected void initialize(Application app) {
         builderState = getState(BuilderState.class);
+        iconAtlas = BlockIconAtlas.create(app.getAssetManager(), getIconPaths(), getCacheDirectory().resolve(ICON_ATLAS_FILE));
+        deleteLegacyIconAtlas();
         // set the default block
         selectedBlockRef = builderState.getSelectedBlock().createReference();
         builderState.setSelectedBlock(getDefaultBlock());
@@ -87,6 +107,25 @@ public class BlocksState extends BaseAppState {
     protected void cleanup(Application app) {
     }
 
+    /**
+     * Returns the cache directory in the storage folder of the user. The icon atlas is a cache of the application, it
+     * isn't stored in the scene directory that can be shared.
+     */
+    private static Path getCacheDirectory() {
+        return Paths.get(JmeSystem.getStorageFolder().getAbsolutePath(), "cache", "BlocksBuilder");
+    }
+
+    private void deleteLegacyIconAtlas() {
+        Path legacyIconAtlas = builderState.getSceneDirectory().resolve(LEGACY_ICON_ATLAS_FILE);
+        try {
+            if (Files.deleteIfExists(legacyIconAtlas)) {
+                log.info("Deleted icon atlas {}, the atlas is cached in {}", legacyIconAtlas, getCacheDirectory());
+            }
+        } catch (IOException e) {
+            log.warn("Error deleting icon atlas {}: {}", legacyIconAtlas, e.getMessage());
+        }
+    }
+
     @Override
     protected void onEnable() {
         node.attachChild(blocksContainer);
@@ -99,54 +138,53 @@ public class BlocksState extends BaseAppState {
 
     @Override
     public void update(float tpf) {
-        layout(blocksContainer);
+        // the container is only positioned again when the screen is resized or when the content changes
+        boolean layout = screenWidth != GuiUtils.getWidth() || screenHeight != GuiUtils.getHeight();
 
         // update the filter
         if (filterRef.update()) {
             filterBlocks(filterRef.get().getText());
+            layout = true;
         }
 
         // update the selected block
         if (selectedBlockRef.update()) {
             selectedBlockLabel.setText(selectedBlockRef.get().getName());
-            ((IconComponent) selectedBlockImage.getIcon()).setImageTexture(GuiGlobals.getInstance().loadTexture(getIconPath(selectedBlockRef.get().getBlock()), false, false));
+            ((AtlasIconComponent) selectedBlockImage.getIcon()).setIcon(getIconPath(selectedBlockRef.get().getBlock()));
+            layout = true;
+        }
+
+        if (layout) {
+            layout(blocksContainer);
         }
     }
 
-    public Optional<Block> getRotatedBlock(Block block) {
-        for (BuilderBlock builderBlock : getBlocks()) {
-            Optional<Block> nextBlock = builderBlock.getNextBlock(block);
-            if (nextBlock.isPresent()) {
-                return nextBlock;
-            }
+    /**
+     * Returns the lookup table with the next rotation of each block.
+     */
+    public BlockRotations getBlockRotations() {
+        if (blockRotations == null) {
+            blockRotations = new BlockRotations(getBlocks());
         }
 
-        return Optional.empty();
+        return blockRotations;
     }
 
     private Container layout(Container container) {
         int margin = 10;
+        screenWidth = GuiUtils.getWidth();
+        screenHeight = GuiUtils.getHeight();
         container.setLocalTranslation(GuiUtils.getWidth() - container.getPreferredSize().getX() - margin, GuiUtils.getHeight() - 10, 99);
 
         return container;
     }
 
     private void filterBlocks(String text) {
-        if (text == null || text.isEmpty() || text.equals(filterPlaceholderText)) {
-            return;
+        List<BuilderBlock> result = getSearchIndex().search(text == null || text.equals(filterPlaceholderText) ? "" : text);
+        // the visible cells only need to be refreshed when the result is different
+        if (!result.equals(blocksGrid.getItems())) {
+            blocksGrid.setItems(result);
         }
-
-        String[] split = text.split("\\s+");
-
-        // filter out the blocks that don't match per word.
-        List<BuilderBlock> filteredBlocks = new ArrayList<>(getBlocks());
-        for (String s : split) {
-            filteredBlocks.removeAll(getBlocks().stream()
-                    .filter(block -> !block.getName().contains(s))
-                    .collect(Collectors.toList()));
-        }
-
-        blocksGrid.setModel(new ArrayGridModel<>(createBlocksGridArray(filteredBlocks, COLS)));
     }
 
     private Container createBlocksContainer() {
@@ -161,7 +199,9 @@ public class BlocksState extends BaseAppState {
         Button clearFilter = filterWrapper.addChild(new Button("Clear"), BorderLayout.Position.East);
         clearFilter.addClickCommands(source -> clearFilter(filter));
 
-        blocksGrid = container.addChild(new ExtendedGridPanel(new ArrayGridModel<>(createBlocksGridArray(getBlocks(), COLS))));
+        blocksGrid = container.addChild(new ExtendedGridPanel<>(blockButtonRenderer, VISIBLE_ROWS, COLS));
+        blocksGrid.setIcons(iconAtlas, builderBlock -> getIconPath(builderBlock.getBlock()), ICON_SIZE);
+        blocksGrid.setItems(getBlocks());
 
         container.addChild(new Label("Selected block:", new ElementId("title")));
         Container selectedBlockWrapper = container.addChild(new Container(new SpringGridLayout(Axis.X, Axis.Y, FillMode.First, FillMode.Even), new ElementId("wrapper")));
@@ -180,21 +220,17 @@ public class BlocksState extends BaseAppState {
 
     private void clearFilter(TextField filter) {
         filter.setText(filterPlaceholderText);
-        blocksGrid.setModel(new ArrayGridModel<>(createBlocksGridArray(getBlocks(), COLS)));
+        filterBlocks(filterPlaceholderText);
     }
 
     private BuilderBlock getDefaultBlock() {
-        for (BuilderBlock builderBlock : getBlocks()) {
-            if (builderBlock.getName().equals(BlockIds.getName(TypeIds.GRASS, "cube"))) {
-                return builderBlock;
-            }
-        }
-        return null;
+        getBlocks();
+        return blocksByName.get(BlockIds.getName(TypeIds.GRASS, "cube"));
     }
 
     private List<BuilderBlock> getBlocks() {
         if (blocks == null) {
-            blocks = new ArrayList<>();
+            blocksByName = new HashMap<>();
 
             BlockRegistry blockRegistry = BlocksConfig.getInstance().getBlockRegistry();
             for (Block block : blockRegistry.getAll()) {
@@ -205,38 +241,23 @@ public class BlocksState extends BaseAppState {
                 }
                 String name = block.getType() + "-" + genericShape;
 
-                // find the matching BuilderBlock
-                BuilderBlock builderBlock = blocks.stream().filter(b -> name.equals(b.getName())).findFirst().orElse(new BuilderBlock(name));
-                if (builderBlock.getBlock() == null) {
-                    // no previous builder block was found
-                    blocks.add(builderBlock);
-                }
-                builderBlock.addBlock(block);
+                // find the matching BuilderBlock or create a new one
+                blocksByName.computeIfAbsent(name, BuilderBlock::new).addBlock(block);
             }
 
+            blocks = new ArrayList<>(blocksByName.values());
             blocks.sort(Comparator.comparing(BuilderBlock::getName));
         }
 
         return blocks;
     }
 
-    private Panel[][] createBlocksGridArray(Collection<BuilderBlock> blocks, int cols) {
-        int rows = (int) Math.ceil((double) blocks.size() / cols);
-        Panel[][] grid = new Panel[rows][cols];
-
-        int col = 0;
-        int row = 0;
-        for (BuilderBlock builderBlock : blocks) {
-            Button button = getBlockButton(builderBlock);
-            grid[row][col++] = button;
-
-            if (col >= cols) {
-                col = 0;
-                row++;
-            }
+    private BlockSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new BlockSearchIndex(getBlocks());
         }
 
-        return grid;
+        return searchIndex;
     }
 
     private void onSelectBlock(BuilderBlock builderBlock) {
@@ -283,28 +304,69 @@ public class BlocksState extends BaseAppState {
         }
     }
 
+    /**
+     * Creates a button of the recently used blocks. These buttons aren't cells of the blocks grid and always show the
+     * same block.
+     */
     private Button getBlockButton(BuilderBlock builderBlock) {
         Button button = new Button("");
-        IconComponent icon = getBlockIcon(builderBlock.getBlock());
-        button.setIcon(icon);
-        button.addClickCommands(btn -> onSelectBlock(builderBlock));
+        button.setIcon(getBlockIcon(builderBlock.getBlock()));
         button.setUserData("id", builderBlock.getName());
+        button.addClickCommands(source -> onSelectBlock(builderBlock));
 
         return button;
     }
 
-    private IconComponent getBlockIcon(Block block) {
-        IconComponent icon = new IconComponent(getIconPath(block));
-        icon.setHAlignment(HAlignment.Center);
-        icon.setVAlignment(VAlignment.Center);
-        icon.setIconSize(new Vector2f(50, 50));
-        return icon;
+    private AtlasIconComponent getBlockIcon(Block block) {
+        return new AtlasIconComponent(iconAtlas, getIconPath(block), ICON_SIZE);
+    }
+
+    private List<String> getIconPaths() {
+        List<String> iconPaths = new ArrayList<>();
+        for (BuilderBlock builderBlock : getBlocks()) {
+            for (Block block : builderBlock.getBlocks()) {
+                iconPaths.add(getIconPath(block));
+            }
+        }
+
+        return iconPaths;
     }
 
     private String getIconPath(Block block) {
         return "/Textures/blocks/" + block.getName() + ".png";
     }
 
+    /**
+     * Renders a builder block as a button of the blocks grid. The icons of the blocks are drawn by the grid, the button
+     * only reserves the space of the icon. The buttons are reused for other blocks when scrolling, the block of a button
+     * is looked up in the grid when it's clicked. A button that doesn't show a block is ignored.
+     */
+    private class BlockButtonRenderer implements ValueRenderer<BuilderBlock> {
+
+        @Override
+        public void configureStyle(ElementId elementId, String style) {
+        }
+
+        @Override
+        public Panel getView(BuilderBlock builderBlock, boolean selected, Panel existing) {
+            Button button = (Button) existing;
+            if (button == null) {
+                button = new Button("");
+                button.setIcon(new AtlasIconBatch.IconSpace(ICON_SIZE));
+                button.addClickCommands(source -> {
+                    BuilderBlock clickedBlock = blocksGrid.getItem(source);
+                    if (clickedBlock != null) {
+                        onSelectBlock(clickedBlock);
+                    }
+                });
+            }
+            button.setUserData("id", builderBlock.getName());
+
+            return button;
+        }
+
+    }
+
     @RequiredArgsConstructor
     private static class FilterTextFieldFocusListener implements FocusChangeListener {
 
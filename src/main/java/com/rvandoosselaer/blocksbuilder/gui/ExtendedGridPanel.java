@@ -1,45 +1,66 @@
 package com.rvandoosselaer.blocksbuilder.gui;
 
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
 import com.simsilica.lemur.Axis;
+import com.simsilica.lemur.Button;
 import com.simsilica.lemur.Container;
 import com.simsilica.lemur.DefaultRangedValueModel;
 import com.simsilica.lemur.GridPanel;
 import com.simsilica.lemur.Panel;
 import com.simsilica.lemur.RangedValueModel;
 import com.simsilica.lemur.Slider;
+import com.simsilica.lemur.ValueRenderer;
 import com.simsilica.lemur.component.BorderLayout;
 import com.simsilica.lemur.core.VersionedReference;
-import com.simsilica.lemur.grid.GridModel;
+import com.simsilica.lemur.grid.ArrayGridModel;
 import com.simsilica.lemur.style.ElementId;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
 /**
- * A GridPanel implementation that adds a vertical slider to scroll through the grid.
+ * A GridPanel implementation that adds a vertical slider to scroll through the grid. The items are laid out row by row.
+ * Only the cells of the visible rows are created, when scrolling or when the items change the cells are passed to the
+ * renderer again to show the new item. Cells without an item are hidden, so the size of the grid doesn't change. A
+ * hidden cell can still be picked, so a hidden button is disabled and {@link #getItem(Panel)} returns null for it.
+ * The icons of the items can be drawn by an {@link AtlasIconBatch}, with one draw call per atlas page for all cells
+ * instead of one per cell. The icons are centered in the cells, the renderer only reserves the space of the icon.
  *
  * @author: rvandoosselaer
  */
-public class ExtendedGridPanel extends Container {
+public class ExtendedGridPanel<T> extends Container {
 
     public static final String ELEMENT_ID = "extendedGridPanel";
 
     private Slider slider;
     private GridPanel gridPanel;
+    private ArrayGridModel<Panel> cells;
+    private ValueRenderer<T> renderer;
+    private List<T> items = Collections.emptyList();
     private RangedValueModel indexModel;
     private VersionedReference<Double> indexModelRef;
+    private int visibleRows;
+    private int columns;
+    private int row;
     private int maxIndex;
     private int minIndex = 0;
+    private BlockIconAtlas iconAtlas;
+    private Function<T, String> iconPaths;
+    private Vector2f iconSize;
+    private AtlasIconBatch iconBatch;
 
-    public ExtendedGridPanel(GridModel<Panel> model) {
-        this(model, Math.max(0, Math.min(5, model.getRowCount())), model.getColumnCount());
-    }
-
-    public ExtendedGridPanel(GridModel<Panel> model, int visibleRows, int visibleColumns) {
+    public ExtendedGridPanel(ValueRenderer<T> renderer, int visibleRows, int columns) {
         super(new BorderLayout(), new ElementId(ELEMENT_ID));
+        this.renderer = renderer;
 
-        gridPanel = addChild(new GridPanel(model), BorderLayout.Position.Center);
-        gridPanel.setVisibleSize(visibleRows, visibleColumns);
-
-        int rows = model.getRowCount();
-        maxIndex = Math.max(0, rows - visibleRows);
+        cells = new ArrayGridModel<>(new Panel[visibleRows][columns]);
+        gridPanel = addChild(new GridPanel(cells), BorderLayout.Position.Center);
+        gridPanel.setVisibleSize(visibleRows, columns);
+        this.visibleRows = visibleRows;
+        this.columns = columns;
 
         indexModel = new DefaultRangedValueModel();
         indexModelRef = indexModel.createReference();
@@ -55,27 +76,152 @@ public class ExtendedGridPanel extends Container {
         super.updateLogicalState(tpf);
 
         if (indexModelRef.update()) {
-            int index = (int) (maxIndex - indexModel.getValue());
-            gridPanel.setRow(index);
+            int index = (int) Math.round(maxIndex - indexModel.getValue());
+            if (index != row) {
+                row = index;
+                refreshCells();
+            }
         }
 
+        if (iconBatch != null) {
+            refreshIconPositions();
+            iconBatch.updateMeshes();
+        }
+    }
+
+    /**
+     * Draws the icons of the items with a batch of the atlas. The icon path of an item is returned by the function, an
+     * item without an icon returns null.
+     */
+    public void setIcons(BlockIconAtlas atlas, Function<T, String> iconPaths, Vector2f iconSize) {
+        this.iconAtlas = atlas;
+        this.iconPaths = iconPaths;
+        this.iconSize = iconSize.clone();
+        createIconBatch();
+        refreshCells();
     }
 
-    public void setModel(GridModel<Panel> model) {
-        gridPanel.setModel(model);
+    public AtlasIconBatch getIconBatch() {
+        return iconBatch;
+    }
+
+    /**
+     * Sets the items of the grid and scrolls back to the first row.
+     */
+    public void setItems(List<T> items) {
+        this.items = items;
+        row = 0;
         refreshSliderIndex();
         indexModel.setValue(maxIndex);
+        refreshCells();
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the item shown in the cell, or null when the cell doesn't show an item.
+     */
+    public T getItem(Panel cell) {
+        for (int r = 0; r < visibleRows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (cells.getCell(r, c, null) == cell) {
+                    int index = (row + r) * columns + c;
+                    return index < items.size() ? items.get(index) : null;
+                }
+            }
+        }
+
+        return null;
     }
 
     public void setVisibleSize(int rows, int cols) {
+        visibleRows = rows;
+        columns = cols;
+        cells = new ArrayGridModel<>(new Panel[rows][cols]);
+        gridPanel.setModel(cells);
         gridPanel.setVisibleSize(rows, cols);
+        if (iconBatch != null) {
+            createIconBatch();
+        }
         refreshSliderIndex();
+        refreshCells();
+    }
+
+    /**
+     * Binds the items of the visible rows to the cells.
+     */
+    private void refreshCells() {
+        for (int r = 0; r < visibleRows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int index = (row + r) * columns + c;
+                Panel cell = cells.getCell(r, c, null);
+                if (index >= items.size()) {
+                    if (cell != null) {
+                        cell.setCullHint(Spatial.CullHint.Always);
+                        setEnabled(cell, false);
+                    }
+                    if (iconBatch != null) {
+                        iconBatch.setIcon(r * columns + c, null);
+                    }
+                    continue;
+                }
+
+                if (iconBatch != null) {
+                    iconBatch.setIcon(r * columns + c, iconPaths.apply(items.get(index)));
+                }
+                Panel view = renderer.getView(items.get(index), false, cell);
+                view.setCullHint(Spatial.CullHint.Inherit);
+                setEnabled(view, true);
+                if (view != cell) {
+                    cells.setCell(r, c, view);
+                }
+            }
+        }
+    }
+
+    private void createIconBatch() {
+        if (iconBatch != null) {
+            iconBatch.getNode().removeFromParent();
+        }
+        iconBatch = new AtlasIconBatch(iconAtlas, visibleRows * columns, iconSize);
+        gridPanel.attachChild(iconBatch.getNode());
+    }
+
+    /**
+     * Centers the icons in the cells. The batch only updates its meshes when a cell moved or was resized. The icons are
+     * drawn on top of the cells.
+     */
+    private void refreshIconPositions() {
+        float z = 0;
+        for (int r = 0; r < visibleRows; r++) {
+            for (int c = 0; c < columns; c++) {
+                Panel cell = cells.getCell(r, c, null);
+                if (cell == null) {
+                    continue;
+                }
+                Vector3f position = cell.getLocalTranslation();
+                Vector3f size = cell.getSize();
+                iconBatch.setPosition(r * columns + c, position.x + (size.x - iconSize.x) * 0.5f, position.y - (size.y + iconSize.y) * 0.5f);
+                z = Math.max(z, position.z + size.z);
+            }
+        }
+        if (iconBatch.getNode().getLocalTranslation().z != z) {
+            iconBatch.getNode().setLocalTranslation(0, 0, z);
+        }
+    }
+
+    private static void setEnabled(Panel cell, boolean enabled) {
+        if (cell instanceof Button) {
+            ((Button) cell).setEnabled(enabled);
+        }
     }
 
     private void refreshSliderIndex() {
-        int count = gridPanel.getModel().getRowCount();
-        int visible = gridPanel.getVisibleRows();
-        maxIndex = Math.max(0, count - visible);
+        int count = (items.size() + columns - 1) / columns;
+        maxIndex = Math.max(0, count - visibleRows);
+        row = Math.min(row, maxIndex);
 
         // Because the slider is upside down, we have to
         // do some math if we want our base not to move as
@@ -8,7 +8,13 @@ import com.jme3.renderer.Limits;
 import com.jme3.scene.Node;
 import com.rvandoosselaer.blocksbuilder.BuilderState;
 import com.rvandoosselaer.blocksbuilder.CameraState;
+import com.rvandoosselaer.blocksbuilder.ExportFormat;
 import com.rvandoosselaer.blocksbuilder.PostProcessingState;
+import com.rvandoosselaer.blocksbuilder.QualityGovernorState;
+import com.rvandoosselaer.blocksbuilder.QualityTier;
+import com.rvandoosselaer.blocksbuilder.SceneStorage;
+import com.rvandoosselaer.blocksbuilder.SceneStorageListener;
+import com.rvandoosselaer.blocksbuilder.SsaoResolution;
 import com.rvandoosselaer.jmeutils.gui.GuiUtils;
 import com.simsilica.lemur.Action;
 import com.simsilica.lemur.Axis;
@@ -23,7 +29,6 @@ import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.HAlignment;
 import com.simsilica.lemur.Insets3f;
 import com.simsilica.lemur.Label;
-import com.simsilica.lemur.ListBox;
 import com.simsilica.lemur.OptionPanel;
 import com.simsilica.lemur.OptionPanelState;
 import com.simsilica.lemur.Slider;
@@ -31,13 +36,14 @@ import com.simsilica.lemur.TabbedPanel;
 import com.simsilica.lemur.TextField;
 import com.simsilica.lemur.component.SpringGridLayout;
 import com.simsilica.lemur.component.TbtQuadBackgroundComponent;
-import com.simsilica.lemur.core.VersionedList;
 import com.simsilica.lemur.core.VersionedReference;
 import com.simsilica.lemur.style.ElementId;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Locale;
+
 /**
  * An AppState that renders the main menu.
  *
@@ -46,6 +52,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class MenuState extends BaseAppState {
 
+    // the interval in seconds of refreshing the measured times in the status labels
+    private static final float STATUS_INTERVAL = 1f;
+
     @Getter
     @Setter
     private Node node;
@@ -59,10 +68,25 @@ public class MenuState extends BaseAppState {
     private VersionedReference<Double> clickIntervalRef;
     private PostProcessingState postProcessingState;
     private Label anisotropicFilterValue;
+    private Slider anisotropicFilterSlider;
     private VersionedReference<Double> anisotropicFilterRef;
     private VersionedReference<Boolean> fxaaRef;
     private VersionedReference<Boolean> ssaoRef;
     private VersionedReference<Boolean> shadowsRef;
+    private Button ssaoResolutionButton;
+    private Label ssaoResolutionValue;
+    private QualityGovernorState qualityGovernorState;
+    private VersionedReference<QualityTier> qualityTierRef;
+    private Button qualityButton;
+    private Label qualityValue;
+    // the SSAO resolution and the governor status that are shown in the status labels
+    private SsaoResolution shownSsaoResolution;
+    private String shownQualityStatus;
+    private float statusTime;
+    private Label statusLabel;
+    private SceneStorageStatus sceneStorageStatus;
+    // the scene browser of the open dialog, null when the dialog isn't shown
+    private SceneBrowser sceneBrowser;
 
     @Override
     protected void initialize(Application app) {
@@ -71,15 +95,21 @@ public class MenuState extends BaseAppState {
         optionPanelState = getState(OptionPanelState.class);
         cameraPivotPointState = getState(CameraPivotPointState.class);
         postProcessingState = getState(PostProcessingState.class);
+        qualityGovernorState = getState(QualityGovernorState.class);
         menu = layout(createMenu());
+        sceneStorageStatus = new SceneStorageStatus();
+        builderState.getSceneStorage().addListener(sceneStorageStatus);
 
         if (node == null) {
             node = ((SimpleApplication) app).getGuiNode();
         }
+
+        onRecover();
     }
 
     @Override
     protected void cleanup(Application app) {
+        builderState.getSceneStorage().removeListener(sceneStorageStatus);
     }
 
     @Override
@@ -116,16 +146,117 @@ public class MenuState extends BaseAppState {
         if (shadowsRef.update()) {
             postProcessingState.getDlsf().setEnabled(shadowsRef.get());
         }
+        // formatting the status allocates, the labels are only refreshed on a change and once per interval
+        statusTime += tpf;
+        boolean refreshStatus = statusTime >= STATUS_INTERVAL;
+        if (refreshStatus) {
+            statusTime = 0;
+        }
+        if (refreshStatus || postProcessingState.getSsaoResolution() != shownSsaoResolution) {
+            updateSsaoStatus();
+        }
+        if (qualityGovernorState != null) {
+            boolean tierChanged = qualityTierRef.update();
+            if (tierChanged) {
+                // the tier changes the anisotropic filter
+                anisotropicFilterSlider.getModel().setValue(getApplication().getRenderer().getDefaultAnisotropicFilter());
+            }
+            if (refreshStatus || tierChanged || qualityGovernorState.getStatus() != shownQualityStatus) {
+                updateQualityStatus();
+            }
+        }
+        if (sceneBrowser != null) {
+            sceneBrowser.update();
+        }
+    }
+
+    /**
+     * Pins the next quality tier, after the lowest tier the governor chooses the tier again.
+     */
+    private void onPinQualityTier() {
+        QualityTier pinnedTier = qualityGovernorState.getPinnedTier();
+        if (pinnedTier == null) {
+            qualityGovernorState.setPinnedTier(QualityTier.values()[0]);
+        } else if (pinnedTier.lower() == pinnedTier) {
+            qualityGovernorState.setPinnedTier(null);
+        } else {
+            qualityGovernorState.setPinnedTier(pinnedTier.lower());
+        }
+        qualityButton.setText(getPinnedTierText());
+    }
+
+    /**
+     * Pins the next SSAO resolution, after the lowest resolution the resolution follows the quality tier again.
+     */
+    private void onPinSsaoResolution() {
+        SsaoResolution pinnedResolution = postProcessingState.getPinnedSsaoResolution();
+        if (pinnedResolution == null) {
+            postProcessingState.setPinnedSsaoResolution(SsaoResolution.values()[0]);
+        } else if (pinnedResolution.ordinal() == SsaoResolution.values().length - 1) {
+            postProcessingState.setPinnedSsaoResolution(null);
+        } else {
+            postProcessingState.setPinnedSsaoResolution(SsaoResolution.values()[pinnedResolution.ordinal() + 1]);
+        }
+        ssaoResolutionButton.setText(getPinnedSsaoResolutionText());
+    }
+
+    private String getPinnedSsaoResolutionText() {
+        SsaoResolution pinnedResolution = postProcessingState.getPinnedSsaoResolution();
+        return pinnedResolution != null ? pinnedResolution.getDisplayName() : "Auto";
+    }
+
+    /**
+     * Returns the SSAO resolution that is used and the GPU time of the SSAO filter, switch between the resolutions to
+     * compare them.
+     */
+    private String getSsaoStatus() {
+        String status = postProcessingState.getSsaoResolution().getDisplayName();
+        double gpuTime = postProcessingState.getSsaoGpuTime();
+        if (gpuTime >= 0) {
+            status += String.format(Locale.ROOT, " (GPU %.2f ms)", gpuTime);
+        }
+        return status;
+    }
+
+    private void updateSsaoStatus() {
+        shownSsaoResolution = postProcessingState.getSsaoResolution();
+        String ssaoStatus = getSsaoStatus();
+        if (!ssaoStatus.equals(ssaoResolutionValue.getText())) {
+            ssaoResolutionValue.setText(ssaoStatus);
+        }
+    }
+
+    private void updateQualityStatus() {
+        shownQualityStatus = qualityGovernorState.getStatus();
+        String quality = getQualityStatus();
+        if (!quality.equals(qualityValue.getText())) {
+            qualityValue.setText(quality);
+        }
+    }
+
+    private String getPinnedTierText() {
+        QualityTier pinnedTier = qualityGovernorState.getPinnedTier();
+        return pinnedTier != null ? pinnedTier.getDisplayName() : "Auto";
+    }
+
+    private String getQualityStatus() {
+        String status = String.format("%s: %s", qualityGovernorState.getTier().getObject().getDisplayName(), qualityGovernorState.getStatus());
+        if (qualityGovernorState.getFrameTimePercentile() > 0) {
+            status += String.format(Locale.ROOT, " (p95 %.1f ms)", qualityGovernorState.getFrameTimePercentile());
+        }
+        return status;
     }
 
     private void onExit() {
         getApplication().stop();
     }
 
-    private void onExport() {
+    private void onExport(ExportFormat format) {
         boolean isSavedBefore = builderState.getSceneInformation().getFilename() != null;
         if (isSavedBefore) {
-            builderState.export(builderState.getSceneInformation().getFilename());
+            if (!builderState.export(builderState.getSceneInformation().getFilename(), format)) {
+                statusLabel.setText("An export is already running");
+            }
         } else {
             OptionPanel optionPanel = new OptionPanel("Export",
                     "The scene should be saved before exporting.", null,
@@ -162,6 +293,21 @@ public class MenuState extends BaseAppState {
         optionPanelState.show(optionPanel);
     }
 
+    /**
+     * Asks what to do with the next untitled scene with unsaved changes of a previous session.
+     */
+    private void onRecover() {
+        if (builderState.getUnrecoveredScenes().isEmpty()) {
+            return;
+        }
+
+        builderState.setEnabled(false);
+        cameraState.setEnabled(false);
+
+        OptionPanel optionPanel = createOnRecoverPopup(builderState.getUnrecoveredScenes().get(0));
+        optionPanelState.show(optionPanel);
+    }
+
     private void onNew() {
         builderState.setEnabled(false);
         cameraState.setEnabled(false);
@@ -198,6 +344,40 @@ public class MenuState extends BaseAppState {
         return optionPanel;
     }
 
+    private OptionPanel createOnRecoverPopup(String scene) {
+        OptionPanel optionPanel = new OptionPanel("Unsaved changes", "An untitled scene with unsaved changes of a " +
+                "previous session was found.\nDo you want to open it? The changes are kept when you choose later.", null,
+                new Action("Open") {
+                    @Override
+                    public void execute(Button source) {
+                        builderState.recoverScene(scene);
+                    }
+                },
+                new Action("Discard") {
+                    @Override
+                    public void execute(Button source) {
+                        builderState.discardScene(scene);
+                        // ask for the next scene when this popup is closed
+                        getApplication().enqueue(MenuState.this::onRecover);
+                    }
+                },
+                new EmptyAction("Later"));
+        ColorRGBA colorRGBA = ((TbtQuadBackgroundComponent) optionPanel.getBackground()).getColor();
+        colorRGBA.set(colorRGBA.r, colorRGBA.g, colorRGBA.b, 0.9f);
+
+        for (Node button : optionPanel.getButtons().getLayout().getChildren()) {
+            if (button instanceof Button) {
+                ((Button) button).setTextHAlignment(HAlignment.Center);
+                ((Button) button).addClickCommands(source -> {
+                    builderState.setEnabled(true);
+                    cameraState.setEnabled(true);
+                });
+            }
+        }
+
+        return optionPanel;
+    }
+
     private OptionPanel createOnSaveAsPopup() {
         OptionPanel optionPanel = new OptionPanel(null, null);
         optionPanel.setTitle("Save scene");
@@ -239,13 +419,12 @@ public class MenuState extends BaseAppState {
     private OptionPanel createOnOpenPopup() {
         OptionPanel optionPanel = new OptionPanel(null, null);
         optionPanel.setTitle("Load scene");
-        ListBox<String> scenes = optionPanel.getContainer().addChild(new ListBox<>(new VersionedList<>(builderState.getAllScenes())));
-        scenes.setPreferredSize(scenes.getPreferredSize().setX(256));
+        SceneBrowser browser = optionPanel.getContainer().addChild(new SceneBrowser(builderState.getSceneIndex()));
+        sceneBrowser = browser;
         optionPanel.setOptions(new Action("Load") {
             @Override
             public void execute(Button source) {
-                Integer index = scenes.getSelectionModel().getSelection();
-                String scene = index != null ? scenes.getModel().get(index) : null;
+                String scene = browser.getSelectedScene();
                 if (scene != null) {
                     builderState.loadScene(scene);
                 }
@@ -261,10 +440,14 @@ public class MenuState extends BaseAppState {
                 ((Button) button).addClickCommands(source -> {
                     builderState.setEnabled(true);
                     cameraState.setEnabled(true);
+                    sceneBrowser = null;
                 });
             }
         }
 
+        // set focus to the search field
+        GuiGlobals.getInstance().requestFocus(browser.getSearchField());
+
         return optionPanel;
     }
 
@@ -287,10 +470,23 @@ public class MenuState extends BaseAppState {
         Button saveAsModel = fileContainer.addChild(new Button("Save as"));
         saveAsModel.addClickCommands(button -> onSaveAs());
         Button export = fileContainer.addChild(new Button("Export to j3o"));
-        export.addClickCommands(button -> onExport());
+        export.addClickCommands(button -> onExport(ExportFormat.J3O));
+        Button exportGlb = fileContainer.addChild(new Button("Export to glTF"));
+        exportGlb.addClickCommands(button -> onExport(ExportFormat.GLB));
+        Button exportObj = fileContainer.addChild(new Button("Export to OBJ"));
+        exportObj.addClickCommands(button -> onExport(ExportFormat.OBJ));
+        Button cancelExport = fileContainer.addChild(new Button("Cancel export"));
+        cancelExport.addClickCommands(button -> builderState.cancelExport());
         Button exit = fileContainer.addChild(new Button("Exit"));
         exit.addClickCommands(button -> onExit());
 
+        // Edit
+        Container editContainer = tabbedPanel.addTab("Edit", new Container(new SpringGridLayout(Axis.Y, Axis.X, FillMode.Even, FillMode.Even)));
+        Button undo = editContainer.addChild(new Button("Undo (Ctrl+Z)"));
+        undo.addClickCommands(button -> builderState.undo());
+        Button redo = editContainer.addChild(new Button("Redo (Ctrl+Y)"));
+        redo.addClickCommands(button -> builderState.redo());
+
         // Settings
         Container settingsContainer = tabbedPanel.addTab("Settings", new Container(new SpringGridLayout(Axis.Y, Axis.X, FillMode.ForcedEven, FillMode.Even)));
         Label cameraPivotPointLabel = createLabel("Camera center:", "boolean.label");
@@ -311,7 +507,7 @@ public class MenuState extends BaseAppState {
         Label anisotropicFilterLabel = createLabel("Anisotropic filter:", "int.label");
         int maxAnisotropicFilter = getApplication().getRenderer().getLimits().getOrDefault(Limits.TextureAnisotropy, 1);
         int anisotropicFilter = getApplication().getRenderer().getDefaultAnisotropicFilter();
-        Slider anisotropicFilterSlider = createSlider(anisotropicFilter, 1, maxAnisotropicFilter, 1);
+        anisotropicFilterSlider = createSlider(anisotropicFilter, 1, maxAnisotropicFilter, 1);
         anisotropicFilterValue = new Label(String.format("%d", anisotropicFilter), new ElementId(Label.ELEMENT_ID).child("value.label"));
         anisotropicFilterRef = anisotropicFilterSlider.getModel().createReference();
         settingsContainer.addChild(anisotropicFilterLabel);
@@ -332,6 +528,14 @@ public class MenuState extends BaseAppState {
         settingsContainer.addChild(ssaoLabel);
         settingsContainer.addChild(ssaoCheckbox, 1);
 
+        Label ssaoResolutionLabel = createLabel("SSAO resolution:", "int.label");
+        ssaoResolutionButton = new Button(getPinnedSsaoResolutionText());
+        ssaoResolutionButton.addClickCommands(button -> onPinSsaoResolution());
+        ssaoResolutionValue = new Label(getSsaoStatus(), new ElementId(Label.ELEMENT_ID).child("value.label"));
+        settingsContainer.addChild(ssaoResolutionLabel);
+        settingsContainer.addChild(ssaoResolutionButton, 1);
+        settingsContainer.addChild(ssaoResolutionValue, 2);
+
         Label shadowsLabel = createLabel("Shadows:", "boolean.label");
         Checkbox shadowsCheckbox = new Checkbox("", new ElementId(Checkbox.ELEMENT_ID).child("boolean.checkbox"), null);
         getApplication().enqueue(() -> shadowsCheckbox.setChecked(postProcessingState.getDlsf().isEnabled()));
@@ -339,6 +543,17 @@ public class MenuState extends BaseAppState {
         settingsContainer.addChild(shadowsLabel);
         settingsContainer.addChild(shadowsCheckbox, 1);
 
+        if (qualityGovernorState != null) {
+            Label qualityLabel = createLabel("Quality:", "int.label");
+            qualityButton = new Button(getPinnedTierText());
+            qualityButton.addClickCommands(button -> onPinQualityTier());
+            qualityValue = new Label(getQualityStatus(), new ElementId(Label.ELEMENT_ID).child("value.label"));
+            qualityTierRef = qualityGovernorState.getTier().createReference();
+            settingsContainer.addChild(qualityLabel);
+            settingsContainer.addChild(qualityButton, 1);
+            settingsContainer.addChild(qualityValue, 2);
+        }
+
 //        PropertyPanel propertyPanel = new PropertyPanel(null);
 //        propertyPanel.addFloatProperty("Sample radius", postProcessingState.getSsaoFilter(), "sampleRadius", 0, 20, 0.1f);
 //        propertyPanel.addFloatProperty("Intensity", postProcessingState.getSsaoFilter(), "intensity", 0, 50, 0.1f);
@@ -348,9 +563,59 @@ public class MenuState extends BaseAppState {
 
         tabbedPanel.setSelectedTab(tabbedPanel.getTabs().get(0));
 
+        statusLabel = container.addChild(new Label(""));
+
         return container;
     }
 
+    /**
+     * Shows the progress of the scenes that are saved and loaded in the status label.
+     */
+    private class SceneStorageStatus implements SceneStorageListener {
+
+        @Override
+        public void onProgress(SceneStorage.Operation operation, String name, float progress) {
+            statusLabel.setText(String.format("%s %s... %d%%", getActivity(operation), name, Math.round(progress * 100)));
+        }
+
+        @Override
+        public void onCompleted(SceneStorage.Operation operation, String name, boolean success) {
+            if (success) {
+                statusLabel.setText(String.format("%s %s", getPastTense(operation), name));
+            } else {
+                statusLabel.setText(String.format("Error %s %s", getActivity(operation).toLowerCase(), name));
+            }
+        }
+
+        @Override
+        public void onCancelled(SceneStorage.Operation operation, String name) {
+            statusLabel.setText(String.format("%s %s cancelled", getActivity(operation), name));
+        }
+
+        private String getActivity(SceneStorage.Operation operation) {
+            switch (operation) {
+                case SAVE:
+                    return "Saving";
+                case LOAD:
+                    return "Loading";
+                default:
+                    return "Exporting";
+            }
+        }
+
+        private String getPastTense(SceneStorage.Operation operation) {
+            switch (operation) {
+                case SAVE:
+                    return "Saved";
+                case LOAD:
+                    return "Loaded";
+                default:
+                    return "Exported";
+            }
+        }
+
+    }
+
     private static Label createLabel(String text, String elementId) {
         Label label = new Label(text, new ElementId(Label.ELEMENT_ID).child(elementId));
         label.setTextHAlignment(HAlignment.Right);
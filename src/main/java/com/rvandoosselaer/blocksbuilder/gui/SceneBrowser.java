@@ -0,0 +1,150 @@
+package com.rvandoosselaer.blocksbuilder.gui;
+
+import com.rvandoosselaer.blocksbuilder.SceneIndex;
+import com.simsilica.lemur.Axis;
+import com.simsilica.lemur.Button;
+import com.simsilica.lemur.Container;
+import com.simsilica.lemur.FillMode;
+import com.simsilica.lemur.Insets3f;
+import com.simsilica.lemur.Label;
+import com.simsilica.lemur.ListBox;
+import com.simsilica.lemur.TextField;
+import com.simsilica.lemur.component.SpringGridLayout;
+import com.simsilica.lemur.core.VersionedList;
+import com.simsilica.lemur.core.VersionedReference;
+import com.simsilica.lemur.text.DocumentModel;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A paged, searchable list of the scenes in the {@link SceneIndex}. Only the scenes of the current page are added to
+ * the list box. The list is refreshed when the search text or the index changes, {@link #update()} should be called
+ * each frame while the browser is shown.
+ *
+ * @author: rvandoosselaer
+ */
+public class SceneBrowser extends Container {
+
+    private static final int PAGE_SIZE = 15;
+
+    private final SceneIndex sceneIndex;
+    private final TextField searchField;
+    private final VersionedList<String> sceneNames = new VersionedList<>();
+    private final ListBox<String> scenes;
+    private final Label pageLabel;
+    private final Label details;
+    private final VersionedReference<DocumentModel> searchRef;
+    private final VersionedReference<Set<Integer>> selectionRef;
+    private final List<SceneIndex.Entry> pageEntries = new ArrayList<>();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    private long indexVersion = -1;
+    private int page;
+    private int pageCount;
+
+    public SceneBrowser(SceneIndex sceneIndex) {
+        super(new SpringGridLayout(Axis.Y, Axis.X, FillMode.None, FillMode.Even));
+        this.sceneIndex = sceneIndex;
+
+        Label searchLabel = addChild(new Label("Search:"));
+        searchLabel.setInsets(new Insets3f(0, 0, 4, 0));
+        searchField = addChild(new TextField(""));
+        searchField.setPreferredSize(searchField.getPreferredSize().setX(256));
+        searchRef = searchField.getDocumentModel().createReference();
+
+        scenes = addChild(new ListBox<>(sceneNames));
+        scenes.setVisibleItems(PAGE_SIZE);
+        scenes.setPreferredSize(scenes.getPreferredSize().setX(256));
+        selectionRef = scenes.getSelectionModel().createReference();
+
+        Container pager = addChild(new Container(new SpringGridLayout(Axis.X, Axis.Y, FillMode.First, FillMode.Even)));
+        pageLabel = pager.addChild(new Label(""));
+        Button previous = pager.addChild(new Button("<"));
+        previous.addClickCommands(source -> showPage(page - 1));
+        Button next = pager.addChild(new Button(">"));
+        next.addClickCommands(source -> showPage(page + 1));
+
+        details = addChild(new Label(""));
+        details.setInsets(new Insets3f(4, 0, 0, 0));
+
+        update();
+    }
+
+    public void update() {
+        if (searchRef.update()) {
+            page = 0;
+            refresh();
+        } else if (indexVersion != sceneIndex.getVersion()) {
+            refresh();
+        }
+
+        if (selectionRef.update()) {
+            updateDetails();
+        }
+    }
+
+    /**
+     * Returns the name of the selected scene or null when no scene is selected.
+     */
+    public String getSelectedScene() {
+        Integer index = scenes.getSelectionModel().getSelection();
+        return index != null && index < pageEntries.size() ? pageEntries.get(index).getName() : null;
+    }
+
+    /**
+     * Returns the focusable search field.
+     */
+    public TextField getSearchField() {
+        return searchField;
+    }
+
+    private void showPage(int page) {
+        if (page >= 0 && page < pageCount) {
+            this.page = page;
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        indexVersion = sceneIndex.getVersion();
+        List<SceneIndex.Entry> results = sceneIndex.search(searchField.getText());
+        pageCount = Math.max((results.size() + PAGE_SIZE - 1) / PAGE_SIZE, 1);
+        page = Math.min(page, pageCount - 1);
+
+        String selectedScene = getSelectedScene();
+        pageEntries.clear();
+        pageEntries.addAll(results.subList(page * PAGE_SIZE, Math.min((page + 1) * PAGE_SIZE, results.size())));
+        List<String> names = new ArrayList<>(pageEntries.size());
+        Integer selection = null;
+        for (SceneIndex.Entry entry : pageEntries) {
+            if (entry.getName().equals(selectedScene)) {
+                selection = names.size();
+            }
+            names.add(entry.getName());
+        }
+        sceneNames.clear();
+        sceneNames.addAll(names);
+        scenes.getSelectionModel().setSelection(selection != null ? selection : -1);
+
+        pageLabel.setText(String.format("Page %d of %d (%d scenes)", page + 1, pageCount, results.size()));
+        updateDetails();
+    }
+
+    private void updateDetails() {
+        Integer index = scenes.getSelectionModel().getSelection();
+        if (index == null || index < 0 || index >= pageEntries.size()) {
+            details.setText("");
+            return;
+        }
+
+        SceneIndex.Entry entry = pageEntries.get(index);
+        details.setText(String.format("%d blocks in %d chunks\n%d x %d x %d chunks, %.1f kB\nModified %s",
+                entry.getBlockCount(), entry.getChunkCount(),
+                entry.getMax().x - entry.getMin().x + 1, entry.getMax().y - entry.getMin().y + 1, entry.getMax().z - entry.getMin().z + 1,
+                entry.getSize() / 1024f, dateFormat.format(new Date(entry.getLastModified()))));
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class AutosaveJournalTest {
+
+    private static Vec3i chunkSize;
+    private static Block grass;
+    private static Block stone;
+
+    @TempDir
+    public Path directory;
+
+    private Map<String, Block> blocks;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        chunkSize = TestBlocks.getChunkSize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+        stone = TestBlocks.getCube(TypeIds.STONE);
+    }
+
+    @BeforeEach
+    public void createScene() {
+        blocks = new HashMap<>();
+    }
+
+    @Test
+    public void recordedChangesAreReplayed() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open("scene");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.record(new Vec3i(-1, 2, -3), stone);
+        journal.record(new Vec3i(1, 0, 0), grass);
+        journal.record(new Vec3i(1, 0, 0), null);
+        journal.close();
+
+        assertTrue(AutosaveJournal.exists(directory, "scene"));
+        assertEquals(4, replay("scene"));
+        assertEquals(2, blocks.size());
+        assertEquals(grass, blocks.get("0,0,0"));
+        assertEquals(stone, blocks.get("-1,2,-3"));
+    }
+
+    @Test
+    public void replayStopsAtACorruptRecord() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open("scene");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.record(new Vec3i(1, 0, 0), grass);
+        journal.close();
+        Path path = directory.resolve("scene" + AutosaveJournal.EXTENSION);
+        byte[] data = Files.readAllBytes(path);
+
+        // a record that was only partly written
+        Files.write(path, Arrays.copyOf(data, data.length - 3));
+        assertEquals(1, replay("scene"));
+
+        // a record with a wrong checksum
+        data[data.length - 1] ^= 0x5A;
+        Files.write(path, data);
+        blocks.clear();
+        assertEquals(1, replay("scene"));
+        assertEquals(Collections.singletonMap("0,0,0", grass), blocks);
+    }
+
+    @Test
+    public void rotatedJournalIsDeletedWhenCompacted() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open("scene");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.rotate("scene");
+        journal.record(new Vec3i(1, 0, 0), stone);
+        journal.flush();
+        journal.compacted();
+        journal.close();
+
+        assertFalse(Files.exists(directory.resolve("scene" + AutosaveJournal.COMPACTING_EXTENSION)));
+        assertEquals(1, replay("scene"));
+        assertEquals(Collections.singletonMap("1,0,0", stone), blocks);
+    }
+
+    @Test
+    public void rotatedJournalIsReplayedBeforeTheJournal() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open("scene");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        // the save didn't complete
+        journal.rotate("scene");
+        journal.record(new Vec3i(0, 0, 0), stone);
+        journal.close();
+
+        assertTrue(Files.exists(directory.resolve("scene" + AutosaveJournal.COMPACTING_EXTENSION)));
+        assertEquals(2, replay("scene"));
+        assertEquals(Collections.singletonMap("0,0,0", stone), blocks);
+    }
+
+    @Test
+    public void compactedJournalSetsTheBlocksOfTheChunks() throws IOException, InterruptedException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open(".untitled-1");
+        Chunk chunk = Chunk.createAt(new Vec3i(-1, 0, 2));
+        for (int i = 0; i < 100; i++) {
+            // the same blocks are changed over and over
+            Block block = i % 2 == 0 ? grass : stone;
+            journal.record(new Vec3i(-chunkSize.x + i % 4, 0, chunkSize.z * 2), block);
+            chunk.addBlock(i % 4, 0, 0, block);
+        }
+        journal.flush();
+        CountDownLatch compacted = new CountDownLatch(1);
+        journal.compact(Collections.singletonList(chunk), compacted::countDown);
+        assertTrue(compacted.await(5, TimeUnit.SECONDS));
+        long size = journal.getSize();
+        // the block ids are defined again after compacting
+        journal.record(new Vec3i(0, 0, 0), stone);
+        journal.close();
+
+        // 2 block definitions and 4 blocks, instead of 100 changes
+        assertTrue(size < 10 * 19, "Compacted journal is " + size + " bytes");
+        assertEquals(5, replay(".untitled-1"));
+        assertEquals(5, blocks.size());
+        assertEquals(grass, blocks.get(-chunkSize.x + "," + 0 + "," + chunkSize.z * 2));
+        assertEquals(stone, blocks.get((-chunkSize.x + 1) + "," + 0 + "," + chunkSize.z * 2));
+        assertEquals(stone, blocks.get("0,0,0"));
+        assertFalse(Files.exists(directory.resolve(".untitled-1" + AutosaveJournal.EXTENSION + ".tmp")));
+    }
+
+    @Test
+    public void journalsAreFoundNewestFirst() throws IOException {
+        Files.write(directory.resolve("old" + AutosaveJournal.EXTENSION), new byte[0]);
+        Files.write(directory.resolve("new" + AutosaveJournal.COMPACTING_EXTENSION), new byte[0]);
+        Files.write(directory.resolve("new" + AutosaveJournal.EXTENSION), new byte[0]);
+        Files.write(directory.resolve("scene" + SceneFile.EXTENSION), new byte[0]);
+        directory.resolve("old" + AutosaveJournal.EXTENSION).toFile().setLastModified(System.currentTimeMillis() - 60_000);
+
+        assertEquals(Arrays.asList("new", "old"), AutosaveJournal.findJournals(directory));
+
+        AutosaveJournal.discard(directory, "new");
+        assertEquals(Collections.singletonList("old"), AutosaveJournal.findJournals(directory));
+    }
+
+    @Test
+    public void discardDeletesTheJournals() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open("scene");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.rotate("scene");
+        journal.record(new Vec3i(1, 0, 0), grass);
+        journal.discard();
+        journal.close();
+
+        assertFalse(AutosaveJournal.exists(directory, "scene"));
+        assertTrue(AutosaveJournal.findJournals(directory).isEmpty());
+    }
+
+    @Test
+    public void lockedJournalIsNotUsedByAnotherJournal() throws IOException {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        assertTrue(journal.open("scene"));
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.flush();
+
+        AutosaveJournal other = new AutosaveJournal(directory, 1000);
+        assertFalse(other.open("scene"));
+        other.record(new Vec3i(1, 0, 0), stone);
+        other.discard();
+        other.close();
+        assertTrue(AutosaveJournal.isLocked(directory, "scene"));
+        assertTrue(AutosaveJournal.findJournals(directory).isEmpty());
+
+        journal.close();
+        assertFalse(AutosaveJournal.isLocked(directory, "scene"));
+        assertFalse(Files.exists(directory.resolve("scene" + AutosaveJournal.LOCK_EXTENSION)));
+        assertEquals(Collections.singletonList("scene"), AutosaveJournal.findJournals(directory));
+        assertEquals(1, replay("scene"));
+        assertEquals(Collections.singletonMap("0,0,0", grass), blocks);
+    }
+
+    @Test
+    public void rotatedJournalIsLockedUntilCompacted() {
+        AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+        journal.open(".untitled-1");
+        journal.record(new Vec3i(0, 0, 0), grass);
+        journal.rotate("scene");
+
+        assertTrue(AutosaveJournal.isLocked(directory, ".untitled-1"));
+        assertTrue(AutosaveJournal.isLocked(directory, "scene"));
+
+        journal.compacted();
+        journal.close();
+        assertFalse(AutosaveJournal.isLocked(directory, ".untitled-1"));
+        assertFalse(AutosaveJournal.isLocked(directory, "scene"));
+    }
+
+    @Test
+    public void journalOfAnotherEditorIsSkipped() throws IOException, InterruptedException {
+        Process editor = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), OtherEditor.class.getName(), directory.toString(), "scene")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(editor.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("ready", reader.readLine());
+
+            assertTrue(AutosaveJournal.isLocked(directory, "scene"));
+            assertTrue(AutosaveJournal.findJournals(directory).isEmpty());
+            // the changes aren't appended to the journal of the other editor
+            AutosaveJournal journal = new AutosaveJournal(directory, 1000);
+            assertFalse(journal.open("scene"));
+            journal.record(new Vec3i(5, 0, 0), grass);
+            journal.close();
+        } finally {
+            editor.getOutputStream().close();
+            assertTrue(editor.waitFor(10, TimeUnit.SECONDS));
+        }
+
+        assertFalse(AutosaveJournal.isLocked(directory, "scene"));
+        assertEquals(Collections.singletonList("scene"), AutosaveJournal.findJournals(directory));
+        assertEquals(1, replay("scene"));
+        assertTrue(blocks.isEmpty());
+    }
+
+    private int replay(String name) throws IOException {
+        return AutosaveJournal.replay(directory, name, BlocksConfig.getInstance().getBlockRegistry(), (x, y, z, block) -> {
+            if (block != null) {
+                blocks.put(x + "," + y + "," + z, block);
+            } else {
+                blocks.remove(x + "," + y + "," + z);
+            }
+        });
+    }
+
+    /**
+     * An editor in another process that removes a block and keeps the journal open until its input is closed.
+     */
+    public static class OtherEditor {
+
+        public static void main(String[] args) throws IOException {
+            AutosaveJournal journal = new AutosaveJournal(Paths.get(args[0]), 1000);
+            journal.open(args[1]);
+            journal.record(new Vec3i(1, 0, 0), null);
+            journal.flush();
+            System.out.println("ready");
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // wait until the input is closed
+            }
+            journal.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class BlockRotationsTest {
+
+    private BuilderBlock stone;
+    private BuilderBlock grass;
+    private BlockRotations rotations;
+
+    @BeforeEach
+    public void createRotations() {
+        stone = createBuilderBlock("stone", "stairs_north", "stairs_east", "stairs_south", "stairs_west");
+        grass = createBuilderBlock("grass", "cube");
+        rotations = new BlockRotations(Arrays.asList(stone, grass));
+    }
+
+    @Test
+    public void nextRotationIsTheNextBlock() {
+        assertSame(getBlock(stone, 1), rotations.getNextBlock(getBlock(stone, 0)));
+        assertSame(getBlock(stone, 2), rotations.getNextBlock(getBlock(stone, 1)));
+        assertSame(getBlock(stone, 3), rotations.getNextBlock(getBlock(stone, 2)));
+    }
+
+    @Test
+    public void lastRotationWrapsAroundToTheFirst() {
+        assertSame(getBlock(stone, 0), rotations.getNextBlock(getBlock(stone, 3)));
+
+        Block block = getBlock(stone, 2);
+        for (int i = 0; i < stone.getBlocks().size(); i++) {
+            block = rotations.getNextBlock(block);
+        }
+        assertSame(getBlock(stone, 2), block);
+    }
+
+    @Test
+    public void blockWithoutRotationsIsReturned() {
+        // a builder block with a single block rotates to itself
+        assertSame(getBlock(grass, 0), rotations.getNextBlock(getBlock(grass, 0)));
+        // a block that isn't in any builder block
+        Block water = Block.builder().name("water-cube").type("water").shape("cube").build();
+        assertSame(water, rotations.getNextBlock(water));
+        assertEquals(null, rotations.getNextBlock(null));
+    }
+
+    @Test
+    public void nextIdIsTheIdOfTheNextRotation() {
+        BlockIdTable blockIds = rotations.getBlockIds();
+        assertEquals(5, blockIds.size());
+        for (int i = 0; i < stone.getBlocks().size(); i++) {
+            short id = blockIds.findId(getBlock(stone, i));
+            short nextId = rotations.getNextId(id);
+            assertSame(getBlock(stone, (i + 1) % stone.getBlocks().size()), blockIds.getBlock(nextId));
+        }
+        short grassId = blockIds.findId(getBlock(grass, 0));
+        assertEquals(grassId, rotations.getNextId(grassId));
+    }
+
+    @Test
+    public void unknownIdIsReturned() {
+        assertEquals(BlockIdTable.NO_BLOCK, rotations.getNextId(BlockIdTable.NO_BLOCK));
+        assertEquals(100, rotations.getNextId((short) 100));
+        assertEquals(-1, rotations.getNextId((short) -1));
+    }
+
+    private static Block getBlock(BuilderBlock builderBlock, int index) {
+        return builderBlock.getBlocks().get(index);
+    }
+
+    private static BuilderBlock createBuilderBlock(String type, String... shapes) {
+        BuilderBlock builderBlock = new BuilderBlock(type);
+        for (String shape : shapes) {
+            builderBlock.addBlock(Block.builder().name(type + "-" + shape).type(type).shape(shape).build());
+        }
+
+        return builderBlock;
+    }
+
+}
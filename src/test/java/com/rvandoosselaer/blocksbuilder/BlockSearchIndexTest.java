@@ -0,0 +1,107 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class BlockSearchIndexTest {
+
+    private List<BuilderBlock> blocks;
+    private BlockSearchIndex index;
+
+    @BeforeEach
+    public void createIndex() {
+        // sorted by name, like the blocks window
+        blocks = Arrays.asList(
+                createBuilderBlock("cobblestone", "cube", "slab"),
+                createBuilderBlock("grass", "cube"),
+                createBuilderBlock("oak_log", "cube", "stairs_up"),
+                createBuilderBlock("stone", "cube", "stairs_up", "stairs_west"),
+                createBuilderBlock("stonebrick", "cube"));
+        index = new BlockSearchIndex(blocks);
+    }
+
+    @Test
+    public void emptyQueryReturnsAllBlocks() {
+        assertEquals(blocks, index.search(""));
+        assertEquals(blocks, index.search(" -_ "));
+        assertEquals(blocks, index.search(null));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void blocksAreRankedByHowWellTheyMatch() {
+        // stone equals a token, stonebrick starts with the word and cobblestone contains it
+        assertEquals(names("stone", "stonebrick", "cobblestone"), search("stone"));
+    }
+
+    @Test
+    public void allWordsOfTheQueryShouldMatch() {
+        assertEquals(names("oak_log"), search("oak log"));
+        assertEquals(names("oak_log", "stone"), search("stairs"));
+        assertEquals(names("stone"), search("west stairs"));
+        assertEquals(names("cobblestone"), search("stone slab"));
+        assertTrue(index.search("grass slab").isEmpty());
+    }
+
+    @Test
+    public void queryIsCaseAndPunctuationInsensitive() {
+        assertEquals(names("oak_log"), search("OAK-Log"));
+        assertEquals(names("oak_log"), search("  oak__LOG "));
+    }
+
+    @Test
+    public void wordsShorterThanATrigramAreFound() {
+        assertEquals(names("oak_log"), search("oa"));
+        // the stairs shape of oak_log and stone starts with the word as well
+        assertEquals(names("oak_log", "stone", "stonebrick", "cobblestone"), search("st"));
+    }
+
+    @Test
+    public void typedQueryMatchesANewSearch() {
+        String query = "stone st";
+        for (int length = 1; length <= query.length(); length++) {
+            String typed = query.substring(0, length);
+            assertEquals(new BlockSearchIndex(blocks).search(typed), index.search(typed), "Query '" + typed + "'");
+        }
+        // a query that doesn't extend the previous query searches all blocks again
+        assertEquals(names("grass"), search("grass"));
+    }
+
+    @Test
+    public void queryWithoutMatchesIsEmpty() {
+        assertTrue(index.search("water").isEmpty());
+        assertTrue(index.search("waterfall").isEmpty());
+        assertEquals(Collections.emptyList(), search("wat"));
+    }
+
+    private List<String> search(String query) {
+        return index.search(query).stream().map(BuilderBlock::getName).collect(Collectors.toList());
+    }
+
+    private static List<String> names(String... names) {
+        return new ArrayList<>(Arrays.asList(names));
+    }
+
+    private static BuilderBlock createBuilderBlock(String type, String... shapes) {
+        BuilderBlock builderBlock = new BuilderBlock(type);
+        for (String shape : shapes) {
+            builderBlock.addBlock(Block.builder().name(type + "-" + shape).type(type).shape(shape).build());
+        }
+
+        return builderBlock;
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the view projections of shadow cameras the way the renderer decides to reuse a cached shadow map.
+ *
+ * @author: rvandoosselaer
+ */
+public class CachedDirectionalLightShadowRendererTest {
+
+    private static final int SHADOW_MAP_SIZE = 1024;
+    // the shadow camera covers 100 world units, a texel is about 0.1 world unit
+    private static final float EXTENT = 50;
+    private static final Vector3f LIGHT_DIRECTION = new Vector3f(-0.2f, -1, -0.3f).normalizeLocal();
+
+    @Test
+    public void sameCameraUsesTheCachedMap() {
+        Matrix4f cached = getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT));
+
+        assertTrue(isSameArea(cached, getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT))));
+    }
+
+    @Test
+    public void movementWithinATexelUsesTheCachedMap() {
+        Matrix4f cached = getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT));
+
+        assertTrue(isSameArea(cached, getViewProjection(createShadowCamera(LIGHT_DIRECTION, new Vector3f(0.02f, 0, 0.02f), EXTENT))));
+    }
+
+    @Test
+    public void movedCameraRendersTheMap() {
+        Matrix4f cached = getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT));
+
+        assertFalse(isSameArea(cached, getViewProjection(createShadowCamera(LIGHT_DIRECTION, new Vector3f(1, 0, 0), EXTENT))));
+        assertFalse(isSameArea(cached, getViewProjection(createShadowCamera(LIGHT_DIRECTION, new Vector3f(0, 0, -1), EXTENT))));
+    }
+
+    @Test
+    public void croppedCameraRendersTheMap() {
+        Matrix4f cached = getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT));
+
+        // the occluders or the view changed, so the split covers a larger area
+        assertFalse(isSameArea(cached, getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT * 1.1f))));
+    }
+
+    @Test
+    public void rotatedLightRendersTheMap() {
+        Matrix4f cached = getViewProjection(createShadowCamera(LIGHT_DIRECTION, Vector3f.ZERO, EXTENT));
+        Vector3f direction = new Quaternion().fromAngleAxis(FastMath.DEG_TO_RAD, Vector3f.UNIT_Y).mult(LIGHT_DIRECTION);
+
+        assertFalse(isSameArea(cached, getViewProjection(createShadowCamera(direction, Vector3f.ZERO, EXTENT))));
+    }
+
+    private static boolean isSameArea(Matrix4f cached, Matrix4f current) {
+        return CachedDirectionalLightShadowRenderer.isSameArea(cached, current, 2f / SHADOW_MAP_SIZE, new Matrix4f(), new Vector3f());
+    }
+
+    private static Matrix4f getViewProjection(Camera camera) {
+        return camera.getViewProjectionMatrix().clone();
+    }
+
+    /**
+     * Creates an orthographic camera looking along the light direction, like the shadow camera of a split.
+     */
+    private static Camera createShadowCamera(Vector3f direction, Vector3f location, float extent) {
+        Camera camera = new Camera(SHADOW_MAP_SIZE, SHADOW_MAP_SIZE);
+        camera.setParallelProjection(true);
+        camera.setFrustum(-extent, extent, -extent, extent, extent, -extent);
+        camera.setLocation(location);
+        camera.lookAtDirection(direction, Vector3f.UNIT_Y);
+        camera.update();
+        camera.updateViewProjection();
+
+        return camera;
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class ChunkSectionsTest {
+
+    private static Vec3i chunkSize;
+    private static Block grass;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        chunkSize = TestBlocks.getChunkSize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+    }
+
+    @Test
+    public void snapshotIsSizedToTheSectionAndItsBorder() {
+        ChunkSections sections = new ChunkSections(chunkSize, chunkSize.x / 4);
+        Chunk chunk = Chunk.createAt(new Vec3i(1, 0, -2));
+        Vec3i sectionMin = new Vec3i(chunkSize.x / 4, chunkSize.y / 4, chunkSize.z / 4);
+        chunk.addBlock(sectionMin.x, sectionMin.y, sectionMin.z, grass);
+
+        int index = sections.getSectionIndex(sectionMin.x, sectionMin.y, sectionMin.z);
+        ChunkSections.SectionSnapshot snapshot = sections.copySection(chunk, index);
+
+        assertNotNull(snapshot);
+        assertEquals(new Vec3i(1, 0, -2), snapshot.getChunkLocation());
+        assertEquals(sectionMin.subtract(1, 1, 1), snapshot.getMin());
+        assertEquals(sections.getSectionSize().add(2, 2, 2), snapshot.getSize());
+        assertEquals(snapshot.getSize().x * snapshot.getSize().y * snapshot.getSize().z, snapshot.getBlocks().length);
+    }
+
+    @Test
+    public void snapshotIsClampedToTheChunk() {
+        ChunkSections sections = new ChunkSections(chunkSize, chunkSize.x / 4);
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(0, 0, 0, grass);
+
+        ChunkSections.SectionSnapshot snapshot = sections.copySection(chunk, 0);
+
+        assertNotNull(snapshot);
+        assertEquals(new Vec3i(0, 0, 0), snapshot.getMin());
+        assertEquals(sections.getSectionSize().add(1, 1, 1), snapshot.getSize());
+    }
+
+    @Test
+    public void sectionWithOnlyBorderBlocksIsEmpty() {
+        ChunkSections sections = new ChunkSections(chunkSize, chunkSize.x / 2);
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        // the first block of the second section on the x axis is in the border of the first section
+        chunk.addBlock(chunkSize.x / 2, 0, 0, grass);
+
+        assertNull(sections.copySection(chunk, 0));
+        assertNotNull(sections.copySection(chunk, 1));
+    }
+
+    @Test
+    public void writeToAndRemoveFromRestoreTheChunk() {
+        ChunkSections sections = new ChunkSections(chunkSize, chunkSize.x / 2);
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(1, 2, 3, grass);
+        chunk.addBlock(chunkSize.x / 2, 2, 3, grass);
+        chunk.addBlock(chunkSize.x - 1, 2, 3, grass);
+
+        ChunkSections.SectionSnapshot snapshot = sections.copySection(chunk, 0);
+        Chunk workerChunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        snapshot.writeTo(workerChunk);
+
+        assertSame(grass, workerChunk.getBlock(1, 2, 3));
+        // the border block is copied, the block outside the border isn't
+        assertSame(grass, workerChunk.getBlock(chunkSize.x / 2, 2, 3));
+        assertNull(workerChunk.getBlock(chunkSize.x - 1, 2, 3));
+
+        snapshot.removeFrom(workerChunk);
+
+        assertNull(workerChunk.getBlock(1, 2, 3));
+        assertNull(workerChunk.getBlock(chunkSize.x / 2, 2, 3));
+    }
+
+    @Test
+    public void boundaryBlockMarksTheNeighbouringSection() {
+        ChunkSections sections = new ChunkSections(chunkSize, chunkSize.x / 2);
+        BitSet changed = new BitSet();
+
+        sections.markSections(new Vec3i(chunkSize.x / 2, 1, 1), changed);
+
+        assertEquals(2, changed.cardinality());
+        assertEquals(0, changed.nextSetBit(0));
+        assertEquals(1, changed.nextSetBit(1));
+    }
+
+}
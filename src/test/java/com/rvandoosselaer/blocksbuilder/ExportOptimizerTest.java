@@ -0,0 +1,245 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.TextureKey;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.shape.Box;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.util.BufferUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Optimizes small scenes of faces and boxes and checks the merged quads, the texture coordinates, the winding of the
+ * triangles and the index format of the optimized mesh.
+ *
+ * @author: rvandoosselaer
+ */
+public class ExportOptimizerTest {
+
+    private static AssetManager assetManager;
+
+    @BeforeAll
+    public static void initializeAssetManager() {
+        assetManager = new DesktopAssetManager(true);
+    }
+
+    @Test
+    public void solidFacesAreMerged() {
+        Material material = createMaterial(null);
+        Node node = new Node("faces");
+        node.attachChild(createFace(0, 0, material, false, 1));
+        node.attachChild(createFace(1, 0, material, false, 1));
+
+        ExportOptimizer.Result result = optimize(node);
+
+        assertEquals(4, result.getTrianglesBefore());
+        assertEquals(2, result.getTrianglesAfter());
+        assertEquals(1, result.getDrawCallsAfter());
+        assertEquals(4, result.getVerticesAfter());
+        assertBounds(getMesh(result), new Vector3f(0, 0, 0), new Vector3f(2, 0, 1));
+    }
+
+    @Test
+    public void texturedFacesAreMergedWithTiledTextureCoordinates() {
+        Texture texture = createTexture();
+        Material material = createMaterial(texture);
+        Node node = new Node("faces");
+        node.attachChild(createFace(0, 0, material, true, 1));
+        node.attachChild(createFace(1, 0, material, true, 1));
+
+        ExportOptimizer.Result result = optimize(node);
+
+        assertEquals(2, result.getTrianglesAfter());
+        assertEquals(4, result.getVerticesAfter());
+        // the texture coordinates span both faces
+        FloatBuffer texCoords = getMesh(result).getFloatBuffer(VertexBuffer.Type.TexCoord);
+        float uMax = 0, vMax = 0;
+        for (int i = 0; i < texCoords.limit(); i += 2) {
+            uMax = Math.max(uMax, texCoords.get(i));
+            vMax = Math.max(vMax, texCoords.get(i + 1));
+        }
+        assertEquals(1, uMax, 0.0001f);
+        assertEquals(2, vMax, 0.0001f);
+        // the texture of the exported material repeats, the texture of the scene is unchanged
+        Material exported = getGeometry(result).getMaterial();
+        assertNotSame(material, exported);
+        Texture exportedTexture = ModelExporter.getTexture(exported);
+        assertEquals(Texture.WrapMode.Repeat, exportedTexture.getWrap(Texture.WrapAxis.T));
+        assertEquals(texture.getKey(), exportedTexture.getKey());
+        assertEquals(Texture.WrapMode.EdgeClamp, texture.getWrap(Texture.WrapAxis.T));
+    }
+
+    @Test
+    public void partiallyTexturedFacesAreNotMerged() {
+        Material material = createMaterial(createTexture());
+        Node node = new Node("faces");
+        node.attachChild(createFace(0, 0, material, true, 1 / 3f));
+        node.attachChild(createFace(1, 0, material, true, 1 / 3f));
+
+        ExportOptimizer.Result result = optimize(node);
+
+        assertEquals(4, result.getTrianglesAfter());
+        assertSame(material, getGeometry(result).getMaterial());
+    }
+
+    @Test
+    public void mergedTrianglesFaceTheNormal() {
+        Material material = createMaterial(createTexture());
+        Node node = new Node("boxes");
+        for (int x = 0; x < 3; x++) {
+            Geometry box = new Geometry("box", new Box(0.5f, 0.5f, 0.5f));
+            box.setMaterial(material);
+            box.setLocalTranslation(x, 0, 0);
+            node.attachChild(box);
+        }
+
+        ExportOptimizer.Result result = optimize(node);
+
+        // the 4 faces along the row are merged, the 6 faces across the row aren't
+        assertEquals(3 * 12, result.getTrianglesBefore());
+        assertEquals((4 + 6) * 2, result.getTrianglesAfter());
+        Mesh mesh = getMesh(result);
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        FloatBuffer normals = mesh.getFloatBuffer(VertexBuffer.Type.Normal);
+        VertexBuffer indices = mesh.getBuffer(VertexBuffer.Type.Index);
+        int[] facings = new int[6];
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int i0 = ((Number) indices.getElementComponent(t, 0)).intValue();
+            int i1 = ((Number) indices.getElementComponent(t, 1)).intValue();
+            int i2 = ((Number) indices.getElementComponent(t, 2)).intValue();
+            Vector3f p0 = getVector(positions, i0);
+            Vector3f faceNormal = getVector(positions, i1).subtractLocal(p0).crossLocal(getVector(positions, i2).subtractLocal(p0)).normalizeLocal();
+            for (int i : new int[]{i0, i1, i2}) {
+                Vector3f normal = getVector(normals, i);
+                assertEquals(1, faceNormal.dot(normal), 0.0001f, "triangle " + t + " doesn't face the normal " + normal);
+            }
+            int axis = Math.abs(faceNormal.x) > 0.5f ? 0 : Math.abs(faceNormal.y) > 0.5f ? 1 : 2;
+            facings[axis * 2 + (faceNormal.get(axis) > 0 ? 1 : 0)]++;
+        }
+        // both triangles of the merged faces, both triangles of the 3 faces of each end
+        assertEquals(6, facings[0]);
+        assertEquals(6, facings[1]);
+        for (int i = 2; i < 6; i++) {
+            assertEquals(2, facings[i]);
+        }
+    }
+
+    @Test
+    public void shortIndicesAreUsedBelow65536Vertices() {
+        Material material = createMaterial(null);
+
+        Mesh shortMesh = getMesh(optimize(createTriangles(65535, material)));
+        assertEquals(65535, shortMesh.getVertexCount());
+        assertEquals(VertexBuffer.Format.UnsignedShort, shortMesh.getBuffer(VertexBuffer.Type.Index).getFormat());
+
+        Mesh intMesh = getMesh(optimize(createTriangles(65536, material)));
+        assertEquals(65536, intMesh.getVertexCount());
+        assertEquals(VertexBuffer.Format.UnsignedInt, intMesh.getBuffer(VertexBuffer.Type.Index).getFormat());
+        assertEquals(65535, ((Number) intMesh.getBuffer(VertexBuffer.Type.Index).getElementComponent(65533, 2)).intValue());
+    }
+
+    private static ExportOptimizer.Result optimize(Node node) {
+        node.updateGeometricState();
+        return ExportOptimizer.optimize(node);
+    }
+
+    private static Geometry getGeometry(ExportOptimizer.Result result) {
+        assertEquals(1, result.getNode().getQuantity());
+        return (Geometry) result.getNode().getChild(0);
+    }
+
+    private static Mesh getMesh(ExportOptimizer.Result result) {
+        return getGeometry(result).getMesh();
+    }
+
+    private static Vector3f getVector(FloatBuffer buffer, int index) {
+        return new Vector3f(buffer.get(index * 3), buffer.get(index * 3 + 1), buffer.get(index * 3 + 2));
+    }
+
+    private static void assertBounds(Mesh mesh, Vector3f min, Vector3f max) {
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            Vector3f position = getVector(positions, i);
+            assertTrue(position.x == min.x || position.x == max.x, "x " + position);
+            assertTrue(position.z == min.z || position.z == max.z, "z " + position);
+        }
+    }
+
+    private static Material createMaterial(Texture texture) {
+        Material material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        if (texture != null) {
+            material.setTexture("ColorMap", texture);
+        }
+        return material;
+    }
+
+    private static Texture createTexture() {
+        Texture2D texture = new Texture2D(4, 4, Image.Format.RGBA8);
+        texture.setKey(new TextureKey("Blocks/Textures/block atlas.png"));
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+        return texture;
+    }
+
+    /**
+     * Creates an upward facing unit face at the x and z coordinate. The texture coordinates cover the texture in the z
+     * direction and the given part of the texture in the x direction.
+     */
+    private static Geometry createFace(int x, int z, Material material, boolean texCoords, float part) {
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, new float[]{x, 0, z, x, 0, z + 1, x + 1, 0, z + 1, x + 1, 0, z});
+        mesh.setBuffer(VertexBuffer.Type.Normal, 3, new float[]{0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0});
+        if (texCoords) {
+            mesh.setBuffer(VertexBuffer.Type.TexCoord, 2, new float[]{0, 0, 1, 0, 1, part, 0, part});
+        }
+        mesh.setBuffer(VertexBuffer.Type.Index, 3, new short[]{0, 1, 2, 0, 2, 3});
+        mesh.updateBound();
+
+        Geometry geometry = new Geometry("face", mesh);
+        geometry.setMaterial(material);
+        return geometry;
+    }
+
+    /**
+     * Creates a strip of triangles that aren't quads, with the given number of distinct vertices.
+     */
+    private static Node createTriangles(int vertexCount, Material material) {
+        FloatBuffer positions = BufferUtils.createFloatBuffer(vertexCount * 3);
+        for (int i = 0; i < vertexCount; i++) {
+            positions.put(i).put(i % 2).put(i % 3);
+        }
+        int[] indices = new int[(vertexCount - 2) * 3];
+        for (int i = 0; i < vertexCount - 2; i++) {
+            indices[i * 3] = i;
+            indices[i * 3 + 1] = i + 1;
+            indices[i * 3 + 2] = i + 2;
+        }
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        mesh.setBuffer(VertexBuffer.Type.Index, 3, indices);
+        mesh.updateBound();
+        mesh.updateCounts();
+
+        Geometry geometry = new Geometry("triangles", mesh);
+        geometry.setMaterial(material);
+        Node node = new Node("triangles");
+        node.attachChild(geometry);
+        return node;
+    }
+
+}
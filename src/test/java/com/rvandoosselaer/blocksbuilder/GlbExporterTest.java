@@ -0,0 +1,200 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a scene to a glb file and reads it back: the header, the JSON and binary chunks, and the data of each
+ * accessor.
+ *
+ * @author: rvandoosselaer
+ */
+public class GlbExporterTest {
+
+    private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    private static final int COMPONENT_UNSIGNED_INT = 5125;
+    private static final int COMPONENT_FLOAT = 5126;
+
+    private static Block grass;
+
+    @TempDir
+    public Path directory;
+
+    private Path path;
+    private long triangles;
+    private JsonNode json;
+    private ByteBuffer bin;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+    }
+
+    @BeforeEach
+    public void exportScene() throws IOException {
+        // two blocks that don't touch, so all faces are visible
+        Chunk first = Chunk.createAt(new Vec3i(0, 0, 0));
+        first.addBlock(1, 1, 1, grass);
+        Chunk second = Chunk.createAt(new Vec3i(-1, 0, 0));
+        second.addBlock(3, 0, 3, grass);
+        path = directory.resolve("scene" + GlbExporter.EXTENSION);
+
+        triangles = GlbExporter.write(path, Arrays.asList(first, second), () -> false, progress -> {});
+        read(path);
+    }
+
+    @Test
+    public void headerAndChunksAreValid() throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(0x46546C67, data.getInt(0));
+        assertEquals(2, data.getInt(4));
+        assertEquals(Files.size(path), data.getInt(8));
+        int jsonLength = data.getInt(12);
+        assertEquals(0x4E4F534A, data.getInt(16));
+        assertEquals(0, jsonLength % 4);
+        int binLength = data.getInt(20 + jsonLength);
+        assertEquals(0x004E4942, data.getInt(24 + jsonLength));
+        assertEquals(0, binLength % 4);
+        assertEquals(Files.size(path), 28 + jsonLength + binLength);
+        assertEquals(binLength, json.get("buffers").get(0).get("byteLength").asLong());
+        assertFalse(Files.exists(directory.resolve(path.getFileName() + ".tmp")));
+        assertFalse(Files.exists(directory.resolve(path.getFileName() + ".bin.tmp")));
+    }
+
+    @Test
+    public void accessorsFitTheirBufferViews() {
+        for (JsonNode accessor : json.get("accessors")) {
+            JsonNode bufferView = json.get("bufferViews").get(accessor.get("bufferView").asInt());
+            int offset = bufferView.get("byteOffset").asInt();
+            int length = bufferView.get("byteLength").asInt();
+            int componentSize = accessor.get("componentType").asInt() == COMPONENT_UNSIGNED_SHORT ? 2 : 4;
+
+            assertEquals(0, offset % 4);
+            assertTrue(offset + length <= bin.capacity());
+            assertEquals(accessor.get("count").asInt() * componentSize * getComponents(accessor), length);
+        }
+    }
+
+    @Test
+    public void primitivesHaveValidIndicesAndPositions() {
+        long indexCount = 0;
+        for (JsonNode mesh : json.get("meshes")) {
+            JsonNode primitive = mesh.get("primitives").get(0);
+            assertEquals(4, primitive.get("mode").asInt());
+            JsonNode position = json.get("accessors").get(primitive.get("attributes").get("POSITION").asInt());
+            JsonNode indices = json.get("accessors").get(primitive.get("indices").asInt());
+            int vertexCount = position.get("count").asInt();
+
+            // a small mesh uses unsigned short indices
+            assertTrue(vertexCount < 65536);
+            assertEquals(COMPONENT_UNSIGNED_SHORT, indices.get("componentType").asInt());
+            assertEquals(vertexCount, json.get("accessors").get(primitive.get("attributes").get("NORMAL").asInt()).get("count").asInt());
+            assertEquals(vertexCount, json.get("accessors").get(primitive.get("attributes").get("TEXCOORD_0").asInt()).get("count").asInt());
+            for (int i = 0; i < indices.get("count").asInt(); i++) {
+                int index = getIndex(indices, i);
+                assertTrue(index >= 0 && index < vertexCount, "Index " + index + " of " + vertexCount + " vertices");
+            }
+
+            assertEquals(COMPONENT_FLOAT, position.get("componentType").asInt());
+            for (int i = 0; i < vertexCount * 3; i++) {
+                float value = getFloat(position, i);
+                assertTrue(value >= position.get("min").get(i % 3).floatValue() && value <= position.get("max").get(i % 3).floatValue());
+            }
+            indexCount += indices.get("count").asInt();
+        }
+
+        assertEquals(2 * 12, triangles);
+        assertEquals(triangles, indexCount / 3);
+        assertEquals(json.get("meshes").size(), json.get("nodes").size());
+        assertEquals(json.get("nodes").size(), json.get("scenes").get(0).get("nodes").size());
+    }
+
+    @Test
+    public void materialsReferenceTheEmbeddedTexture() throws IOException {
+        JsonNode material = json.get("materials").get(0);
+        JsonNode texture = json.get("textures").get(material.get("pbrMetallicRoughness").get("baseColorTexture").get("index").asInt());
+        JsonNode image = json.get("images").get(texture.get("source").asInt());
+        JsonNode sampler = json.get("samplers").get(texture.get("sampler").asInt());
+
+        assertEquals(1, json.get("textures").size());
+        assertEquals(1, json.get("images").size());
+        assertFalse(image.has("uri"));
+        assertEquals("image/png", image.get("mimeType").asText());
+        JsonNode bufferView = json.get("bufferViews").get(image.get("bufferView").asInt());
+        assertFalse(bufferView.has("target"));
+        byte[] data = new byte[bufferView.get("byteLength").asInt()];
+        ((ByteBuffer) bin.duplicate().position(bufferView.get("byteOffset").asInt())).get(data);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(data)));
+        assertTrue(sampler.has("magFilter") && sampler.has("minFilter") && sampler.has("wrapS") && sampler.has("wrapT"));
+        assertFalse(material.has("extras"));
+    }
+
+    @Test
+    public void emptySceneHasNoBinaryChunk() throws IOException {
+        Path empty = directory.resolve("empty" + GlbExporter.EXTENSION);
+
+        assertEquals(0, GlbExporter.write(empty, Collections.emptyList(), () -> false, progress -> {}));
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(empty)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Files.size(empty), 20 + data.getInt(12));
+    }
+
+    private void read(Path path) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        int jsonLength = data.getInt(12);
+        json = new ObjectMapper().readTree(new String(data.array(), 20, jsonLength, StandardCharsets.UTF_8).trim());
+        int binLength = data.getInt(20 + jsonLength);
+        data.position(28 + jsonLength).limit(28 + jsonLength + binLength);
+        bin = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int getIndex(JsonNode accessor, int i) {
+        int offset = json.get("bufferViews").get(accessor.get("bufferView").asInt()).get("byteOffset").asInt();
+        if (accessor.get("componentType").asInt() == COMPONENT_UNSIGNED_INT) {
+            return bin.getInt(offset + i * 4);
+        }
+        return bin.getShort(offset + i * 2) & 0xFFFF;
+    }
+
+    private float getFloat(JsonNode accessor, int i) {
+        int offset = json.get("bufferViews").get(accessor.get("bufferView").asInt()).get("byteOffset").asInt();
+        return bin.getFloat(offset + i * 4);
+    }
+
+    private static int getComponents(JsonNode accessor) {
+        switch (accessor.get("type").asText()) {
+            case "VEC2":
+                return 2;
+            case "VEC3":
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a scene to an obj file and reads back the vertices and faces.
+ *
+ * @author: rvandoosselaer
+ */
+public class ObjExporterTest {
+
+    private static Block grass;
+
+    @TempDir
+    public Path directory;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+    }
+
+    @Test
+    public void facesReferenceTheWrittenVertices() throws IOException {
+        // two blocks that don't touch, so all faces are visible
+        Chunk first = Chunk.createAt(new Vec3i(0, 0, 0));
+        first.addBlock(1, 1, 1, grass);
+        Chunk second = Chunk.createAt(new Vec3i(-1, 0, 0));
+        second.addBlock(3, 0, 3, grass);
+        Path path = directory.resolve("scene" + ObjExporter.EXTENSION);
+
+        long triangles = ObjExporter.write(path, Arrays.asList(first, second), () -> false, progress -> {});
+
+        List<String> lines = Files.readAllLines(path);
+        long positions = count(lines, "v ");
+        long texCoords = count(lines, "vt ");
+        long normals = count(lines, "vn ");
+        assertEquals(2 * 12, triangles);
+        assertEquals(triangles, count(lines, "f "));
+        assertTrue(positions > 0);
+        assertEquals(positions, texCoords);
+        assertEquals(positions, normals);
+        for (String line : lines) {
+            if (!line.startsWith("f ")) {
+                continue;
+            }
+            String[] vertices = line.substring(2).split(" ");
+            assertEquals(3, vertices.length);
+            for (String vertex : vertices) {
+                String[] indexes = vertex.split("/");
+                assertEquals(3, indexes.length);
+                assertIndex(indexes[0], positions);
+                assertIndex(indexes[1], texCoords);
+                assertIndex(indexes[2], normals);
+            }
+        }
+        assertFalse(Files.exists(directory.resolve(path.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void materialLibraryHoldsTheUsedMaterials() throws IOException {
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(0, 0, 0, grass);
+        Path path = directory.resolve("scene" + ObjExporter.EXTENSION);
+
+        ObjExporter.write(path, Arrays.asList(chunk), () -> false, progress -> {});
+
+        List<String> lines = Files.readAllLines(path);
+        List<String> materialLibrary = Files.readAllLines(directory.resolve("scene" + ObjExporter.MATERIAL_LIBRARY_EXTENSION));
+        assertTrue(lines.contains("mtllib scene" + ObjExporter.MATERIAL_LIBRARY_EXTENSION));
+        for (String line : lines) {
+            if (line.startsWith("usemtl ")) {
+                assertTrue(materialLibrary.contains("newmtl " + line.substring(7)), "Material " + line.substring(7));
+            }
+        }
+        assertEquals(count(materialLibrary, "newmtl "), count(materialLibrary, "map_Kd "));
+        for (String line : materialLibrary) {
+            if (line.startsWith("map_Kd ")) {
+                // the texture is copied next to the material library
+                String texture = line.substring(7);
+                assertFalse(texture.contains("/") || texture.contains(" "), "Texture " + texture);
+                assertNotNull(ImageIO.read(directory.resolve(texture).toFile()), "Texture " + texture);
+            }
+        }
+    }
+
+    private static long count(List<String> lines, String prefix) {
+        return lines.stream().filter(line -> line.startsWith(prefix)).count();
+    }
+
+    private static void assertIndex(String index, long count) {
+        int value = Integer.parseInt(index);
+        assertTrue(value >= 1 && value <= count, "Index " + value + " of " + count);
+    }
+
+}
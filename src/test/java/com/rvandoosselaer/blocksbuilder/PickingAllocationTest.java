@@ -0,0 +1,131 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Verifies that the picking of the {@link BuilderState} doesn't allocate: the raycast cache lookup on an idle frame and
+ * the voxel raycast and positioning of the placeholders when the camera moved.
+ *
+ * @author: rvandoosselaer
+ */
+public class PickingAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 20_000;
+    private static final int FRAMES = 10_000;
+    /**
+     * The frames are measured a few times and the lowest measurement is used. When the JIT compiler replaces the
+     * running code, the runtime can allocate a few hundred bytes on behalf of the thread once. An allocation of the
+     * picking happens in every measurement.
+     */
+    private static final int MEASUREMENTS = 5;
+
+    private ChunkMap chunkMap;
+    private BuilderState builderState;
+    private Node parentNode;
+    private Geometry removeBlockPlaceholder;
+    private Camera camera;
+    private final Vector2f cursorPosition = new Vector2f(320, 240);
+    private long cameraVersion;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+    }
+
+    @BeforeEach
+    public void createScene() {
+        chunkMap = new ChunkMap(2, 2);
+        Block grass = TestBlocks.getCube(TypeIds.GRASS);
+        for (int x = -10; x < 10; x++) {
+            for (int z = -10; z < 10; z++) {
+                chunkMap.addBlock(new Vec3i(x, 0, z), grass);
+            }
+        }
+        parentNode = new Node("parent");
+        removeBlockPlaceholder = new Geometry("remove block");
+        builderState = new BuilderState();
+        builderState.setParentNode(parentNode);
+        builderState.initializePicking(chunkMap, new Geometry("add block"), removeBlockPlaceholder);
+
+        camera = new Camera(640, 480);
+        camera.setFrustumPerspective(45, 640 / 480f, 0.1f, 1000);
+        camera.setLocation(new Vector3f(0.5f, 20f, 0.5f));
+        camera.lookAtDirection(new Vector3f(0.3f, -1f, 0.2f).normalizeLocal(), Vector3f.UNIT_Y);
+        camera.update();
+    }
+
+    @Test
+    public void idleFrameDoesntAllocate() {
+        long allocated = measureAllocatedBytes(this::pick);
+
+        // only the first frame casts a ray
+        assertEquals(1, builderState.getRaycastCache().getMisses());
+        assertEquals(0, allocated, "Allocated " + allocated + " bytes in " + FRAMES + " idle frames");
+    }
+
+    @Test
+    public void raycastDoesntAllocate() {
+        long allocated = measureAllocatedBytes(() -> {
+            // the camera moved, the cached result can't be used
+            cameraVersion++;
+            pick();
+        });
+
+        assertEquals(0, builderState.getRaycastCache().getHits());
+        assertEquals(0, allocated, "Allocated " + allocated + " bytes in " + FRAMES + " raycasts");
+    }
+
+    private void pick() {
+        builderState.pick(cursorPosition, camera, cameraVersion);
+        RaycastResult result = builderState.getRaycastCache().getResult();
+        assertTrue(result != null && result.isBlockHit());
+        assertSame(parentNode, removeBlockPlaceholder.getParent());
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread while running the frames, after a warm up so the measurement
+     * isn't influenced by class loading and the JIT compiler. The lowest of the measurements is returned.
+     */
+    private static long measureAllocatedBytes(Runnable frame) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            frame.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int measurement = 0; measurement < MEASUREMENTS; measurement++) {
+            // reading the allocated bytes allocates itself, this overhead is subtracted
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+            start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < FRAMES; i++) {
+                frame.run();
+            }
+            allocated = Math.min(allocated, threadMXBean.getThreadAllocatedBytes(threadId) - start - overhead);
+        }
+
+        return allocated;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Feeds frame times to the governor and checks the tier it chooses. With a target of 30 fps a frame time above 33.3
+ * ms is too slow, and a frame time below 20 ms is fast enough to upgrade.
+ *
+ * @author: rvandoosselaer
+ */
+public class QualityGovernorStateTest {
+
+    private static final float SLOW = 0.05f;
+    private static final float STEADY = 0.025f;
+    private static final float FAST = 0.01f;
+
+    @Test
+    public void slowFramesLowerTheTier() {
+        QualityGovernorState governor = new QualityGovernorState(30, null);
+
+        run(governor, SLOW, 3.5f);
+        assertEquals(QualityTier.HIGH, governor.getTier().getObject());
+
+        run(governor, SLOW, 30);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+    }
+
+    @Test
+    public void framesBetweenTheThresholdsKeepTheTier() {
+        QualityGovernorState governor = new QualityGovernorState(30, null);
+
+        run(governor, STEADY, 30);
+        assertEquals(QualityTier.ULTRA, governor.getTier().getObject());
+        assertEquals(STEADY * 1000, governor.getFrameTimePercentile(), 0.01f);
+    }
+
+    @Test
+    public void fastFramesRaiseTheTierAfterTheUpgradeDelay() {
+        QualityGovernorState governor = new QualityGovernorState(30, null);
+        run(governor, SLOW, 30);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+
+        run(governor, FAST, 4);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+
+        run(governor, FAST, 2);
+        assertEquals(QualityTier.MEDIUM, governor.getTier().getObject());
+    }
+
+    @Test
+    public void failedUpgradeDoublesTheUpgradeDelay() {
+        QualityGovernorState governor = new QualityGovernorState(30, null);
+        run(governor, SLOW, 30);
+        run(governor, FAST, 6);
+        assertEquals(QualityTier.MEDIUM, governor.getTier().getObject());
+
+        // the higher tier is too slow right after the upgrade
+        run(governor, SLOW, 3.5f);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+
+        run(governor, FAST, 8);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+
+        run(governor, FAST, 3);
+        assertEquals(QualityTier.MEDIUM, governor.getTier().getObject());
+    }
+
+    @Test
+    public void pinnedTierDoesNotChange() {
+        QualityGovernorState governor = new QualityGovernorState(30, QualityTier.MEDIUM);
+
+        run(governor, SLOW, 30);
+        assertEquals(QualityTier.MEDIUM, governor.getTier().getObject());
+        assertEquals(SLOW * 1000, governor.getFrameTimePercentile(), 0.01f);
+
+        run(governor, FAST, 30);
+        assertEquals(QualityTier.MEDIUM, governor.getTier().getObject());
+
+        governor.setPinnedTier(null);
+        run(governor, SLOW, 3.5f);
+        assertEquals(QualityTier.LOW, governor.getTier().getObject());
+    }
+
+    private static void run(QualityGovernorState governor, float frameTime, float seconds) {
+        for (int i = 0; i < Math.round(seconds / frameTime); i++) {
+            governor.update(frameTime);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.TechniqueDef;
+import com.jme3.shader.Shader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loads the material definitions of the filter and the shaders they use, with their imports. The shaders can't be
+ * compiled without a GPU, the test checks that every material uniform of a shader is a parameter of the material.
+ *
+ * @author: rvandoosselaer
+ */
+public class ScaledSSAOFilterTest {
+
+    private static final String[] MATERIAL_DEFINITIONS = {
+            "MatDefs/SSAO/ScaledSSAO.j3md", "MatDefs/SSAO/SSAOBilateralBlur.j3md", "MatDefs/SSAO/SSAOUpsample.j3md"
+    };
+    private static final Pattern MATERIAL_UNIFORM = Pattern.compile("uniform\\s+\\w+(?:\\[\\d+])?\\s+m_(\\w+)");
+
+    private static AssetManager assetManager;
+
+    @BeforeAll
+    public static void createAssetManager() {
+        assetManager = new DesktopAssetManager(true);
+    }
+
+    @Test
+    public void shadersUseTheMaterialParameters() {
+        for (String name : MATERIAL_DEFINITIONS) {
+            MaterialDef materialDef = assetManager.loadAsset(new AssetKey<MaterialDef>(name));
+            List<TechniqueDef> techniqueDefs = materialDef.getTechniqueDefs(TechniqueDef.DEFAULT_TECHNIQUE_NAME);
+            assertNotNull(techniqueDefs, name);
+
+            // the loader creates a technique for each shader language
+            Set<String> languages = new HashSet<>();
+            for (TechniqueDef techniqueDef : techniqueDefs) {
+                Map<Shader.ShaderType, String> shaders = techniqueDef.getShaderProgramNames();
+                assertTrue(shaders.containsKey(Shader.ShaderType.Vertex) && shaders.containsKey(Shader.ShaderType.Fragment), name);
+                languages.add(techniqueDef.getShaderProgramLanguages().get(Shader.ShaderType.Fragment));
+
+                for (String shader : shaders.values()) {
+                    String source = assetManager.loadAsset(new AssetKey<String>(shader));
+                    assertFalse(source.contains("#import"), shader);
+                    Matcher matcher = MATERIAL_UNIFORM.matcher(source);
+                    while (matcher.find()) {
+                        assertNotNull(materialDef.getMaterialParam(matcher.group(1)), shader + " uses m_" + matcher.group(1) + " that isn't a parameter of " + name);
+                    }
+                }
+            }
+            assertTrue(languages.containsAll(Arrays.asList("GLSL120", "GLSL150")), name + " has shaders for " + languages);
+        }
+    }
+
+    @Test
+    public void filterUsesTheDownSampleFactor() {
+        assertEquals(2, new ScaledSSAOFilter(3, 5, 0.2f, 0.1f, 2).getDownSampleFactor());
+        assertEquals(4, new ScaledSSAOFilter(3, 5, 0.2f, 0.1f, 4).getDownSampleFactor());
+        assertEquals(1, new ScaledSSAOFilter(3, 5, 0.2f, 0.1f, 0).getDownSampleFactor());
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class SceneFileTest {
+
+    private static Vec3i chunkSize;
+    private static Block grass;
+    private static Block stone;
+
+    @TempDir
+    public Path directory;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        chunkSize = TestBlocks.getChunkSize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+        stone = TestBlocks.getCube(TypeIds.STONE);
+    }
+
+    @Test
+    public void chunksAreReadBackAsWritten() throws IOException {
+        Chunk first = Chunk.createAt(new Vec3i(0, 0, 0));
+        first.addBlock(0, 0, 0, grass);
+        first.addBlock(1, 0, 0, grass);
+        first.addBlock(chunkSize.x - 1, chunkSize.y - 1, chunkSize.z - 1, stone);
+        Chunk second = Chunk.createAt(new Vec3i(-3, 1, 2));
+        second.addBlock(5, 6, 7, stone);
+        Path path = directory.resolve("scene" + SceneFile.EXTENSION);
+
+        SceneFile.write(path, Arrays.asList(first, second));
+        List<Chunk> chunks = SceneFile.read(path);
+
+        assertEquals(2, chunks.size());
+        assertEquals(new Vec3i(0, 0, 0), chunks.get(0).getLocation());
+        assertSame(grass, chunks.get(0).getBlock(0, 0, 0));
+        assertSame(grass, chunks.get(0).getBlock(1, 0, 0));
+        assertNull(chunks.get(0).getBlock(2, 0, 0));
+        assertSame(stone, chunks.get(0).getBlock(chunkSize.x - 1, chunkSize.y - 1, chunkSize.z - 1));
+        assertEquals(new Vec3i(-3, 1, 2), chunks.get(1).getLocation());
+        assertSame(stone, chunks.get(1).getBlock(5, 6, 7));
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void summaryCountsTheBlocks() throws IOException {
+        Chunk first = Chunk.createAt(new Vec3i(-1, 0, 4));
+        first.addBlock(0, 0, 0, grass);
+        first.addBlock(0, 1, 0, stone);
+        Chunk second = Chunk.createAt(new Vec3i(2, 1, -5));
+        second.addBlock(3, 3, 3, grass);
+        Path path = directory.resolve("summary" + SceneFile.EXTENSION);
+        SceneFile.write(path, Arrays.asList(first, second));
+
+        SceneFile.Summary summary = SceneFile.readSummary(path);
+
+        assertEquals(2, summary.getChunkCount());
+        assertEquals(3, summary.getBlockCount());
+        assertEquals(new Vec3i(-1, 0, -5), summary.getMin());
+        assertEquals(new Vec3i(2, 1, 4), summary.getMax());
+    }
+
+    @Test
+    public void filledChunkIsRunLengthEncoded() throws IOException {
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        for (int x = 0; x < chunkSize.x; x++) {
+            for (int y = 0; y < chunkSize.y; y++) {
+                for (int z = 0; z < chunkSize.z; z++) {
+                    chunk.addBlock(x, y, z, grass);
+                }
+            }
+        }
+        Path path = directory.resolve("filled" + SceneFile.EXTENSION);
+
+        SceneFile.write(path, Collections.singletonList(chunk));
+
+        // the header, the chunk with a palette of 1 block and a single run
+        assertTrue(Files.size(path) < 100, "File size is " + Files.size(path) + " bytes");
+        assertEquals(chunkSize.x * chunkSize.y * chunkSize.z, SceneFile.readSummary(path).getBlockCount());
+    }
+
+    @Test
+    public void truncatedFileThrowsIOException() throws IOException {
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(0, 0, 0, grass);
+        chunk.addBlock(4, 0, 0, stone);
+        Path path = directory.resolve("truncated" + SceneFile.EXTENSION);
+        SceneFile.write(path, Collections.singletonList(chunk));
+        byte[] data = Files.readAllBytes(path);
+
+        for (int length = 0; length < data.length; length++) {
+            Files.write(path, Arrays.copyOf(data, length));
+            assertThrows(IOException.class, () -> SceneFile.read(path), "Truncated at " + length + " bytes");
+            assertThrows(IOException.class, () -> SceneFile.readSummary(path), "Truncated at " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void corruptFileThrowsIOException() throws IOException {
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(0, 0, 0, grass);
+        chunk.addBlock(4, 0, 0, stone);
+        Path path = directory.resolve("corrupt" + SceneFile.EXTENSION);
+        SceneFile.write(path, Collections.singletonList(chunk));
+        byte[] data = Files.readAllBytes(path);
+
+        for (int i = 0; i < data.length; i++) {
+            byte[] corrupt = data.clone();
+            corrupt[i] ^= 0x5A;
+            Files.write(path, corrupt);
+            assertThrows(IOException.class, () -> SceneFile.read(path), "Corrupt byte at " + i);
+        }
+    }
+
+    @Test
+    public void savedFileCanBeReplaced() throws IOException {
+        Chunk chunk = Chunk.createAt(new Vec3i(0, 0, 0));
+        chunk.addBlock(0, 0, 0, grass);
+        Path path = directory.resolve("replaced" + SceneFile.EXTENSION);
+        SceneFile.write(path, Collections.singletonList(chunk));
+
+        SceneFile.read(path);
+        chunk.addBlock(1, 0, 0, stone);
+        SceneFile.write(path, Collections.singletonList(chunk));
+
+        assertSame(stone, SceneFile.read(path).get(0).getBlock(1, 0, 0));
+    }
+
+}
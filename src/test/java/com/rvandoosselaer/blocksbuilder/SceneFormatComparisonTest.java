@@ -0,0 +1,182 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.FileRepository;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Writes a typical multi-chunk scene with the {@link FileRepository} of the blocks library and as a {@link SceneFile},
+ * and compares the size on disk and the load time. The sizes and the median load times are printed. The comparison is
+ * skipped when the FileRepository can't load the scene it saved.
+ *
+ * @author: rvandoosselaer
+ */
+public class SceneFormatComparisonTest {
+
+    private static final String SCENE = "village";
+    private static final int WARM_UP_LOADS = 3;
+    private static final int LOADS = 9;
+
+    private static Vec3i chunkSize;
+    private static Block grass;
+    private static Block dirt;
+    private static Block stone;
+    private static Block oakLog;
+
+    @TempDir
+    public Path directory;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        chunkSize = TestBlocks.getChunkSize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+        dirt = TestBlocks.getCube(TypeIds.DIRT);
+        stone = TestBlocks.getCube(TypeIds.STONE);
+        oakLog = TestBlocks.getCube(TypeIds.OAK_LOG);
+    }
+
+    @Test
+    public void sceneFileIsSmallerThanFileRepositoryScene() throws IOException {
+        List<Chunk> chunks = createScene();
+        Path sceneFile = directory.resolve(SCENE + SceneFile.EXTENSION);
+        SceneFile.write(sceneFile, chunks);
+        long sceneFileSize = Files.size(sceneFile);
+        long sceneFileLoadTime = measureLoadTime(() -> SceneFile.read(sceneFile), chunks.size());
+        System.out.printf("SceneFile: %d chunks, %d bytes, loaded in %.2fms%n", chunks.size(), sceneFileSize, sceneFileLoadTime / 1e6);
+
+        writeLegacyScene(chunks);
+        assumeTrue(LegacySceneConverter.load(directory, SCENE).size() == chunks.size(), "The FileRepository can't load the saved scene");
+        long legacySize = getLegacySceneSize();
+        long legacyLoadTime = measureLoadTime(() -> LegacySceneConverter.load(directory, SCENE), chunks.size());
+        System.out.printf("FileRepository: %d bytes, loaded in %.2fms%n", legacySize, legacyLoadTime / 1e6);
+        System.out.printf("Size ratio %.1fx, load time ratio %.1fx%n", (double) legacySize / sceneFileSize, (double) legacyLoadTime / sceneFileLoadTime);
+
+        assertTrue(sceneFileSize < legacySize, "SceneFile " + sceneFileSize + " bytes, FileRepository " + legacySize + " bytes");
+    }
+
+    /**
+     * Creates a scene of 4 by 4 chunks with a ground of dirt and grass, stone houses with a log frame and some trees.
+     */
+    private static List<Chunk> createScene() {
+        Random random = new Random(42);
+        List<Chunk> chunks = new ArrayList<>();
+        for (int cx = -2; cx < 2; cx++) {
+            for (int cz = -2; cz < 2; cz++) {
+                Chunk chunk = Chunk.createAt(new Vec3i(cx, 0, cz));
+                for (int x = 0; x < chunkSize.x; x++) {
+                    for (int z = 0; z < chunkSize.z; z++) {
+                        chunk.addBlock(x, 0, z, dirt);
+                        chunk.addBlock(x, 1, z, dirt);
+                        chunk.addBlock(x, 2, z, grass);
+                    }
+                }
+                for (int house = 0; house < 2; house++) {
+                    addHouse(chunk, 2 + random.nextInt(chunkSize.x - 12), 2 + random.nextInt(chunkSize.z - 12), 5 + random.nextInt(4));
+                }
+                for (int tree = 0; tree < 4; tree++) {
+                    int x = random.nextInt(chunkSize.x);
+                    int z = random.nextInt(chunkSize.z);
+                    for (int y = 3; y < 7 + random.nextInt(3) && y < chunkSize.y; y++) {
+                        if (chunk.getBlock(x, y, z) == null) {
+                            chunk.addBlock(x, y, z, oakLog);
+                        }
+                    }
+                }
+                chunks.add(chunk);
+            }
+        }
+
+        return chunks;
+    }
+
+    private static void addHouse(Chunk chunk, int x0, int z0, int size) {
+        for (int y = 3; y < 3 + size && y < chunkSize.y; y++) {
+            for (int x = x0; x < x0 + size; x++) {
+                for (int z = z0; z < z0 + size; z++) {
+                    boolean corner = (x == x0 || x == x0 + size - 1) && (z == z0 || z == z0 + size - 1);
+                    boolean wall = x == x0 || x == x0 + size - 1 || z == z0 || z == z0 + size - 1;
+                    if (corner) {
+                        chunk.addBlock(x, y, z, oakLog);
+                    } else if (wall) {
+                        chunk.addBlock(x, y, z, stone);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the scene like earlier versions: the chunk at the origin in [name].block, the other chunks in the
+     * [name].chunks directory.
+     */
+    private void writeLegacyScene(List<Chunk> chunks) throws IOException {
+        Path chunksDirectory = Files.createDirectories(directory.resolve(SCENE + ".chunks"));
+        FileRepository repository = new FileRepository(directory);
+        FileRepository chunksRepository = new FileRepository(chunksDirectory);
+        for (Chunk chunk : chunks) {
+            Vec3i location = chunk.getLocation();
+            if (location.equals(new Vec3i(0, 0, 0))) {
+                repository.save(chunk, SCENE);
+            } else {
+                chunksRepository.save(chunk, location.x + "_" + location.y + "_" + location.z);
+            }
+        }
+    }
+
+    private long getLegacySceneSize() throws IOException {
+        long size = Files.size(directory.resolve(SCENE + FileRepository.EXTENSION));
+        try (Stream<Path> files = Files.list(directory.resolve(SCENE + ".chunks"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the median time in nanoseconds to load the scene.
+     */
+    private static long measureLoadTime(SceneLoader loader, int expectedChunks) throws IOException {
+        for (int i = 0; i < WARM_UP_LOADS; i++) {
+            assertEquals(expectedChunks, loader.load().size());
+        }
+        long[] times = new long[LOADS];
+        for (int i = 0; i < LOADS; i++) {
+            long start = System.nanoTime();
+            List<Chunk> chunks = loader.load();
+            times[i] = System.nanoTime() - start;
+            assertEquals(expectedChunks, chunks.size());
+        }
+        Arrays.sort(times);
+
+        return times[LOADS / 2];
+    }
+
+    @FunctionalInterface
+    private interface SceneLoader {
+
+        List<Chunk> load() throws IOException;
+
+    }
+
+}
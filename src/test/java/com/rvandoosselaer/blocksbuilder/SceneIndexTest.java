@@ -0,0 +1,174 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.Chunk;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Indexes scene files in a temporary directory: the stored index, the changes picked up by the watcher and the search.
+ *
+ * @author: rvandoosselaer
+ */
+public class SceneIndexTest {
+
+    private static final long TIMEOUT = 10_000;
+
+    private static Block grass;
+
+    @TempDir
+    public Path directory;
+
+    private SceneIndex sceneIndex;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+    }
+
+    @AfterEach
+    public void stopIndex() {
+        if (sceneIndex != null) {
+            sceneIndex.stop();
+        }
+    }
+
+    @Test
+    public void indexIsStoredAndLoaded() throws IOException {
+        writeScene("castle", new Vec3i(-2, 0, 3), new Vec3i(1, 1, -4));
+        writeScene("tower", new Vec3i(0, 0, 0));
+        sceneIndex = startIndex();
+        waitFor(() -> Files.exists(directory.resolve(SceneIndex.FILENAME)));
+        sceneIndex.stop();
+
+        SceneIndex loadedIndex = new SceneIndex(directory);
+        loadedIndex.load();
+
+        assertEquals(2, loadedIndex.size());
+        SceneIndex.Entry castle = loadedIndex.search("castle").get(0);
+        SceneIndex.Entry indexedCastle = sceneIndex.search("castle").get(0);
+        assertEquals(2, castle.getChunkCount());
+        assertEquals(2, castle.getBlockCount());
+        assertEquals(new Vec3i(-2, 0, -4), castle.getMin());
+        assertEquals(new Vec3i(1, 1, 3), castle.getMax());
+        assertEquals(indexedCastle.getSize(), castle.getSize());
+        assertEquals(indexedCastle.getLastModified(), castle.getLastModified());
+        assertEquals(Files.size(directory.resolve("castle" + SceneFile.EXTENSION)), castle.getSize());
+    }
+
+    @Test
+    public void corruptIndexIsIgnored() throws IOException {
+        Files.write(directory.resolve(SceneIndex.FILENAME), new byte[]{1, 2, 3});
+
+        SceneIndex loadedIndex = new SceneIndex(directory);
+        loadedIndex.load();
+
+        assertEquals(0, loadedIndex.size());
+    }
+
+    @Test
+    public void watcherPicksUpChanges() throws IOException {
+        sceneIndex = startIndex();
+        long version = sceneIndex.getVersion();
+
+        // a new scene
+        writeScene("castle", new Vec3i(0, 0, 0));
+        waitFor(() -> getNames().equals(Collections.singletonList("castle")));
+        assertTrue(sceneIndex.getVersion() > version);
+
+        // a renamed scene
+        Files.move(directory.resolve("castle" + SceneFile.EXTENSION), directory.resolve("fortress" + SceneFile.EXTENSION));
+        waitFor(() -> getNames().equals(Collections.singletonList("fortress")));
+
+        // a changed scene
+        writeScene("fortress", new Vec3i(0, 0, 0), new Vec3i(5, 0, 0));
+        waitFor(() -> sceneIndex.search("fortress").stream().anyMatch(entry -> entry.getChunkCount() == 2));
+
+        // a deleted scene
+        Files.delete(directory.resolve("fortress" + SceneFile.EXTENSION));
+        waitFor(() -> sceneIndex.size() == 0);
+    }
+
+    @Test
+    public void hiddenAndOtherFilesAreNotIndexed() throws IOException {
+        writeScene("castle", new Vec3i(0, 0, 0));
+        Files.write(directory.resolve(".untitled" + SceneFile.EXTENSION), new byte[0]);
+        Files.write(directory.resolve("castle.txt"), new byte[0]);
+
+        sceneIndex = startIndex();
+
+        assertEquals(Collections.singletonList("castle"), getNames());
+    }
+
+    @Test
+    public void searchIgnoresCaseAndSortsByName() throws IOException {
+        writeScene("Tower", new Vec3i(0, 0, 0));
+        writeScene("castle wall", new Vec3i(0, 0, 0));
+        writeScene("Castle", new Vec3i(0, 0, 0));
+        sceneIndex = startIndex();
+
+        assertEquals(Arrays.asList("Castle", "castle wall"), getNames(sceneIndex.search("CAST")));
+        assertEquals(Collections.singletonList("Tower"), getNames(sceneIndex.search("  tow ")));
+        assertEquals(Collections.emptyList(), getNames(sceneIndex.search("bridge")));
+        assertEquals(Arrays.asList("Castle", "castle wall", "Tower"), getNames(sceneIndex.search("")));
+        assertEquals(Arrays.asList("Castle", "castle wall", "Tower"), getNames(sceneIndex.search(null)));
+    }
+
+    /**
+     * Starts the index and waits until the directory is scanned.
+     */
+    private SceneIndex startIndex() {
+        SceneIndex index = new SceneIndex(directory);
+        index.start();
+        waitFor(() -> index.getVersion() > 0);
+        return index;
+    }
+
+    private void writeScene(String name, Vec3i... chunkLocations) throws IOException {
+        Chunk[] chunks = new Chunk[chunkLocations.length];
+        for (int i = 0; i < chunkLocations.length; i++) {
+            chunks[i] = Chunk.createAt(chunkLocations[i]);
+            chunks[i].addBlock(0, 0, 0, grass);
+        }
+        SceneFile.write(directory.resolve(name + SceneFile.EXTENSION), Arrays.asList(chunks));
+    }
+
+    private List<String> getNames() {
+        return getNames(sceneIndex.search(null));
+    }
+
+    private static List<String> getNames(List<SceneIndex.Entry> entries) {
+        return entries.stream().map(SceneIndex.Entry::getName).collect(Collectors.toList());
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the index");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlockIds;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.simsilica.mathd.Vec3i;
+
+/**
+ * The blocks used by the tests. {@link #initialize()} initializes the blocks library with a desktop asset manager, the
+ * blocks are looked up in the block registry of the library.
+ *
+ * @author: rvandoosselaer
+ */
+final class TestBlocks {
+
+    private TestBlocks() {
+    }
+
+    static void initialize() {
+        BlocksConfig.initialize(new DesktopAssetManager(true));
+    }
+
+    static Vec3i getChunkSize() {
+        return BlocksConfig.getInstance().getChunkSize();
+    }
+
+    /**
+     * Returns the cube block of the type.
+     */
+    static Block getCube(String type) {
+        return BlocksConfig.getInstance().getBlockRegistry().get(BlockIds.getName(type, "cube"));
+    }
+
+}
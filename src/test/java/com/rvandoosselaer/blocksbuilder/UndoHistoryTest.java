@@ -0,0 +1,219 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author: rvandoosselaer
+ */
+public class UndoHistoryTest {
+
+    private static Block grass;
+    private static Block stone;
+
+    private UndoHistory history;
+    private List<String> changes;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+        stone = TestBlocks.getCube(TypeIds.STONE);
+    }
+
+    @BeforeEach
+    public void createHistory() {
+        history = new UndoHistory(3);
+        changes = new ArrayList<>();
+    }
+
+    @Test
+    public void undoAndRedoASingleChange() {
+        history.record(new Vec3i(1, 2, 3), null, grass);
+
+        assertTrue(history.undo(this::collect));
+        assertEquals(change(1, 2, 3, null), changes);
+        assertFalse(history.canUndo());
+
+        changes.clear();
+        assertTrue(history.redo(this::collect));
+        assertEquals(change(1, 2, 3, grass), changes);
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void stepIsUndoneInReverseOrder() {
+        history.beginStep();
+        history.record(new Vec3i(0, 0, 0), null, grass);
+        history.record(new Vec3i(0, 0, 0), grass, stone);
+        history.record(new Vec3i(1, 0, 0), null, stone);
+        history.endStep();
+
+        assertEquals(1, history.getStepCount());
+        history.undo(this::collect);
+
+        List<String> expected = new ArrayList<>();
+        expected.addAll(change(1, 0, 0, null));
+        expected.addAll(change(0, 0, 0, grass));
+        expected.addAll(change(0, 0, 0, null));
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void changesOutsideAStepAreSeparateSteps() {
+        history.record(new Vec3i(0, 0, 0), null, grass);
+        history.record(new Vec3i(1, 0, 0), null, grass);
+
+        assertEquals(2, history.getStepCount());
+    }
+
+    @Test
+    public void changeWithoutEffectIsIgnored() {
+        history.record(new Vec3i(0, 0, 0), grass, grass);
+        history.beginStep();
+        history.record(new Vec3i(0, 0, 0), null, null);
+        history.endStep();
+
+        assertEquals(0, history.getStepCount());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void newChangeDiscardsTheRedoSteps() {
+        history.record(new Vec3i(0, 0, 0), null, grass);
+        history.record(new Vec3i(1, 0, 0), null, grass);
+        history.undo(this::collect);
+
+        history.record(new Vec3i(2, 0, 0), null, stone);
+
+        assertFalse(history.canRedo());
+        assertEquals(2, history.getStepCount());
+        changes.clear();
+        history.undo(this::collect);
+        assertEquals(change(2, 0, 0, null), changes);
+    }
+
+    @Test
+    public void oldestStepIsDroppedAtTheMaximum() {
+        for (int i = 0; i < 5; i++) {
+            history.record(new Vec3i(i, 0, 0), null, grass);
+        }
+
+        assertEquals(3, history.getStepCount());
+        while (history.undo(this::collect)) {
+            // undo all steps
+        }
+        List<String> expected = new ArrayList<>();
+        expected.addAll(change(4, 0, 0, null));
+        expected.addAll(change(3, 0, 0, null));
+        expected.addAll(change(2, 0, 0, null));
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void changesWrapAroundTheBuffer() {
+        // steps of different sizes, so the oldest change is dropped at another position each time and the buffer grows
+        // while it wraps around
+        int location = 0;
+        List<int[]> steps = new ArrayList<>();
+        for (int step = 0; step < 40; step++) {
+            int size = 1 + (step * 37) % 150;
+            history.beginStep();
+            for (int i = 0; i < size; i++) {
+                history.record(new Vec3i(location + i, step, 0), null, grass);
+            }
+            history.endStep();
+            steps.add(new int[]{location, size, step});
+            location += size;
+        }
+
+        assertEquals(3, history.getStepCount());
+        while (history.undo(this::collect)) {
+            // undo all steps
+        }
+        List<String> expected = new ArrayList<>();
+        for (int step = steps.size() - 1; step >= steps.size() - 3; step--) {
+            int[] info = steps.get(step);
+            for (int i = info[1] - 1; i >= 0; i--) {
+                expected.addAll(change(info[0] + i, info[2], 0, null));
+            }
+        }
+        assertEquals(expected, changes);
+
+        changes.clear();
+        history.redo(this::collect);
+        int[] oldest = steps.get(steps.size() - 3);
+        assertEquals(oldest[1], changes.size());
+        assertEquals(change(oldest[0], oldest[2], 0, grass).get(0), changes.get(0));
+    }
+
+    @Test
+    public void stepsWrapAroundTheBuffer() {
+        history = new UndoHistory(100);
+        for (int i = 0; i < 250; i++) {
+            history.record(new Vec3i(i, 0, 0), null, grass);
+        }
+        // discard some redo steps, so the next step starts in the middle of the buffer
+        for (int i = 0; i < 10; i++) {
+            history.undo(this::collect);
+        }
+        history.record(new Vec3i(-1, 0, 0), null, stone);
+
+        changes.clear();
+        assertEquals(91, history.getStepCount());
+        while (history.undo(this::collect)) {
+            // undo all steps
+        }
+        List<String> expected = new ArrayList<>(change(-1, 0, 0, null));
+        for (int i = 239; i >= 150; i--) {
+            expected.addAll(change(i, 0, 0, null));
+        }
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void negativeLocationsAreKept() {
+        history.record(new Vec3i(-1, -200, -1048576), null, grass);
+        history.record(new Vec3i(1048575, 0, -7), stone, null);
+
+        history.undo(this::collect);
+        history.undo(this::collect);
+
+        List<String> expected = new ArrayList<>();
+        expected.addAll(change(1048575, 0, -7, stone));
+        expected.addAll(change(-1, -200, -1048576, null));
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void clearRemovesAllSteps() {
+        history.record(new Vec3i(0, 0, 0), null, grass);
+        history.clear();
+
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+        assertEquals(0, history.getMemoryUsage());
+    }
+
+    private void collect(int x, int y, int z, Block block) {
+        changes.addAll(change(x, y, z, block));
+    }
+
+    private static List<String> change(int x, int y, int z, Block block) {
+        List<String> change = new ArrayList<>();
+        change.add(x + "," + y + "," + z + "=" + (block != null ? block.getName() : null));
+        return change;
+    }
+
+}
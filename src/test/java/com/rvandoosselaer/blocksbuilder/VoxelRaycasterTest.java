@@ -0,0 +1,142 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.math.Vector3f;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.TypeIds;
+import com.simsilica.mathd.Vec3i;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Casts rays through a chunk map: hits across chunk borders, the hit face and the neighbouring location, the ground
+ * and rays that miss.
+ *
+ * @author: rvandoosselaer
+ */
+public class VoxelRaycasterTest {
+
+    private static Vec3i chunkSize;
+    private static Block grass;
+
+    private ChunkMap chunkMap;
+    private VoxelRaycaster raycaster;
+    private RaycastResult result;
+
+    @BeforeAll
+    public static void initializeBlocks() {
+        TestBlocks.initialize();
+        chunkSize = TestBlocks.getChunkSize();
+        grass = TestBlocks.getCube(TypeIds.GRASS);
+    }
+
+    @BeforeEach
+    public void createChunkMap() {
+        chunkMap = new ChunkMap(2, 2);
+        raycaster = new VoxelRaycaster(chunkMap);
+        result = new RaycastResult();
+    }
+
+    @Test
+    public void rayCrossesIntoChunkWithNegativeLocation() {
+        Vec3i blockLocation = new Vec3i(-chunkSize.x - 3, 2, -5);
+        chunkMap.addBlock(blockLocation, grass);
+        assertEquals(new Vec3i(-2, 0, -1), chunkMap.getChunkLocation(blockLocation));
+
+        // from the origin chunk along the negative x axis
+        assertTrue(raycaster.raycast(new Vector3f(4.5f, 2.5f, -4.5f), new Vector3f(-1, 0, 0), result));
+
+        assertTrue(result.isBlockHit());
+        assertEquals(blockLocation, result.getBlockLocation());
+        assertEquals(new Vec3i(1, 0, 0), result.getNormal());
+        assertEquals(new Vec3i(-chunkSize.x - 2, 2, -5), result.getNeighbourBlockLocation(null));
+        assertEquals(4.5f + chunkSize.x + 2, result.getDistance(), 0.001f);
+    }
+
+    @Test
+    public void diagonalRayCrossesChunkBorders() {
+        Vec3i blockLocation = new Vec3i(-chunkSize.x - 1, chunkSize.y + 1, -chunkSize.z - 1);
+        chunkMap.addBlock(blockLocation, grass);
+        Vector3f target = new Vector3f(blockLocation.x + 0.5f, blockLocation.y + 0.5f, blockLocation.z + 0.5f);
+        Vector3f origin = new Vector3f(chunkSize.x - 0.5f, 0.5f, chunkSize.z - 0.5f);
+
+        assertTrue(raycaster.raycast(origin, target.subtract(origin).normalizeLocal(), result));
+
+        assertTrue(result.isBlockHit());
+        assertEquals(blockLocation, result.getBlockLocation());
+    }
+
+    @Test
+    public void hitFaceAndNeighbourLocation() {
+        Vec3i blockLocation = new Vec3i(3, 2, 3);
+        chunkMap.addBlock(blockLocation, grass);
+
+        // from above
+        assertTrue(raycaster.raycast(new Vector3f(3.5f, 10f, 3.5f), new Vector3f(0, -1, 0), result));
+        assertEquals(blockLocation, result.getBlockLocation());
+        assertEquals(new Vec3i(0, 1, 0), result.getNormal());
+        assertEquals(new Vec3i(3, 3, 3), result.getNeighbourBlockLocation(null));
+        assertEquals(7f, result.getDistance(), 0.001f);
+
+        // from the negative z side
+        assertTrue(raycaster.raycast(new Vector3f(3.5f, 2.5f, -0.5f), new Vector3f(0, 0, 1), result));
+        assertEquals(blockLocation, result.getBlockLocation());
+        assertEquals(new Vec3i(0, 0, -1), result.getNormal());
+        assertEquals(new Vec3i(3, 2, 2), result.getNeighbourBlockLocation(null));
+
+        // from the positive x side, slightly downwards
+        assertTrue(raycaster.raycast(new Vector3f(8.5f, 3f, 3.5f), new Vector3f(-1, -0.1f, 0).normalizeLocal(), result));
+        assertEquals(blockLocation, result.getBlockLocation());
+        assertEquals(new Vec3i(1, 0, 0), result.getNormal());
+        assertEquals(new Vec3i(4, 2, 3), result.getNeighbourBlockLocation(null));
+    }
+
+    @Test
+    public void groundIsHitBelowEmptyCells() {
+        assertTrue(raycaster.raycast(new Vector3f(-5.5f, 4f, 7.5f), new Vector3f(0, -1, 0), result));
+
+        assertFalse(result.isBlockHit());
+        assertEquals(new Vec3i(-6, -1, 7), result.getBlockLocation());
+        assertEquals(new Vec3i(0, 1, 0), result.getNormal());
+        assertEquals(new Vec3i(-6, 0, 7), result.getNeighbourBlockLocation(null));
+        assertEquals(4f, result.getDistance(), 0.001f);
+    }
+
+    @Test
+    public void rayStartingBelowTheGroundHitsTheGround() {
+        // in the layer below the ground
+        assertTrue(raycaster.raycast(new Vector3f(2.5f, -0.5f, 2.5f), new Vector3f(0, 1, 0), result));
+        assertFalse(result.isBlockHit());
+        assertEquals(new Vec3i(2, -1, 2), result.getBlockLocation());
+        assertEquals(new Vec3i(2, 0, 2), result.getNeighbourBlockLocation(null));
+
+        // pointing away from the ground
+        assertTrue(raycaster.raycast(new Vector3f(2.5f, -0.5f, 2.5f), new Vector3f(1, -0.2f, 0).normalizeLocal(), result));
+        assertEquals(new Vec3i(2, -1, 2), result.getBlockLocation());
+
+        // far below the ground, the ray enters the buildable area from below
+        assertTrue(raycaster.raycast(new Vector3f(2.5f, -20f, 2.5f), new Vector3f(0, 1, 0), result));
+        assertFalse(result.isBlockHit());
+        assertEquals(new Vec3i(2, -1, 2), result.getBlockLocation());
+        assertEquals(19f, result.getDistance(), 0.01f);
+    }
+
+    @Test
+    public void rayMisses() {
+        chunkMap.addBlock(new Vec3i(0, 0, 0), grass);
+
+        // upwards
+        assertFalse(raycaster.raycast(new Vector3f(0.5f, 5f, 0.5f), new Vector3f(0, 1, 0), result));
+        // outside the buildable area
+        float outside = (chunkMap.getRadius() + 2) * chunkSize.x;
+        assertFalse(raycaster.raycast(new Vector3f(outside, 5f, 0.5f), new Vector3f(0, -1, 0), result));
+        // too short
+        raycaster.setMaxDistance(3);
+        assertFalse(raycaster.raycast(new Vector3f(0.5f, 5f, 0.5f), new Vector3f(0, -1, 0), result));
+    }
+
+}
@@ -0,0 +1,452 @@
+package com.rvandoosselaer.blocksbuilder;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.light.AmbientLight;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.jme3.system.JmeSystem;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.Image;
+import com.jme3.util.BufferUtils;
+import com.rvandoosselaer.blocks.Block;
+import com.rvandoosselaer.blocks.BlocksConfig;
+import com.rvandoosselaer.blocks.Chunk;
+import com.simsilica.mathd.Vec3i;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tool to generate an icon for all the default blocks. The blocks are rendered offscreen, each block in its own tile of
+ * one large frame buffer, so a batch of blocks is rendered in a single frame. The tiles are rendered at twice the icon
+ * size and scaled down when the PNG files are written on a pool of worker threads.
+ * A hash of the block, its mesh and its textures is stored next to the icons. A block is only rendered again when its
+ * hash changed or when its icon doesn't exist.
+ * <p>
+ * Usage: {@code BlockIconBaker [--output <directory>] [--force]}
+ * <br>
+ * The icons are written to assets/Textures/blocks in the working directory when no output directory is given.
+ *
+ * @author: rvandoosselaer
+ */
+public class BlockIconBaker extends SimpleApplication {
+
+    public static final int ICON_SIZE = 64;
+    public static final String HASHES_FILE = ".iconhashes";
+
+    // change the version when the way the icons are rendered changes, all icons are rendered again
+    private static final int VERSION = 1;
+    private static final int SAMPLES = 2;
+    private static final int TILE_SIZE = ICON_SIZE * SAMPLES;
+    private static final int TILES_PER_ROW = 16;
+    private static final int TILES = TILES_PER_ROW * TILES_PER_ROW;
+
+    private final Path outputDirectory;
+    private final boolean force;
+    private final Properties hashes = new Properties();
+    private final List<Icon> pending = new ArrayList<>();
+    private final List<Future<?>> writes = new ArrayList<>();
+    private final Node[] tiles = new Node[TILES];
+    private final Icon[] batch = new Icon[TILES];
+    private ExecutorService executor;
+    private FrameBuffer frameBuffer;
+    private int batchSize;
+    private int rendered;
+    private boolean finished;
+    private long start;
+
+    public static void main(String[] args) {
+        Path outputDirectory = Paths.get(System.getProperty("user.dir"), "assets", "Textures", "blocks");
+        boolean force = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--output".equals(args[i]) && i + 1 < args.length) {
+                outputDirectory = Paths.get(args[++i]);
+            } else if ("--force".equals(args[i])) {
+                force = true;
+            } else {
+                System.err.println("Usage: BlockIconBaker [--output <directory>] [--force]");
+                System.exit(2);
+            }
+        }
+
+        BlockIconBaker app = new BlockIconBaker(outputDirectory, force);
+        app.setSettings(createAppSettings());
+        app.setShowSettings(false);
+        app.start(JmeContext.Type.OffscreenSurface);
+    }
+
+    public BlockIconBaker(Path outputDirectory, boolean force) {
+        super((AppState[]) null);
+        this.outputDirectory = outputDirectory;
+        this.force = force;
+    }
+
+    @Override
+    public void simpleInitApp() {
+        start = System.nanoTime();
+        BlocksConfig.initialize(assetManager);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "icon-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // only the tiles are rendered
+        viewPort.setEnabled(false);
+        guiViewPort.setEnabled(false);
+
+        frameBuffer = new FrameBuffer(TILE_SIZE * TILES_PER_ROW, TILE_SIZE * TILES_PER_ROW, 1);
+        frameBuffer.setDepthBuffer(Image.Format.Depth);
+        frameBuffer.setColorBuffer(Image.Format.RGBA8);
+        for (int i = 0; i < TILES; i++) {
+            tiles[i] = createTile(i);
+        }
+
+        try {
+            Files.createDirectories(outputDirectory);
+            findChangedBlocks();
+        } catch (IOException e) {
+            System.err.println("Error reading " + outputDirectory + ": " + e.getMessage());
+            stop();
+        }
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        // put the next batch of blocks in the tiles
+        batchSize = Math.min(pending.size() - rendered, TILES);
+        for (int i = 0; i < TILES; i++) {
+            Node wrapper = (Node) tiles[i].getChild(0);
+            wrapper.detachAllChildren();
+            batch[i] = i < batchSize ? pending.get(rendered + i) : null;
+            if (batch[i] != null) {
+                wrapper.attachChild(batch[i].node);
+            }
+            tiles[i].updateLogicalState(tpf);
+            tiles[i].updateGeometricState();
+        }
+    }
+
+    @Override
+    public void simpleRender(RenderManager rm) {
+        if (batchSize > 0) {
+            // each batch is read in a new buffer, the workers scale down the tiles while the next batch is rendered
+            ByteBuffer pixels = BufferUtils.createByteBuffer(frameBuffer.getWidth() * frameBuffer.getHeight() * 4);
+            renderer.readFrameBufferWithFormat(frameBuffer, pixels, Image.Format.RGBA8);
+            for (int i = 0; i < batchSize; i++) {
+                Icon icon = batch[i];
+                int index = i;
+                writes.add(executor.submit(() -> writeIcon(icon, copyTile(pixels, index))));
+            }
+            rendered += batchSize;
+        }
+
+        if (rendered >= pending.size() && !finished) {
+            finish();
+        }
+    }
+
+    /**
+     * Creates the scene and the viewport of a tile. The first viewport clears the frame buffer.
+     */
+    private Node createTile(int index) {
+        Camera camera = new Camera(frameBuffer.getWidth(), frameBuffer.getHeight());
+        camera.setFrustumPerspective(45f, 1f, 1f, 1000f);
+        camera.setLocation(new Vector3f(0.0f, 0.0f, 2.4428942f));
+        camera.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        float column = index % TILES_PER_ROW;
+        float row = index / TILES_PER_ROW;
+        camera.setViewPort(column / TILES_PER_ROW, (column + 1) / TILES_PER_ROW, row / TILES_PER_ROW, (row + 1) / TILES_PER_ROW);
+
+        // rotate the block, to have a better angle
+        Node wrapper = new Node("wrapper");
+        Quaternion yaw = new Quaternion().fromAngleAxis(FastMath.QUARTER_PI, Vector3f.UNIT_Y);
+        Quaternion pitch = new Quaternion().fromAngleAxis(30 * FastMath.DEG_TO_RAD, Vector3f.UNIT_X);
+        wrapper.setLocalRotation(pitch.mult(yaw));
+        wrapper.setLocalTranslation(0, 0.1f, 0);
+
+        Node tile = new Node("tile-" + index);
+        tile.attachChild(wrapper);
+        tile.addLight(new AmbientLight(ColorRGBA.White));
+
+        ViewPort tileViewPort = renderManager.createPreView("tile-" + index, camera);
+        tileViewPort.setOutputFrameBuffer(frameBuffer);
+        tileViewPort.setBackgroundColor(ColorRGBA.BlackNoAlpha);
+        tileViewPort.setClearFlags(index == 0, index == 0, index == 0);
+        tileViewPort.attachScene(tile);
+
+        return tile;
+    }
+
+    /**
+     * Creates the mesh of each block and collects the blocks with a changed hash or without an icon.
+     */
+    private void findChangedBlocks() throws IOException {
+        Path hashesFile = outputDirectory.resolve(HASHES_FILE);
+        if (Files.exists(hashesFile)) {
+            try (InputStream in = Files.newInputStream(hashesFile)) {
+                hashes.load(in);
+            }
+        }
+
+        Map<String, String> textureHashes = new HashMap<>();
+        Chunk chunk = Chunk.createAt(new Vec3i());
+        int count = 0;
+        for (Block block : BlocksConfig.getInstance().getBlockRegistry().getAll()) {
+            chunk.addBlock(0, 0, 0, block);
+            chunk.update();
+            Node node = BlocksConfig.getInstance().getChunkMeshGenerator().createNode(chunk);
+            node.move(-0.5f, -0.5f, -0.5f);
+
+            String filename = block.getName().replaceAll("\\s", "_") + ".png";
+            String hash = getHash(block, node, textureHashes);
+            if (force || !hash.equals(hashes.getProperty(filename)) || !Files.exists(outputDirectory.resolve(filename))) {
+                pending.add(new Icon(filename, hash, node));
+            }
+            count++;
+        }
+
+        System.out.printf("Rendering %d of %d block icons to %s%n", pending.size(), count, outputDirectory);
+    }
+
+    /**
+     * Returns a hash of the block properties, the mesh data, the materials and the content of the textures.
+     */
+    private String getHash(Block block, Node node, Map<String, String> textureHashes) {
+        MessageDigest digest = createDigest();
+        update(digest, "v" + VERSION + ":" + block.getName() + ":" + block.getType() + ":" + block.getShape() + ":"
+                + block.isSolid() + ":" + block.isTransparent() + ":" + block.isUsingMultipleImages());
+
+        ByteBuffer bytes = ByteBuffer.allocate(4);
+        node.depthFirstTraversal(spatial -> {
+            if (!(spatial instanceof Geometry)) {
+                return;
+            }
+            Geometry geometry = (Geometry) spatial;
+            for (VertexBuffer.Type type : new VertexBuffer.Type[]{VertexBuffer.Type.Position, VertexBuffer.Type.TexCoord, VertexBuffer.Type.Normal, VertexBuffer.Type.Color}) {
+                VertexBuffer buffer = geometry.getMesh().getBuffer(type);
+                if (buffer != null && buffer.getData() instanceof FloatBuffer) {
+                    FloatBuffer data = ((FloatBuffer) buffer.getData()).duplicate();
+                    ((Buffer) data).rewind();
+                    while (data.hasRemaining()) {
+                        ((Buffer) bytes).clear();
+                        digest.update(bytes.putFloat(data.get()).array());
+                    }
+                }
+            }
+
+            Material material = geometry.getMaterial();
+            update(digest, material.getMaterialDef().getAssetName() + ":" + geometry.getQueueBucket());
+            for (MatParamTexture param : getTextureParams(material)) {
+                String texture = param.getTextureValue().getKey().getName();
+                update(digest, param.getName() + "=" + textureHashes.computeIfAbsent(texture, this::getTextureHash));
+            }
+        });
+
+        return toHex(digest.digest());
+    }
+
+    private static List<MatParamTexture> getTextureParams(Material material) {
+        List<MatParamTexture> params = new ArrayList<>();
+        material.getParams().forEach(param -> {
+            if (param instanceof MatParamTexture && ((MatParamTexture) param).getTextureValue() != null
+                    && ((MatParamTexture) param).getTextureValue().getKey() != null) {
+                params.add((MatParamTexture) param);
+            }
+        });
+        // the order of the parameters isn't defined
+        params.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+        return params;
+    }
+
+    private String getTextureHash(String texture) {
+        MessageDigest digest = createDigest();
+        update(digest, texture);
+        AssetInfo info = assetManager.locateAsset(new AssetKey<>(texture));
+        if (info != null) {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = info.openStream()) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading texture " + texture + ": " + e.getMessage());
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the pixels of the tile scaled down to the icon size. The colors are weighted with the alpha value, so the
+     * transparent background doesn't darken the edges.
+     */
+    private ByteBuffer copyTile(ByteBuffer pixels, int index) {
+        int width = frameBuffer.getWidth();
+        int tileX = (index % TILES_PER_ROW) * TILE_SIZE;
+        int tileY = (index / TILES_PER_ROW) * TILE_SIZE;
+        ByteBuffer icon = BufferUtils.createByteBuffer(ICON_SIZE * ICON_SIZE * 4);
+        for (int y = 0; y < ICON_SIZE; y++) {
+            for (int x = 0; x < ICON_SIZE; x++) {
+                int r = 0, g = 0, b = 0, a = 0;
+                for (int sy = 0; sy < SAMPLES; sy++) {
+                    for (int sx = 0; sx < SAMPLES; sx++) {
+                        int offset = ((tileY + y * SAMPLES + sy) * width + tileX + x * SAMPLES + sx) * 4;
+                        int alpha = pixels.get(offset + 3) & 0xFF;
+                        r += (pixels.get(offset) & 0xFF) * alpha;
+                        g += (pixels.get(offset + 1) & 0xFF) * alpha;
+                        b += (pixels.get(offset + 2) & 0xFF) * alpha;
+                        a += alpha;
+                    }
+                }
+                icon.put((byte) (a > 0 ? r / a : 0)).put((byte) (a > 0 ? g / a : 0)).put((byte) (a > 0 ? b / a : 0)).put((byte) (a / (SAMPLES * SAMPLES)));
+            }
+        }
+        ((Buffer) icon).flip();
+
+        return icon;
+    }
+
+    /**
+     * Writes the icon to a temporary file that replaces the icon file.
+     */
+    private Void writeIcon(Icon icon, ByteBuffer pixels) throws IOException {
+        Path file = outputDirectory.resolve(icon.filename);
+        Path tempFile = file.resolveSibling(icon.filename + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                JmeSystem.writeImageFile(out, "png", pixels, ICON_SIZE, ICON_SIZE);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        return null;
+    }
+
+    /**
+     * Waits for the icons to be written, stores the hashes of the written icons and stops the application.
+     */
+    private void finish() {
+        finished = true;
+        int failed = 0;
+        for (int i = 0; i < writes.size(); i++) {
+            try {
+                writes.get(i).get();
+                hashes.setProperty(pending.get(i).filename, pending.get(i).hash);
+            } catch (InterruptedException | ExecutionException e) {
+                failed++;
+                System.err.println("Error writing " + pending.get(i).filename + ": " + e.getMessage());
+            }
+        }
+        executor.shutdown();
+
+        try {
+            writeHashes();
+        } catch (IOException e) {
+            System.err.println("Error writing " + HASHES_FILE + ": " + e.getMessage());
+        }
+
+        System.out.printf("Rendered %d block icons in %dms, %d failed%n", pending.size() - failed, (System.nanoTime() - start) / 1_000_000, failed);
+        stop();
+    }
+
+    private void writeHashes() throws IOException {
+        Path file = outputDirectory.resolve(HASHES_FILE);
+        Path tempFile = file.resolveSibling(HASHES_FILE + ".tmp");
+        try {
+            // sort the entries, so the file only changes when a hash changes
+            StringBuilder content = new StringBuilder("# BlockIconBaker v" + VERSION + "\n");
+            new TreeMap<>(hashes).forEach((filename, hash) -> content.append(filename).append('=').append(hash).append('\n'));
+            Files.write(tempFile, content.toString().getBytes(StandardCharsets.ISO_8859_1));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static AppSettings createAppSettings() {
+        AppSettings settings = new AppSettings(true);
+        settings.setResolution(ICON_SIZE, ICON_SIZE);
+        settings.setAudioRenderer(null);
+        return settings;
+    }
+
+    /**
+     * A block icon that should be rendered.
+     */
+    private static class Icon {
+
+        private final String filename;
+        private final String hash;
+        private final Spatial node;
+
+        private Icon(String filename, String hash, Spatial node) {
+            this.filename = filename;
+            this.hash = hash;
+            this.node = node;
+        }
+
+    }
+
+}